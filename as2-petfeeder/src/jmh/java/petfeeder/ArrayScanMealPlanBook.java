@@ -0,0 +1,63 @@
+package petfeeder;
+
+/**
+ * The original fixed-array MealPlanBook algorithm, sized to hold n meal plans,
+ * kept as the baseline for MealPlanBookBenchmark. Every add scans every slot
+ * with equals to detect duplicates.
+ */
+class ArrayScanMealPlanBook {
+
+    private final MealPlan[] mealPlanArray;
+
+    ArrayScanMealPlanBook(int capacity) {
+        mealPlanArray = new MealPlan[capacity];
+    }
+
+    /**
+     * Stores a meal plan in the given slot without the duplicate scan,
+     * so large books can be filled in linear time.
+     */
+    void fill(int slot, MealPlan m) {
+        mealPlanArray[slot] = m;
+    }
+
+    synchronized boolean addMealPlan(MealPlan m) {
+        if (m == null) {
+            return false;
+        }
+        boolean exists = false;
+        for (int i = 0; i < mealPlanArray.length; i++) {
+            if (m.equals(mealPlanArray[i])) {
+                exists = true;
+            }
+        }
+        boolean added = false;
+        if (!exists) {
+            for (int i = 0; i < mealPlanArray.length && !added; i++) {
+                if (mealPlanArray[i] == null) {
+                    mealPlanArray[i] = m;
+                    added = true;
+                }
+            }
+        }
+        return added;
+    }
+
+    synchronized String deleteMealPlan(int mealPlanToDelete) {
+        if (mealPlanArray[mealPlanToDelete] != null) {
+            String name = mealPlanArray[mealPlanToDelete].getName();
+            mealPlanArray[mealPlanToDelete] = null;
+            return name;
+        }
+        return null;
+    }
+
+    synchronized MealPlan getMealPlan(String name) {
+        for (int i = 0; i < mealPlanArray.length; i++) {
+            if (mealPlanArray[i] != null && mealPlanArray[i].getName().equals(name)) {
+                return mealPlanArray[i];
+            }
+        }
+        return null;
+    }
+}
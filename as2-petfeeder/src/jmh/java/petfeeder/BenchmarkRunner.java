@@ -0,0 +1,196 @@
+package petfeeder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+/**
+ * Runs the JMH benchmarks at 1, 4 and N threads (N = available processors)
+ * and writes one JSON result file per thread count, threads-1.json,
+ * threads-4.json and threads-N.json. Benchmarks that set their own thread
+ * count with {@code @Threads}, such as the ones that start their own
+ * workers, are run once at that count instead and written to
+ * own-threads.json. When the directory of an earlier run
+ * is given as a baseline, every score is compared with its baseline score
+ * and the runner exits with status 1 if any benchmark got worse by more
+ * than the tolerance.
+ * <pre>
+ * java [-Djmh.out=target/jmh-results] [-Djmh.baseline=DIR] [-Djmh.tolerance=0.10] \
+ *      -cp target/benchmarks.jar petfeeder.BenchmarkRunner [include-regex]
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    private static final Pattern BENCHMARK = Pattern.compile("\"benchmark\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern MODE = Pattern.compile("\"mode\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern PARAMS = Pattern.compile("\"params\"\\s*:\\s*\\{([^}]*)\\}");
+    private static final Pattern SCORE = Pattern.compile("\"primaryMetric\"\\s*:\\s*\\{\\s*\"score\"\\s*:\\s*([-+0-9.Ee]+)");
+
+    /**
+     * Runs the benchmarks and compares them with the baseline, if one is given.
+     * @param args Optional regular expression selecting the benchmarks to run.
+     * @throws Exception if JMH fails or a result file cannot be read.
+     */
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 ? args[0] : "petfeeder\\.";
+        Path out = Paths.get(System.getProperty("jmh.out", "target/jmh-results"));
+        String baseline = System.getProperty("jmh.baseline");
+        double tolerance = Double.parseDouble(System.getProperty("jmh.tolerance", "0.10"));
+        Files.createDirectories(out);
+
+        Set<String> swept = new LinkedHashSet<>();
+        Set<String> ownThreads = new LinkedHashSet<>();
+        for (BenchmarkListEntry entry : BenchmarkList.defaultList().find(
+                OutputFormatFactory.createFormatInstance(System.out, VerboseMode.SILENT),
+                Collections.singletonList(include), Collections.emptyList())) {
+            String exact = "^" + Pattern.quote(entry.getUsername()) + "$";
+            (entry.getThreads().hasValue() ? ownThreads : swept).add(exact);
+        }
+
+        int regressions = 0;
+        if (!swept.isEmpty()) {
+            for (int threads : threadCounts()) {
+                Path result = out.resolve("threads-" + threads + ".json");
+                regressions += run(options(swept, result).threads(threads), result, baseline, tolerance);
+            }
+        }
+        if (!ownThreads.isEmpty()) {
+            Path result = out.resolve("own-threads.json");
+            regressions += run(options(ownThreads, result), result, baseline, tolerance);
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + (int) (tolerance * 100) + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns options that run the given benchmarks and write JSON results to the file.
+     * @param includes Regular expressions selecting the benchmarks.
+     * @param result The JSON result file.
+     * @return ChainedOptionsBuilder
+     */
+    private static ChainedOptionsBuilder options(Set<String> includes, Path result) {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString());
+        for (String include : includes) {
+            options.include(include);
+        }
+        return options;
+    }
+
+    /**
+     * Runs the benchmarks and compares the result file with the one of the
+     * same name in the baseline directory, if there is one.
+     * @param options The benchmarks to run.
+     * @param result The JSON result file the options write.
+     * @param baseline The directory of an earlier run, or null.
+     * @param tolerance The allowed relative regression.
+     * @return int The number of regressed benchmarks.
+     * @throws Exception if JMH fails or a result file cannot be read.
+     */
+    private static int run(ChainedOptionsBuilder options, Path result, String baseline, double tolerance)
+            throws Exception {
+        new Runner(options.build()).run();
+        if (baseline != null) {
+            Path previous = Paths.get(baseline).resolve(result.getFileName());
+            if (Files.exists(previous)) {
+                return compare(previous, result, tolerance);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the thread counts to run: 1, 4 and the number of available processors.
+     * @return int[]
+     */
+    static int[] threadCounts() {
+        return IntStream.of(1, 4, Runtime.getRuntime().availableProcessors()).distinct().sorted().toArray();
+    }
+
+    /**
+     * Prints every benchmark of the current run next to its baseline score and
+     * returns how many got worse by more than the tolerance. Throughput scores
+     * regress when they drop, all other modes when they grow.
+     * @param baseline JSON results of the earlier run.
+     * @param current JSON results of this run.
+     * @param tolerance The allowed relative regression.
+     * @return int The number of regressed benchmarks.
+     * @throws IOException if a result file cannot be read.
+     */
+    static int compare(Path baseline, Path current, double tolerance) throws IOException {
+        Map<String, Score> before = readScores(baseline);
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : readScores(current).entrySet()) {
+            Score old = before.get(entry.getKey());
+            if (old == null || old.value == 0) {
+                continue;
+            }
+            Score now = entry.getValue();
+            double change = (now.value - old.value) / old.value;
+            boolean regressed = "thrpt".equals(now.mode) ? -change > tolerance : change > tolerance;
+            System.out.printf("%-70s %12.3f -> %12.3f (%+.1f%%)%s%n", entry.getKey(), old.value, now.value,
+                    change * 100, regressed ? "  REGRESSION" : "");
+            if (regressed) {
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Reads the primary score of every benchmark in a JMH JSON result file,
+     * keyed by benchmark name and parameters.
+     * @param file The JSON result file.
+     * @return Map of scores
+     * @throws IOException if the file cannot be read.
+     */
+    static Map<String, Score> readScores(Path file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (String entry : Files.readString(file).split("\"jmhVersion\"")) {
+            Matcher name = BENCHMARK.matcher(entry);
+            Matcher mode = MODE.matcher(entry);
+            Matcher score = SCORE.matcher(entry);
+            if (!name.find() || !mode.find() || !score.find()) {
+                continue;
+            }
+            Matcher params = PARAMS.matcher(entry);
+            String key = name.group(1) + (params.find() ? " {" + params.group(1).replaceAll("[\\s\"]", "") + "}" : "");
+            scores.put(key, new Score(mode.group(1), Double.parseDouble(score.group(1))));
+        }
+        return scores;
+    }
+
+    /**
+     * Primary score of one benchmark result.
+     */
+    static final class Score {
+        final String mode;
+        final double value;
+
+        Score(String mode, double value) {
+            this.mode = mode;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The budget check and update done by every dispense, on a daily budget
+ * of 24 buckets shared by all benchmark threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergyBudgetBenchmark {
+
+    private EnergyBudget energyBudget;
+
+    /**
+     * Creates a budget large enough never to run out during the run.
+     */
+    @Setup
+    public void setUp() {
+        energyBudget = EnergyBudget.daily(Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int getRemaining() {
+        return energyBudget.getRemaining();
+    }
+
+    /**
+     * The check and update of one successful dispense.
+     */
+    @Benchmark
+    public int checkAndConsume() {
+        int remaining = energyBudget.getRemaining();
+        energyBudget.consume(1);
+        return remaining;
+    }
+}
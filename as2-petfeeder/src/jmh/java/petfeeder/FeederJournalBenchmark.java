@@ -0,0 +1,94 @@
+package petfeeder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Journal appends per second, and the time to open and recover a journal
+ * holding many records. Each append iteration writes to a new file.
+ */
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class FeederJournalBenchmark {
+
+    /** Packed amounts of a small meal: 1 unit of each ingredient. */
+    private static final long MEAL = FoodContainer.pack(1, 1, 1, 1);
+
+    @State(Scope.Benchmark)
+    public static class AppendState {
+        Path file;
+        FeederJournal journal;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("feeder-append", ".journal");
+            journal = FeederJournal.open(file);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            journal.close();
+            Files.delete(file);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RecoveryState {
+        @Param({"10000000"})
+        public int records;
+
+        Path file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("feeder-recovery", ".journal");
+            try (FeederJournal journal = FeederJournal.open(file)) {
+                journal.recover();
+                for (int i = 1; i < records; i += 2) {
+                    journal.replenished(MEAL);
+                    journal.dispensed(MEAL, 70);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void append(AppendState state) {
+        state.journal.dispensed(MEAL, 70);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public PetFeeder recover(RecoveryState state) throws IOException {
+        try (FeederJournal journal = FeederJournal.open(state.file)) {
+            return journal.recover();
+        }
+    }
+}
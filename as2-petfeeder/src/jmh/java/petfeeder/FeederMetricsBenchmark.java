@@ -0,0 +1,67 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the metrics on the feeder hot paths. The same operations run
+ * with metrics disabled, with the default sampling (one call in 64 timed)
+ * and with every call timed; the difference to "disabled" is the overhead
+ * per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeederMetricsBenchmark {
+
+    @Param({"disabled", "sampled", "every"})
+    public String metrics;
+
+    private PetFeeder petFeeder;
+
+    /**
+     * Creates a feeder with a meal plan that needs no ingredients and no
+     * energy, so dispensing it succeeds for the whole run.
+     */
+    @Setup
+    public void setUp() {
+        petFeeder = new PetFeeder();
+        switch (metrics) {
+            case "disabled":
+                petFeeder.setMetrics(FeederMetrics.disabled());
+                break;
+            case "every":
+                petFeeder.setMetrics(new FeederMetrics(1));
+                break;
+            default:
+                petFeeder.setMetrics(new FeederMetrics(FeederMetrics.DEFAULT_SAMPLE_EVERY));
+        }
+        MealPlan.Builder planBuilder = new MealPlan.Builder();
+        planBuilder.setName("Empty bowl");
+        petFeeder.addMealPlan(planBuilder.build());
+    }
+
+    @Benchmark
+    public boolean dispenseMeal() {
+        return petFeeder.dispenseMeal(0);
+    }
+
+    @Benchmark
+    public boolean replenish() {
+        return petFeeder.replenish(0, 0, 0, 0);
+    }
+}
@@ -0,0 +1,109 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import petfeeder.exceptions.MealPlanException;
+
+/**
+ * Measures dispense throughput across many feeders held in one FeederRegistry.
+ * Every benchmark thread dispenses from its own slice of feeders, so with
+ * independent feeders the throughput should grow linearly with the thread count.
+ * Running {@link #main(String[])} repeats the benchmark for 1, 2, 4, ... threads
+ * up to the number of cores and prints the scaling factor for each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeederRegistryBenchmark {
+
+    @Param({"1000"})
+    public int feeders;
+
+    private FeederRegistry registry;
+    private String[] ids;
+
+    /**
+     * Registers the feeders, each with a meal plan that needs no ingredients and
+     * no energy, so every dispense succeeds for the whole run.
+     */
+    @Setup
+    public void setUp() throws MealPlanException {
+        registry = new FeederRegistry(feeders);
+        ids = new String[feeders];
+        for (int i = 0; i < feeders; i++) {
+            ids[i] = "feeder-" + i;
+            MealPlan.Builder planBuilder = new MealPlan.Builder();
+            planBuilder.setName("Empty bowl");
+            planBuilder.setAmtKibble("0");
+            MealPlan plan = planBuilder.build();
+            registry.createFeeder(ids[i]).addMealPlan(plan);
+        }
+    }
+
+    /**
+     * Per-thread cursor over the feeders owned by that thread.
+     */
+    @State(Scope.Thread)
+    public static class Slice {
+        int next;
+        int step;
+
+        @Setup
+        public void setUp(ThreadParams threads) {
+            next = threads.getThreadIndex();
+            step = threads.getThreadCount();
+        }
+    }
+
+    @Benchmark
+    public boolean dispense(Slice slice) {
+        int i = slice.next;
+        slice.next = (i + slice.step) % feeders;
+        return registry.getFeeder(ids[i]).dispenseMeal(0);
+    }
+
+    /**
+     * Runs the dispense benchmark for 1, 2, 4, ... threads up to the number of
+     * available cores and prints throughput relative to the single-thread run.
+     * @param args Unused.
+     * @throws RunnerException if JMH fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int threads = 1; threads <= cores; threads = (threads < cores && threads * 2 > cores) ? cores : threads * 2) {
+            Options options = new OptionsBuilder()
+                    .include(FeederRegistryBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            RunResult result = new Runner(options).runSingle();
+            double score = result.getPrimaryResult().getScore();
+            if (threads == 1) {
+                single = score;
+            }
+            System.out.printf("threads=%d ops/us=%.2f scaling=%.2fx (ideal %dx)%n",
+                    threads, score, score / single, threads);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package petfeeder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import petfeeder.exceptions.MealPlanException;
+
+/**
+ * Overhead of one scheduler tick: the work a scheduled feeding does around
+ * dispenseMeal, including publishing its event to the shared event log.
+ * Output goes to a discarding stream so the terminal does not dominate the
+ * measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeedingSchedulerBenchmark {
+
+    private FeedingScheduler feedingScheduler;
+    private PrintStream originalOut;
+
+    @Setup
+    public void setUp() throws MealPlanException {
+        PetFeeder petFeeder = new PetFeeder();
+        MealPlan.Builder planBuilder = new MealPlan.Builder();
+        planBuilder.setName("Empty bowl");
+        planBuilder.setAmtKibble("0");
+        MealPlan plan = planBuilder.build();
+        petFeeder.addMealPlan(plan);
+        feedingScheduler = new FeedingScheduler(petFeeder);
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+        feedingScheduler.shutdown();
+    }
+
+    @Benchmark
+    public void tick() {
+        feedingScheduler.runScheduledFeeding(0);
+    }
+}
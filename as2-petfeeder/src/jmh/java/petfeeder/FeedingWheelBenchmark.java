@@ -0,0 +1,66 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of adding and cancelling a recurring feeding on a feeding wheel that
+ * already holds many schedules. The schedules have long periods so none of
+ * them fire during the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class FeedingWheelBenchmark {
+
+    private static final int PLANS_PER_FEEDER = 1000;
+
+    @Param({"1000", "1000000"})
+    public int schedules;
+
+    private FeedingWheel feedingWheel;
+    private PetFeeder petFeeder;
+    private Runnable task;
+    private int nextPlan;
+
+    @Setup
+    public void setUp() {
+        feedingWheel = new FeedingWheel(10, TimeUnit.MILLISECONDS, 1);
+        task = () -> { };
+        PetFeeder feeder = null;
+        for (int i = 0; i < schedules; i++) {
+            if (i % PLANS_PER_FEEDER == 0) {
+                feeder = new PetFeeder();
+            }
+            feedingWheel.schedule(feeder, i % PLANS_PER_FEEDER, task, 1 + i % 24, TimeUnit.HOURS);
+        }
+        petFeeder = new PetFeeder();
+    }
+
+    @TearDown
+    public void tearDown() {
+        feedingWheel.shutdown();
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        int plan = nextPlan++ & 1023;
+        feedingWheel.schedule(petFeeder, plan, task, 1, TimeUnit.HOURS);
+        return feedingWheel.cancel(petFeeder, plan);
+    }
+}
@@ -0,0 +1,59 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+import petfeeder.exceptions.MealPlanException;
+
+/**
+ * Measures timer drift of the feeding wheel under load, with platform worker
+ * threads and with virtual threads. Every feeder gets a recurring feeding that
+ * dispenses a meal and then blocks for a while, standing in for a hardware
+ * actuator. Prints the number of runs, skipped runs and the average and largest
+ * delay between the planned and actual start of a run for each mode.
+ * <pre>
+ * java -cp target/benchmarks.jar petfeeder.FeedingWheelDriftRunner [feeders] [periodMillis] [blockMillis] [seconds]
+ * </pre>
+ */
+public class FeedingWheelDriftRunner {
+
+    public static void main(String[] args) throws Exception {
+        int feeders = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long periodMillis = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        long blockMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 5;
+
+        System.out.printf("%d feeders, period %d ms, each feeding blocks %d ms, %d s per mode%n",
+                feeders, periodMillis, blockMillis, seconds);
+        int cores = Runtime.getRuntime().availableProcessors();
+        run("platform x" + cores, new FeedingWheel(10, TimeUnit.MILLISECONDS, cores),
+                feeders, periodMillis, blockMillis, seconds);
+        run("virtual", FeedingWheel.withVirtualThreads(10, TimeUnit.MILLISECONDS),
+                feeders, periodMillis, blockMillis, seconds);
+    }
+
+    private static void run(String mode, FeedingWheel wheel, int feeders, long periodMillis,
+                            long blockMillis, long seconds) throws MealPlanException, InterruptedException {
+        MealPlan.Builder planBuilder = new MealPlan.Builder();
+        planBuilder.setName("Empty bowl");
+        MealPlan plan = planBuilder.build();
+        for (int i = 0; i < feeders; i++) {
+            final PetFeeder petFeeder = new PetFeeder();
+            petFeeder.addMealPlan(plan);
+            wheel.schedule(petFeeder, 0, () -> {
+                petFeeder.dispenseMeal(0);
+                try {
+                    Thread.sleep(blockMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, periodMillis, TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(1000);
+        wheel.resetDriftStats();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        System.out.printf("%-12s runs %10d  skipped %10d  avg drift %8.3f ms  max drift %8.3f ms%n",
+                mode, wheel.getRunCount(), wheel.getSkippedRunCount(),
+                wheel.getAverageDriftNanos() / 1e6, wheel.getMaxDriftNanos() / 1e6);
+        wheel.shutdown();
+    }
+}
@@ -0,0 +1,108 @@
+package petfeeder;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Maintenance of a whole fleet: a loop calling replenishFood with strings
+ * and dispenseMeal, checkFoodStock or getRemainingEnergyBudget on each
+ * feeder, against FleetOperations on a pool with a thread per core. A
+ * round refills what a meal takes, so the stock stays level; the energy
+ * budgets have no practical limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+@Threads(1) // FleetOperations runs on its own pool
+public class FleetOperationsBenchmark {
+
+    @Param({"100000"})
+    public int feeders;
+
+    @Param({"loop", "forkJoin"})
+    public String mode;
+
+    private PetFeeder[] petFeeders;
+    private ForkJoinPool pool;
+    private FleetOperations fleetOperations;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MealPlan.Builder builder = new MealPlan.Builder();
+        builder.setName("Dinner");
+        builder.setAmtKibble(5);
+        builder.setAmtWater(1);
+        MealPlan dinner = builder.build();
+        petFeeders = new PetFeeder[feeders];
+        for (int i = 0; i < feeders; i++) {
+            petFeeders[i] = new PetFeeder(new MealPlanBook(), new FoodContainer(),
+                    new EnergyBudget(Integer.MAX_VALUE, 1, TimeUnit.DAYS));
+            petFeeders[i].addMealPlan(dinner);
+        }
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        fleetOperations = new FleetOperations(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long replenishAndDispense() throws Exception {
+        if (mode.equals("loop")) {
+            long dispensed = 0;
+            for (PetFeeder petFeeder : petFeeders) {
+                petFeeder.replenishFood("5", "1", "0", "0");
+                if (petFeeder.dispenseMeal(0)) {
+                    dispensed++;
+                }
+            }
+            return dispensed;
+        }
+        fleetOperations.replenish(petFeeders, 5, 1, 0, 0);
+        return fleetOperations.dispense(petFeeders, 0).getDispensed();
+    }
+
+    @Benchmark
+    public void audit(Blackhole blackhole) {
+        if (mode.equals("loop")) {
+            for (PetFeeder petFeeder : petFeeders) {
+                blackhole.consume(petFeeder.checkFoodStock());
+            }
+        } else {
+            blackhole.consume(fleetOperations.audit(petFeeders, 5, 1, 0, 0));
+        }
+    }
+
+    @Benchmark
+    public long remainingEnergy() {
+        if (mode.equals("loop")) {
+            long remaining = 0;
+            for (PetFeeder petFeeder : petFeeders) {
+                remaining += petFeeder.getRemainingEnergyBudget();
+            }
+            return remaining;
+        }
+        return fleetOperations.remainingEnergy(petFeeders);
+    }
+}
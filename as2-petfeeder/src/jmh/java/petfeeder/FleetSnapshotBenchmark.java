@@ -0,0 +1,76 @@
+package petfeeder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to write a snapshot of a whole fleet, and to open it and restore
+ * every feeder. Each feeder has four meal plans.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class FleetSnapshotBenchmark {
+
+    @Param({"100000"})
+    public int feeders;
+
+    private FeederRegistry registry;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        registry = new FeederRegistry(feeders);
+        MealPlan[] plans = new MealPlan[4];
+        String[] names = {"Breakfast", "Lunch", "Dinner", "Snack"};
+        for (int p = 0; p < plans.length; p++) {
+            MealPlan.Builder builder = new MealPlan.Builder();
+            builder.setName(names[p]);
+            builder.setAmtKibble(p + 1);
+            builder.setAmtWater(1);
+            plans[p] = builder.build();
+        }
+        for (int i = 0; i < feeders; i++) {
+            PetFeeder petFeeder = registry.createFeeder("feeder-" + i);
+            for (MealPlan plan : plans) {
+                petFeeder.addMealPlan(plan);
+            }
+        }
+        file = Files.createTempFile("fleet", ".pfs");
+        FleetSnapshot.write(registry, file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        return FleetSnapshot.write(registry, file);
+    }
+
+    @Benchmark
+    public FeederRegistry openAndRestore() throws IOException {
+        return FleetSnapshot.open(file).restore();
+    }
+}
@@ -0,0 +1,110 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A dispense, and a scan of the kibble of every feeder, across a whole
+ * fleet: an array of PetFeeders on the heap against a FleetStore read
+ * through one flyweight view. Each feeder has two meal plans. Run with
+ * -prof gc to compare the garbage collection work of the two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class FleetStoreBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int feeders;
+
+    @Param({"heap", "offheap"})
+    public String store;
+
+    private PetFeeder[] petFeeders;
+    private FoodContainer[] foodContainers;
+    private FleetStore fleetStore;
+    private FleetStore.Feeder view;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MealPlan[] plans = new MealPlan[2];
+        String[] names = {"Breakfast", "Dinner"};
+        for (int p = 0; p < plans.length; p++) {
+            MealPlan.Builder builder = new MealPlan.Builder();
+            builder.setName(names[p]);
+            builder.setAmtKibble(p + 1);
+            builder.setAmtWater(1);
+            plans[p] = builder.build();
+        }
+        if (store.equals("heap")) {
+            petFeeders = new PetFeeder[feeders];
+            foodContainers = new FoodContainer[feeders];
+            for (int i = 0; i < feeders; i++) {
+                foodContainers[i] = new FoodContainer();
+                petFeeders[i] = new PetFeeder(new MealPlanBook(), foodContainers[i]);
+                for (MealPlan plan : plans) {
+                    petFeeders[i].addMealPlan(plan);
+                }
+            }
+        } else {
+            fleetStore = new FleetStore(feeders);
+            view = fleetStore.feeder(0);
+            for (int i = 0; i < feeders; i++) {
+                view.moveTo(i);
+                for (MealPlan plan : plans) {
+                    view.addMealPlan(plan);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean dispense() {
+        int id = next;
+        next = id + 1 == feeders ? 0 : id + 1;
+        boolean dispensed;
+        if (petFeeders != null) {
+            PetFeeder petFeeder = petFeeders[id];
+            dispensed = petFeeder.dispenseMeal(0);
+            petFeeder.replenish(1, 1, 0, 0);
+        } else {
+            view.moveTo(id);
+            dispensed = view.dispenseMeal(0);
+            view.replenish(1, 1, 0, 0);
+        }
+        return dispensed;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long scanKibble() {
+        long kibble = 0;
+        if (petFeeders != null) {
+            for (FoodContainer foodContainer : foodContainers) {
+                kibble += foodContainer.getKibble();
+            }
+        } else {
+            FleetStore.Container container = view.getFoodContainer();
+            for (int id = 0; id < feeders; id++) {
+                kibble += container.moveTo(id).getKibble();
+            }
+        }
+        return kibble;
+    }
+}
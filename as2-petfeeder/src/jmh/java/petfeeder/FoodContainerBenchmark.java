@@ -0,0 +1,51 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import petfeeder.exceptions.MealPlanException;
+
+/**
+ * Atomic ingredient reservation on one FoodContainer shared by all threads.
+ * The container is refilled whenever it runs dry, which happens once every
+ * MAX_UNITS reservations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FoodContainerBenchmark {
+
+    private FoodContainer foodContainer;
+    private MealPlan plan;
+
+    @Setup
+    public void setUp() throws MealPlanException {
+        foodContainer = new FoodContainer();
+        MealPlan.Builder planBuilder = new MealPlan.Builder();
+        planBuilder.setName("One kibble");
+        planBuilder.setAmtKibble("1");
+        plan = planBuilder.build();
+    }
+
+    @Benchmark
+    public boolean useIngredients() {
+        if (foodContainer.useIngredients(plan)) {
+            return true;
+        }
+        foodContainer.setKibble(FoodContainer.MAX_UNITS);
+        return false;
+    }
+}
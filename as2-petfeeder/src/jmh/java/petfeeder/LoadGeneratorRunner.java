@@ -0,0 +1,33 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Soak test: runs the mixed feeder workload of {@link LoadGenerator} and
+ * prints its report. With a number of operations per thread the operations
+ * are the same in every run with the same seed; with a number of seconds
+ * it runs for that long instead. Exits with status 1 if any invariant was
+ * broken.
+ * <pre>
+ * java -cp target/benchmarks.jar petfeeder.LoadGeneratorRunner [threads] [feeders] [seed] [operationsPerThread | Ns]
+ * </pre>
+ */
+public class LoadGeneratorRunner {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int feeders = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        String length = args.length > 3 ? args[3] : "1000000";
+
+        LoadGenerator generator = new LoadGenerator(threads, feeders, seed);
+        LoadGenerator.Report report = length.endsWith("s")
+                ? generator.runFor(Long.parseLong(length.substring(0, length.length() - 1)), TimeUnit.SECONDS)
+                : generator.run(Long.parseLong(length));
+        System.out.println(report);
+        System.out.printf("workload hash %016x%n", report.getWorkloadHash());
+        if (report.getViolationCount() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the hash-indexed MealPlanBook against the original array scan
+ * (ArrayScanMealPlanBook) for books holding 4, 1k and 100k meal plans.
+ * Each book is full except for its last slot, which the add/delete
+ * benchmarks fill and free again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MealPlanBookBenchmark {
+
+    @Param({"4", "1000", "100000"})
+    public int plans;
+
+    private MealPlanBook hashBook;
+    private ArrayScanMealPlanBook scanBook;
+    private MealPlan duplicate;
+    private MealPlan fresh;
+    private String lastName;
+
+    @Setup
+    public void setUp() {
+        hashBook = new MealPlanBook();
+        scanBook = new ArrayScanMealPlanBook(plans);
+        for (int i = 0; i < plans - 1; i++) {
+            MealPlan.Builder planBuilder = new MealPlan.Builder();
+            planBuilder.setName("plan-" + i);
+            MealPlan plan = planBuilder.build();
+            hashBook.addMealPlan(plan);
+            scanBook.fill(i, plan);
+        }
+        lastName = "plan-" + (plans - 2);
+        MealPlan.Builder duplicateBuilder = new MealPlan.Builder();
+        duplicateBuilder.setName(lastName);
+        duplicate = duplicateBuilder.build();
+        MealPlan.Builder freshBuilder = new MealPlan.Builder();
+        freshBuilder.setName("fresh");
+        fresh = freshBuilder.build();
+    }
+
+    @Benchmark
+    public boolean hashIndexRejectDuplicate() {
+        return hashBook.addMealPlan(duplicate);
+    }
+
+    @Benchmark
+    public boolean arrayScanRejectDuplicate() {
+        return scanBook.addMealPlan(duplicate);
+    }
+
+    @Benchmark
+    public String hashIndexAddDelete() {
+        hashBook.addMealPlan(fresh);
+        return hashBook.deleteMealPlan(plans - 1);
+    }
+
+    @Benchmark
+    public String arrayScanAddDelete() {
+        scanBook.addMealPlan(fresh);
+        return scanBook.deleteMealPlan(plans - 1);
+    }
+
+    @Benchmark
+    public MealPlan hashIndexLookupByName() {
+        return hashBook.getMealPlan(lastName);
+    }
+
+    @Benchmark
+    public MealPlan arrayScanLookupByName() {
+        return scanBook.getMealPlan(lastName);
+    }
+}
@@ -0,0 +1,88 @@
+package petfeeder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to import a catalog of 500k meal plans for 1000 feeders from CSV and
+ * JSON Lines, with one worker and with one per processor. Every import
+ * starts with empty books. Rows per second is 500k divided by the score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Threads(1) // the importer starts its own workers
+public class MealPlanImporterBenchmark {
+
+    private static final int ROWS = 500_000;
+    private static final int FEEDERS = 1000;
+
+    @Param({"csv", "jsonl"})
+    public String format;
+
+    @Param({"1", "0"})
+    public int workers;
+
+    private Path file;
+    private MealPlanImporter importer;
+    private MealPlanBook[] books;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        file = Files.createTempFile("meal-plans", "." + format);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            if (format.equals("csv")) {
+                writer.write("feeder,name,kibble,water,wetFood,treats\n");
+            }
+            for (int i = 0; i < ROWS; i++) {
+                int feeder = i % FEEDERS;
+                if (format.equals("csv")) {
+                    writer.write(feeder + ",Meal " + i + "," + (i % 7) + ",1," + (i % 3) + ",0\n");
+                } else {
+                    writer.write("{\"feeder\": \"" + feeder + "\", \"name\": \"Meal " + i + "\", \"kibble\": " + (i % 7)
+                            + ", \"water\": 1, \"wetFood\": " + (i % 3) + ", \"treats\": 0}\n");
+                }
+            }
+        }
+        importer = workers == 0 ? new MealPlanImporter() : new MealPlanImporter(workers, MealPlanImporter.DEFAULT_CHUNK_ROWS);
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyBooks() {
+        books = new MealPlanBook[FEEDERS];
+        for (int i = 0; i < FEEDERS; i++) {
+            books[i] = new MealPlanBook();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public MealPlanImporter.Result importFile() throws IOException {
+        return importer.importFile(file, feederId -> books[Integer.parseInt(feederId)]);
+    }
+}
@@ -0,0 +1,116 @@
+package petfeeder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import petfeeder.exceptions.FoodStockException;
+import petfeeder.exceptions.MealPlanException;
+
+/**
+ * Hot paths of a single PetFeeder shared by all benchmark threads:
+ * dispensing, directly or through the async dispense queue, replenishing
+ * from strings or ints and adding/deleting meal plans.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PetFeederBenchmark {
+
+    private MealPlanBook mealPlanBook;
+    private PetFeeder petFeeder;
+
+    /**
+     * Creates the feeder with a meal plan that needs no ingredients and no
+     * energy, so dispensing it succeeds for the whole run.
+     */
+    @Setup
+    public void setUp() throws MealPlanException {
+        mealPlanBook = new MealPlanBook();
+        petFeeder = new PetFeeder(mealPlanBook, new FoodContainer());
+        MealPlan.Builder planBuilder = new MealPlan.Builder();
+        planBuilder.setName("Empty bowl");
+        planBuilder.setAmtKibble("0");
+        MealPlan plan = planBuilder.build();
+        petFeeder.addMealPlan(plan);
+    }
+
+    /**
+     * Per-thread meal plan used by the add/delete benchmark.
+     */
+    @State(Scope.Thread)
+    public static class ThreadPlan {
+        MealPlan plan;
+
+        @Setup
+        public void setUp(ThreadParams threads) {
+            MealPlan.Builder planBuilder = new MealPlan.Builder();
+            planBuilder.setName("plan-" + threads.getThreadIndex());
+            plan = planBuilder.build();
+        }
+    }
+
+    @Benchmark
+    public boolean dispenseMeal() {
+        return petFeeder.dispenseMeal(0);
+    }
+
+    /**
+     * One async dispense, waiting for its result: the round trip through
+     * the dispense queue.
+     */
+    @Benchmark
+    public DispenseResult dispenseMealAsync() {
+        return petFeeder.dispenseMealAsync(0).join();
+    }
+
+    /**
+     * 64 async dispenses queued at once and then awaited, so the queue can
+     * dispense them in batches. The score is per 64 dispenses.
+     */
+    @Benchmark
+    public DispenseResult dispenseMealAsync64() {
+        CompletableFuture<DispenseResult> last = null;
+        for (int i = 0; i < 64; i++) {
+            last = petFeeder.dispenseMealAsync(0);
+        }
+        return last.join();
+    }
+
+    /**
+     * Adds zero units so the container never fills up; the cost is the
+     * string parsing and validation of all four amounts.
+     */
+    @Benchmark
+    public void replenishFood() throws FoodStockException {
+        petFeeder.replenishFood("0", "0", "0", "0");
+    }
+
+    /**
+     * The primitive counterpart of replenishFood, without parsing.
+     */
+    @Benchmark
+    public boolean replenish() {
+        return petFeeder.replenish(0, 0, 0, 0);
+    }
+
+    @Benchmark
+    public String addDeleteMealPlan(ThreadPlan threadPlan) {
+        petFeeder.addMealPlan(threadPlan.plan);
+        return petFeeder.deleteMealPlan(mealPlanBook.indexOf(threadPlan.plan.getName()));
+    }
+}
@@ -0,0 +1,85 @@
+package petfeeder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of keeping refill projections up to date for 100k feeders: changing
+ * one schedule and reading the result, against projecting every feeder
+ * again, and reading the recommendations when 1% of the feeders are low.
+ * The schedules have long periods so none of them fire during the
+ * measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class RefillPlannerBenchmark {
+
+    private static final int FEEDERS = 100_000;
+
+    private FeedingWheel feedingWheel;
+    private RefillPlanner refillPlanner;
+    private FeedingScheduler[] schedulers;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        feedingWheel = new FeedingWheel(10, TimeUnit.MILLISECONDS, 1);
+        refillPlanner = new RefillPlanner(1, TimeUnit.HOURS);
+        schedulers = new FeedingScheduler[FEEDERS];
+        MealPlan.Builder planBuilder = new MealPlan.Builder();
+        planBuilder.setName("Snack");
+        planBuilder.setAmtKibble(1);
+        MealPlan plan = planBuilder.build();
+        for (int i = 0; i < FEEDERS; i++) {
+            FoodContainer foodContainer = new FoodContainer();
+            if (i % 100 == 0) {
+                foodContainer.setKibble(0);
+            }
+            PetFeeder petFeeder = new PetFeeder(new MealPlanBook(), foodContainer);
+            petFeeder.addMealPlan(plan);
+            schedulers[i] = new FeedingScheduler(petFeeder, feedingWheel);
+            schedulers[i].addRecurringFeeding(0, 1 + i % 24, TimeUnit.HOURS);
+            refillPlanner.track("feeder-" + i, petFeeder, schedulers[i]);
+        }
+        refillPlanner.getRecommendations();
+    }
+
+    @TearDown
+    public void tearDown() {
+        feedingWheel.shutdown();
+    }
+
+    @Benchmark
+    public long changeSchedule() {
+        int i = next++ % FEEDERS;
+        schedulers[i].addRecurringFeeding(0, 1 + (next & 7), TimeUnit.HOURS);
+        return refillPlanner.getDepletionTime("feeder-" + i, RefillPlanner.Ingredient.KIBBLE);
+    }
+
+    @Benchmark
+    public long rescanAll() {
+        refillPlanner.refreshAll();
+        return refillPlanner.getDepletionTime("feeder-0", RefillPlanner.Ingredient.KIBBLE);
+    }
+
+    @Benchmark
+    public List<RefillPlanner.Recommendation> recommendations() {
+        return refillPlanner.getRecommendations();
+    }
+}
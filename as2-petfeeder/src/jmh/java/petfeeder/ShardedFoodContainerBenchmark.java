@@ -0,0 +1,65 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One hopper shared by 64 threads: a FoodContainer (one compare-and-set
+ * word) against a ShardedFoodContainer with a stripe per core. useAndRefill
+ * takes a small meal and puts it back, so the stock stays level and a
+ * sharded container never leaves the stripe of the thread. useUntilDry
+ * only takes meals and refills the container when it runs dry, so every
+ * stripe runs dry once per refill and borrows from the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+public class ShardedFoodContainerBenchmark {
+
+    @Param({"plain", "sharded"})
+    public String container;
+
+    private FoodContainer foodContainer;
+    private MealPlan meal;
+
+    @Setup
+    public void setUp() {
+        foodContainer = container.equals("sharded") ? new ShardedFoodContainer() : new FoodContainer();
+        foodContainer.replenish(30000, 30000, 30000, 30000);
+        MealPlan.Builder planBuilder = new MealPlan.Builder();
+        planBuilder.setName("Snack");
+        planBuilder.setAmtKibble(1);
+        planBuilder.setAmtWater(1);
+        meal = planBuilder.build();
+    }
+
+    @Benchmark
+    public boolean useAndRefill() {
+        return foodContainer.useIngredients(meal) && foodContainer.replenish(1, 1, 0, 0);
+    }
+
+    @Benchmark
+    public boolean useUntilDry() {
+        if (foodContainer.useIngredients(meal)) {
+            return true;
+        }
+        foodContainer.replenish(30000, 30000, 0, 0);
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+package petfeeder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Which of 1M feeders cannot serve their next meal, which are low on
+ * stock, and the total energy of their next meals. "containers" asks
+ * each FoodContainer with enoughIngredients, the way a caller would
+ * without StockScan; "scalar" and "vector" are the two StockScan kernels
+ * over packed stock arrays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx3g", "--add-modules", "jdk.incubator.vector"})
+public class StockScanBenchmark {
+
+    @Param({"1000000"})
+    public int feeders;
+
+    @Param({"containers", "scalar", "vector"})
+    public String scan;
+
+    private FoodContainer[] foodContainers;
+    private MealPlan[] nextMeals;
+    private long[] stock;
+    private long[] required;
+    private long threshold;
+    private StockScan.Kernel kernel;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(1);
+        stock = new long[feeders];
+        required = new long[feeders];
+        threshold = FoodContainer.pack(3, 3, 3, 3);
+        if (scan.equals("containers")) {
+            foodContainers = new FoodContainer[feeders];
+            nextMeals = new MealPlan[feeders];
+        }
+        for (int i = 0; i < feeders; i++) {
+            int kibble = random.nextInt(20);
+            int water = random.nextInt(20);
+            int wetFood = random.nextInt(20);
+            int treats = random.nextInt(20);
+            stock[i] = FoodContainer.pack(kibble, water, wetFood, treats);
+            MealPlan.Builder builder = new MealPlan.Builder();
+            builder.setName("Meal");
+            builder.setAmtKibble(random.nextInt(6));
+            builder.setAmtWater(random.nextInt(6));
+            builder.setAmtWetFood(random.nextInt(6));
+            builder.setAmtTreats(random.nextInt(3));
+            MealPlan meal = builder.build();
+            required[i] = FoodContainer.amountsOf(meal);
+            if (foodContainers != null) {
+                foodContainers[i] = new FoodContainer();
+                foodContainers[i].setStock(stock[i]);
+                nextMeals[i] = meal;
+            }
+        }
+        switch (scan) {
+            case "scalar":
+                kernel = StockScan.SCALAR;
+                break;
+            case "vector":
+                if (!VectorStockScan.isWorthwhile()) {
+                    throw new IllegalStateException("No vector registers for the Vector API");
+                }
+                kernel = new VectorStockScan();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Benchmark
+    public long[] insufficient() {
+        long[] bitmap = new long[(feeders + 63) >>> 6];
+        if (kernel == null) {
+            for (int i = 0; i < feeders; i++) {
+                if (!foodContainers[i].enoughIngredients(nextMeals[i])) {
+                    bitmap[i >>> 6] |= 1L << i;
+                }
+            }
+        } else {
+            kernel.insufficient(stock, required, feeders, bitmap);
+        }
+        return bitmap;
+    }
+
+    @Benchmark
+    public long[] lowStock() {
+        long[] bitmap = new long[(feeders + 63) >>> 6];
+        if (kernel == null) {
+            for (int i = 0; i < feeders; i++) {
+                FoodContainer foodContainer = foodContainers[i];
+                if (foodContainer.getKibble() < 3 || foodContainer.getWater() < 3
+                        || foodContainer.getWetFood() < 3 || foodContainer.getTreats() < 3) {
+                    bitmap[i >>> 6] |= 1L << i;
+                }
+            }
+        } else {
+            kernel.below(stock, threshold, feeders, bitmap);
+        }
+        return bitmap;
+    }
+
+    @Benchmark
+    public long totalEnergy() {
+        if (kernel == null) {
+            long energy = 0;
+            for (MealPlan meal : nextMeals) {
+                energy += meal.getEnergyCost();
+            }
+            return energy;
+        }
+        return kernel.energy(required, feeders);
+    }
+}
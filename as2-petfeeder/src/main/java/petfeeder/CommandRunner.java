@@ -0,0 +1,420 @@
+package petfeeder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import petfeeder.exceptions.FoodStockException;
+import petfeeder.exceptions.MealPlanException;
+
+/**
+ * Carries out pet feeder commands and prints their outcome, for the
+ * console menu of {@link Main} and for batch mode.
+ * <p>
+ * In batch mode commands are read one per line; a # outside quotes starts
+ * a comment, and blank lines are skipped. Words are separated by spaces, and a meal
+ * plan name with spaces is written in double quotes. Meal plans are
+ * numbered from 1, as in the menu.
+ * <pre>
+ * add NAME KIBBLE WATER WETFOOD TREATS
+ * edit PLAN KIBBLE WATER WETFOOD TREATS
+ * delete PLAN
+ * replenish KIBBLE WATER WETFOOD TREATS
+ * stock
+ * dispense PLAN
+ * schedule PLAN SECONDS
+ * stop
+ * </pre>
+ * A command that cannot be carried out, because it is unknown, has the
+ * wrong arguments or is refused by the feeder, is counted as an error and
+ * the next one is run. A meal that cannot be dispensed is an outcome, not
+ * an error.
+ */
+public class CommandRunner {
+
+    private final PetFeeder petFeeder;
+    private final PrintStream out;
+    private final boolean quiet;
+    private FeedingScheduler feedingScheduler;
+    private long commands;
+    private long errors;
+
+    /**
+     * Creates a command runner that prints every outcome.
+     * @param petFeeder The feeder to run the commands on.
+     * @param out Where the outcomes are printed.
+     */
+    public CommandRunner(PetFeeder petFeeder, PrintStream out) {
+        this(petFeeder, out, false);
+    }
+
+    /**
+     * Creates a command runner.
+     * @param petFeeder The feeder to run the commands on.
+     * @param out Where the outcomes are printed.
+     * @param quiet True to print only the errors of batch commands.
+     */
+    public CommandRunner(PetFeeder petFeeder, PrintStream out, boolean quiet) {
+        this.petFeeder = petFeeder;
+        this.out = out;
+        this.quiet = quiet;
+    }
+
+    /**
+     * Runs every command read from the reader until its end.
+     * @param in The commands, one per line.
+     * @return long The number of commands run.
+     * @throws IOException if the commands cannot be read.
+     */
+    public long run(BufferedReader in) throws IOException {
+        long before = commands;
+        int lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            execute(line, ++lineNumber);
+        }
+        out.flush();
+        return commands - before;
+    }
+
+    /**
+     * Runs one command line. Returns false if it was an error.
+     * @param line The command.
+     * @return boolean
+     */
+    public boolean execute(String line) {
+        return execute(line, 0);
+    }
+
+    private boolean execute(String line, int lineNumber) {
+        String problem;
+        try {
+            String[] words = split(line);
+            if (words.length == 0) {
+                return true;
+            }
+            commands++;
+            problem = execute(words);
+        } catch (IllegalArgumentException e) {
+            commands++;
+            problem = e.getMessage();
+        }
+        if (problem == null) {
+            return true;
+        }
+        errors++;
+        if (lineNumber > 0) {
+            out.println("Error on line " + lineNumber + ": " + problem);
+        } else {
+            out.println("Error: " + problem);
+        }
+        return false;
+    }
+
+    /**
+     * Runs a split command; returns why it failed, or null.
+     */
+    private String execute(String[] words) {
+        try {
+            switch (words[0]) {
+                case "add":
+                    arguments(words, 5);
+                    return addMealPlan(words[1], words[2], words[3], words[4], words[5]) ? null : "meal plan not added";
+                case "edit":
+                    arguments(words, 5);
+                    return editMealPlan(plan(words[1]), words[2], words[3], words[4], words[5]) ? null : "meal plan not edited";
+                case "delete":
+                    arguments(words, 1);
+                    return deleteMealPlan(plan(words[1])) ? null : "meal plan not deleted";
+                case "replenish":
+                    arguments(words, 4);
+                    return replenishFood(words[1], words[2], words[3], words[4]) ? null : "food stock not replenished";
+                case "stock":
+                    arguments(words, 0);
+                    checkFoodStock();
+                    return null;
+                case "dispense":
+                    arguments(words, 1);
+                    int plan = plan(words[1]);
+                    MealPlan[] plans = petFeeder.getMealPlanSnapshot();
+                    if (plan >= plans.length || plans[plan] == null) {
+                        return "no meal plan " + words[1];
+                    }
+                    dispenseMeal(plan);
+                    return null;
+                case "schedule":
+                    arguments(words, 2);
+                    return scheduleFeeding(plan(words[1]), words[2]) ? null : "feeding not scheduled";
+                case "stop":
+                    arguments(words, 0);
+                    stopScheduledFeeding();
+                    return null;
+                default:
+                    return "unknown command: " + words[0];
+            }
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static void arguments(String[] words, int count) {
+        if (words.length != count + 1) {
+            throw new IllegalArgumentException(words[0] + " takes " + count + " arguments");
+        }
+    }
+
+    private static int plan(String number) {
+        try {
+            int plan = Integer.parseInt(number) - 1;
+            if (plan >= 0) {
+                return plan;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("not a meal plan number: " + number);
+    }
+
+    /**
+     * Splits a command into words, up to a comment; a word in double
+     * quotes may hold spaces.
+     */
+    static String[] split(String line) {
+        int count = 0;
+        String[] words = new String[6];
+        int i = 0;
+        int length = line.length();
+        while (true) {
+            while (i < length && line.charAt(i) <= ' ') {
+                i++;
+            }
+            if (i == length || line.charAt(i) == '#') {
+                break;
+            }
+            int start;
+            int end;
+            if (line.charAt(i) == '"') {
+                start = i + 1;
+                end = line.indexOf('"', start);
+                if (end < 0) {
+                    throw new IllegalArgumentException("unterminated quote");
+                }
+                i = end + 1;
+            } else {
+                start = i;
+                while (i < length && line.charAt(i) > ' ') {
+                    i++;
+                }
+                end = i;
+            }
+            if (count == words.length) {
+                words = Arrays.copyOf(words, count * 2);
+            }
+            words[count++] = line.substring(start, end);
+        }
+        return count == words.length ? words : Arrays.copyOf(words, count);
+    }
+
+    /**
+     * Adds a meal plan and prints the outcome.
+     * @param name The name of the meal plan.
+     * @param kibble The units of kibble.
+     * @param water The units of water.
+     * @param wetFood The units of wet food.
+     * @param treats The units of treats.
+     * @return boolean True if the meal plan was added.
+     */
+    public boolean addMealPlan(String name, String kibble, String water, String wetFood, String treats) {
+        MealPlan.Builder m = new MealPlan.Builder();
+        try {
+            m.setName(name);
+            m.setAmtKibble(kibble);
+            m.setAmtWater(water);
+            m.setAmtWetFood(wetFood);
+            m.setAmtTreats(treats);
+        } catch (MealPlanException e) {
+            out.println(e.getMessage());
+            return false;
+        }
+        boolean added = petFeeder.addMealPlan(m.build());
+        if (added) {
+            print(name + " successfully added.\n");
+        } else {
+            out.println(name + " could not be added.\n");
+        }
+        return added;
+    }
+
+    /**
+     * Deletes a meal plan and prints the outcome.
+     * @param plan The index of the meal plan.
+     * @return boolean True if the meal plan was deleted.
+     */
+    public boolean deleteMealPlan(int plan) {
+        String deleted = plan < petFeeder.getMealPlanSnapshot().length ? petFeeder.deleteMealPlan(plan) : null;
+        if (deleted != null) {
+            print(deleted + " successfully deleted.\n");
+        } else {
+            out.println("Selected meal plan doesn't exist and could not be deleted.\n");
+        }
+        return deleted != null;
+    }
+
+    /**
+     * Replaces the amounts of a meal plan and prints the outcome.
+     * @param plan The index of the meal plan.
+     * @param kibble The units of kibble.
+     * @param water The units of water.
+     * @param wetFood The units of wet food.
+     * @param treats The units of treats.
+     * @return boolean True if the meal plan was edited.
+     */
+    public boolean editMealPlan(int plan, String kibble, String water, String wetFood, String treats) {
+        MealPlan.Builder newPlan = new MealPlan.Builder();
+        try {
+            newPlan.setAmtKibble(kibble);
+            newPlan.setAmtWater(water);
+            newPlan.setAmtWetFood(wetFood);
+            newPlan.setAmtTreats(treats);
+        } catch (MealPlanException e) {
+            out.println(e.getMessage());
+            return false;
+        }
+        String edited = petFeeder.editMealPlan(plan, newPlan.build());
+        if (edited != null) {
+            print(edited + " successfully edited.\n");
+        } else {
+            out.println("Selected meal plan doesn't exist and could not be edited.\n");
+        }
+        return edited != null;
+    }
+
+    /**
+     * Replenishes the food stock and prints the outcome.
+     * @param kibble The units of kibble to add.
+     * @param water The units of water to add.
+     * @param wetFood The units of wet food to add.
+     * @param treats The units of treats to add.
+     * @return boolean True if the food was added.
+     */
+    public boolean replenishFood(String kibble, String water, String wetFood, String treats) {
+        try {
+            petFeeder.replenishFood(kibble, water, wetFood, treats);
+            print("Food stock successfully replenished");
+            return true;
+        } catch (FoodStockException e) {
+            out.println("Food stock was not replenished");
+            return false;
+        }
+    }
+
+    /**
+     * Prints the food stock.
+     */
+    public void checkFoodStock() {
+        print(petFeeder.checkFoodStock());
+    }
+
+    /**
+     * Dispenses a meal and prints the outcome.
+     * @param plan The index of the meal plan.
+     * @return boolean True if the meal was dispensed.
+     */
+    public boolean dispenseMeal(int plan) {
+        boolean dispensed = petFeeder.dispenseMeal(plan);
+        if (dispensed) {
+            if (!quiet) {
+                out.println("Dispensing " + petFeeder.getMealPlanSnapshot()[plan].getName());
+                out.println("Remaining energy budget: " + petFeeder.getRemainingEnergyBudget() + " energy points.\n");
+            }
+        } else {
+            print("Insufficient ingredients or energy budget to dispense.\n");
+        }
+        return dispensed;
+    }
+
+    /**
+     * Starts a recurring feeding of a meal plan, replacing any active
+     * schedule, and prints the outcome.
+     * @param plan The index of the meal plan.
+     * @param periodSeconds The interval in seconds between feedings.
+     * @return boolean True if the feeding was scheduled.
+     */
+    public boolean scheduleFeeding(int plan, String periodSeconds) {
+        MealPlan[] plans = petFeeder.getMealPlanSnapshot();
+        if (plan >= plans.length || plans[plan] == null) {
+            out.println("Selected meal plan doesn't exist and could not be scheduled.\n");
+            return false;
+        }
+        long period;
+        try {
+            period = Long.parseLong(periodSeconds);
+        } catch (NumberFormatException e) {
+            period = 0;
+        }
+        if (period <= 0) {
+            out.println("Please enter a positive integer for the interval");
+            return false;
+        }
+        getFeedingScheduler().scheduleRecurringFeeding(plan, period);
+        print("Scheduled recurring feeding for " + plans[plan].getName()
+                + " every " + period + " seconds.\n");
+        return true;
+    }
+
+    /**
+     * Stops the scheduled feeding, if any, and prints the outcome.
+     */
+    public void stopScheduledFeeding() {
+        if (feedingScheduler != null && feedingScheduler.hasActiveSchedule()) {
+            feedingScheduler.stop();
+            print("Scheduled feeding stopped.\n");
+        } else {
+            print("No active scheduled feeding.\n");
+        }
+    }
+
+    /**
+     * Returns the scheduler of the feeder, creating it on first use.
+     * @return FeedingScheduler
+     */
+    public FeedingScheduler getFeedingScheduler() {
+        if (feedingScheduler == null) {
+            feedingScheduler = new FeedingScheduler(petFeeder);
+        }
+        return feedingScheduler;
+    }
+
+    /**
+     * Returns the number of commands run.
+     * @return long
+     */
+    public long getCommandCount() {
+        return commands;
+    }
+
+    /**
+     * Returns the number of commands that were errors.
+     * @return long
+     */
+    public long getErrorCount() {
+        return errors;
+    }
+
+    /**
+     * Stops the scheduled feedings and flushes the output.
+     */
+    public void shutdown() {
+        if (feedingScheduler != null) {
+            feedingScheduler.shutdown();
+        }
+        out.flush();
+    }
+
+    private void print(String message) {
+        if (!quiet) {
+            out.println(message);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package petfeeder;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queue of the dispense requests of one pet feeder.
+ * <p>
+ * Any number of threads add requests without blocking. At most one drain
+ * task per feeder runs at a time, so requests are dispensed one by one in
+ * the order they were queued. The task locks the feeder once for up to
+ * {@value #MAX_BATCH} requests and completes their futures after releasing
+ * the lock. After a few batches it gives its thread back to the executor
+ * and queues itself again, so one busy feeder cannot keep the others waiting.
+ * <p>
+ * Drain tasks run on virtual threads of their own rather than on the
+ * common fork/join pool, so a task waiting for the lock of a busy feeder
+ * parks without holding a pool thread that other tasks need.
+ */
+final class DispenseQueue {
+
+    /** Most requests dispensed under one lock of the feeder. */
+    static final int MAX_BATCH = 64;
+    /** Batches a drain task runs before it gives up its thread. */
+    private static final int MAX_BATCHES_PER_RUN = 16;
+    /** Runs the drain tasks of every feeder, each on a new virtual thread. */
+    private static final Executor DRAINERS =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dispense-queue-", 1).factory());
+
+    private final PetFeeder petFeeder;
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+    /** True while a drain task is queued or running. */
+    private final AtomicBoolean draining = new AtomicBoolean();
+    /** The batch being dispensed and its results or failures; only used by the drain task. */
+    private final Request[] batch = new Request[MAX_BATCH];
+    private final DispenseResult[] results = new DispenseResult[MAX_BATCH];
+    private final RuntimeException[] failures = new RuntimeException[MAX_BATCH];
+
+    /**
+     * Creates the queue of a pet feeder, drained on virtual threads.
+     * @param petFeeder The feeder the requests are dispensed by.
+     */
+    DispenseQueue(PetFeeder petFeeder) {
+        this.petFeeder = petFeeder;
+        this.executor = DRAINERS;
+    }
+
+    /**
+     * Queues a request to dispense a meal plan. The caller gets a copy of
+     * the future of the request, so completing or cancelling it does not
+     * touch the request in the queue.
+     * @param mealPlan The index of the meal plan.
+     * @return CompletableFuture The future completed with the result.
+     */
+    CompletableFuture<DispenseResult> submit(int mealPlan) {
+        Request request = new Request(mealPlan, petFeeder.getMetrics().startTiming());
+        requests.offer(request);
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+        return request.copy();
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+                if (drainBatch() < MAX_BATCH) {
+                    break;
+                }
+            }
+        } finally {
+            draining.set(false);
+            // A request queued after the last poll found draining still set.
+            if (!requests.isEmpty() && draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+    }
+
+    /**
+     * Dispenses up to MAX_BATCH queued requests under one lock of the
+     * feeder and completes them. Returns the number of requests taken. If
+     * anything fails outside the dispense of a single request, the
+     * requests taken that are not completed yet are completed with the
+     * failure before it is thrown, so no caller waits forever.
+     */
+    private int drainBatch() {
+        int count = 0;
+        Request request;
+        while (count < MAX_BATCH && (request = requests.poll()) != null) {
+            batch[count++] = request;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        FeederMetrics metrics = petFeeder.getMetrics();
+        int completed = 0;
+        try {
+            ReentrantLock lock = petFeeder.getLock();
+            lock.lock();
+            try {
+                for (int i = 0; i < count; i++) {
+                    try {
+                        results[i] = petFeeder.dispenseLocked(batch[i].mealPlan);
+                    } catch (RuntimeException e) {
+                        failures[i] = e;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (; completed < count; completed++) {
+                Request taken = batch[completed];
+                if (failures[completed] == null) {
+                    metrics.dispensed(results[completed], taken.start);
+                    petFeeder.publishDispense(taken.mealPlan, results[completed]);
+                    taken.complete(results[completed]);
+                } else {
+                    taken.completeExceptionally(failures[completed]);
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            for (int i = completed; i < count; i++) {
+                batch[i].completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            Arrays.fill(batch, 0, count, null);
+            Arrays.fill(results, 0, count, null);
+            Arrays.fill(failures, 0, count, null);
+        }
+        return count;
+    }
+
+    /**
+     * A queued request, which is also the future its caller waits on.
+     */
+    private static final class Request extends CompletableFuture<DispenseResult> {
+        final int mealPlan;
+        /** Start time if the request is timed, or 0. */
+        final long start;
+
+        Request(int mealPlan, long start) {
+            this.mealPlan = mealPlan;
+            this.start = start;
+        }
+    }
+}
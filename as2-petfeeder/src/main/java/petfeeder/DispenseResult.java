@@ -0,0 +1,24 @@
+package petfeeder;
+
+/**
+ * Outcome of a dispense request: either the meal was dispensed or the
+ * reason it was not.
+ */
+public enum DispenseResult {
+    /** The meal was dispensed. */
+    DISPENSED,
+    /** There is no meal plan at the requested index. */
+    NO_MEAL_PLAN,
+    /** The energy cost of the meal is more than the remaining energy budget. */
+    ENERGY_BUDGET_EXCEEDED,
+    /** The food container does not hold enough of the ingredients. */
+    INSUFFICIENT_INGREDIENTS;
+
+    /**
+     * Returns true if the meal was dispensed.
+     * @return boolean
+     */
+    public boolean isDispensed() {
+        return this == DISPENSED;
+    }
+}
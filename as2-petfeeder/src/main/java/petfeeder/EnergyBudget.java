@@ -0,0 +1,225 @@
+package petfeeder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Energy budget over a sliding time window, for example 500 energy points
+ * per 24 hours.
+ * <p>
+ * The window is split into a fixed number of equal buckets kept in a ring.
+ * Each bucket is one atomic word holding the number of the time slice it
+ * belongs to and the energy consumed in that slice. Energy is added with a
+ * compare-and-set on the current bucket; a bucket left over from an
+ * earlier pass of the ring is simply overwritten. Reading the remaining
+ * budget sums the buckets that are still inside the window, so it never
+ * locks, never allocates and takes the same time whatever the number of
+ * meals dispensed, and it can be called from any thread.
+ * <p>
+ * The window slides one bucket at a time: energy stops counting between
+ * (buckets - 1) / buckets of the window and the full window after it was
+ * consumed. Use more buckets for a smoother window.
+ */
+public final class EnergyBudget {
+
+    /** Number of buckets used when none is given. */
+    public static final int DEFAULT_BUCKETS = 24;
+
+    private final int limit;
+    private final long windowNanos;
+    private final long bucketNanos;
+    private final int buckets;
+    private final LongSupplier clock;
+    /** Time slices are counted from; one window before creation, so every slice in the first window is above 0. */
+    private final long origin;
+    /** Per bucket: slice number in the high 32 bits, energy in the low 32 bits. */
+    private final AtomicLongArray ring;
+
+    /**
+     * Creates a budget of limit energy points per window, with
+     * {@value #DEFAULT_BUCKETS} buckets.
+     * @param limit The energy that may be consumed within one window.
+     * @param window The length of the window.
+     * @param unit The unit of window.
+     */
+    public EnergyBudget(int limit, long window, TimeUnit unit) {
+        this(limit, window, unit, DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Creates a budget of limit energy points per window, split into the
+     * given number of buckets.
+     * @param limit The energy that may be consumed within one window.
+     * @param window The length of the window.
+     * @param unit The unit of window.
+     * @param buckets The number of buckets the window is split into.
+     */
+    public EnergyBudget(int limit, long window, TimeUnit unit, int buckets) {
+        this(limit, unit.toNanos(window), buckets, System::nanoTime);
+    }
+
+    /**
+     * Creates a budget that reads the time from the given clock.
+     * @param limit The energy that may be consumed within one window.
+     * @param windowNanos The length of the window in nanoseconds.
+     * @param buckets The number of buckets the window is split into.
+     * @param clock The clock, in nanoseconds.
+     */
+    EnergyBudget(int limit, long windowNanos, int buckets, LongSupplier clock) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Energy limit must not be negative: " + limit);
+        }
+        if (buckets < 1 || windowNanos < buckets) {
+            throw new IllegalArgumentException("Window of " + windowNanos + " ns cannot be split into " + buckets + " buckets");
+        }
+        this.limit = limit;
+        this.windowNanos = windowNanos;
+        this.bucketNanos = windowNanos / buckets;
+        this.buckets = buckets;
+        this.clock = clock;
+        this.origin = clock.getAsLong() - windowNanos;
+        this.ring = new AtomicLongArray(buckets);
+    }
+
+    /**
+     * Returns a budget of limit energy points per 24 hours.
+     * @param limit The energy that may be consumed within one day.
+     * @return EnergyBudget
+     */
+    public static EnergyBudget daily(int limit) {
+        return new EnergyBudget(limit, 24, TimeUnit.HOURS);
+    }
+
+    /**
+     * Returns the energy that may be consumed within one window.
+     * @return int
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the length of the window.
+     * @param unit The unit of the result.
+     * @return long
+     */
+    public long getWindow(TimeUnit unit) {
+        return unit.convert(windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of buckets the window is split into.
+     * @return int
+     */
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Returns the energy consumed within the current window.
+     * @return int
+     */
+    public int getConsumed() {
+        long slice = currentSlice();
+        long consumed = 0;
+        for (int i = 0; i < buckets; i++) {
+            long bucket = ring.get(i);
+            consumed += energyIn(bucket, slice, buckets);
+        }
+        return (int) Math.min(consumed, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the energy that may still be consumed within the current
+     * window, never less than 0.
+     * @return int
+     */
+    public int getRemaining() {
+        return Math.max(0, limit - getConsumed());
+    }
+
+    /**
+     * Records that energy was consumed now. The energy is recorded even if
+     * it exceeds the remaining budget; callers check getRemaining() first.
+     * @param energy The energy consumed.
+     */
+    void consume(int energy) {
+        add(currentSlice(), energy);
+    }
+
+    /**
+     * Records that energy was consumed some time ago, for rebuilding a
+     * budget from saved state. Energy older than the window is ignored.
+     * @param energy The energy consumed.
+     * @param age How long ago it was consumed; negative counts as now.
+     * @param unit The unit of age.
+     */
+    void consume(int energy, long age, TimeUnit unit) {
+        long ageNanos = Math.max(0, unit.toNanos(age));
+        if (ageNanos >= windowNanos) {
+            return;
+        }
+        long slice = Math.floorDiv(clock.getAsLong() - ageNanos - origin, bucketNanos);
+        if (currentSlice() - slice < buckets) {
+            add(slice, energy);
+        }
+    }
+
+    private void add(long slice, int energy) {
+        if (energy <= 0) {
+            return;
+        }
+        int index = (int) Math.floorMod(slice, (long) buckets);
+        long bucket;
+        long updated;
+        do {
+            bucket = ring.get(index);
+            updated = addTo(bucket, slice, energy);
+        } while (updated != bucket && !ring.compareAndSet(index, bucket, updated));
+    }
+
+    /**
+     * Returns a bucket word with energy added in the given time slice. A
+     * bucket left over from an earlier pass of the ring starts again from
+     * 0; a bucket that already belongs to a later slice is returned as is.
+     * @param bucket The bucket word.
+     * @param slice The time slice the energy was consumed in.
+     * @param energy The energy consumed; must be positive.
+     * @return long
+     */
+    static long addTo(long bucket, long slice, int energy) {
+        int bucketSlice = (int) (bucket >>> 32);
+        long current;
+        if (bucketSlice == (int) slice) {
+            current = energyOf(bucket);
+        } else if ((int) slice - bucketSlice > 0) {
+            current = 0; // left over from an earlier pass of the ring
+        } else {
+            return bucket; // the bucket already belongs to a later slice
+        }
+        long updated = Math.min(current + energy, 0xFFFFFFFFL);
+        return ((slice & 0xFFFFFFFFL) << 32) | updated;
+    }
+
+    /**
+     * Returns the energy in a bucket word if its time slice is one of the
+     * last buckets slices up to the given one, else 0.
+     * @param bucket The bucket word.
+     * @param slice The current time slice.
+     * @param buckets The number of buckets in the window.
+     * @return long
+     */
+    static long energyIn(long bucket, long slice, int buckets) {
+        int age = (int) slice - (int) (bucket >>> 32);
+        return age >= 0 && age < buckets ? energyOf(bucket) : 0;
+    }
+
+    private long currentSlice() {
+        return Math.floorDiv(clock.getAsLong() - origin, bucketNanos);
+    }
+
+    private static long energyOf(long bucket) {
+        return bucket & 0xFFFFFFFFL;
+    }
+}
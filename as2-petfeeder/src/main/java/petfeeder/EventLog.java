@@ -0,0 +1,264 @@
+package petfeeder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log of structured feeder events: the outcomes of scheduled
+ * feedings and of the dispenses of feeders that publish them.
+ * <p>
+ * Events go into a bounded ring buffer of reusable event slots. Any number
+ * of threads publish without locking: a publisher claims the next slot
+ * with a compare-and-set, fills it in and marks it as published. If the
+ * ring is full the event is dropped and counted, so a slow sink never
+ * holds up a feeding. One background thread takes the published events in
+ * order, passes up to {@value #MAX_BATCH} at a time to the sink and then
+ * flushes the sink once, so a console sink prints one block per batch
+ * instead of taking the PrintStream lock for every line.
+ */
+public class EventLog implements Closeable {
+
+    /** Default number of event slots. */
+    public static final int DEFAULT_CAPACITY = 8192;
+    /** Most events written to the sink between flushes. */
+    private static final int MAX_BATCH = 256;
+    /** Longest time the consumer sleeps when there is nothing to write. */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final EventSink sink;
+    private final int mask;
+    private final FeederEvent[] slots;
+    /**
+     * Per slot: equal to the position of the next publisher that may claim
+     * it, or that position + 1 once the event at it is published.
+     */
+    private final AtomicLongArray sequences;
+    /** Next position to claim. */
+    private final AtomicLong tail = new AtomicLong();
+    /** Next position to write; only advanced by the consumer. */
+    private volatile long head;
+    /** Position up to which events are written and the sink flushed. */
+    private volatile long flushed;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread consumer;
+    private volatile boolean consumerIdle;
+    private volatile boolean closed;
+    private volatile IOException lastFailure;
+
+    /**
+     * Holds the shared console event log; created on first use.
+     */
+    private static final class SharedHolder {
+        static final EventLog SHARED = start(EventSink.console());
+    }
+
+    /**
+     * Creates an event log with {@value #DEFAULT_CAPACITY} slots that
+     * writes to the given sink, and starts its consumer thread.
+     * @param sink The sink the events are written to.
+     * @return EventLog
+     */
+    public static EventLog start(EventSink sink) {
+        return start(sink, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an event log that writes to the given sink, and starts its
+     * consumer thread.
+     * @param sink The sink the events are written to.
+     * @param capacity The number of event slots; must be a power of two.
+     * @return EventLog
+     */
+    public static EventLog start(EventSink sink, int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        EventLog eventLog = new EventLog(sink, capacity);
+        eventLog.consumer.start();
+        return eventLog;
+    }
+
+    /**
+     * Creates an event log whose consumer thread is not started yet.
+     */
+    private EventLog(EventSink sink, int capacity) {
+        this.sink = sink;
+        this.mask = capacity - 1;
+        this.slots = new FeederEvent[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new FeederEvent();
+            sequences.set(i, i);
+        }
+        this.consumer = new Thread(this::consume, "feeder-event-log");
+        consumer.setDaemon(true);
+    }
+
+    /**
+     * Returns the event log shared by all feeding schedulers, which prints
+     * to System.out.
+     * @return EventLog
+     */
+    public static EventLog shared() {
+        return SharedHolder.SHARED;
+    }
+
+    /**
+     * Publishes an event about a feeder without an id or a dispense result.
+     * Returns false, and counts the event as dropped, if the ring is full
+     * or the log is closed.
+     * @param type The kind of event.
+     * @param mealPlanIndex The index of the meal plan the event is about.
+     * @param text A meal name or error message, or null.
+     * @return boolean
+     */
+    public boolean publish(FeederEvent.Type type, int mealPlanIndex, String text) {
+        return publish(type, null, mealPlanIndex, null, text);
+    }
+
+    /**
+     * Publishes an event. Returns false, and counts the event as dropped,
+     * if the ring is full or the log is closed.
+     * @param type The kind of event.
+     * @param feederId The id of the feeder the event is about, or null.
+     * @param mealPlanIndex The index of the meal plan the event is about.
+     * @param result The result of the dispense, or null for an error.
+     * @param text A meal name or error message, or null.
+     * @return boolean
+     */
+    public boolean publish(FeederEvent.Type type, String feederId, int mealPlanIndex, DispenseResult result, String text) {
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                dropped.increment(); // the slot still holds an unwritten event from the last lap
+                return false;
+            }
+        }
+        slots[index].set(System.currentTimeMillis(), type, feederId, mealPlanIndex, result, text);
+        sequences.set(index, position + 1);
+        if (consumerIdle) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of events dropped because the ring was full or
+     * the log was closed.
+     * @return long
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of events written to the sink.
+     * @return long
+     */
+    public long getWrittenCount() {
+        return head;
+    }
+
+    /**
+     * Returns the last error of the sink, or null if it never failed.
+     * @return IOException
+     */
+    public IOException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Waits until every event published before the call is written and
+     * the sink is flushed. Returns false if that took longer than the timeout.
+     * @param timeout The longest time to wait.
+     * @param unit The unit of timeout.
+     * @return boolean
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (flushed < target) {
+            if (System.nanoTime() - deadline >= 0 || !consumer.isAlive()) {
+                return flushed >= target;
+            }
+            LockSupport.unpark(consumer);
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the events already published, stops the consumer thread and
+     * closes the sink. Events published afterwards are dropped.
+     * @throws IOException if the sink cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sink.close();
+    }
+
+    private void consume() {
+        long position = head;
+        while (true) {
+            int written = 0;
+            while (written < MAX_BATCH) {
+                int index = (int) position & mask;
+                if (sequences.get(index) != position + 1) {
+                    break;
+                }
+                FeederEvent event = slots[index];
+                try {
+                    sink.write(event);
+                } catch (IOException | RuntimeException e) {
+                    lastFailure = e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+                event.set(0, null, null, 0, null, null);
+                sequences.set(index, position + mask + 1);
+                head = ++position;
+                written++;
+            }
+            if (written > 0) {
+                try {
+                    sink.flush();
+                } catch (IOException | RuntimeException e) {
+                    lastFailure = e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+                flushed = position;
+                continue;
+            }
+            if (closed && position == tail.get()) {
+                return;
+            }
+            consumerIdle = true;
+            if (sequences.get((int) position & mask) != position + 1 && !closed) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            consumerIdle = false;
+        }
+    }
+}
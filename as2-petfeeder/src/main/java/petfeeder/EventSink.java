@@ -0,0 +1,143 @@
+package petfeeder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Destination of the events of an {@link EventLog}. The log calls a sink
+ * from its consumer thread only: write for each event of a batch, then
+ * flush once at the end of the batch.
+ */
+public interface EventSink {
+
+    /**
+     * Takes one event. The event is reused after the call returns.
+     * @param event The event.
+     * @throws IOException if the event cannot be written.
+     */
+    void write(FeederEvent event) throws IOException;
+
+    /**
+     * Called after the last event of a batch.
+     * @throws IOException if the events cannot be written.
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Called once when the event log is closed.
+     * @throws IOException if the sink cannot be closed.
+     */
+    default void close() throws IOException {
+    }
+
+    /**
+     * Returns a sink that prints the log line of each event to System.out,
+     * one print per batch.
+     * @return EventSink
+     */
+    static EventSink console() {
+        return new ConsoleSink();
+    }
+
+    /**
+     * Returns a sink that appends the log line of each event, with its
+     * time, to a file.
+     * @param file The file to append to; created if it does not exist.
+     * @return EventSink
+     * @throws IOException if the file cannot be opened.
+     */
+    static EventSink file(Path file) throws IOException {
+        return new FileSink(file);
+    }
+
+    /**
+     * Prints each batch to the System.out of the moment it is written.
+     */
+    final class ConsoleSink implements EventSink {
+        private final StringBuilder batch = new StringBuilder();
+
+        private ConsoleSink() {
+        }
+
+        @Override
+        public void write(FeederEvent event) {
+            event.appendTo(batch);
+            batch.append(System.lineSeparator());
+        }
+
+        @Override
+        public void flush() {
+            PrintStream out = System.out;
+            out.print(batch);
+            out.flush();
+            batch.setLength(0);
+        }
+    }
+
+    /**
+     * Appends the events to a file as "time type meal-plan line".
+     */
+    final class FileSink implements EventSink {
+        private final BufferedWriter writer;
+        private final StringBuilder line = new StringBuilder();
+
+        private FileSink(Path file) throws IOException {
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        @Override
+        public void write(FeederEvent event) throws IOException {
+            line.setLength(0);
+            line.append(event.getTime()).append(' ').append(event.getType()).append(' ')
+                    .append(event.getMealPlanIndex()).append(' ');
+            event.appendTo(line);
+            line.append('\n');
+            writer.append(line);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * Keeps copies of the events in memory, for tests.
+     */
+    final class MemorySink implements EventSink {
+        private final List<FeederEvent> events = new ArrayList<>();
+
+        /**
+         * Creates an empty in-memory sink.
+         */
+        public MemorySink() {
+        }
+
+        @Override
+        public synchronized void write(FeederEvent event) {
+            events.add(event.copy());
+        }
+
+        /**
+         * Returns a copy of the events received so far, oldest first.
+         * @return List
+         */
+        public synchronized List<FeederEvent> getEvents() {
+            return new ArrayList<>(events);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package petfeeder;
+
+import java.util.Locale;
+
+/**
+ * One structured event of the event log: the outcome of a scheduled
+ * feeding, or of a dispense of a feeder that publishes its dispenses (see
+ * PetFeeder.setEventLog). An event names the feeder, if it has an id, and
+ * the meal plan, and holds the DispenseResult of the dispense, if any.
+ * <p>
+ * Events are slots of the ring buffer of an {@link EventLog} and are reused
+ * once they have been written out, so a sink may read an event only while
+ * it is being passed to it; use {@link #copy()} to keep one.
+ */
+public final class FeederEvent {
+
+    /**
+     * Kinds of events.
+     */
+    public enum Type {
+        /** A scheduled feeding dispensed its meal; the text is the meal name. */
+        SCHEDULED_DISPENSED,
+        /** A scheduled feeding could not dispense its meal; the result says why. */
+        SCHEDULED_NOT_DISPENSED,
+        /** A scheduled feeding failed; the text is the error message. */
+        SCHEDULED_ERROR,
+        /** A feeder handled a dispense request; the result says how. */
+        DISPENSE
+    }
+
+    private long time;
+    private Type type;
+    private String feederId;
+    private int mealPlanIndex;
+    private DispenseResult result;
+    private String text;
+
+    FeederEvent() {
+    }
+
+    void set(long time, Type type, String feederId, int mealPlanIndex, DispenseResult result, String text) {
+        this.time = time;
+        this.type = type;
+        this.feederId = feederId;
+        this.mealPlanIndex = mealPlanIndex;
+        this.result = result;
+        this.text = text;
+    }
+
+    /**
+     * Returns when the event happened, in milliseconds since the epoch.
+     * @return long
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the kind of event.
+     * @return Type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the id of the feeder the event is about, or null if the
+     * feeder has none.
+     * @return String
+     */
+    public String getFeederId() {
+        return feederId;
+    }
+
+    /**
+     * Returns the index of the meal plan the event is about.
+     * @return int
+     */
+    public int getMealPlanIndex() {
+        return mealPlanIndex;
+    }
+
+    /**
+     * Returns the result of the dispense the event is about, or null for
+     * an error.
+     * @return DispenseResult
+     */
+    public DispenseResult getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the text of the event: a meal name or an error message, or null.
+     * @return String
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns a copy of the event that is not reused by the event log.
+     * @return FeederEvent
+     */
+    public FeederEvent copy() {
+        FeederEvent copy = new FeederEvent();
+        copy.set(time, type, feederId, mealPlanIndex, result, text);
+        return copy;
+    }
+
+    /**
+     * Appends the log line of the event, without a line break.
+     * @param line The builder to append to.
+     */
+    void appendTo(StringBuilder line) {
+        line.append(type == Type.DISPENSE ? "[Feeder" : "[Scheduler");
+        if (feederId != null) {
+            line.append(' ').append(feederId);
+        }
+        line.append("] ");
+        switch (type) {
+            case SCHEDULED_DISPENSED:
+                line.append("Dispensed scheduled meal: ").append(text);
+                break;
+            case SCHEDULED_NOT_DISPENSED:
+                line.append("Scheduled meal could not be dispensed (")
+                        .append(result == null ? "insufficient ingredients or energy budget" : describe(result)).append(").");
+                break;
+            case DISPENSE:
+                line.append("Meal plan ").append(mealPlanIndex).append(": ").append(describe(result));
+                break;
+            default:
+                line.append("Error during scheduled feeding: ").append(text);
+        }
+    }
+
+    /** The result in words, such as "insufficient ingredients". */
+    private static String describe(DispenseResult result) {
+        return result.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+    }
+
+    /**
+     * Returns the log line of the event.
+     * @return String
+     */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        appendTo(line);
+        return line.toString();
+    }
+}
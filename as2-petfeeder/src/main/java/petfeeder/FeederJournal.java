@@ -0,0 +1,811 @@
+package petfeeder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of the state changes of one pet feeder, written to
+ * a memory-mapped file.
+ * <p>
+ * Every change (dispense, replenish, adding, editing or deleting a meal
+ * plan) is one fixed-size record of {@value #RECORD_SIZE} bytes holding a
+ * sequence number, the change and a CRC32C checksum. Meal plan names that
+ * do not fit in the record continue in extra name records. Reset and
+ * dispense records also hold the wall-clock time, so recovery can put the
+ * dispensed energy back into the right part of the energy budget window.
+ * An append only
+ * copies the record into the mapped file; a background task forces all
+ * records written since its last run to disk at once (group commit).
+ * The same task maps the next chunk of the file before the appends reach
+ * it and forces the chunks they have left, so an append never does file
+ * I/O while holding the lock of the journal, which is a ReentrantLock and
+ * does not pin the carrier of a virtual thread.
+ * Callers that need a change to be durable wait for it with
+ * {@link #awaitDurable(long, long, TimeUnit)} or force it with {@link #sync()}.
+ * <p>
+ * Opening a journal reads it once from the start, stops at the first
+ * record that is missing or torn, cuts the file off there, and keeps the
+ * state it describes;
+ * {@link #recover()} turns that state into a pet feeder that keeps
+ * writing to the journal. Only changes made through the PetFeeder are
+ * recorded, not changes made directly on its MealPlanBook or FoodContainer.
+ * <p>
+ * The journal grows with every change until it is compacted with
+ * {@link #checkpoint(PetFeeder)}, which replaces the file with one holding
+ * only the current state of the feeder. Sequence numbers go on from where
+ * they were, so the first record of a checkpointed file is not number 1.
+ */
+public class FeederJournal implements Closeable {
+
+    /** Size of one record in bytes. */
+    public static final int RECORD_SIZE = 64;
+    /** The file is mapped in chunks of this many bytes. */
+    private static final int CHUNK_SIZE = 64 << 20;
+    /** Default time between group commits. */
+    private static final long DEFAULT_COMMIT_MILLIS = 2;
+
+    /** Record types. */
+    static final int RESET = 1;
+    static final int PLAN_PUT = 2;
+    static final int PLAN_CLEAR = 3;
+    static final int DISPENSE = 4;
+    static final int REPLENISH = 5;
+    static final int NAME = 6;
+
+    /** Record layout: offsets of the fields inside a record. */
+    private static final int SEQUENCE = 0;
+    private static final int TYPE = 8;
+    private static final int SLOT = 12;
+    private static final int KIBBLE = 16;
+    private static final int WATER = 20;
+    private static final int WETFOOD = 24;
+    private static final int TREATS = 28;
+    private static final int ENERGY = 32;
+    private static final int NAME_LENGTH = 40;
+    /** Wall-clock time in ms of reset and dispense records; shares the place of the name in plan records. */
+    private static final int TIME = 40;
+    private static final int INLINE_NAME = 44;
+    private static final int CHECKSUM = RECORD_SIZE - 4;
+    private static final int INLINE_NAME_BYTES = CHECKSUM - INLINE_NAME;
+    /** Name records carry name bytes from just after the type to the checksum. */
+    private static final int NAME_DATA = 12;
+    private static final int NAME_BYTES_PER_RECORD = CHECKSUM - NAME_DATA;
+
+    /** Forces the journals to disk; one daemon thread for all journals. */
+    private static final ScheduledExecutorService COMMITTER =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "feeder-journal-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Path file;
+    /** Guards the journal; waiters for a group commit wait on durable. */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition durable = lock.newCondition();
+    /** The open journal file; replaced by a checkpoint, guarded by lock. */
+    private FileChannel channel;
+    private final ScheduledFuture<?> commitTask;
+    /** Scratch space for building and checking one record; guarded by lock. */
+    private final byte[] record = new byte[RECORD_SIZE];
+    private final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+    private final CRC32C crc = new CRC32C();
+
+    /** The mapped chunk that holds the next record, and its offset in the file; guarded by lock. */
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    /** The chunk after it, mapped ahead by the commit task, or null; guarded by lock. */
+    private MappedByteBuffer nextChunk;
+    /** The chunk before it, not forced since the appends left it, or null; guarded by lock. */
+    private MappedByteBuffer retiredChunk;
+    /** Sequence number of the last record written; guarded by lock. */
+    private long lastSequence;
+    /** Sequence number of the record before the first one in the file; guarded by lock. */
+    private long baseSequence;
+    /** Sequence number of the last record forced to disk. */
+    private volatile long durableSequence;
+    private boolean closed;
+
+    /** State described by the records read when the journal was opened. */
+    private long recoveredStock;
+    /** Energy dispensed since the last reset, grouped by second: latest time of the group and its energy. */
+    private long[] recoveredEnergyTimes = new long[16];
+    private long[] recoveredEnergy = new long[16];
+    private int recoveredEnergyGroups;
+    private final ArrayList<MealPlan> recoveredPlans = new ArrayList<>();
+
+    private FeederJournal(Path file, long commitMillis) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        readExisting();
+        // Records past the last intact one may be intact leftovers of an
+        // earlier run; cut them off so that once new records fill the gap
+        // they can never be read back as part of the journal.
+        chunk = null;
+        retiredChunk = null;
+        channel.truncate((lastSequence - baseSequence) * RECORD_SIZE);
+        channel.force(true);
+        this.durableSequence = lastSequence;
+        this.commitTask = COMMITTER.scheduleWithFixedDelay(this::commit,
+                commitMillis, commitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the journal in the given file, creating the file if needed,
+     * and reads the records already in it.
+     * @param file The journal file.
+     * @return FeederJournal
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public static FeederJournal open(Path file) throws IOException {
+        return new FeederJournal(file, DEFAULT_COMMIT_MILLIS);
+    }
+
+    /**
+     * Opens the journal in the given file with the given time between
+     * group commits.
+     * @param file The journal file.
+     * @param commitInterval The time between group commits.
+     * @param unit The unit of commitInterval.
+     * @return FeederJournal
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public static FeederJournal open(Path file, long commitInterval, TimeUnit unit) throws IOException {
+        if (commitInterval <= 0) {
+            throw new IllegalArgumentException();
+        }
+        return new FeederJournal(file, Math.max(1, unit.toMillis(commitInterval)));
+    }
+
+    /**
+     * Returns a pet feeder with the state read from the journal, which
+     * records its later changes in this journal. An empty journal gives a
+     * new pet feeder. The feeder gets the default daily energy budget.
+     * @return PetFeeder
+     */
+    public PetFeeder recover() {
+        return recover(EnergyBudget.daily(PetFeeder.DEFAULT_ENERGY_LIMIT));
+    }
+
+    /**
+     * Returns a pet feeder with the state read from the journal and the
+     * given energy budget, which records its later changes in this journal.
+     * The energy of the meals dispensed within the window of the budget,
+     * by the time they were journaled, is added to the budget.
+     * @param energyBudget A new energy budget for the feeder.
+     * @return PetFeeder
+     */
+    public PetFeeder recover(EnergyBudget energyBudget) {
+        lock.lock();
+        try {
+            MealPlanBook mealPlanBook = new MealPlanBook();
+            FoodContainer foodContainer = new FoodContainer();
+            if (lastSequence == 0) {
+                PetFeeder petFeeder = new PetFeeder(mealPlanBook, foodContainer, energyBudget, this);
+                reset(foodContainer.getStock(), energyBudget.getConsumed(), mealPlanBook.getSnapshot());
+                return petFeeder;
+            }
+            mealPlanBook.restore(recoveredPlans.toArray(new MealPlan[0]));
+            foodContainer.setStock(recoveredStock);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < recoveredEnergyGroups; i++) {
+                // Records from before times were journaled count as dispensed now.
+                long age = recoveredEnergyTimes[i] == 0 ? 0 : now - recoveredEnergyTimes[i];
+                energyBudget.consume((int) Math.min(recoveredEnergy[i], Integer.MAX_VALUE), age, TimeUnit.MILLISECONDS);
+            }
+            return new PetFeeder(mealPlanBook, foodContainer, energyBudget, this);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a pet feeder with the state of a feeder in a snapshot and the
+     * records of this journal written after the snapshot was taken, which
+     * records its later changes in this journal. Use it instead of
+     * {@link #recover()}, on a journal that has had no records written
+     * since it was opened.
+     * <p>
+     * If the journal was checkpointed after the snapshot, the journal alone
+     * is newer and the snapshot is not used. If the journal ends before the
+     * snapshot, because its last records were lost, the snapshot is newer:
+     * the journal is checkpointed with it.
+     * @param snapshot The snapshot.
+     * @param feeder The position of the feeder in the snapshot; it must have been saved with this journal.
+     * @return PetFeeder
+     * @throws IOException if the journal cannot be read or checkpointed.
+     */
+    public PetFeeder recover(FleetSnapshot snapshot, int feeder) throws IOException {
+        PetFeeder.State state = snapshot.getState(feeder);
+        if (state.journalSequence == 0) {
+            throw new IllegalArgumentException("Feeder " + snapshot.getFeederId(feeder) + " was saved without a journal");
+        }
+        EnergyBudget energyBudget = new EnergyBudget(state.energyLimit, state.energyWindowNanos,
+                TimeUnit.NANOSECONDS, state.energyBuckets);
+        lock.lock();
+        try {
+            if (state.journalSequence <= baseSequence) {
+                return recover(energyBudget);
+            }
+            long ageMillis = System.currentTimeMillis() - snapshot.getCreated();
+            if (state.journalSequence > lastSequence) {
+                PetFeeder petFeeder = PetFeeder.fromState(state, ageMillis, this);
+                checkpoint(petFeeder);
+                return petFeeder;
+            }
+            long end = (lastSequence - baseSequence) * RECORD_SIZE;
+            recoveredStock = state.stock;
+            recoveredPlans.clear();
+            recoveredPlans.addAll(Arrays.asList(state.mealPlans));
+            recoveredEnergyGroups = 0;
+            addRecoveredEnergy(snapshot.getCreated(), state.energyConsumed);
+            lastSequence = state.journalSequence;
+            replay((lastSequence - baseSequence) * RECORD_SIZE, end);
+            return recover(energyBudget);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last record written, 0 if the
+     * journal is empty.
+     * @return long
+     */
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last record known to be on disk.
+     * @return long
+     */
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * Returns the lock of the journal, held while a record is written. A
+     * pet feeder holds it around a change and its record, so a checkpoint
+     * sees both or neither.
+     * @return ReentrantLock
+     */
+    ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Returns the journal file.
+     * @return Path
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Waits until the record with the given sequence number has been
+     * forced to disk by a group commit. Returns false if that did not
+     * happen within the timeout.
+     * @param sequence The sequence number to wait for.
+     * @param timeout The longest time to wait.
+     * @param unit The unit of timeout.
+     * @return boolean
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public boolean awaitDurable(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (remaining <= 0 || closed) {
+                    return durableSequence >= sequence;
+                }
+                remaining = durable.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces every record written so far to disk.
+     */
+    public void sync() {
+        commit();
+    }
+
+    /**
+     * Compacts the journal: replaces the file with one that holds only the
+     * current state of the feeder, so the records before it no longer
+     * have to be read when the journal is opened. The feeder is locked
+     * while the new file is written. The energy consumed in the current
+     * window is recorded as consumed now.
+     * <p>
+     * The new file is written and forced next to the journal and then
+     * moved over it, so a crash leaves either the old or the new file.
+     * @param petFeeder The feeder that records its changes in this journal.
+     * @throws IOException if the new file cannot be written; the journal is then left as it was.
+     */
+    public void checkpoint(PetFeeder petFeeder) throws IOException {
+        petFeeder.checkpointJournal(this);
+    }
+
+    /**
+     * Forces the remaining records to disk and closes the journal.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        commitTask.cancel(false);
+        commit();
+        FileChannel toClose;
+        lock.lock();
+        try {
+            closed = true;
+            chunk = null;
+            nextChunk = null;
+            retiredChunk = null;
+            toClose = channel;
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        toClose.close();
+    }
+
+    /**
+     * Records the complete state of a feeder; later records apply on top of it.
+     * @param stock The packed food stock.
+     * @param energyConsumed The energy consumed in the current window of the energy budget.
+     * @param mealPlans The meal plans, indexed by handle.
+     */
+    void reset(long stock, int energyConsumed, MealPlan[] mealPlans) {
+        lock.lock();
+        try {
+            append(RESET, -1, stock, energyConsumed);
+            for (int slot = 0; slot < mealPlans.length; slot++) {
+                if (mealPlans[slot] != null) {
+                    mealPlanPut(slot, mealPlans[slot]);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the complete state of a feeder to a new file, forces it and
+     * moves it over the journal file; see checkpoint(PetFeeder). The caller
+     * holds the lock of the feeder, so no other record is written meanwhile.
+     * @param stock The packed food stock.
+     * @param energyConsumed The energy consumed in the current window of the energy budget.
+     * @param mealPlans The meal plans, indexed by handle.
+     * @throws IOException if the new file cannot be written.
+     */
+    void checkpoint(long stock, int energyConsumed, MealPlan[] mealPlans) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal " + file + " is closed");
+            }
+            // The old file stays complete in case the move is lost in a crash.
+            forceChunks();
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            FileChannel oldChannel = channel;
+            long oldBase = baseSequence;
+            long oldLast = lastSequence;
+            FileChannel newChannel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel = newChannel;
+            chunk = null;
+            nextChunk = null;
+            baseSequence = lastSequence;
+            try {
+                reset(stock, energyConsumed, mealPlans);
+                forceChunks();
+                newChannel.force(true);
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                channel = oldChannel;
+                chunk = null;
+                nextChunk = null;
+                retiredChunk = null;
+                baseSequence = oldBase;
+                lastSequence = oldLast;
+                newChannel.close();
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            oldChannel.close();
+            durableSequence = lastSequence;
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces the current chunk and the chunk the appends left, if any.
+     * Only a checkpoint does this with the lock held.
+     */
+    private void forceChunks() {
+        if (retiredChunk != null) {
+            retiredChunk.force();
+            retiredChunk = null;
+        }
+        if (chunk != null) {
+            chunk.force();
+        }
+    }
+
+    /**
+     * Records that a meal plan was stored at a handle.
+     * @param slot The handle of the meal plan.
+     * @param mealPlan The meal plan.
+     */
+    void mealPlanPut(int slot, MealPlan mealPlan) {
+        byte[] name = mealPlan.getName() == null ? null : mealPlan.getName().getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            appendPlan(slot, mealPlan, name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that the meal plan at a handle was deleted.
+     * @param slot The handle of the meal plan.
+     */
+    void mealPlanCleared(int slot) {
+        lock.lock();
+        try {
+            append(PLAN_CLEAR, slot, 0, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that meals were dispensed.
+     * @param amounts The packed ingredient amounts that were used.
+     * @param energy The energy of the dispensed meals.
+     */
+    void dispensed(long amounts, int energy) {
+        lock.lock();
+        try {
+            append(DISPENSE, -1, amounts, energy);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that food was added to the container.
+     * @param amounts The packed ingredient amounts that were added.
+     */
+    void replenished(long amounts) {
+        lock.lock();
+        try {
+            append(REPLENISH, -1, amounts, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void appendPlan(int slot, MealPlan mealPlan, byte[] name) {
+        beginRecord(PLAN_PUT, slot);
+        recordBuffer.putInt(KIBBLE, mealPlan.getAmtKibble());
+        recordBuffer.putInt(WATER, mealPlan.getAmtWater());
+        recordBuffer.putInt(WETFOOD, mealPlan.getAmtWetFood());
+        recordBuffer.putInt(TREATS, mealPlan.getAmtTreats());
+        recordBuffer.putInt(NAME_LENGTH, name == null ? -1 : name.length);
+        int written = 0;
+        if (name != null) {
+            written = Math.min(name.length, INLINE_NAME_BYTES);
+            System.arraycopy(name, 0, record, INLINE_NAME, written);
+        }
+        endRecord();
+        while (name != null && written < name.length) {
+            beginRecord(NAME, 0);
+            int part = Math.min(name.length - written, NAME_BYTES_PER_RECORD);
+            System.arraycopy(name, written, record, NAME_DATA, part);
+            written += part;
+            endRecord();
+        }
+    }
+
+    private void append(int type, int slot, long amounts, long energy) {
+        beginRecord(type, slot);
+        recordBuffer.putInt(KIBBLE, FoodContainer.unitsAt(amounts, FoodContainer.KIBBLE_SHIFT));
+        recordBuffer.putInt(WATER, FoodContainer.unitsAt(amounts, FoodContainer.WATER_SHIFT));
+        recordBuffer.putInt(WETFOOD, FoodContainer.unitsAt(amounts, FoodContainer.WETFOOD_SHIFT));
+        recordBuffer.putInt(TREATS, FoodContainer.unitsAt(amounts, FoodContainer.TREATS_SHIFT));
+        recordBuffer.putLong(ENERGY, energy);
+        if (type == RESET || type == DISPENSE) {
+            recordBuffer.putLong(TIME, System.currentTimeMillis());
+        }
+        endRecord();
+    }
+
+    private void beginRecord(int type, int slot) {
+        if (closed) {
+            throw new IllegalStateException("Journal " + file + " is closed");
+        }
+        Arrays.fill(record, (byte) 0);
+        recordBuffer.putLong(SEQUENCE, lastSequence + 1);
+        recordBuffer.putInt(TYPE, type);
+        recordBuffer.putInt(SLOT, slot);
+    }
+
+    private void endRecord() {
+        crc.reset();
+        crc.update(record, 0, CHECKSUM);
+        recordBuffer.putInt(CHECKSUM, (int) crc.getValue());
+        long offset = (lastSequence - baseSequence) * RECORD_SIZE;
+        try {
+            chunkFor(offset).put((int) (offset - chunkStart), record, 0, RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastSequence++;
+    }
+
+    /**
+     * Returns the mapped chunk holding the given file offset, replacing the
+     * current chunk when the offset is outside it. The chunk after it is
+     * usually mapped ahead by the commit task; the chunk that is left is
+     * forced by the next commit.
+     */
+    private MappedByteBuffer chunkFor(long offset) throws IOException {
+        if (chunk == null || offset < chunkStart || offset >= chunkStart + CHUNK_SIZE) {
+            long start = offset - offset % CHUNK_SIZE;
+            MappedByteBuffer next;
+            if (chunk != null && nextChunk != null && start == chunkStart + CHUNK_SIZE) {
+                next = nextChunk;
+            } else {
+                // The commit task did not map it in time.
+                next = channel.map(FileChannel.MapMode.READ_WRITE, start, CHUNK_SIZE);
+            }
+            nextChunk = null;
+            if (chunk != null) {
+                if (retiredChunk != null) {
+                    // Two chunks filled between commits.
+                    retiredChunk.force();
+                }
+                retiredChunk = chunk;
+            }
+            chunk = next;
+            chunkStart = start;
+        }
+        return chunk;
+    }
+
+    /**
+     * Forces the records written since the last commit to disk and wakes
+     * up the callers waiting for them, and maps the next chunk once the
+     * appends are half way through the current one. Appends continue
+     * while the chunks are forced and mapped.
+     */
+    private void commit() {
+        MappedByteBuffer toForce;
+        MappedByteBuffer retired;
+        FileChannel mapChannel = null;
+        long nextStart = 0;
+        long upTo;
+        lock.lock();
+        try {
+            if (closed || lastSequence == durableSequence) {
+                return;
+            }
+            toForce = chunk;
+            retired = retiredChunk;
+            retiredChunk = null;
+            upTo = lastSequence;
+            long offset = (lastSequence - baseSequence) * RECORD_SIZE;
+            if (chunk != null && nextChunk == null && offset - chunkStart >= CHUNK_SIZE / 2) {
+                mapChannel = channel;
+                nextStart = chunkStart + CHUNK_SIZE;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (retired != null) {
+            retired.force();
+        }
+        if (toForce != null) {
+            // Null after a failed checkpoint, which forced the records first.
+            toForce.force();
+        }
+        MappedByteBuffer mapped = null;
+        if (mapChannel != null) {
+            try {
+                mapped = mapChannel.map(FileChannel.MapMode.READ_WRITE, nextStart, CHUNK_SIZE);
+            } catch (IOException e) {
+                // The channel was closed by a checkpoint or close; the append maps the chunk itself.
+            }
+        }
+        lock.lock();
+        try {
+            if (mapped != null && channel == mapChannel && chunk != null && nextChunk == null
+                    && chunkStart + CHUNK_SIZE == nextStart) {
+                nextChunk = mapped;
+            }
+            if (upTo > durableSequence) {
+                durableSequence = upTo;
+            }
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the records from the start of the file and applies them to the
+     * recovered state, up to the first record that is missing or torn.
+     */
+    private void readExisting() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize >= RECORD_SIZE && readRecord(0, -1)) {
+            // A checkpointed file starts at a later sequence number.
+            baseSequence = recordBuffer.getLong(SEQUENCE) - 1;
+            lastSequence = baseSequence;
+        }
+        replay(0, fileSize);
+    }
+
+    /**
+     * Applies the records from the given offset up to the end offset on
+     * top of the recovered state, stopping at the first record that is
+     * missing or torn. The record at the offset has the number after lastSequence.
+     */
+    private void replay(long offset, long fileSize) throws IOException {
+        long stock = recoveredStock;
+        while (offset + RECORD_SIZE <= fileSize) {
+            if (!readRecord(offset, lastSequence + 1)) {
+                break;
+            }
+            int type = recordBuffer.getInt(TYPE);
+            int slot = recordBuffer.getInt(SLOT);
+            long records = 1;
+            if (type == PLAN_PUT) {
+                records += nameRecords(recordBuffer.getInt(NAME_LENGTH));
+                MealPlan mealPlan = readPlan(offset, fileSize);
+                if (mealPlan == null) {
+                    break;
+                }
+                while (recoveredPlans.size() <= slot) {
+                    recoveredPlans.add(null);
+                }
+                recoveredPlans.set(slot, mealPlan);
+            } else if (type == PLAN_CLEAR) {
+                if (slot < recoveredPlans.size()) {
+                    recoveredPlans.set(slot, null);
+                }
+            } else if (type == RESET) {
+                stock = amounts();
+                recoveredEnergyGroups = 0;
+                addRecoveredEnergy(recordBuffer.getLong(TIME), recordBuffer.getLong(ENERGY));
+                recoveredPlans.clear();
+            } else if (type == DISPENSE) {
+                // Packed arithmetic wraps per word, so the sum is right once all records are applied.
+                stock -= amounts();
+                addRecoveredEnergy(recordBuffer.getLong(TIME), recordBuffer.getLong(ENERGY));
+            } else if (type == REPLENISH) {
+                stock += amounts();
+            } else {
+                break;
+            }
+            lastSequence += records;
+            offset += records * RECORD_SIZE;
+        }
+        recoveredStock = stock;
+    }
+
+    /**
+     * Adds the energy of a reset or dispense record to the recovered
+     * energy, in the group of the previous record if both are in the same second.
+     */
+    private void addRecoveredEnergy(long time, long energy) {
+        if (energy == 0) {
+            return;
+        }
+        int last = recoveredEnergyGroups - 1;
+        if (last >= 0 && recoveredEnergyTimes[last] / 1000 == time / 1000) {
+            recoveredEnergyTimes[last] = Math.max(recoveredEnergyTimes[last], time);
+            recoveredEnergy[last] += energy;
+            return;
+        }
+        if (recoveredEnergyGroups == recoveredEnergy.length) {
+            recoveredEnergyTimes = Arrays.copyOf(recoveredEnergyTimes, recoveredEnergyGroups * 2);
+            recoveredEnergy = Arrays.copyOf(recoveredEnergy, recoveredEnergyGroups * 2);
+        }
+        recoveredEnergyTimes[recoveredEnergyGroups] = time;
+        recoveredEnergy[recoveredEnergyGroups++] = energy;
+    }
+
+    /**
+     * Reads the meal plan whose first record is in the scratch record,
+     * including its name records. Returns null if a name record is missing
+     * or torn.
+     */
+    private MealPlan readPlan(long offset, long fileSize) throws IOException {
+        MealPlan.Builder builder = new MealPlan.Builder();
+        builder.setAmtKibble(recordBuffer.getInt(KIBBLE));
+        builder.setAmtWater(recordBuffer.getInt(WATER));
+        builder.setAmtWetFood(recordBuffer.getInt(WETFOOD));
+        builder.setAmtTreats(recordBuffer.getInt(TREATS));
+        int nameLength = recordBuffer.getInt(NAME_LENGTH);
+        if (nameLength >= 0) {
+            byte[] name = new byte[nameLength];
+            int read = Math.min(nameLength, INLINE_NAME_BYTES);
+            System.arraycopy(record, INLINE_NAME, name, 0, read);
+            long sequence = lastSequence + 1;
+            while (read < nameLength) {
+                offset += RECORD_SIZE;
+                sequence++;
+                if (offset + RECORD_SIZE > fileSize || !readRecord(offset, sequence)
+                        || recordBuffer.getInt(TYPE) != NAME) {
+                    return null;
+                }
+                int part = Math.min(nameLength - read, NAME_BYTES_PER_RECORD);
+                System.arraycopy(record, NAME_DATA, name, read, part);
+                read += part;
+            }
+            builder.setName(new String(name, StandardCharsets.UTF_8));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Copies the record at the given offset into the scratch record and
+     * returns true if it has the expected sequence number, or any if that
+     * is -1, and a valid checksum.
+     */
+    private boolean readRecord(long offset, long expectedSequence) throws IOException {
+        chunkFor(offset).get((int) (offset - chunkStart), record, 0, RECORD_SIZE);
+        if (expectedSequence != -1 && recordBuffer.getLong(SEQUENCE) != expectedSequence) {
+            return false;
+        }
+        crc.reset();
+        crc.update(record, 0, CHECKSUM);
+        return recordBuffer.getInt(CHECKSUM) == (int) crc.getValue();
+    }
+
+    private long amounts() {
+        return FoodContainer.pack(recordBuffer.getInt(KIBBLE), recordBuffer.getInt(WATER),
+                recordBuffer.getInt(WETFOOD), recordBuffer.getInt(TREATS));
+    }
+
+    private static long nameRecords(int nameLength) {
+        if (nameLength <= INLINE_NAME_BYTES) {
+            return 0;
+        }
+        return (nameLength - INLINE_NAME_BYTES + NAME_BYTES_PER_RECORD - 1) / NAME_BYTES_PER_RECORD;
+    }
+}
@@ -0,0 +1,347 @@
+package petfeeder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the feeder hot paths: dispensing
+ * (by result), using ingredients, replenishing, the wait for the feeder
+ * lock and the lag of scheduled feedings.
+ * <p>
+ * Every feeder reports to {@link #shared()} unless it is given other
+ * metrics. Counters are LongAdders, which stripe themselves under
+ * contention, and are updated on every call. Reading the clock costs more
+ * than the rest of the bookkeeping together, so only one call in
+ * {@link #getSampleEvery()}, picked at random per thread, is timed; the
+ * histograms hold those samples. The scheduler lag is measured by the
+ * feeding wheel anyway; every run is recorded in the shared metrics.
+ * <p>
+ * Metrics are pulled: read the getters, or {@link #toString()} for a
+ * one-line-per-metric report. Stock levels are read from the feeders
+ * themselves with {@link #stockLevels(Iterable)}.
+ */
+public final class FeederMetrics {
+
+    /** System property with the sampling rate of the shared metrics. */
+    public static final String SAMPLE_EVERY_PROPERTY = "petfeeder.metrics.sampleEvery";
+    /** Sampling rate of the shared metrics when the property is not set. */
+    public static final int DEFAULT_SAMPLE_EVERY = 64;
+
+    private static final DispenseResult[] RESULTS = DispenseResult.values();
+
+    private final boolean enabled;
+    /** sampleEvery - 1; sampleEvery is a power of two. */
+    private final int sampleMask;
+
+    private final LongAdder[] dispenses = new LongAdder[RESULTS.length];
+    private final LatencyHistogram dispenseLatency = new LatencyHistogram();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+    private final LongAdder ingredientUses = new LongAdder();
+    private final LongAdder ingredientShortages = new LongAdder();
+    private final LatencyHistogram ingredientLatency = new LatencyHistogram();
+    private final LongAdder replenishes = new LongAdder();
+    private final LongAdder replenishFailures = new LongAdder();
+    private final LatencyHistogram replenishLatency = new LatencyHistogram();
+    private final LatencyHistogram schedulerLag = new LatencyHistogram();
+
+    /**
+     * Holds the shared metrics; created on first use.
+     */
+    private static final class SharedHolder {
+        static final FeederMetrics SHARED = new FeederMetrics(Integer.getInteger(SAMPLE_EVERY_PROPERTY, DEFAULT_SAMPLE_EVERY));
+    }
+
+    /**
+     * Holds metrics that record nothing.
+     */
+    private static final class DisabledHolder {
+        static final FeederMetrics DISABLED = new FeederMetrics(false, 1);
+    }
+
+    /**
+     * Creates metrics that time one call in sampleEvery.
+     * @param sampleEvery How many calls there are per timed call; rounded up to a power of two.
+     */
+    public FeederMetrics(int sampleEvery) {
+        this(true, sampleEvery);
+    }
+
+    private FeederMetrics(boolean enabled, int sampleEvery) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("Sampling rate must be at least 1: " + sampleEvery);
+        }
+        this.enabled = enabled;
+        this.sampleMask = sampleEvery == 1 ? 0 : (Integer.highestOneBit(sampleEvery - 1) << 1) - 1;
+        for (int i = 0; i < dispenses.length; i++) {
+            dispenses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the metrics every feeder reports to by default. The sampling
+     * rate is read from the {@value #SAMPLE_EVERY_PROPERTY} system property.
+     * @return FeederMetrics
+     */
+    public static FeederMetrics shared() {
+        return SharedHolder.SHARED;
+    }
+
+    /**
+     * Returns metrics that record nothing, for feeders that should not be measured.
+     * @return FeederMetrics
+     */
+    public static FeederMetrics disabled() {
+        return DisabledHolder.DISABLED;
+    }
+
+    /**
+     * Returns how many calls there are per timed call.
+     * @return int
+     */
+    public int getSampleEvery() {
+        return sampleMask + 1;
+    }
+
+    /**
+     * Returns the start time of a call if this call is timed, or 0.
+     * @return long
+     */
+    long startTiming() {
+        if (!enabled || (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0)) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the wait for the feeder lock of a timed call.
+     * @param start The start time from startTiming().
+     */
+    void lockAcquired(long start) {
+        if (start != 0) {
+            lockWait.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the result of a dispense and, if the call was timed, how long it took.
+     * @param result The result.
+     * @param start The start time from startTiming().
+     */
+    void dispensed(DispenseResult result, long start) {
+        if (!enabled) {
+            return;
+        }
+        dispenses[result.ordinal()].increment();
+        if (start != 0) {
+            dispenseLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the results of a batch dispense: the meals dispensed and the
+     * meals skipped, by cause.
+     * @param meals The number of meals dispensed.
+     * @param noMealPlan The number of meals skipped because the slot had no meal plan.
+     * @param overBudget The number of meals skipped because they did not fit the energy budget.
+     * @param shortOfIngredients The number of meals skipped because the stock did not cover them.
+     */
+    void dispensed(int meals, int noMealPlan, int overBudget, int shortOfIngredients) {
+        if (!enabled) {
+            return;
+        }
+        add(DispenseResult.DISPENSED, meals);
+        add(DispenseResult.NO_MEAL_PLAN, noMealPlan);
+        add(DispenseResult.ENERGY_BUDGET_EXCEEDED, overBudget);
+        add(DispenseResult.INSUFFICIENT_INGREDIENTS, shortOfIngredients);
+    }
+
+    private void add(DispenseResult result, int meals) {
+        if (meals > 0) {
+            dispenses[result.ordinal()].add(meals);
+        }
+    }
+
+    /**
+     * Records a use of ingredients and, if the call was timed, how long it took.
+     * @param used True if the ingredients were in stock.
+     * @param start The start time from startTiming().
+     */
+    void usedIngredients(boolean used, long start) {
+        if (!enabled) {
+            return;
+        }
+        ingredientUses.increment();
+        if (!used) {
+            ingredientShortages.increment();
+        }
+        if (start != 0) {
+            ingredientLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a replenish and, if the call was timed, how long it took.
+     * @param replenished True if the food was added.
+     * @param start The start time from startTiming().
+     */
+    void replenished(boolean replenished, long start) {
+        if (!enabled) {
+            return;
+        }
+        replenishes.increment();
+        if (!replenished) {
+            replenishFailures.increment();
+        }
+        if (start != 0) {
+            replenishLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records how late a scheduled feeding started.
+     * @param lagNanos The lag in nanoseconds.
+     */
+    void scheduledRun(long lagNanos) {
+        if (enabled) {
+            schedulerLag.record(lagNanos);
+        }
+    }
+
+    /**
+     * Returns the number of dispenses with the given result.
+     * @param result The result.
+     * @return long
+     */
+    public long getDispenseCount(DispenseResult result) {
+        return dispenses[result.ordinal()].sum();
+    }
+
+    /**
+     * Returns the timed dispenses, from the call to the result.
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getDispenseLatency() {
+        return dispenseLatency;
+    }
+
+    /**
+     * Returns the time timed dispenses waited for the feeder lock.
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getLockWait() {
+        return lockWait;
+    }
+
+    /**
+     * Returns the number of times ingredients were taken from a food container.
+     * @return long
+     */
+    public long getIngredientUseCount() {
+        return ingredientUses.sum();
+    }
+
+    /**
+     * Returns the number of times a food container held too little of an ingredient.
+     * @return long
+     */
+    public long getIngredientShortageCount() {
+        return ingredientShortages.sum();
+    }
+
+    /**
+     * Returns the timed uses of ingredients.
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getIngredientLatency() {
+        return ingredientLatency;
+    }
+
+    /**
+     * Returns the number of replenishes.
+     * @return long
+     */
+    public long getReplenishCount() {
+        return replenishes.sum();
+    }
+
+    /**
+     * Returns the number of replenishes that were rejected.
+     * @return long
+     */
+    public long getReplenishFailureCount() {
+        return replenishFailures.sum();
+    }
+
+    /**
+     * Returns the timed replenishes.
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getReplenishLatency() {
+        return replenishLatency;
+    }
+
+    /**
+     * Returns how late scheduled feedings started.
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getSchedulerLag() {
+        return schedulerLag;
+    }
+
+    /**
+     * Returns the stock of each ingredient summed over the feeders, in the
+     * order kibble, water, wet food, treats. Each feeder is read without
+     * locking.
+     * @param feeders The feeders, for example FeederRegistry.getFeeders().
+     * @return long[]
+     */
+    public static long[] stockLevels(Iterable<PetFeeder> feeders) {
+        long[] levels = new long[4];
+        for (PetFeeder petFeeder : feeders) {
+            long stock = petFeeder.getStock();
+            levels[0] += FoodContainer.unitsAt(stock, FoodContainer.KIBBLE_SHIFT);
+            levels[1] += FoodContainer.unitsAt(stock, FoodContainer.WATER_SHIFT);
+            levels[2] += FoodContainer.unitsAt(stock, FoodContainer.WETFOOD_SHIFT);
+            levels[3] += FoodContainer.unitsAt(stock, FoodContainer.TREATS_SHIFT);
+        }
+        return levels;
+    }
+
+    /**
+     * Clears every counter and histogram.
+     */
+    public void reset() {
+        for (LongAdder adder : dispenses) {
+            adder.reset();
+        }
+        ingredientUses.reset();
+        ingredientShortages.reset();
+        replenishes.reset();
+        replenishFailures.reset();
+        dispenseLatency.reset();
+        lockWait.reset();
+        ingredientLatency.reset();
+        replenishLatency.reset();
+        schedulerLag.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (DispenseResult result : RESULTS) {
+            report.append("dispense.").append(result.name().toLowerCase()).append(' ')
+                    .append(getDispenseCount(result)).append('\n');
+        }
+        report.append("dispense.latency ").append(dispenseLatency).append('\n');
+        report.append("dispense.lockWait ").append(lockWait).append('\n');
+        report.append("ingredients.uses ").append(getIngredientUseCount())
+                .append(" shortages ").append(getIngredientShortageCount()).append('\n');
+        report.append("ingredients.latency ").append(ingredientLatency).append('\n');
+        report.append("replenish.count ").append(getReplenishCount())
+                .append(" failures ").append(getReplenishFailureCount()).append('\n');
+        report.append("replenish.latency ").append(replenishLatency).append('\n');
+        report.append("scheduler.lag ").append(schedulerLag).append('\n');
+        return report.toString();
+    }
+}
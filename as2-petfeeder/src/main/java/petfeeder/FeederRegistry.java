@@ -0,0 +1,116 @@
+package petfeeder;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds many independent pet feeders, looked up by feeder id.
+ * <p>
+ * Each registered PetFeeder has its own meal plan book, food container and
+ * energy budget, and locks only itself while dispensing, so operations on
+ * different feeders never contend. Lookups go through a ConcurrentHashMap
+ * and do not lock at all.
+ */
+public class FeederRegistry {
+
+    /** Feeders keyed by their id. */
+    private final ConcurrentHashMap<String, PetFeeder> feeders;
+
+    /**
+     * Creates an empty feeder registry.
+     */
+    public FeederRegistry() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty feeder registry sized for the expected number of feeders.
+     * @param expectedFeeders The number of feeders the registry is expected to hold.
+     */
+    public FeederRegistry(int expectedFeeders) {
+        this.feeders = new ConcurrentHashMap<>(Math.max(expectedFeeders, 1));
+    }
+
+    /**
+     * Creates a new pet feeder with its own meal plan book and food container
+     * and registers it under the given id. Returns the new feeder, or null if
+     * the id is null or already taken.
+     * @param feederId The id of the new feeder.
+     * @return PetFeeder
+     */
+    public PetFeeder createFeeder(String feederId) {
+        if (feederId == null) {
+            return null;
+        }
+        PetFeeder petFeeder = new PetFeeder();
+        if (feeders.putIfAbsent(feederId, petFeeder) != null) {
+            return null;
+        }
+        return petFeeder;
+    }
+
+    /**
+     * Returns true if the pet feeder is registered under the given id and
+     * false if either argument is null or the id is already taken.
+     * @param feederId The id of the feeder.
+     * @param petFeeder The feeder to register.
+     * @return boolean
+     */
+    public boolean addFeeder(String feederId, PetFeeder petFeeder) {
+        if (feederId == null || petFeeder == null) {
+            return false;
+        }
+        return feeders.putIfAbsent(feederId, petFeeder) == null;
+    }
+
+    /**
+     * Returns the pet feeder registered under the given id, or null if there is none.
+     * @param feederId The id of the feeder.
+     * @return PetFeeder
+     */
+    public PetFeeder getFeeder(String feederId) {
+        if (feederId == null) {
+            return null;
+        }
+        return feeders.get(feederId);
+    }
+
+    /**
+     * Returns the pet feeder removed from the registry, or null if no
+     * feeder was registered under the given id.
+     * @param feederId The id of the feeder to remove.
+     * @return PetFeeder
+     */
+    public PetFeeder removeFeeder(String feederId) {
+        if (feederId == null) {
+            return null;
+        }
+        return feeders.remove(feederId);
+    }
+
+    /**
+     * Returns the number of registered feeders.
+     * @return int
+     */
+    public int size() {
+        return feeders.size();
+    }
+
+    /**
+     * Returns a read-only live view of the registered feeder ids.
+     * @return Set of feeder ids
+     */
+    public Set<String> getFeederIds() {
+        return Collections.unmodifiableSet(feeders.keySet());
+    }
+
+    /**
+     * Returns a read-only live view of the registered feeders.
+     * @return Collection of feeders
+     */
+    public Collection<PetFeeder> getFeeders() {
+        return Collections.unmodifiableCollection(feeders.values());
+    }
+}
@@ -1,66 +1,178 @@
 package petfeeder;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Schedules recurring automatic feedings while the program is running.
+ * Schedules recurring automatic feedings for one PetFeeder while the
+ * program is running. A feeder can have a schedule for each of its meal
+ * plans at the same time. The schedules run on a {@link FeedingWheel}
+ * shared with other schedulers, so a scheduler has no threads of its own.
+ * The outcome of every feeding is published to an {@link EventLog}, which
+ * writes it out on its own thread.
  */
 public class FeedingScheduler {
 
     private final PetFeeder petFeeder;
-    private final ScheduledExecutorService executor;
-    private ScheduledFuture<?> currentTask;
+    private final FeedingWheel feedingWheel;
+    private final EventLog eventLog;
+    /** Active schedules of this scheduler keyed by meal plan index. */
+    private final Map<Integer, FeedingWheel.Schedule> schedules = new HashMap<>();
+    private boolean shutdown;
+    /** Told when a schedule is added or removed; see setChangeListener. */
+    private volatile Runnable changeListener;
 
     /**
-     * Creates a feeding scheduler bound to a specific PetFeeder.
+     * Creates a feeding scheduler bound to a specific PetFeeder that runs
+     * on the shared feeding wheel.
      * @param petFeeder The PetFeeder instance to use for dispensing meals.
      */
     public FeedingScheduler(PetFeeder petFeeder) {
+        this(petFeeder, FeedingWheel.shared());
+    }
+
+    /**
+     * Creates a feeding scheduler bound to a specific PetFeeder that runs
+     * on the given feeding wheel.
+     * @param petFeeder The PetFeeder instance to use for dispensing meals.
+     * @param feedingWheel The feeding wheel that runs the schedules.
+     */
+    public FeedingScheduler(PetFeeder petFeeder, FeedingWheel feedingWheel) {
+        this(petFeeder, feedingWheel, EventLog.shared());
+    }
+
+    /**
+     * Creates a feeding scheduler bound to a specific PetFeeder that runs
+     * on the given feeding wheel and logs to the given event log.
+     * @param petFeeder The PetFeeder instance to use for dispensing meals.
+     * @param feedingWheel The feeding wheel that runs the schedules.
+     * @param eventLog The event log the outcomes of feedings are published to.
+     */
+    public FeedingScheduler(PetFeeder petFeeder, FeedingWheel feedingWheel, EventLog eventLog) {
         this.petFeeder = petFeeder;
-        this.executor = Executors.newSingleThreadScheduledExecutor();
+        this.feedingWheel = feedingWheel;
+        this.eventLog = eventLog;
     }
 
     /**
-     * Starts a recurring feeding schedule. If a schedule is already active,
-     * it will be replaced by the new one.
+     * Starts a recurring feeding schedule. If any schedules are already
+     * active, they are replaced by the new one.
      * @param mealPlanIndex Index of the meal plan to dispense.
      * @param periodSeconds Interval in seconds between feedings.
      */
     public synchronized void scheduleRecurringFeeding(final int mealPlanIndex,
                                                       long periodSeconds) {
-        if (currentTask != null && !currentTask.isCancelled()) {
-            currentTask.cancel(false);
+        if (periodSeconds <= 0) {
+            throw new IllegalArgumentException();
         }
+        stop();
+        addRecurringFeeding(mealPlanIndex, periodSeconds, TimeUnit.SECONDS);
+    }
 
-        currentTask = executor.scheduleAtFixedRate(new Runnable() {
+    /**
+     * Starts a recurring feeding schedule for a meal plan next to the
+     * schedules that are already active. An active schedule for the same
+     * meal plan is replaced.
+     * @param mealPlanIndex Index of the meal plan to dispense.
+     * @param period Interval between feedings.
+     * @param unit The unit of period.
+     */
+    public synchronized void addRecurringFeeding(final int mealPlanIndex, long period, TimeUnit unit) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Feeding scheduler has been shut down");
+        }
+        FeedingWheel.Schedule schedule = feedingWheel.schedule(petFeeder, mealPlanIndex, new Runnable() {
             @Override
             public void run() {
-                try {
-                    boolean dispensed = petFeeder.dispenseMeal(mealPlanIndex);
-                    if (!dispensed) {
-                        System.out.println("[Scheduler] Scheduled meal could not be dispensed (insufficient ingredients or energy budget).");
-                    } else {
-                        MealPlan[] plans = petFeeder.getMealPlans();
-                        String name = (plans[mealPlanIndex] != null) ? plans[mealPlanIndex].getName() : "(unknown meal)";
-                        System.out.println("[Scheduler] Dispensed scheduled meal: " + name);
-                    }
-                } catch (Exception e) {
-                    System.out.println("[Scheduler] Error during scheduled feeding: " + e.getMessage());
-                }
+                runScheduledFeeding(mealPlanIndex);
             }
-        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        }, period, unit);
+        schedules.put(mealPlanIndex, schedule);
+        changed();
+    }
+
+    /**
+     * Stops the feeding schedule of one meal plan. Returns false if the
+     * meal plan had no active schedule.
+     * @param mealPlanIndex Index of the meal plan.
+     * @return boolean
+     */
+    public synchronized boolean cancelRecurringFeeding(int mealPlanIndex) {
+        FeedingWheel.Schedule schedule = schedules.remove(mealPlanIndex);
+        if (schedule == null) {
+            return false;
+        }
+        changed();
+        return schedule.cancel();
     }
 
     /**
-     * Stops the current feeding schedule, if any.
+     * Performs one scheduled feeding: dispenses the meal plan and publishes
+     * the outcome, with the id of the feeder and the result of the dispense.
+     * @param mealPlanIndex Index of the meal plan to dispense.
+     */
+    void runScheduledFeeding(int mealPlanIndex) {
+        String feederId = petFeeder.getFeederId();
+        try {
+            DispenseResult result = petFeeder.dispenseMealResult(mealPlanIndex);
+            if (!result.isDispensed()) {
+                eventLog.publish(FeederEvent.Type.SCHEDULED_NOT_DISPENSED, feederId, mealPlanIndex, result, null);
+            } else {
+                MealPlan[] plans = petFeeder.getMealPlanSnapshot();
+                String name = (plans[mealPlanIndex] != null) ? plans[mealPlanIndex].getName() : "(unknown meal)";
+                eventLog.publish(FeederEvent.Type.SCHEDULED_DISPENSED, feederId, mealPlanIndex, result, name);
+            }
+        } catch (Exception e) {
+            eventLog.publish(FeederEvent.Type.SCHEDULED_ERROR, feederId, mealPlanIndex, null, e.getMessage());
+        }
+    }
+
+    /**
+     * Stops all feeding schedules of this scheduler, if any.
      */
     public synchronized void stop() {
-        if (currentTask != null) {
-            currentTask.cancel(false);
-            currentTask = null;
+        if (schedules.isEmpty()) {
+            return;
+        }
+        for (FeedingWheel.Schedule schedule : schedules.values()) {
+            schedule.cancel();
+        }
+        schedules.clear();
+        changed();
+    }
+
+    /**
+     * Returns the period in nanoseconds of each active schedule, keyed by
+     * meal plan index.
+     * @return Map of meal plan index to period
+     */
+    public synchronized Map<Integer, Long> getSchedulePeriods() {
+        Map<Integer, Long> periods = new HashMap<>();
+        for (Map.Entry<Integer, FeedingWheel.Schedule> entry : schedules.entrySet()) {
+            if (!entry.getValue().isCancelled()) {
+                periods.put(entry.getKey(), entry.getValue().getPeriodNanos());
+            }
+        }
+        return periods;
+    }
+
+    /**
+     * Sets the listener told when a schedule of this scheduler is added or
+     * removed, or removes it if null. The listener runs while the scheduler
+     * is locked and must be quick.
+     * @param changeListener The listener.
+     */
+    void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void changed() {
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
         }
     }
 
@@ -69,16 +181,31 @@ public class FeedingScheduler {
      * @return boolean
      */
     public synchronized boolean hasActiveSchedule() {
-        return currentTask != null && !currentTask.isCancelled();
+        Iterator<FeedingWheel.Schedule> it = schedules.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isCancelled()) {
+                it.remove();
+            }
+        }
+        return !schedules.isEmpty();
     }
 
     /**
-     * Shuts down the underlying executor service.
-     * Should be called before the program exits if possible.
+     * Returns the number of active schedules.
+     * @return int
      */
-    public void shutdown() {
-        stop(); // added in order for the test to work
-        executor.shutdownNow();
+    public synchronized int getActiveScheduleCount() {
+        hasActiveSchedule();
+        return schedules.size();
     }
-}
 
+    /**
+     * Stops all schedules of this scheduler; later calls to schedule a
+     * feeding are rejected. The shared feeding wheel keeps running for
+     * other schedulers.
+     */
+    public synchronized void shutdown() {
+        stop();
+        shutdown = true;
+    }
+}
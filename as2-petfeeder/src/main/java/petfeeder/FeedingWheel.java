@@ -0,0 +1,551 @@
+package petfeeder;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared engine for recurring feedings, built as a hashed timing wheel.
+ * <p>
+ * Time is split into ticks and the wheel is a ring of buckets, one per
+ * tick. A schedule sits in the bucket of its next deadline together with
+ * the number of full turns of the wheel still to wait, so schedules with
+ * long periods need no extra buckets. One timer thread advances the wheel
+ * and hands due schedules to a small worker pool, so the number of threads
+ * stays the same no matter how many schedules exist.
+ * <p>
+ * Schedules are keyed by (feeder, meal plan index); scheduling the same
+ * key again replaces the old schedule. Adding and cancelling only put the
+ * schedule on a queue that the timer thread drains on its next tick, and
+ * each bucket is a doubly linked list, so both are O(1).
+ * <p>
+ * Due feedings run either on a fixed pool of platform threads or, with
+ * {@link #withVirtualThreads(long, TimeUnit)}, each on its own virtual
+ * thread, so a feeding that blocks (on the feeder lock or on a hardware
+ * actuator) cannot hold up the feedings of other feeders. The shared wheel
+ * uses virtual threads when the system property
+ * {@code petfeeder.scheduler.virtualThreads} is {@code true}.
+ * <p>
+ * The wheel records timer drift: how late each run started compared to
+ * its planned time, and how many runs were skipped because the previous
+ * run of the same schedule was still going. The drift of every run is
+ * also recorded as scheduler lag in {@link FeederMetrics#shared()}.
+ * <p>
+ * The class is final because its constructors start the timer thread as
+ * their last step, which a subclass constructor would still be running
+ * behind.
+ */
+public final class FeedingWheel {
+
+    /** Default length of one tick in milliseconds. */
+    private static final long DEFAULT_TICK_MILLIS = 10;
+    /** Default number of buckets; must be a power of two. */
+    static final int DEFAULT_WHEEL_SIZE = 512;
+    /** System property that makes the shared wheel run feedings on virtual threads. */
+    public static final String VIRTUAL_THREADS_PROPERTY = "petfeeder.scheduler.virtualThreads";
+    /** Most pending schedules moved into the wheel per tick, so a burst cannot stall it. */
+    private static final int MAX_ADDS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+    private final ExecutorService workers;
+    private final boolean virtualThreads;
+    private final Thread timerThread;
+
+    /** Number of runs that started. */
+    private final LongAdder runs = new LongAdder();
+    /** Sum of the start delays of all runs, in nanoseconds. */
+    private final LongAdder totalDriftNanos = new LongAdder();
+    /** Largest start delay of a run, in nanoseconds. */
+    private final LongAccumulator maxDriftNanos = new LongAccumulator(Math::max, 0);
+    /** Number of runs skipped because the previous run was still going. */
+    private final LongAdder skippedRuns = new LongAdder();
+
+    /** Live schedules keyed by (feeder, meal plan index). */
+    private final ConcurrentHashMap<Key, Schedule> schedules = new ConcurrentHashMap<>();
+    private final Queue<Schedule> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Queue<Schedule> pendingCancels = new ConcurrentLinkedQueue<>();
+    /** Schedules that fired in the current tick; only used by the timer thread. */
+    private final ArrayList<Schedule> fired = new ArrayList<>();
+
+    private volatile boolean shutdown;
+    /** Number of ticks done; only changed by the timer thread. */
+    private long tick;
+
+    /**
+     * Creates a timing wheel with 10 ms ticks and one worker per core.
+     */
+    public FeedingWheel() {
+        this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a timing wheel.
+     * @param tickDuration The length of one tick.
+     * @param unit The unit of tickDuration.
+     * @param workerThreads The number of threads that run due feedings.
+     */
+    public FeedingWheel(long tickDuration, TimeUnit unit, int workerThreads) {
+        this(tickDuration, unit, workerThreads > 0
+                ? Executors.newFixedThreadPool(workerThreads, daemonThreads("feeding-wheel-worker-"))
+                : null, false);
+    }
+
+    /**
+     * Creates a timing wheel that runs each due feeding on its own virtual thread.
+     * @param tickDuration The length of one tick.
+     * @param unit The unit of tickDuration.
+     * @return FeedingWheel
+     */
+    public static FeedingWheel withVirtualThreads(long tickDuration, TimeUnit unit) {
+        return new FeedingWheel(tickDuration, unit,
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("feeding-wheel-virtual-", 1).factory()),
+                true);
+    }
+
+    private FeedingWheel(long tickDuration, TimeUnit unit, ExecutorService workers, boolean virtualThreads) {
+        if (tickDuration <= 0 || workers == null) {
+            throw new IllegalArgumentException();
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[DEFAULT_WHEEL_SIZE];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+        this.workers = workers;
+        this.virtualThreads = virtualThreads;
+        this.startTime = System.nanoTime();
+        // Every field is set, so the timer thread sees a fully built wheel.
+        this.timerThread = daemonThreads("feeding-wheel-timer").newThread(this::runTimer);
+        this.timerThread.start();
+    }
+
+    /**
+     * Returns the timing wheel shared by all feeding schedulers that are
+     * not given one explicitly.
+     * @return FeedingWheel
+     */
+    public static FeedingWheel shared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * Schedules a task to run every period, first one period from now,
+     * replacing any schedule with the same feeder and meal plan index.
+     * A run is skipped if the previous run of the same schedule is still
+     * going.
+     * @param petFeeder The feeder the schedule belongs to.
+     * @param mealPlanIndex The meal plan the schedule dispenses.
+     * @param task The work to do on each run.
+     * @param period The time between runs.
+     * @param unit The unit of period.
+     * @return Schedule The new schedule.
+     * @throws IllegalArgumentException if the period is not positive.
+     * @throws RejectedExecutionException if the wheel has been shut down.
+     */
+    public Schedule schedule(PetFeeder petFeeder, int mealPlanIndex, Runnable task,
+                             long period, TimeUnit unit) {
+        if (period <= 0 || task == null) {
+            throw new IllegalArgumentException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("Feeding wheel has been shut down");
+        }
+        long periodNanos = unit.toNanos(period);
+        Key key = new Key(petFeeder, mealPlanIndex);
+        Schedule schedule = new Schedule(this, key, task, periodNanos,
+                System.nanoTime() - startTime + periodNanos);
+        Schedule replaced = schedules.put(key, schedule);
+        if (replaced != null) {
+            replaced.cancel();
+        }
+        pendingAdds.add(schedule);
+        return schedule;
+    }
+
+    /**
+     * Cancels the schedule of a feeder and meal plan index. Returns false
+     * if there was no such schedule.
+     * @param petFeeder The feeder the schedule belongs to.
+     * @param mealPlanIndex The meal plan the schedule dispenses.
+     * @return boolean
+     */
+    public boolean cancel(PetFeeder petFeeder, int mealPlanIndex) {
+        Schedule schedule = schedules.get(new Key(petFeeder, mealPlanIndex));
+        return schedule != null && schedule.cancel();
+    }
+
+    /**
+     * Returns the schedule of a feeder and meal plan index, or null if there is none.
+     * @param petFeeder The feeder the schedule belongs to.
+     * @param mealPlanIndex The meal plan the schedule dispenses.
+     * @return Schedule
+     */
+    public Schedule getSchedule(PetFeeder petFeeder, int mealPlanIndex) {
+        return schedules.get(new Key(petFeeder, mealPlanIndex));
+    }
+
+    /**
+     * Returns the number of live schedules.
+     * @return int
+     */
+    public int size() {
+        return schedules.size();
+    }
+
+    /**
+     * Cancels all schedules and stops the timer and worker threads.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Schedule schedule : schedules.values()) {
+            schedule.cancel();
+        }
+        timerThread.interrupt();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Returns true if due feedings run on virtual threads.
+     * @return boolean
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Returns the number of runs that have started.
+     * @return long
+     */
+    public long getRunCount() {
+        return runs.sum();
+    }
+
+    /**
+     * Returns the number of runs skipped because the previous run of the
+     * same schedule was still going.
+     * @return long
+     */
+    public long getSkippedRunCount() {
+        return skippedRuns.sum();
+    }
+
+    /**
+     * Returns the average delay between the planned time of a run and the
+     * time it started, in nanoseconds, or 0 if nothing has run yet.
+     * @return long
+     */
+    public long getAverageDriftNanos() {
+        long count = runs.sum();
+        return count == 0 ? 0 : totalDriftNanos.sum() / count;
+    }
+
+    /**
+     * Returns the largest delay between the planned time of a run and the
+     * time it started, in nanoseconds.
+     * @return long
+     */
+    public long getMaxDriftNanos() {
+        return maxDriftNanos.get();
+    }
+
+    /**
+     * Clears the run and drift statistics.
+     */
+    public void resetDriftStats() {
+        runs.reset();
+        totalDriftNanos.reset();
+        maxDriftNanos.reset();
+        skippedRuns.reset();
+    }
+
+    /**
+     * Returns true if the wheel has been shut down.
+     * @return boolean
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * The timer thread: waits for each tick, applies pending cancels and
+     * adds, and fires the schedules that are due in the current bucket.
+     */
+    private void runTimer() {
+        while (!shutdown) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (shutdown) {
+                        break;
+                    }
+                    continue;
+                }
+            }
+            removeCancelled();
+            transferPendingAdds();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+        pendingAdds.clear();
+        pendingCancels.clear();
+    }
+
+    private void removeCancelled() {
+        Schedule schedule;
+        while ((schedule = pendingCancels.poll()) != null) {
+            if (schedule.bucket != null) {
+                schedule.bucket.remove(schedule);
+            }
+        }
+    }
+
+    private void transferPendingAdds() {
+        for (int i = 0; i < MAX_ADDS_PER_TICK; i++) {
+            Schedule schedule = pendingAdds.poll();
+            if (schedule == null) {
+                return;
+            }
+            if (!schedule.isCancelled()) {
+                place(schedule, tick);
+            }
+        }
+    }
+
+    /**
+     * Puts a schedule in the bucket of its deadline, counting the rounds
+     * from nextTick, the first tick whose bucket has not been expired yet:
+     * the current tick for new schedules, the one after it for schedules
+     * that just fired. Deadlines before nextTick go in its bucket.
+     */
+    private void place(Schedule schedule, long nextTick) {
+        long dueTick = Math.max(schedule.deadline / tickNanos, nextTick);
+        schedule.remainingRounds = (dueTick - nextTick) / wheel.length;
+        wheel[(int) (dueTick & mask)].add(schedule);
+    }
+
+    private void expire(Bucket bucket) {
+        Schedule schedule = bucket.head;
+        while (schedule != null) {
+            Schedule next = schedule.next;
+            if (schedule.remainingRounds <= 0) {
+                bucket.remove(schedule);
+                if (!schedule.isCancelled()) {
+                    fired.add(schedule);
+                }
+            } else {
+                schedule.remainingRounds--;
+            }
+            schedule = next;
+        }
+        long now = System.nanoTime() - startTime;
+        for (int i = 0; i < fired.size(); i++) {
+            Schedule due = fired.get(i);
+            dispatch(due);
+            due.advanceDeadline(now);
+            place(due, tick + 1);
+        }
+        fired.clear();
+    }
+
+    private void dispatch(final Schedule schedule) {
+        final long plannedTime = schedule.deadline;
+        try {
+            workers.execute(() -> schedule.runTask(plannedTime));
+        } catch (RejectedExecutionException e) {
+            // The workers are shutting down; the wheel stops on its next tick.
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix.endsWith("-") ? prefix + count.incrementAndGet() : prefix);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** Lazily created shared wheel. */
+    private static final class SharedHolder {
+        static final FeedingWheel INSTANCE = Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)
+                ? withVirtualThreads(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS)
+                : new FeedingWheel();
+    }
+
+    /**
+     * Identifies a schedule by its feeder (by identity) and meal plan index.
+     */
+    private static final class Key {
+        private final PetFeeder petFeeder;
+        private final int mealPlanIndex;
+
+        Key(PetFeeder petFeeder, int mealPlanIndex) {
+            this.petFeeder = petFeeder;
+            this.mealPlanIndex = mealPlanIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(petFeeder) + mealPlanIndex;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return petFeeder == other.petFeeder && mealPlanIndex == other.mealPlanIndex;
+        }
+    }
+
+    /**
+     * Doubly linked list of the schedules in one bucket. Only used by the
+     * timer thread.
+     */
+    private static final class Bucket {
+        private Schedule head;
+        private Schedule tail;
+
+        void add(Schedule schedule) {
+            schedule.bucket = this;
+            schedule.prev = tail;
+            schedule.next = null;
+            if (tail == null) {
+                head = schedule;
+            } else {
+                tail.next = schedule;
+            }
+            tail = schedule;
+        }
+
+        void remove(Schedule schedule) {
+            if (schedule.prev == null) {
+                head = schedule.next;
+            } else {
+                schedule.prev.next = schedule.next;
+            }
+            if (schedule.next == null) {
+                tail = schedule.prev;
+            } else {
+                schedule.next.prev = schedule.prev;
+            }
+            schedule.prev = null;
+            schedule.next = null;
+            schedule.bucket = null;
+        }
+    }
+
+    /**
+     * One recurring feeding in the wheel.
+     */
+    public static final class Schedule {
+        private final FeedingWheel wheel;
+        private final Key key;
+        private final Runnable task;
+        private final long periodNanos;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        // Only used by the timer thread.
+        private long deadline;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Schedule prev;
+        private Schedule next;
+
+        private Schedule(FeedingWheel wheel, Key key, Runnable task, long periodNanos, long deadline) {
+            this.wheel = wheel;
+            this.key = key;
+            this.task = task;
+            this.periodNanos = periodNanos;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Returns the meal plan index the schedule dispenses.
+         * @return int
+         */
+        public int getMealPlanIndex() {
+            return key.mealPlanIndex;
+        }
+
+        /**
+         * Returns the time between runs in nanoseconds.
+         * @return long
+         */
+        public long getPeriodNanos() {
+            return periodNanos;
+        }
+
+        /**
+         * Cancels the schedule. Returns false if it was already cancelled.
+         * A run that has already started is not interrupted.
+         * @return boolean
+         */
+        public boolean cancel() {
+            if (!cancelled.compareAndSet(false, true)) {
+                return false;
+            }
+            wheel.schedules.remove(key, this);
+            wheel.pendingCancels.add(this);
+            return true;
+        }
+
+        /**
+         * Returns true if the schedule has been cancelled.
+         * @return boolean
+         */
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        /**
+         * Moves the deadline on by whole periods until it is in the future,
+         * so runs missed while the wheel was behind are skipped, not bunched.
+         */
+        private void advanceDeadline(long now) {
+            deadline += periodNanos;
+            if (deadline <= now) {
+                deadline += ((now - deadline) / periodNanos + 1) * periodNanos;
+            }
+        }
+
+        private void runTask(long plannedTime) {
+            if (isCancelled()) {
+                return;
+            }
+            if (!running.compareAndSet(false, true)) {
+                wheel.skippedRuns.increment();
+                return;
+            }
+            long drift = Math.max(0, System.nanoTime() - wheel.startTime - plannedTime);
+            wheel.runs.increment();
+            wheel.totalDriftNanos.add(drift);
+            wheel.maxDriftNanos.accumulate(drift);
+            FeederMetrics.shared().scheduledRun(drift);
+            try {
+                task.run();
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+}
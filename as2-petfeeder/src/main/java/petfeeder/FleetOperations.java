@@ -0,0 +1,378 @@
+package petfeeder;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Replenish, dispense and audit across a whole fleet of feeders in
+ * parallel, for example every feeder of a FeederRegistry
+ * (registry.getFeeders().toArray(new PetFeeder[0])).
+ * <p>
+ * The feeder array is split in halves with fork/join until a part is
+ * small enough, so the work spreads over every thread of the pool and
+ * idle threads steal the rest. Each feeder is changed with the same
+ * atomic calls as one at a time: a replenish is one compare-and-set on its
+ * stock, a dispense holds its lock, and an audit reads its stock word
+ * once. The fleet as a whole is not locked, so feeders used by other
+ * threads meanwhile are counted as they were when they were reached.
+ * <p>
+ * The results are counts and sums added up part by part, not the text of
+ * checkFoodStock, so nothing is allocated per feeder.
+ */
+public final class FleetOperations {
+
+    /** Fewest feeders a part is split down to. */
+    static final int MIN_LEAF_SIZE = 256;
+    /** Parts per pool thread, so threads that finish early can steal work. */
+    private static final int PARTS_PER_THREAD = 8;
+
+    private static final DispenseResult[] RESULTS = DispenseResult.values();
+
+    private final ForkJoinPool pool;
+    private final int minLeafSize;
+
+    /**
+     * Creates fleet operations that run in the common fork/join pool.
+     */
+    public FleetOperations() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates fleet operations that run in the given pool.
+     * @param pool The pool to run in.
+     */
+    public FleetOperations(ForkJoinPool pool) {
+        this(pool, MIN_LEAF_SIZE);
+    }
+
+    /**
+     * Creates fleet operations that split parts down to the given size.
+     * @param pool The pool to run in.
+     * @param minLeafSize The fewest feeders in a part.
+     */
+    FleetOperations(ForkJoinPool pool, int minLeafSize) {
+        if (minLeafSize < 1) {
+            throw new IllegalArgumentException("Leaf size must be positive: " + minLeafSize);
+        }
+        this.pool = pool;
+        this.minLeafSize = minLeafSize;
+    }
+
+    /**
+     * Adds the same amounts to the stock of every feeder. A feeder that
+     * would overflow is left unchanged and counted as refused.
+     * @param feeders The feeders.
+     * @param kibble The amount of kibble to add.
+     * @param water The amount of water to add.
+     * @param wetFood The amount of wet food to add.
+     * @param treats The amount of treats to add.
+     * @return ReplenishReport
+     */
+    public ReplenishReport replenish(PetFeeder[] feeders, int kibble, int water, int wetFood, int treats) {
+        if (!FoodContainer.validUnits(kibble) || !FoodContainer.validUnits(water)
+                || !FoodContainer.validUnits(wetFood) || !FoodContainer.validUnits(treats)) {
+            throw new IllegalArgumentException("Amounts must be between 0 and " + FoodContainer.MAX_UNITS);
+        }
+        return run(feeders, (part, from, to) -> {
+            ReplenishReport report = new ReplenishReport();
+            for (int i = from; i < to; i++) {
+                if (part[i].replenish(kibble, water, wetFood, treats)) {
+                    report.replenished++;
+                } else {
+                    report.refused++;
+                }
+            }
+            return report;
+        });
+    }
+
+    /**
+     * Dispenses the meal plan at the same index on every feeder. A feeder
+     * with fewer meal plans counts as NO_MEAL_PLAN.
+     * @param feeders The feeders.
+     * @param mealPlan The index of the meal plan.
+     * @return DispenseReport
+     */
+    public DispenseReport dispense(PetFeeder[] feeders, int mealPlan) {
+        if (mealPlan < 0) {
+            throw new IllegalArgumentException("Meal plan index must not be negative: " + mealPlan);
+        }
+        return run(feeders, (part, from, to) -> {
+            DispenseReport report = new DispenseReport();
+            for (int i = from; i < to; i++) {
+                report.results[part[i].dispenseMealResult(mealPlan).ordinal()]++;
+            }
+            return report;
+        });
+    }
+
+    /**
+     * Sums the stock of every feeder, finds the lowest stock of each
+     * ingredient and counts the feeders that have less of any ingredient
+     * than its threshold. Only the stock word of each feeder is read, and
+     * nothing is locked.
+     * @param feeders The feeders.
+     * @param kibble The lowest units of kibble that are not low.
+     * @param water The lowest units of water that are not low.
+     * @param wetFood The lowest units of wet food that are not low.
+     * @param treats The lowest units of treats that are not low.
+     * @return AuditReport
+     */
+    public AuditReport audit(PetFeeder[] feeders, int kibble, int water, int wetFood, int treats) {
+        if (!FoodContainer.validUnits(kibble) || !FoodContainer.validUnits(water)
+                || !FoodContainer.validUnits(wetFood) || !FoodContainer.validUnits(treats)) {
+            throw new IllegalArgumentException("Thresholds must be between 0 and " + FoodContainer.MAX_UNITS);
+        }
+        long threshold = FoodContainer.pack(kibble, water, wetFood, treats);
+        return run(feeders, (part, from, to) -> {
+            AuditReport report = new AuditReport();
+            for (int i = from; i < to; i++) {
+                long stock = part[i].getStock();
+                report.add(stock);
+                if (!FoodContainer.covers(stock, threshold)) {
+                    report.lowStock++;
+                }
+            }
+            return report;
+        });
+    }
+
+    /**
+     * Returns the remaining energy budget summed over the feeders. Each
+     * budget reads the clock and its buckets, which costs several times an
+     * audit of the stock, so this is a query of its own.
+     * @param feeders The feeders.
+     * @return long
+     */
+    public long remainingEnergy(PetFeeder[] feeders) {
+        return run(feeders, (part, from, to) -> {
+            Sum sum = new Sum();
+            for (int i = from; i < to; i++) {
+                sum.value += part[i].getRemainingEnergyBudget();
+            }
+            return sum;
+        }).value;
+    }
+
+    private <R extends Report<R>> R run(PetFeeder[] feeders, Leaf<R> leaf) {
+        int leafSize = Math.max(minLeafSize, feeders.length / (pool.getParallelism() * PARTS_PER_THREAD));
+        return pool.invoke(new Part<>(feeders, 0, feeders.length, leafSize, leaf));
+    }
+
+    /**
+     * Work on the feeders from index from up to to of one part.
+     */
+    private interface Leaf<R> {
+        R run(PetFeeder[] feeders, int from, int to);
+    }
+
+    /**
+     * Report of one part that can take in the report of another.
+     */
+    private interface Report<R> {
+        R merge(R other);
+    }
+
+    /**
+     * A range of feeders, split in halves until it is no larger than the
+     * leaf size; the first half is forked and the second run in place.
+     * Serializable only through ForkJoinTask; parts are never serialized.
+     */
+    @SuppressWarnings("serial")
+    private static final class Part<R extends Report<R>> extends RecursiveTask<R> {
+        private final PetFeeder[] feeders;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        private final Leaf<R> leaf;
+
+        Part(PetFeeder[] feeders, int from, int to, int leafSize, Leaf<R> leaf) {
+            this.feeders = feeders;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= leafSize) {
+                return leaf.run(feeders, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            Part<R> first = new Part<>(feeders, from, middle, leafSize, leaf);
+            first.fork();
+            R second = new Part<>(feeders, middle, to, leafSize, leaf).compute();
+            return first.join().merge(second);
+        }
+    }
+
+    /**
+     * Sum of one value over the feeders.
+     */
+    private static final class Sum implements Report<Sum> {
+        private long value;
+
+        @Override
+        public Sum merge(Sum other) {
+            value += other.value;
+            return this;
+        }
+    }
+
+    /**
+     * Outcome of a fleet replenish.
+     */
+    public static final class ReplenishReport implements Report<ReplenishReport> {
+        private long replenished;
+        private long refused;
+
+        /**
+         * Returns the number of feeders that were replenished.
+         * @return long
+         */
+        public long getReplenished() {
+            return replenished;
+        }
+
+        /**
+         * Returns the number of feeders left unchanged because they would overflow.
+         * @return long
+         */
+        public long getRefused() {
+            return refused;
+        }
+
+        @Override
+        public ReplenishReport merge(ReplenishReport other) {
+            replenished += other.replenished;
+            refused += other.refused;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "replenished=" + replenished + " refused=" + refused;
+        }
+    }
+
+    /**
+     * Outcome of a fleet dispense: the number of feeders with each result.
+     */
+    public static final class DispenseReport implements Report<DispenseReport> {
+        private final long[] results = new long[RESULTS.length];
+
+        /**
+         * Returns the number of feeders whose dispense had the given result.
+         * @param result The result.
+         * @return long
+         */
+        public long getCount(DispenseResult result) {
+            return results[result.ordinal()];
+        }
+
+        /**
+         * Returns the number of feeders that dispensed the meal.
+         * @return long
+         */
+        public long getDispensed() {
+            return getCount(DispenseResult.DISPENSED);
+        }
+
+        @Override
+        public DispenseReport merge(DispenseReport other) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] += other.results[i];
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (DispenseResult result : RESULTS) {
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(result).append('=').append(results[result.ordinal()]);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Outcome of a fleet audit. Ingredients are in the order kibble,
+     * water, wet food, treats, as in FeederMetrics.stockLevels.
+     */
+    public static final class AuditReport implements Report<AuditReport> {
+        private long feeders;
+        private final long[] stock = new long[4];
+        private final int[] minimum = {FoodContainer.MAX_UNITS, FoodContainer.MAX_UNITS,
+                FoodContainer.MAX_UNITS, FoodContainer.MAX_UNITS};
+        private long lowStock;
+
+        private void add(long word) {
+            feeders++;
+            add(0, FoodContainer.unitsAt(word, FoodContainer.KIBBLE_SHIFT));
+            add(1, FoodContainer.unitsAt(word, FoodContainer.WATER_SHIFT));
+            add(2, FoodContainer.unitsAt(word, FoodContainer.WETFOOD_SHIFT));
+            add(3, FoodContainer.unitsAt(word, FoodContainer.TREATS_SHIFT));
+        }
+
+        private void add(int ingredient, int units) {
+            stock[ingredient] += units;
+            minimum[ingredient] = Math.min(minimum[ingredient], units);
+        }
+
+        /**
+         * Returns the number of feeders audited.
+         * @return long
+         */
+        public long getFeeders() {
+            return feeders;
+        }
+
+        /**
+         * Returns the stock of each ingredient summed over the feeders.
+         * @return long[]
+         */
+        public long[] getStock() {
+            return stock.clone();
+        }
+
+        /**
+         * Returns the lowest stock of each ingredient in any feeder, or
+         * MAX_UNITS if there were no feeders.
+         * @return int[]
+         */
+        public int[] getMinimum() {
+            return minimum.clone();
+        }
+
+        /**
+         * Returns the number of feeders low on any ingredient.
+         * @return long
+         */
+        public long getLowStock() {
+            return lowStock;
+        }
+
+        @Override
+        public AuditReport merge(AuditReport other) {
+            feeders += other.feeders;
+            for (int i = 0; i < stock.length; i++) {
+                stock[i] += other.stock[i];
+                minimum[i] = Math.min(minimum[i], other.minimum[i]);
+            }
+            lowStock += other.lowStock;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "feeders=" + feeders + " kibble=" + stock[0] + " water=" + stock[1]
+                    + " wetFood=" + stock[2] + " treats=" + stock[3] + " lowStock=" + lowStock;
+        }
+    }
+}
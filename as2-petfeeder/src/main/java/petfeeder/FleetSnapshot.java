@@ -0,0 +1,349 @@
+package petfeeder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact binary snapshot of every feeder in a FeederRegistry: the food
+ * stock, energy consumed and meal plans of each feeder, under its id, and
+ * the last record of its FeederJournal that the saved state includes.
+ * <p>
+ * Writing copies the state of one feeder at a time with
+ * {@link PetFeeder#captureState()}, which locks the feeder only for a few
+ * reads, so feeders keep dispensing while the snapshot is written. Each
+ * feeder is consistent on its own; feeders are not captured at the same
+ * instant.
+ * <p>
+ * File layout, big-endian, version {@value #VERSION}:
+ * <pre>
+ * header   int magic, int version, long created (ms since epoch)
+ * feeder   short idLength, id (UTF-8), long packed stock, int energy limit,
+ *          long energy window (ns), int energy buckets, int energy consumed in the window,
+ *          long journal sequence (0 without a journal), int slots, then per slot: int nameLength (-1 empty slot, -2 no name),
+ *          name (UTF-8), int kibble, int water, int wet food, int treats
+ * index    long offset of each feeder
+ * trailer  long index offset, int feeder count, int CRC32C of everything before it
+ * </pre>
+ * Opening a snapshot maps the file and reads the feeders straight from the
+ * mapped buffer without copying it. A snapshot file is at most 2 GB.
+ * Version 1 files, which hold only the energy consumed, are still read;
+ * their feeders get the default daily energy budget. Feeders of version 1
+ * and 2 files have no journal sequence.
+ * <p>
+ * The journal sequence lets {@link FeederJournal#recover(FleetSnapshot, int)}
+ * start from the snapshot and apply only the journal records written after it.
+ */
+public final class FleetSnapshot {
+
+    /** Format version written by this class. */
+    public static final int VERSION = 3;
+    /** "PFSN" */
+    private static final int MAGIC = 0x5046534E;
+    private static final int HEADER_SIZE = 16;
+    private static final int TRAILER_SIZE = 16;
+    private static final int EMPTY_SLOT = -1;
+    private static final int NO_NAME = -2;
+
+    private final MappedByteBuffer buffer;
+    private final int version;
+    private final long created;
+    private final int feederCount;
+    private final int indexOffset;
+
+    private FleetSnapshot(MappedByteBuffer buffer, int version, long created, int feederCount, int indexOffset) {
+        this.buffer = buffer;
+        this.version = version;
+        this.created = created;
+        this.feederCount = feederCount;
+        this.indexOffset = indexOffset;
+    }
+
+    /**
+     * Writes a snapshot of every feeder in the registry to a file.
+     * @param registry The feeders to save.
+     * @param file The file to write; it is replaced if it exists.
+     * @return int The number of feeders written.
+     * @throws IOException if the file cannot be written.
+     */
+    public static int write(FeederRegistry registry, Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new ChecksumOutput(Files.newOutputStream(file), crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            long[] offsets = new long[Math.max(16, registry.size())];
+            int count = 0;
+            for (String id : registry.getFeederIds()) {
+                PetFeeder petFeeder = registry.getFeeder(id);
+                if (petFeeder == null) {
+                    continue; // removed while the snapshot was written
+                }
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = out.size();
+                writeFeeder(out, id, petFeeder.captureState());
+            }
+
+            long indexOffset = out.size();
+            for (int i = 0; i < count; i++) {
+                out.writeLong(offsets[i]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(count);
+            out.flush();
+            out.writeInt((int) crc.getValue());
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Snapshot does not fit in 2 GB: " + file);
+            }
+            return count;
+        }
+    }
+
+    private static void writeFeeder(DataOutputStream out, String id, PetFeeder.State state) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > 0xFFFF) {
+            throw new IOException("Feeder id is too long for a snapshot: " + id);
+        }
+        out.writeShort(idBytes.length);
+        out.write(idBytes);
+        out.writeLong(state.stock);
+        out.writeInt(state.energyLimit);
+        out.writeLong(state.energyWindowNanos);
+        out.writeInt(state.energyBuckets);
+        out.writeInt(state.energyConsumed);
+        out.writeLong(state.journalSequence);
+        MealPlan[] mealPlans = state.mealPlans;
+        int slots = mealPlans.length;
+        while (slots > 0 && mealPlans[slots - 1] == null) {
+            slots--;
+        }
+        out.writeInt(slots);
+        for (int slot = 0; slot < slots; slot++) {
+            MealPlan mealPlan = mealPlans[slot];
+            if (mealPlan == null) {
+                out.writeInt(EMPTY_SLOT);
+                continue;
+            }
+            if (mealPlan.getName() == null) {
+                out.writeInt(NO_NAME);
+            } else {
+                byte[] name = mealPlan.getName().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+            }
+            out.writeInt(mealPlan.getAmtKibble());
+            out.writeInt(mealPlan.getAmtWater());
+            out.writeInt(mealPlan.getAmtWetFood());
+            out.writeInt(mealPlan.getAmtTreats());
+        }
+    }
+
+    /**
+     * Opens a snapshot file by mapping it into memory and checking its
+     * header, version and checksum.
+     * @param file The snapshot file.
+     * @return FleetSnapshot
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    public static FleetSnapshot open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a feeder snapshot: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int size = buffer.capacity();
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a feeder snapshot: " + file);
+        }
+        int version = buffer.getInt(4);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + file);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(0, size - 4));
+        if (buffer.getInt(size - 4) != (int) crc.getValue()) {
+            throw new IOException("Snapshot checksum does not match: " + file);
+        }
+        long indexOffset = buffer.getLong(size - TRAILER_SIZE);
+        int feederCount = buffer.getInt(size - TRAILER_SIZE + 8);
+        return new FleetSnapshot(buffer, version, buffer.getLong(8), feederCount, (int) indexOffset);
+    }
+
+    /**
+     * Returns the number of feeders in the snapshot.
+     * @return int
+     */
+    public int size() {
+        return feederCount;
+    }
+
+    /**
+     * Returns when the snapshot was written, in milliseconds since the epoch.
+     * @return long
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Returns the id of the feeder at a position in the snapshot.
+     * @param feeder The position of the feeder, from 0 to size() - 1.
+     * @return String
+     */
+    public String getFeederId(int feeder) {
+        int offset = offsetOf(feeder);
+        int idLength = buffer.getShort(offset) & 0xFFFF;
+        byte[] id = new byte[idLength];
+        buffer.get(offset + 2, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a new pet feeder with the saved state of the feeder at a
+     * position in the snapshot. The energy consumed in the saved window is
+     * counted as consumed when the snapshot was written.
+     * @param feeder The position of the feeder, from 0 to size() - 1.
+     * @return PetFeeder
+     */
+    public PetFeeder restoreFeeder(int feeder) {
+        return PetFeeder.fromState(getState(feeder), System.currentTimeMillis() - created);
+    }
+
+    /**
+     * Returns the sequence number of the last journal record included in
+     * the saved state of the feeder at a position in the snapshot, or 0 if
+     * the feeder had no journal.
+     * @param feeder The position of the feeder, from 0 to size() - 1.
+     * @return long
+     */
+    public long getJournalSequence(int feeder) {
+        return getState(feeder).journalSequence;
+    }
+
+    /**
+     * Returns the saved state of the feeder at a position in the snapshot.
+     * @param feeder The position of the feeder, from 0 to size() - 1.
+     * @return PetFeeder.State
+     */
+    PetFeeder.State getState(int feeder) {
+        int offset = offsetOf(feeder);
+        offset += 2 + (buffer.getShort(offset) & 0xFFFF);
+        long stock = buffer.getLong(offset);
+        int energyLimit = PetFeeder.DEFAULT_ENERGY_LIMIT;
+        long energyWindowNanos = TimeUnit.DAYS.toNanos(1);
+        int energyBuckets = EnergyBudget.DEFAULT_BUCKETS;
+        offset += 8;
+        if (version >= 2) {
+            energyLimit = buffer.getInt(offset);
+            energyWindowNanos = buffer.getLong(offset + 4);
+            energyBuckets = buffer.getInt(offset + 12);
+            offset += 16;
+        }
+        int energyConsumed = buffer.getInt(offset);
+        offset += 4;
+        long journalSequence = 0;
+        if (version >= 3) {
+            journalSequence = buffer.getLong(offset);
+            offset += 8;
+        }
+        int slots = buffer.getInt(offset);
+        offset += 4;
+        MealPlan[] mealPlans = new MealPlan[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            int nameLength = buffer.getInt(offset);
+            offset += 4;
+            if (nameLength == EMPTY_SLOT) {
+                continue;
+            }
+            MealPlan.Builder builder = new MealPlan.Builder();
+            if (nameLength >= 0) {
+                byte[] name = new byte[nameLength];
+                buffer.get(offset, name);
+                offset += nameLength;
+                builder.setName(new String(name, StandardCharsets.UTF_8));
+            }
+            builder.setAmtKibble(buffer.getInt(offset));
+            builder.setAmtWater(buffer.getInt(offset + 4));
+            builder.setAmtWetFood(buffer.getInt(offset + 8));
+            builder.setAmtTreats(buffer.getInt(offset + 12));
+            offset += 16;
+            mealPlans[slot] = builder.build();
+        }
+        return new PetFeeder.State(stock, energyLimit, energyWindowNanos, energyBuckets,
+                energyConsumed, mealPlans, journalSequence);
+    }
+
+    /**
+     * Returns a new registry holding a restored pet feeder for every
+     * feeder in the snapshot, under its saved id.
+     * @return FeederRegistry
+     */
+    public FeederRegistry restore() {
+        FeederRegistry registry = new FeederRegistry(feederCount);
+        for (int i = 0; i < feederCount; i++) {
+            registry.addFeeder(getFeederId(i), restoreFeeder(i));
+        }
+        return registry;
+    }
+
+    private int offsetOf(int feeder) {
+        if (feeder < 0 || feeder >= feederCount) {
+            throw new IndexOutOfBoundsException(feeder);
+        }
+        return (int) buffer.getLong(indexOffset + feeder * 8);
+    }
+
+    /**
+     * Feeds the bytes written to a checksum.
+     */
+    private static final class ChecksumOutput extends OutputStream {
+        private final OutputStream out;
+        private final CRC32C crc;
+
+        ChecksumOutput(OutputStream out, CRC32C crc) {
+            this.out = out;
+            this.crc = crc;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package petfeeder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a {@link FleetSnapshot} of a feeder registry to a directory at a
+ * fixed interval, on its own background thread.
+ * <p>
+ * Each snapshot is written to a temporary file, forced to disk and then
+ * moved into place, so a crash while writing never leaves a partial
+ * snapshot behind. Files are named {@code snapshot-<millis>.pfs}; only
+ * the newest few are kept. {@link #latest(Path)} finds the snapshot to
+ * restore from after a restart.
+ */
+public class FleetSnapshotWriter implements Closeable {
+
+    /** Number of snapshots kept in the directory. */
+    private static final int KEEP = 2;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".pfs";
+
+    private final FeederRegistry registry;
+    private final Path directory;
+    private final ScheduledExecutorService executor;
+    private volatile IOException lastFailure;
+
+    private FleetSnapshotWriter(FeederRegistry registry, Path directory) throws IOException {
+        this.registry = registry;
+        this.directory = Files.createDirectories(directory);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fleet-snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts writing snapshots of the registry to the directory.
+     * @param registry The feeders to save.
+     * @param directory The directory the snapshots are written to.
+     * @param period The time between snapshots.
+     * @param unit The unit of period.
+     * @return FleetSnapshotWriter
+     * @throws IOException if the directory cannot be created.
+     */
+    public static FleetSnapshotWriter start(FeederRegistry registry, Path directory, long period, TimeUnit unit)
+            throws IOException {
+        if (period <= 0) {
+            throw new IllegalArgumentException();
+        }
+        FleetSnapshotWriter writer = new FleetSnapshotWriter(registry, directory);
+        writer.executor.scheduleWithFixedDelay(writer::snapshotInBackground, period, period, unit);
+        return writer;
+    }
+
+    /**
+     * Writes a snapshot right away on the calling thread and returns its file.
+     * If it cannot be written, the temporary file is deleted.
+     * @return Path
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public synchronized Path snapshotNow() throws IOException {
+        long created = System.currentTimeMillis();
+        Path target = directory.resolve(PREFIX + created + SUFFIX);
+        Path temp = directory.resolve(PREFIX + created + ".tmp");
+        try {
+            FleetSnapshot.write(registry, temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        List<Path> snapshots = list(directory);
+        for (int i = 0; i < snapshots.size() - KEEP; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        return target;
+    }
+
+    private void snapshotInBackground() {
+        try {
+            snapshotNow();
+        } catch (IOException | RuntimeException e) {
+            // An exception thrown out of the task would cancel the later snapshots.
+            lastFailure = e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+
+    /**
+     * Returns the error of the last background snapshot that failed, or
+     * null if none has failed. Unchecked errors are wrapped in an IOException.
+     * @return IOException
+     */
+    public IOException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Stops writing snapshots. A snapshot that is being written is finished first.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the newest snapshot in the directory that can be opened, or
+     * null if there is none. Snapshots that are damaged are skipped.
+     * @param directory The snapshot directory.
+     * @return Path
+     * @throws IOException if the directory cannot be read.
+     */
+    public static Path latest(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        List<Path> snapshots = list(directory);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                FleetSnapshot.open(snapshots.get(i));
+                return snapshots.get(i);
+            } catch (IOException e) {
+                // damaged; try the one before it
+            }
+        }
+        return null;
+    }
+
+    /** Returns the snapshots in the directory, oldest first. */
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                snapshots.add(path);
+            }
+        }
+        Collections.sort(snapshots, (a, b) -> Long.compare(created(a), created(b)));
+        return snapshots;
+    }
+
+    private static long created(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
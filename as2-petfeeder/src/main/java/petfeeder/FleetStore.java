@@ -0,0 +1,612 @@
+package petfeeder;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import petfeeder.exceptions.FoodStockException;
+
+/**
+ * Off-heap storage for the state of a large fleet of feeders, kept in
+ * columns and indexed by feeder id, from 0 to capacity - 1.
+ * <p>
+ * Each kind of value is a column in its own direct ByteBuffer: the packed
+ * stock word, the energy limit, the buckets of the energy budget and, for
+ * each of the {@value #MEAL_PLANS} meal plan slots, the packed ingredient
+ * amounts and the id of the plan name. Names are stored once per store,
+ * since a fleet shares a few plan names, and are never removed. A feeder
+ * takes 60 bytes plus 8 per energy bucket, none of them on the heap, so a
+ * million feeders add nothing for the garbage collector to trace.
+ * <p>
+ * {@link Feeder} and {@link Container} are flyweights with the methods of
+ * PetFeeder and FoodContainer: one view can be moved to any feeder with
+ * moveTo, so a scan of the fleet needs no object per feeder. Container is
+ * a FoodContainer and can be passed to code that takes one. The stock and
+ * energy columns are updated with compare-and-set, as in FoodContainer and
+ * EnergyBudget. Meal plan changes and dispenses lock one of
+ * {@value #LOCK_STRIPES} locks chosen by feeder id, in place of the lock
+ * of a PetFeeder. Unlike a MealPlanBook, a feeder has a fixed number of
+ * meal plan slots.
+ */
+public final class FleetStore {
+
+    /** Meal plan slots of each feeder. */
+    public static final int MEAL_PLANS = 4;
+    /** Number of locks shared by the feeders for meal plan changes and dispenses. */
+    static final int LOCK_STRIPES = 64;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final int capacity;
+    private final int buckets;
+    private final long windowNanos;
+    private final long bucketNanos;
+    private final LongSupplier clock;
+    /** Time slices are counted from; as in EnergyBudget. */
+    private final long origin;
+
+    // Columns.
+    private final ByteBuffer stocks;
+    private final ByteBuffer limits;
+    private final ByteBuffer energyBuckets;
+    private final ByteBuffer planAmounts;
+    private final ByteBuffer planNames;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    /** Id of each meal plan name; id 0 is an empty slot. */
+    private final ConcurrentHashMap<String, Integer> nameIds = new ConcurrentHashMap<>();
+    /** Meal plan names by id; an id is read from a column before its name is looked up. */
+    private volatile String[] names = new String[16];
+    private int nameCount;
+
+    /**
+     * Creates a store of feeders like new PetFeeders: 15 units of each
+     * ingredient, no meal plans and {@value PetFeeder#DEFAULT_ENERGY_LIMIT}
+     * energy points per 24 hours in {@value EnergyBudget#DEFAULT_BUCKETS}
+     * buckets.
+     * @param capacity The number of feeders.
+     */
+    public FleetStore(int capacity) {
+        this(capacity, 24, TimeUnit.HOURS, EnergyBudget.DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Creates a store of feeders whose energy budgets share one window.
+     * Fewer buckets take less memory and slide the window more coarsely.
+     * @param capacity The number of feeders.
+     * @param window The length of the energy budget window.
+     * @param unit The unit of window.
+     * @param buckets The number of buckets the window is split into.
+     */
+    public FleetStore(int capacity, long window, TimeUnit unit, int buckets) {
+        this(capacity, unit.toNanos(window), buckets, System::nanoTime);
+    }
+
+    /**
+     * Creates a store that reads the time from the given clock.
+     * @param capacity The number of feeders.
+     * @param windowNanos The length of the energy budget window in nanoseconds.
+     * @param buckets The number of buckets the window is split into.
+     * @param clock The clock, in nanoseconds.
+     */
+    FleetStore(int capacity, long windowNanos, int buckets, LongSupplier clock) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        if (buckets < 1 || windowNanos < buckets) {
+            throw new IllegalArgumentException("Window of " + windowNanos + " ns cannot be split into " + buckets + " buckets");
+        }
+        if ((long) capacity * Math.max(buckets, MEAL_PLANS) * Long.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A column of " + capacity + " feeders does not fit in a buffer");
+        }
+        this.capacity = capacity;
+        this.buckets = buckets;
+        this.windowNanos = windowNanos;
+        this.bucketNanos = windowNanos / buckets;
+        this.clock = clock;
+        this.origin = clock.getAsLong() - windowNanos;
+        this.stocks = ByteBuffer.allocateDirect(capacity * Long.BYTES);
+        this.limits = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+        this.energyBuckets = ByteBuffer.allocateDirect(capacity * buckets * Long.BYTES);
+        this.planAmounts = ByteBuffer.allocateDirect(capacity * MEAL_PLANS * Long.BYTES);
+        this.planNames = ByteBuffer.allocateDirect(capacity * MEAL_PLANS * Integer.BYTES);
+        for (int id = 0; id < capacity; id++) {
+            LONGS.set(stocks, id * Long.BYTES, FoodContainer.INITIAL_STOCK);
+            INTS.set(limits, id * Integer.BYTES, PetFeeder.DEFAULT_ENERGY_LIMIT);
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the number of feeders.
+     * @return int
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the bytes of memory the columns take outside the heap.
+     * @return long
+     */
+    public long getOffHeapBytes() {
+        return (long) stocks.capacity() + limits.capacity() + energyBuckets.capacity()
+                + planAmounts.capacity() + planNames.capacity();
+    }
+
+    /**
+     * Returns a new view of a feeder, which can be moved to other feeders.
+     * @param id The id of the feeder.
+     * @return Feeder
+     */
+    public Feeder feeder(int id) {
+        return new Feeder().moveTo(id);
+    }
+
+    /**
+     * Returns a new view of the food container of a feeder, which can be
+     * moved to other feeders.
+     * @param id The id of the feeder.
+     * @return Container
+     */
+    public Container container(int id) {
+        return new Container().moveTo(id);
+    }
+
+    /**
+     * Copies the packed stock words of consecutive feeders into an array,
+     * for StockScan. Each word is read whole, but feeders may change while
+     * the others are copied.
+     * @param from The id of the first feeder.
+     * @param into The array to copy into.
+     * @param offset The index in into of the first feeder.
+     * @param length The number of feeders to copy.
+     */
+    public void copyStocks(int from, long[] into, int offset, int length) {
+        checkRange(from, into, offset, length);
+        for (int i = 0; i < length; i++) {
+            into[offset + i] = stock(from + i);
+        }
+    }
+
+    /**
+     * Copies the packed amounts of the meal plan in one slot of
+     * consecutive feeders into an array, for StockScan; an empty slot
+     * copies as 0, which any stock covers.
+     * @param slot The meal plan slot.
+     * @param from The id of the first feeder.
+     * @param into The array to copy into.
+     * @param offset The index in into of the first feeder.
+     * @param length The number of feeders to copy.
+     */
+    public void copyMealAmounts(int slot, int from, long[] into, int offset, int length) {
+        if (slot < 0 || slot >= MEAL_PLANS) {
+            throw new IndexOutOfBoundsException("No meal plan slot " + slot);
+        }
+        checkRange(from, into, offset, length);
+        for (int i = 0; i < length; i++) {
+            into[offset + i] = (long) LONGS.getVolatile(planAmounts, ((from + i) * MEAL_PLANS + slot) * Long.BYTES);
+        }
+    }
+
+    private void checkRange(int from, long[] into, int offset, int length) {
+        if (from < 0 || length < 0 || from > capacity - length || offset < 0 || offset > into.length - length) {
+            throw new IndexOutOfBoundsException("Cannot copy " + length + " feeders from " + from
+                    + " of " + capacity + " into index " + offset + " of " + into.length);
+        }
+    }
+
+    private int checkId(int id) {
+        if (id < 0 || id >= capacity) {
+            throw new IndexOutOfBoundsException("No feeder " + id + " in a store of " + capacity);
+        }
+        return id;
+    }
+
+    private Object lockOf(int id) {
+        return locks[id & (LOCK_STRIPES - 1)];
+    }
+
+    // Stock column.
+
+    private long stock(int id) {
+        return (long) LONGS.getVolatile(stocks, id * Long.BYTES);
+    }
+
+    private boolean casStock(int id, long expected, long updated) {
+        return LONGS.compareAndSet(stocks, id * Long.BYTES, expected, updated);
+    }
+
+    private boolean useIngredients(int id, long required) {
+        long current;
+        do {
+            current = stock(id);
+            if (!FoodContainer.covers(current, required)) {
+                return false;
+            }
+        } while (!casStock(id, current, current - required));
+        return true;
+    }
+
+    private boolean add(int id, long added) {
+        long current;
+        do {
+            current = stock(id);
+            if (!FoodContainer.fits(current, added)) {
+                return false;
+            }
+        } while (!casStock(id, current, current + added));
+        return true;
+    }
+
+    // Energy columns.
+
+    private long currentSlice() {
+        return Math.floorDiv(clock.getAsLong() - origin, bucketNanos);
+    }
+
+    private int consumed(int id) {
+        long slice = currentSlice();
+        int base = id * buckets * Long.BYTES;
+        long consumed = 0;
+        for (int i = 0; i < buckets; i++) {
+            consumed += EnergyBudget.energyIn((long) LONGS.getVolatile(energyBuckets, base + i * Long.BYTES), slice, buckets);
+        }
+        return (int) Math.min(consumed, Integer.MAX_VALUE);
+    }
+
+    private int remaining(int id) {
+        return Math.max(0, (int) INTS.getVolatile(limits, id * Integer.BYTES) - consumed(id));
+    }
+
+    private void consume(int id, int energy) {
+        if (energy <= 0) {
+            return;
+        }
+        long slice = currentSlice();
+        int offset = (id * buckets + (int) Math.floorMod(slice, (long) buckets)) * Long.BYTES;
+        long bucket;
+        long updated;
+        do {
+            bucket = (long) LONGS.getVolatile(energyBuckets, offset);
+            updated = EnergyBudget.addTo(bucket, slice, energy);
+        } while (updated != bucket && !LONGS.compareAndSet(energyBuckets, offset, bucket, updated));
+    }
+
+    // Meal plan columns; only used while holding the lock of the feeder.
+
+    private int nameIdAt(int id, int slot) {
+        return (int) INTS.get(planNames, (id * MEAL_PLANS + slot) * Integer.BYTES);
+    }
+
+    private long amountsAt(int id, int slot) {
+        return (long) LONGS.get(planAmounts, (id * MEAL_PLANS + slot) * Long.BYTES);
+    }
+
+    private void putPlan(int id, int slot, int nameId, long amounts) {
+        LONGS.set(planAmounts, (id * MEAL_PLANS + slot) * Long.BYTES, amounts);
+        INTS.set(planNames, (id * MEAL_PLANS + slot) * Integer.BYTES, nameId);
+    }
+
+    private MealPlan planAt(int id, int slot) {
+        int nameId = nameIdAt(id, slot);
+        if (nameId == 0) {
+            return null;
+        }
+        long amounts = amountsAt(id, slot);
+        MealPlan.Builder builder = new MealPlan.Builder();
+        builder.setName(names[nameId]);
+        builder.setAmtKibble(FoodContainer.unitsAt(amounts, FoodContainer.KIBBLE_SHIFT));
+        builder.setAmtWater(FoodContainer.unitsAt(amounts, FoodContainer.WATER_SHIFT));
+        builder.setAmtWetFood(FoodContainer.unitsAt(amounts, FoodContainer.WETFOOD_SHIFT));
+        builder.setAmtTreats(FoodContainer.unitsAt(amounts, FoodContainer.TREATS_SHIFT));
+        return builder.build();
+    }
+
+    private int nameId(String name) {
+        Integer nameId = nameIds.get(name);
+        return nameId != null ? nameId : registerName(name);
+    }
+
+    private synchronized int registerName(String name) {
+        Integer nameId = nameIds.get(name);
+        if (nameId != null) {
+            return nameId;
+        }
+        int next = nameCount + 1;
+        String[] current = next < names.length ? names : Arrays.copyOf(names, names.length * 2);
+        current[next] = name;
+        names = current;
+        nameCount = next;
+        nameIds.put(name, next);
+        return next;
+    }
+
+    /**
+     * View of one feeder of the store with the methods of PetFeeder. A view
+     * is not safe to move while another thread uses it; give each thread
+     * its own.
+     */
+    public final class Feeder {
+        private int id;
+        private final Container container = new Container();
+
+        private Feeder() {
+        }
+
+        /**
+         * Points the view at another feeder.
+         * @param id The id of the feeder.
+         * @return Feeder This view.
+         */
+        public Feeder moveTo(int id) {
+            this.id = checkId(id);
+            container.moveTo(id);
+            return this;
+        }
+
+        /**
+         * Returns the id of the feeder the view points at.
+         * @return int
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Returns a view of the food container of this feeder; it moves
+         * with this view.
+         * @return Container
+         */
+        public Container getFoodContainer() {
+            return container;
+        }
+
+        /**
+         * Returns true if the meal plan is added to the first empty slot,
+         * and false if it is null, has the name of another meal plan of
+         * the feeder or every slot is taken.
+         * @param m The meal plan to add.
+         * @return boolean
+         */
+        public boolean addMealPlan(MealPlan m) {
+            if (m == null || !FoodContainer.validAmounts(m)) {
+                return false;
+            }
+            int nameId = nameId(m.getName());
+            synchronized (lockOf(id)) {
+                int free = -1;
+                for (int slot = MEAL_PLANS - 1; slot >= 0; slot--) {
+                    int slotName = nameIdAt(id, slot);
+                    if (slotName == nameId) {
+                        return false;
+                    }
+                    if (slotName == 0) {
+                        free = slot;
+                    }
+                }
+                if (free < 0) {
+                    return false;
+                }
+                putPlan(id, free, nameId, FoodContainer.amountsOf(m));
+                return true;
+            }
+        }
+
+        /**
+         * Returns the name of the deleted meal plan, or null if the slot is empty.
+         * @param mealPlanToDelete The slot of the meal plan to delete.
+         * @return String
+         */
+        public String deleteMealPlan(int mealPlanToDelete) {
+            return editMealPlan(mealPlanToDelete, null);
+        }
+
+        /**
+         * Replaces the meal plan in a slot; null empties the slot. Returns
+         * the name of the meal plan replaced, or null if the slot is empty or
+         * another slot holds a meal plan with the new name.
+         * @param mealPlanToEdit The slot of the meal plan to edit.
+         * @param m The new meal plan.
+         * @return String
+         */
+        public String editMealPlan(int mealPlanToEdit, MealPlan m) {
+            if (mealPlanToEdit < 0 || mealPlanToEdit >= MEAL_PLANS || (m != null && !FoodContainer.validAmounts(m))) {
+                return null;
+            }
+            int nameId = m == null ? 0 : nameId(m.getName());
+            synchronized (lockOf(id)) {
+                int old = nameIdAt(id, mealPlanToEdit);
+                if (old == 0) {
+                    return null;
+                }
+                for (int slot = 0; slot < MEAL_PLANS; slot++) {
+                    if (m != null && slot != mealPlanToEdit && nameIdAt(id, slot) == nameId) {
+                        return null;
+                    }
+                }
+                putPlan(id, mealPlanToEdit, nameId, m == null ? 0 : FoodContainer.amountsOf(m));
+                return names[old];
+            }
+        }
+
+        /**
+         * Returns the meal plans of the feeder by slot; empty slots are
+         * null. The plans are built from the columns on every call.
+         * @return MealPlan[]
+         */
+        public MealPlan[] getMealPlans() {
+            MealPlan[] plans = new MealPlan[MEAL_PLANS];
+            synchronized (lockOf(id)) {
+                for (int slot = 0; slot < MEAL_PLANS; slot++) {
+                    plans[slot] = planAt(id, slot);
+                }
+            }
+            return plans;
+        }
+
+        /**
+         * Attempts to dispense the meal plan in a slot. Returns true if the
+         * energy budget and the stock allowed it.
+         * @param mealPlanToPurchase The slot of the meal plan.
+         * @return boolean True if dispensing succeeded.
+         */
+        public boolean dispenseMeal(int mealPlanToPurchase) {
+            if (mealPlanToPurchase < 0 || mealPlanToPurchase >= MEAL_PLANS) {
+                return false;
+            }
+            synchronized (lockOf(id)) {
+                if (nameIdAt(id, mealPlanToPurchase) == 0) {
+                    return false;
+                }
+                long amounts = amountsAt(id, mealPlanToPurchase);
+                int energy = MealPlan.energyCost(FoodContainer.unitsAt(amounts, FoodContainer.KIBBLE_SHIFT),
+                        FoodContainer.unitsAt(amounts, FoodContainer.WATER_SHIFT),
+                        FoodContainer.unitsAt(amounts, FoodContainer.WETFOOD_SHIFT),
+                        FoodContainer.unitsAt(amounts, FoodContainer.TREATS_SHIFT));
+                if (energy > remaining(id) || !useIngredients(id, amounts)) {
+                    return false;
+                }
+                consume(id, energy);
+                return true;
+            }
+        }
+
+        /**
+         * Returns true if food stock was replenished. Nothing is added if
+         * any amount is negative or would overfill the container.
+         * @param kibble The amount of kibble to add.
+         * @param water The amount of water to add.
+         * @param wetFood The amount of wet food to add.
+         * @param treats The amount of treats to add.
+         * @return boolean
+         */
+        public boolean replenish(int kibble, int water, int wetFood, int treats) {
+            return container.replenish(kibble, water, wetFood, treats);
+        }
+
+        /**
+         * Replenishes the food stock from string amounts, as PetFeeder does.
+         * @param amtKibble The amount of kibble to add.
+         * @param amtWater The amount of water to add.
+         * @param amtWetFood The amount of wet food to add.
+         * @param amtTreats The amount of treats to add.
+         * @throws FoodStockException if inputs are invalid.
+         */
+        public void replenishFood(String amtKibble, String amtWater, String amtWetFood, String amtTreats)
+                throws FoodStockException {
+            int kibble = FoodContainer.parseUnits(amtKibble, "kibble");
+            int water = FoodContainer.parseUnits(amtWater, "water");
+            int wetFood = FoodContainer.parseUnits(amtWetFood, "wet food");
+            int treats = FoodContainer.parseUnits(amtTreats, "treats");
+            if (!replenish(kibble, water, wetFood, treats)) {
+                throw new FoodStockException("Food stock would exceed the container capacity");
+            }
+        }
+
+        /**
+         * Returns the food stock status of the feeder.
+         * @return String
+         */
+        public String checkFoodStock() {
+            return container.toString();
+        }
+
+        /**
+         * Returns the energy limit per time window of this feeder.
+         * @return int
+         */
+        public int getEnergyLimit() {
+            return (int) INTS.getVolatile(limits, id * Integer.BYTES);
+        }
+
+        /**
+         * Sets the energy limit per time window of this feeder.
+         * @param limit The energy that may be consumed within one window.
+         */
+        public void setEnergyLimit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("Energy limit must not be negative: " + limit);
+            }
+            INTS.setVolatile(limits, id * Integer.BYTES, limit);
+        }
+
+        /**
+         * Returns the remaining energy budget (limit minus energy consumed
+         * in the current window).
+         * @return int
+         */
+        public int getRemainingEnergyBudget() {
+            return remaining(id);
+        }
+    }
+
+    /**
+     * View of the food container of one feeder of the store. It is a
+     * FoodContainer whose stock lives in the stock column. A view is not
+     * safe to move while another thread uses it; give each thread its own.
+     */
+    public final class Container extends FoodContainer {
+        private int id;
+
+        private Container() {
+        }
+
+        /**
+         * Points the view at the container of another feeder.
+         * @param id The id of the feeder.
+         * @return Container This view.
+         */
+        public Container moveTo(int id) {
+            this.id = checkId(id);
+            return this;
+        }
+
+        /**
+         * Returns the id of the feeder the view points at.
+         * @return int
+         */
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        long getStock() {
+            return stock(id);
+        }
+
+        @Override
+        void setStock(long stock) {
+            LONGS.setVolatile(stocks, id * Long.BYTES, stock);
+        }
+
+        @Override
+        void setUnits(int shift, int amount) {
+            if (!validUnits(amount)) {
+                return;
+            }
+            long current;
+            do {
+                current = stock(id);
+            } while (!casStock(id, current, (current & ~((long) MAX_UNITS << shift)) | ((long) amount << shift)));
+        }
+
+        @Override
+        boolean add(long added) {
+            return FleetStore.this.add(id, added);
+        }
+
+        @Override
+        boolean useIngredients(long required) {
+            return FleetStore.this.useIngredients(id, required);
+        }
+    }
+}
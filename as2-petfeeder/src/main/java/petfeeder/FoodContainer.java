@@ -1,26 +1,55 @@
 package petfeeder;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 import petfeeder.exceptions.FoodStockException;
 
 /**
  * Food stock/container for the pet feeder.
+ * <p>
+ * Every container owns its own stock. The four ingredient counts are packed
+ * into a single 64-bit word (16 bits per ingredient) which is only ever
+ * replaced through a compare-and-set, so a meal either takes all of its
+ * ingredients or none of them, without holding a monitor.
+ * <p>
+ * Every other method is built on getStock, setStock, setUnits, add and
+ * useIngredients(long), which {@link ShardedFoodContainer} overrides to
+ * keep the stock in stripes.
  */
 public class FoodContainer {
-    
-    private static int kibble;
-    private static int water;
-    private static int wetFood;
-    private static int treats;
+
+    /** Maximum number of units of a single ingredient the container can hold. */
+    public static final int MAX_UNITS = 0xFFFF;
+
+    /** Bit offsets of each ingredient inside the packed stock word. */
+    static final int KIBBLE_SHIFT = 0;
+    static final int WATER_SHIFT = 16;
+    static final int WETFOOD_SHIFT = 32;
+    static final int TREATS_SHIFT = 48;
+
+    private static final VarHandle STOCK;
+
+    static {
+        try {
+            STOCK = MethodHandles.lookup().findVarHandle(FoodContainer.class, "stock", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** Stock of a new container: 15 units of each ingredient. */
+    static final long INITIAL_STOCK = pack(15, 15, 15, 15);
+
+    /** Packed kibble, water, wet food and treats units of this container. */
+    private volatile long stock;
     
     /**
      * Creates a pet feeder food container object and
      * fills each item in the container with 15 units.
      */
     public FoodContainer() {
-        setKibble(15);
-        setWater(15);
-        setWetFood(15);
-        setTreats(15);
+        this.stock = INITIAL_STOCK;
     }
     
     /**
@@ -29,39 +58,41 @@ public class FoodContainer {
      * @return int
      */
     public int getTreats() {
-        return treats;
+        return unitsAt(getStock(), TREATS_SHIFT);
     }
     
     /**
      * Sets the number of treat units in the food container
-     * to the specified amount.
+     * to the specified amount. An amount that is negative or above
+     * MAX_UNITS is ignored and leaves the stock unchanged.
      * @param treats The amount of treats to set.
      */
-    public synchronized void setTreats(int treats) {
-        if(treats >= 0) {
-            FoodContainer.treats = treats;
-        }
+    public void setTreats(int treats) {
+        setUnits(TREATS_SHIFT, treats);
     }
     
     /**
-     * Add the number of treat units in the container 
-     * to the current amount of treat units.
+     * Add the number of treats units in the container 
+     * to the current amount of treats units.
      * @param treats The amount of treats to add (as a string).
      * @throws FoodStockException if the input is not a positive integer.
      */
-    public synchronized void addTreats(String treats) throws FoodStockException {
-        int amtTreats = 0;
-        try {
-            amtTreats = Integer.parseInt(treats);
-        } catch (NumberFormatException e) {
-            throw new FoodStockException("Units of treats must be a positive integer");
-        }
-        if (amtTreats >= 0) {
-            FoodContainer.treats += amtTreats;
-        } else {
-            throw new FoodStockException("Units of treats must be a positive integer");
+    public void addTreats(String treats) throws FoodStockException {
+        if (!addTreats(parseUnits(treats, "treats"))) {
+            throw new FoodStockException("Units of treats exceed the container capacity");
         }
     }
+
+    /**
+     * Add the number of treats units in the container to the current
+     * amount of treats units. Returns false, leaving the stock unchanged,
+     * if the amount is negative or would exceed MAX_UNITS.
+     * @param treats The amount of treats to add.
+     * @return boolean True if the treats was added.
+     */
+    public boolean addTreats(int treats) {
+        return validUnits(treats) && add((long) treats << TREATS_SHIFT);
+    }
     
     /**
      * Returns the current number of kibble units in
@@ -69,18 +100,17 @@ public class FoodContainer {
      * @return int
      */
     public int getKibble() {
-        return kibble;
+        return unitsAt(getStock(), KIBBLE_SHIFT);
     }
     
     /**
      * Sets the number of kibble units in the food container 
-     * to the specified amount.
+     * to the specified amount. An amount that is negative or above
+     * MAX_UNITS is ignored and leaves the stock unchanged.
      * @param kibble The amount of kibble to set.
      */
-    public synchronized void setKibble(int kibble) {
-        if(kibble >= 0) {
-            FoodContainer.kibble = kibble;
-        }
+    public void setKibble(int kibble) {
+        setUnits(KIBBLE_SHIFT, kibble);
     }
     
     /**
@@ -89,19 +119,22 @@ public class FoodContainer {
      * @param kibble The amount of kibble to add (as a string).
      * @throws FoodStockException if the input is not a positive integer.
      */
-    public synchronized void addKibble(String kibble) throws FoodStockException {
-        int amtKibble = 0;
-        try {
-            amtKibble = Integer.parseInt(kibble);
-        } catch (NumberFormatException e) {
-            throw new FoodStockException("Units of kibble must be a positive integer");
-        }
-        if (amtKibble >= 0) {
-            FoodContainer.kibble += amtKibble;
-        } else {
-            throw new FoodStockException("Units of kibble must be a positive integer");
+    public void addKibble(String kibble) throws FoodStockException {
+        if (!addKibble(parseUnits(kibble, "kibble"))) {
+            throw new FoodStockException("Units of kibble exceed the container capacity");
         }
     }
+
+    /**
+     * Add the number of kibble units in the container to the current
+     * amount of kibble units. Returns false, leaving the stock unchanged,
+     * if the amount is negative or would exceed MAX_UNITS.
+     * @param kibble The amount of kibble to add.
+     * @return boolean True if the kibble was added.
+     */
+    public boolean addKibble(int kibble) {
+        return validUnits(kibble) && add((long) kibble << KIBBLE_SHIFT);
+    }
     
     /**
      * Returns the current number of water units in
@@ -109,18 +142,17 @@ public class FoodContainer {
      * @return int
      */
     public int getWater() {
-        return water;
+        return unitsAt(getStock(), WATER_SHIFT);
     }
     
     /**
      * Sets the number of water units in the food container
-     * to the specified amount.
+     * to the specified amount. An amount that is negative or above
+     * MAX_UNITS is ignored and leaves the stock unchanged.
      * @param water The amount of water to set.
      */
-    public synchronized void setWater(int water) {
-        if(water >= 0) {
-            FoodContainer.water = water;
-        }
+    public void setWater(int water) {
+        setUnits(WATER_SHIFT, water);
     }
     
     /**
@@ -129,19 +161,22 @@ public class FoodContainer {
      * @param water The amount of water to add (as a string).
      * @throws FoodStockException if the input is not a positive integer.
      */
-    public synchronized void addWater(String water) throws FoodStockException {
-        int amtWater = 0;
-        try {
-            amtWater = Integer.parseInt(water);
-        } catch (NumberFormatException e) {
-            throw new FoodStockException("Units of water must be a positive integer");
-        }
-        if (amtWater >= 0) {
-            FoodContainer.water += amtWater;
-        } else {
-            throw new FoodStockException("Units of water must be a positive integer");
+    public void addWater(String water) throws FoodStockException {
+        if (!addWater(parseUnits(water, "water"))) {
+            throw new FoodStockException("Units of water exceed the container capacity");
         }
     }
+
+    /**
+     * Add the number of water units in the container to the current
+     * amount of water units. Returns false, leaving the stock unchanged,
+     * if the amount is negative or would exceed MAX_UNITS.
+     * @param water The amount of water to add.
+     * @return boolean True if the water was added.
+     */
+    public boolean addWater(int water) {
+        return validUnits(water) && add((long) water << WATER_SHIFT);
+    }
     
     /**
      * Returns the current number of wet food units in 
@@ -149,18 +184,17 @@ public class FoodContainer {
      * @return int
      */
     public int getWetFood() {
-        return wetFood;
+        return unitsAt(getStock(), WETFOOD_SHIFT);
     }
     
     /**
      * Sets the number of wet food units in the food container
-     * to the specified amount.
+     * to the specified amount. An amount that is negative or above
+     * MAX_UNITS is ignored and leaves the stock unchanged.
      * @param wetFood The amount of wet food to set.
      */
-    public synchronized void setWetFood(int wetFood) {
-        if(wetFood >= 0) {
-            FoodContainer.wetFood = wetFood;
-        }
+    public void setWetFood(int wetFood) {
+        setUnits(WETFOOD_SHIFT, wetFood);
     }
     
     /**
@@ -169,60 +203,119 @@ public class FoodContainer {
      * @param wetFood The amount of wet food to add (as a string).
      * @throws FoodStockException if the input is not a positive integer.
      */
-    public synchronized void addWetFood(String wetFood) throws FoodStockException {
-        int amtWetFood = 0;
-        try {
-            amtWetFood = Integer.parseInt(wetFood);
-        } catch (NumberFormatException e) {
-            throw new FoodStockException("Units of wet food must be a positive integer");
-        }
-        if (amtWetFood >= 0) {
-            FoodContainer.wetFood += amtWetFood;
-        } else {
-            throw new FoodStockException("Units of wet food must be a positive integer");
+    public void addWetFood(String wetFood) throws FoodStockException {
+        if (!addWetFood(parseUnits(wetFood, "wet food"))) {
+            throw new FoodStockException("Units of wet food exceed the container capacity");
         }
     }
+
+    /**
+     * Add the number of wet food units in the container to the current
+     * amount of wet food units. Returns false, leaving the stock unchanged,
+     * if the amount is negative or would exceed MAX_UNITS.
+     * @param wetFood The amount of wet food to add.
+     * @return boolean True if the wet food was added.
+     */
+    public boolean addWetFood(int wetFood) {
+        return validUnits(wetFood) && add((long) wetFood << WETFOOD_SHIFT);
+    }
     
+    /**
+     * Adds units of all four ingredients in one atomic step. Returns false,
+     * leaving the stock unchanged, if any amount is negative or would take
+     * its ingredient past MAX_UNITS.
+     * @param kibble The amount of kibble to add.
+     * @param water The amount of water to add.
+     * @param wetFood The amount of wet food to add.
+     * @param treats The amount of treats to add.
+     * @return boolean True if the stock was replenished.
+     */
+    public boolean replenish(int kibble, int water, int wetFood, int treats) {
+        if (!validUnits(kibble) || !validUnits(water) || !validUnits(wetFood) || !validUnits(treats)) {
+            return false;
+        }
+        return add(pack(kibble, water, wetFood, treats));
+    }
+
+    /**
+     * Adds the packed amounts to the stock in one atomic step, or leaves
+     * the stock unchanged and returns false if any ingredient would
+     * exceed MAX_UNITS.
+     * @param added The packed amounts to add.
+     * @return boolean True if the amounts were added.
+     */
+    boolean add(long added) {
+        long current;
+        do {
+            current = stock;
+            if (!fits(current, added)) {
+                return false;
+            }
+        } while (!STOCK.compareAndSet(this, current, current + added));
+        return true;
+    }
+
     /**
      * Returns true if there are enough ingredients to make
      * the meal.
      * @param m The meal plan to check against the food stock.
      * @return boolean
      */
-    protected synchronized boolean enoughIngredients(MealPlan m) {
-        boolean isEnough = true;
-        if(FoodContainer.kibble < m.getAmtKibble()) {
-            isEnough = false;
-        }
-        if(FoodContainer.water < m.getAmtWater()) {
-            isEnough = false;
-        }
-        if(FoodContainer.wetFood < m.getAmtWetFood()) {
-            isEnough = false;
-        }
-        if(FoodContainer.treats < m.getAmtTreats()) {
-            isEnough = false;
+    protected boolean enoughIngredients(MealPlan m) {
+        if (!validAmounts(m)) {
+            return false;
         }
-        return isEnough;
+        return covers(getStock(), amountsOf(m));
     }
     
     /**
      * Removes the ingredients used to make the specified 
-     * meal. Assumes that the user has checked that there
-     * are enough ingredients to make.
+     * meal. The check and the removal happen as one atomic
+     * step, so concurrent callers can never take more than
+     * is in stock.
      * @param m The meal plan to dispense.
      * @return boolean True if ingredients were successfully used.
      */
-    public synchronized boolean useIngredients(MealPlan m) {
-        if (enoughIngredients(m)) {
-            FoodContainer.kibble -= m.getAmtKibble();
-            FoodContainer.water -= m.getAmtWater();
-            FoodContainer.wetFood -= m.getAmtWetFood();
-            FoodContainer.treats -= m.getAmtTreats();
-            return true;
-        } else {
+    public boolean useIngredients(MealPlan m) {
+        if (!validAmounts(m)) {
             return false;
         }
+        return useIngredients(amountsOf(m));
+    }
+
+    /**
+     * Removes the packed ingredient amounts from the stock in one
+     * atomic step, or leaves the stock unchanged and returns false
+     * if any ingredient is short.
+     * @param required The packed amounts to remove.
+     * @return boolean True if ingredients were successfully used.
+     */
+    boolean useIngredients(long required) {
+        long current;
+        do {
+            current = stock;
+            if (!covers(current, required)) {
+                return false;
+            }
+        } while (!STOCK.compareAndSet(this, current, current - required));
+        return true;
+    }
+
+    /**
+     * Returns the packed stock word of the container.
+     * @return long
+     */
+    long getStock() {
+        return stock;
+    }
+
+    /**
+     * Replaces the whole stock with a packed stock word, for restoring a
+     * saved state.
+     * @param stock The packed stock word.
+     */
+    void setStock(long stock) {
+        this.stock = stock;
     }
     
     /**
@@ -231,19 +324,140 @@ public class FoodContainer {
      * @return String
      */
     public String toString() {
+        long current = getStock();
         StringBuffer buf = new StringBuffer();
         buf.append("Kibble: ");
-        buf.append(getKibble());
+        buf.append(unitsAt(current, KIBBLE_SHIFT));
         buf.append("\n");
         buf.append("Water: ");
-        buf.append(getWater());
+        buf.append(unitsAt(current, WATER_SHIFT));
         buf.append("\n");
         buf.append("Wet Food: ");
-        buf.append(getWetFood());
+        buf.append(unitsAt(current, WETFOOD_SHIFT));
         buf.append("\n");
         buf.append("Treats: ");
-        buf.append(getTreats());
+        buf.append(unitsAt(current, TREATS_SHIFT));
         buf.append("\n");
         return buf.toString();
     }
+
+    /**
+     * Replaces the units of a single ingredient. Amounts outside
+     * 0..MAX_UNITS are ignored.
+     * @param shift The bit offset of the ingredient.
+     * @param amount The amount to set.
+     */
+    void setUnits(int shift, int amount) {
+        if (!validUnits(amount)) {
+            return;
+        }
+        long current;
+        do {
+            current = stock;
+        } while (!STOCK.compareAndSet(this, current,
+                (current & ~((long) MAX_UNITS << shift)) | ((long) amount << shift)));
+    }
+
+    /**
+     * Parses a non-negative number of units of an ingredient.
+     * @param amount The amount as a string.
+     * @param ingredient The ingredient name used in the error message.
+     * @return int
+     * @throws FoodStockException if the input is not a positive integer.
+     */
+    static int parseUnits(String amount, String ingredient) throws FoodStockException {
+        int units = -1;
+        try {
+            units = Integer.parseInt(amount);
+        } catch (NumberFormatException e) {
+            units = -1;
+        }
+        if (units < 0) {
+            throw new FoodStockException("Units of " + ingredient + " must be a positive integer");
+        }
+        return units;
+    }
+
+    /**
+     * Returns true if the amount fits into one ingredient slot.
+     * @param amount The amount to check.
+     * @return boolean
+     */
+    static boolean validUnits(int amount) {
+        return amount >= 0 && amount <= MAX_UNITS;
+    }
+
+    /**
+     * Returns true if every ingredient amount of the meal plan fits
+     * into one ingredient slot.
+     * @param m The meal plan to check.
+     * @return boolean
+     */
+    static boolean validAmounts(MealPlan m) {
+        return validUnits(m.getAmtKibble()) && validUnits(m.getAmtWater())
+                && validUnits(m.getAmtWetFood()) && validUnits(m.getAmtTreats());
+    }
+
+    /**
+     * Packs the ingredient amounts of a meal plan into a stock word.
+     * The amounts must have been checked with validAmounts.
+     * @param m The meal plan to pack.
+     * @return long
+     */
+    static long amountsOf(MealPlan m) {
+        return pack(m.getAmtKibble(), m.getAmtWater(), m.getAmtWetFood(), m.getAmtTreats());
+    }
+
+    /**
+     * Packs four ingredient amounts, each within 0..MAX_UNITS, into a stock word.
+     * @param kibble The units of kibble.
+     * @param water The units of water.
+     * @param wetFood The units of wet food.
+     * @param treats The units of treats.
+     * @return long
+     */
+    static long pack(int kibble, int water, int wetFood, int treats) {
+        return ((long) kibble << KIBBLE_SHIFT)
+                | ((long) water << WATER_SHIFT)
+                | ((long) wetFood << WETFOOD_SHIFT)
+                | ((long) treats << TREATS_SHIFT);
+    }
+
+    /**
+     * Returns true if adding the packed amounts to the stock keeps
+     * every ingredient within MAX_UNITS.
+     * @param stock The packed stock.
+     * @param added The packed amounts to add.
+     * @return boolean
+     */
+    static boolean fits(long stock, long added) {
+        return unitsAt(stock, KIBBLE_SHIFT) + unitsAt(added, KIBBLE_SHIFT) <= MAX_UNITS
+                && unitsAt(stock, WATER_SHIFT) + unitsAt(added, WATER_SHIFT) <= MAX_UNITS
+                && unitsAt(stock, WETFOOD_SHIFT) + unitsAt(added, WETFOOD_SHIFT) <= MAX_UNITS
+                && unitsAt(stock, TREATS_SHIFT) + unitsAt(added, TREATS_SHIFT) <= MAX_UNITS;
+    }
+
+    /**
+     * Returns the units of one ingredient stored in a stock word.
+     * @param word The packed stock word.
+     * @param shift The bit offset of the ingredient.
+     * @return int
+     */
+    static int unitsAt(long word, int shift) {
+        return (int) (word >>> shift) & MAX_UNITS;
+    }
+
+    /**
+     * Returns true if every ingredient in available is at least
+     * the matching ingredient in required.
+     * @param available The packed stock that is available.
+     * @param required The packed amounts that are required.
+     * @return boolean
+     */
+    static boolean covers(long available, long required) {
+        return unitsAt(available, KIBBLE_SHIFT) >= unitsAt(required, KIBBLE_SHIFT)
+                && unitsAt(available, WATER_SHIFT) >= unitsAt(required, WATER_SHIFT)
+                && unitsAt(available, WETFOOD_SHIFT) >= unitsAt(required, WETFOOD_SHIFT)
+                && unitsAt(available, TREATS_SHIFT) >= unitsAt(required, TREATS_SHIFT);
+    }
 }
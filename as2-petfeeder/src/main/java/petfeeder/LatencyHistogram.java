@@ -0,0 +1,131 @@
+package petfeeder;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with a fixed relative precision,
+ * in the style of an HdrHistogram.
+ * <p>
+ * Values below {@value #SUB_BUCKETS} have a bucket each. Every power of two
+ * above that is split into {@value #SUB_BUCKETS} equal buckets, so a value
+ * is off by at most 1 / {@value #SUB_BUCKETS} (about 3%) of itself. All
+ * buckets are allocated up front, so recording never allocates and never
+ * locks; it is one index calculation and one atomic increment.
+ */
+public final class LatencyHistogram {
+
+    /** Bits of precision below the highest set bit of a value. */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Enough buckets for every non-negative long. */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records one duration. Negative values are recorded as 0.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.getAndIncrement(bucketOf(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return long
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the recorded values, 0 if there are none.
+     * @return long
+     */
+    public long getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : total.sum() / n;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     * @return long
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value that the given percentage of the recorded values
+     * are at or below, to the precision of the histogram; 0 if nothing was
+     * recorded.
+     * @param percentile The percentage, from 0 to 100.
+     * @return long
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears the histogram. Values recorded while it is cleared may be
+     * partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + " mean=" + getMean() + "ns p50=" + getValueAtPercentile(50)
+                + "ns p99=" + getValueAtPercentile(99) + "ns p99.9=" + getValueAtPercentile(99.9)
+                + "ns max=" + getMax() + "ns";
+    }
+}
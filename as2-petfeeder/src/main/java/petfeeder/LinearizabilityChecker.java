@@ -0,0 +1,443 @@
+package petfeeder;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that a history of concurrent operations on a FoodContainer, and on
+ * the PetFeeder that owns it, is linearizable: that there is an order of
+ * the operations, keeping every operation that ended before another began
+ * ahead of it, in which each one returns what it returned when run one at
+ * a time on a simple sequential model of the stock and energy budget.
+ * <p>
+ * Threads run their operations through a {@link History}, which calls the
+ * container or feeder and records when each call began and ended and what
+ * it returned. {@link #check(History)} then searches for such an order with
+ * the Wing and Gong algorithm, remembering each set of linearized
+ * operations and model state it has tried (Lowe's improvement), so it
+ * stays fast for histories of a few hundred operations. Stress tests
+ * repeat short rounds instead of recording one long history.
+ * <p>
+ * The model is the packed stock word and the remaining energy budget.
+ * useIngredients takes all ingredients of a meal if they are in stock;
+ * replenish and the add methods add theirs if none goes over MAX_UNITS; a
+ * getter returns the units in stock; dispenseMeal takes the ingredients
+ * and energy of the meal if both are there. Meal plans must not change,
+ * and the budget window must not move, while a history is recorded.
+ */
+public final class LinearizabilityChecker {
+
+    /**
+     * Kinds of recorded operations.
+     */
+    enum Kind {
+        /** Takes packed amounts if they are in stock. */
+        USE,
+        /** Adds packed amounts if they fit. */
+        ADD,
+        /** Reads the units of one ingredient; the argument is its shift. */
+        READ,
+        /** Takes packed amounts and energy if both are there. */
+        DISPENSE
+    }
+
+    private LinearizabilityChecker() {
+    }
+
+    /**
+     * Returns true if the history is linearizable. Every recorded
+     * operation must have ended.
+     * @param history The history to check.
+     * @return boolean
+     */
+    public static boolean check(History history) {
+        int count = history.size();
+        Node head = new Node(-1, false);
+        Node[] events = new Node[2 * count];
+        for (int op = 0; op < count; op++) {
+            if (history.ends[op] == 0) {
+                throw new IllegalStateException("Operation " + op + " has not ended");
+            }
+            Node call = new Node(op, true);
+            Node end = new Node(op, false);
+            call.match = end;
+            events[2 * op] = call;
+            events[2 * op + 1] = end;
+        }
+        Arrays.sort(events, (a, b) -> Long.compare(a.time(history), b.time(history)));
+        Node last = head;
+        for (Node event : events) {
+            last.next = event;
+            event.prev = last;
+            last = event;
+        }
+
+        long stock = history.initialStock;
+        int remaining = history.initialRemaining;
+        BitSet linearized = new BitSet(count);
+        Set<State> tried = new HashSet<>();
+        Deque<Frame> calls = new ArrayDeque<>();
+        Node entry = head.next;
+        while (head.next != null) {
+            if (entry.call) {
+                int op = entry.op;
+                long[] next = step(history, op, stock, remaining);
+                if (next != null) {
+                    linearized.set(op);
+                    if (tried.add(new State((BitSet) linearized.clone(), next[0], (int) next[1]))) {
+                        calls.push(new Frame(entry, stock, remaining));
+                        stock = next[0];
+                        remaining = (int) next[1];
+                        lift(entry);
+                        entry = head.next;
+                        continue;
+                    }
+                    linearized.clear(op);
+                }
+                entry = entry.next;
+            } else {
+                // An operation that ended here was not linearized before it: undo the last choice.
+                if (calls.isEmpty()) {
+                    return false;
+                }
+                Frame frame = calls.pop();
+                stock = frame.stock;
+                remaining = frame.remaining;
+                linearized.clear(frame.call.op);
+                unlift(frame.call);
+                entry = frame.call.next;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs an operation on the model; returns the stock and remaining
+     * energy after it, or null if it would not have returned what it did.
+     */
+    private static long[] step(History history, int op, long stock, int remaining) {
+        long argument = history.arguments[op];
+        long result = history.results[op];
+        switch (history.kinds[op]) {
+            case USE:
+                if (FoodContainer.covers(stock, argument)) {
+                    return result == 1 ? new long[] {stock - argument, remaining} : null;
+                }
+                return result == 0 ? new long[] {stock, remaining} : null;
+            case ADD:
+                if (FoodContainer.fits(stock, argument)) {
+                    return result == 1 ? new long[] {stock + argument, remaining} : null;
+                }
+                return result == 0 ? new long[] {stock, remaining} : null;
+            case READ:
+                return result == FoodContainer.unitsAt(stock, (int) argument) ? new long[] {stock, remaining} : null;
+            case DISPENSE:
+                int energy = history.energies[op];
+                if (energy >= 0 && energy <= remaining && FoodContainer.covers(stock, argument)) {
+                    return result == 1 ? new long[] {stock - argument, remaining - energy} : null;
+                }
+                return result == 0 ? new long[] {stock, remaining} : null;
+            default:
+                throw new IllegalStateException("unknown operation: " + history.kinds[op]);
+        }
+    }
+
+    private static void lift(Node call) {
+        call.prev.next = call.next;
+        call.next.prev = call.prev;
+        Node end = call.match;
+        end.prev.next = end.next;
+        if (end.next != null) {
+            end.next.prev = end.prev;
+        }
+    }
+
+    private static void unlift(Node call) {
+        Node end = call.match;
+        end.prev.next = end;
+        if (end.next != null) {
+            end.next.prev = end;
+        }
+        call.prev.next = call;
+        call.next.prev = call;
+    }
+
+    /** The call or the end of an operation, in a list ordered by time. */
+    private static final class Node {
+        private final int op;
+        private final boolean call;
+        private Node match;
+        private Node prev;
+        private Node next;
+
+        private Node(int op, boolean call) {
+            this.op = op;
+            this.call = call;
+        }
+
+        private long time(History history) {
+            return call ? history.begins[op] : history.ends[op];
+        }
+    }
+
+    /** A linearized operation and the model state before it. */
+    private static final class Frame {
+        private final Node call;
+        private final long stock;
+        private final int remaining;
+
+        private Frame(Node call, long stock, int remaining) {
+            this.call = call;
+            this.stock = stock;
+            this.remaining = remaining;
+        }
+    }
+
+    /** The linearized operations and the model state after them. */
+    private static final class State {
+        private final BitSet linearized;
+        private final long stock;
+        private final int remaining;
+
+        private State(BitSet linearized, long stock, int remaining) {
+            this.linearized = linearized;
+            this.stock = stock;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(linearized, stock, remaining);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof State)) {
+                return false;
+            }
+            State other = (State) obj;
+            return stock == other.stock && remaining == other.remaining && linearized.equals(other.linearized);
+        }
+    }
+
+    /**
+     * Runs operations on a food container, and on the feeder that owns it,
+     * and records them for {@link LinearizabilityChecker#check(History)}.
+     * Any number of threads may use a history at once. The stock and
+     * energy budget are read when the history is created, so create it
+     * before the threads start.
+     */
+    public static final class History {
+        private final PetFeeder petFeeder;
+        private final FoodContainer foodContainer;
+        private final long initialStock;
+        private final int initialRemaining;
+        /** Orders the beginnings and ends of all operations. */
+        private final AtomicLong clock = new AtomicLong();
+        private final AtomicInteger size = new AtomicInteger();
+        private final Kind[] kinds;
+        private final long[] arguments;
+        private final int[] energies;
+        private final long[] results;
+        private final long[] begins;
+        private final long[] ends;
+
+        /**
+         * Creates a history of operations on a food container.
+         * @param foodContainer The food container.
+         * @param capacity The most operations the history holds.
+         */
+        public History(FoodContainer foodContainer, int capacity) {
+            this(null, foodContainer, capacity);
+        }
+
+        /**
+         * Creates a history of operations on a feeder and its food container.
+         * @param petFeeder The feeder, or null for a container alone.
+         * @param foodContainer The food container of the feeder.
+         * @param capacity The most operations the history holds.
+         */
+        public History(PetFeeder petFeeder, FoodContainer foodContainer, int capacity) {
+            this.petFeeder = petFeeder;
+            this.foodContainer = foodContainer;
+            this.initialStock = foodContainer.getStock();
+            this.initialRemaining = petFeeder == null ? 0 : petFeeder.getEnergyBudget().getRemaining();
+            this.kinds = new Kind[capacity];
+            this.arguments = new long[capacity];
+            this.energies = new int[capacity];
+            this.results = new long[capacity];
+            this.begins = new long[capacity];
+            this.ends = new long[capacity];
+        }
+
+        /**
+         * Returns the number of recorded operations.
+         * @return int
+         */
+        public int size() {
+            return Math.min(size.get(), kinds.length);
+        }
+
+        /**
+         * Calls useIngredients on the container.
+         * @param m The meal plan to take the ingredients of.
+         * @return boolean What the container returned.
+         */
+        public boolean useIngredients(MealPlan m) {
+            int op = begin(Kind.USE, FoodContainer.amountsOf(m), 0);
+            boolean used = foodContainer.useIngredients(m);
+            end(op, used ? 1 : 0);
+            return used;
+        }
+
+        /**
+         * Calls replenish on the container.
+         * @param kibble The amount of kibble to add.
+         * @param water The amount of water to add.
+         * @param wetFood The amount of wet food to add.
+         * @param treats The amount of treats to add.
+         * @return boolean What the container returned.
+         */
+        public boolean replenish(int kibble, int water, int wetFood, int treats) {
+            int op = begin(Kind.ADD, FoodContainer.pack(kibble, water, wetFood, treats), 0);
+            boolean replenished = foodContainer.replenish(kibble, water, wetFood, treats);
+            end(op, replenished ? 1 : 0);
+            return replenished;
+        }
+
+        /**
+         * Calls addKibble on the container.
+         * @param kibble The amount of kibble to add.
+         * @return boolean What the container returned.
+         */
+        public boolean addKibble(int kibble) {
+            int op = begin(Kind.ADD, FoodContainer.pack(kibble, 0, 0, 0), 0);
+            boolean added = foodContainer.addKibble(kibble);
+            end(op, added ? 1 : 0);
+            return added;
+        }
+
+        /**
+         * Calls addWater on the container.
+         * @param water The amount of water to add.
+         * @return boolean What the container returned.
+         */
+        public boolean addWater(int water) {
+            int op = begin(Kind.ADD, FoodContainer.pack(0, water, 0, 0), 0);
+            boolean added = foodContainer.addWater(water);
+            end(op, added ? 1 : 0);
+            return added;
+        }
+
+        /**
+         * Calls addWetFood on the container.
+         * @param wetFood The amount of wet food to add.
+         * @return boolean What the container returned.
+         */
+        public boolean addWetFood(int wetFood) {
+            int op = begin(Kind.ADD, FoodContainer.pack(0, 0, wetFood, 0), 0);
+            boolean added = foodContainer.addWetFood(wetFood);
+            end(op, added ? 1 : 0);
+            return added;
+        }
+
+        /**
+         * Calls addTreats on the container.
+         * @param treats The amount of treats to add.
+         * @return boolean What the container returned.
+         */
+        public boolean addTreats(int treats) {
+            int op = begin(Kind.ADD, FoodContainer.pack(0, 0, 0, treats), 0);
+            boolean added = foodContainer.addTreats(treats);
+            end(op, added ? 1 : 0);
+            return added;
+        }
+
+        /**
+         * Calls getKibble on the container.
+         * @return int What the container returned.
+         */
+        public int getKibble() {
+            int op = begin(Kind.READ, FoodContainer.KIBBLE_SHIFT, 0);
+            int kibble = foodContainer.getKibble();
+            end(op, kibble);
+            return kibble;
+        }
+
+        /**
+         * Calls getWater on the container.
+         * @return int What the container returned.
+         */
+        public int getWater() {
+            int op = begin(Kind.READ, FoodContainer.WATER_SHIFT, 0);
+            int water = foodContainer.getWater();
+            end(op, water);
+            return water;
+        }
+
+        /**
+         * Calls getWetFood on the container.
+         * @return int What the container returned.
+         */
+        public int getWetFood() {
+            int op = begin(Kind.READ, FoodContainer.WETFOOD_SHIFT, 0);
+            int wetFood = foodContainer.getWetFood();
+            end(op, wetFood);
+            return wetFood;
+        }
+
+        /**
+         * Calls getTreats on the container.
+         * @return int What the container returned.
+         */
+        public int getTreats() {
+            int op = begin(Kind.READ, FoodContainer.TREATS_SHIFT, 0);
+            int treats = foodContainer.getTreats();
+            end(op, treats);
+            return treats;
+        }
+
+        /**
+         * Calls dispenseMeal on the feeder.
+         * @param mealPlanIndex The index of the meal plan.
+         * @return boolean What the feeder returned.
+         */
+        public boolean dispenseMeal(int mealPlanIndex) {
+            if (petFeeder == null) {
+                throw new IllegalStateException("The history has no feeder");
+            }
+            MealPlan[] plans = petFeeder.getMealPlanSnapshot();
+            MealPlan plan = mealPlanIndex >= 0 && mealPlanIndex < plans.length ? plans[mealPlanIndex] : null;
+            int op = plan == null
+                    ? begin(Kind.DISPENSE, 0, -1)
+                    : begin(Kind.DISPENSE, FoodContainer.amountsOf(plan), plan.getEnergyCost());
+            boolean dispensed = petFeeder.dispenseMeal(mealPlanIndex);
+            end(op, dispensed ? 1 : 0);
+            return dispensed;
+        }
+
+        private int begin(Kind kind, long argument, int energy) {
+            int op = size.getAndIncrement();
+            if (op >= kinds.length) {
+                throw new IllegalStateException("The history is full: " + kinds.length);
+            }
+            kinds[op] = kind;
+            arguments[op] = argument;
+            energies[op] = energy;
+            begins[op] = clock.incrementAndGet();
+            return op;
+        }
+
+        private void end(int op, long result) {
+            results[op] = result;
+            ends[op] = clock.incrementAndGet();
+        }
+    }
+}
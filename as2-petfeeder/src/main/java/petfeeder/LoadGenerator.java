@@ -0,0 +1,548 @@
+package petfeeder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives a mixed workload against real feeders from many threads, for load
+ * and soak testing, and reports throughput, latency and broken invariants.
+ * <p>
+ * Every feeder has its own MealPlanBook, FoodContainer, daily EnergyBudget
+ * and FeedingScheduler. Each load thread picks a feeder and an operation,
+ * by weight, again and again: dispense a meal, replenish food, edit a meal
+ * plan, add or cancel a recurring feeding, or check the feeder. Scheduled
+ * feedings run on a feeding wheel of the generator with 1 ms ticks, so
+ * they race with the load threads.
+ * <p>
+ * Every random choice comes from a SplittableRandom split off the seed, one
+ * per thread, and an operation makes the same draws whatever its outcome.
+ * So runs with the same seed, threads and operation count make the same
+ * operations; only which of them succeed depends on how the threads
+ * interleave. {@link Report#getWorkloadHash()} identifies the operations
+ * made.
+ * <p>
+ * Two invariants are checked. A check operation, and the end of the run,
+ * verify that no feeder has consumed more energy than its limit (budget
+ * overrun). At the end, the energy value of the stock a feeder started
+ * with, plus what was replenished, minus its stock at the end, must equal
+ * the energy it consumed, because a dispense takes both under the feeder
+ * lock. A lost or doubled update of either side, or an ingredient that
+ * went below zero and borrowed from its neighbour in the packed stock word,
+ * breaks the balance. Exceptions from an operation or a scheduled feeding
+ * are reported as violations too. The budget window is a day, so a run must
+ * be shorter than that.
+ */
+public class LoadGenerator {
+
+    /** Energy limit per day of each feeder unless set otherwise. */
+    public static final int DEFAULT_ENERGY_LIMIT = 100_000;
+    /** Most violations kept with their message; the rest are only counted. */
+    public static final int MAX_REPORTED_VIOLATIONS = 100;
+    /** Meal plans of each feeder. */
+    static final int MEAL_PLANS = 4;
+    /** Largest amount of an ingredient in a meal plan. */
+    private static final int MAX_MEAL_UNITS = 5;
+    /** Largest amount of an ingredient added by one replenish. */
+    private static final int MAX_REPLENISH_UNITS = 50;
+    /** Longest period of a scheduled feeding, in milliseconds. */
+    private static final int MAX_PERIOD_MILLIS = 20;
+
+    /**
+     * Operations a load thread makes.
+     */
+    public enum Operation {
+        /** Dispense a meal plan with dispenseMeal. */
+        DISPENSE,
+        /** Replenish up to 50 units of each ingredient. */
+        REPLENISH,
+        /** Replace the amounts of a meal plan. */
+        EDIT_PLAN,
+        /** Add a recurring feeding of 1 to 20 ms, or cancel one. */
+        SCHEDULE,
+        /** Check the energy budget of a feeder. */
+        CHECK
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final int threads;
+    private final int feederCount;
+    private final long seed;
+    private final int[] weights = {50, 20, 10, 10, 10};
+    private int energyLimit = DEFAULT_ENERGY_LIMIT;
+
+    // State of the current run.
+    private Feeder[] feeders;
+    private Map<Operation, LatencyHistogram> latencies;
+    private Map<Operation, LongAdder> successes;
+    private final LongAdder violationCount = new LongAdder();
+    private final List<String> violations = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Creates a load generator with the default mix: half dispenses, 20%
+     * replenishes and 10% each of plan edits, schedule changes and checks.
+     * @param threads The number of load threads.
+     * @param feeders The number of feeders the threads share.
+     * @param seed The seed of every random choice.
+     */
+    public LoadGenerator(int threads, int feeders, long seed) {
+        if (threads <= 0 || feeders <= 0) {
+            throw new IllegalArgumentException("Threads and feeders must be positive: " + threads + ", " + feeders);
+        }
+        this.threads = threads;
+        this.feederCount = feeders;
+        this.seed = seed;
+    }
+
+    /**
+     * Sets how often each operation is picked, relative to the others.
+     * @param dispense The weight of DISPENSE.
+     * @param replenish The weight of REPLENISH.
+     * @param editPlan The weight of EDIT_PLAN.
+     * @param schedule The weight of SCHEDULE.
+     * @param check The weight of CHECK.
+     */
+    public void setMix(int dispense, int replenish, int editPlan, int schedule, int check) {
+        int[] mix = {dispense, replenish, editPlan, schedule, check};
+        long total = 0;
+        for (int weight : mix) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weights must not be negative: " + weight);
+            }
+            total += weight;
+        }
+        if (total == 0 || total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Weights must add up to a positive int: " + total);
+        }
+        System.arraycopy(mix, 0, weights, 0, mix.length);
+    }
+
+    /**
+     * Sets the energy every feeder may dispense per day.
+     * @param energyLimit The energy limit.
+     */
+    public void setEnergyLimit(int energyLimit) {
+        if (energyLimit < 0) {
+            throw new IllegalArgumentException("Energy limit must not be negative: " + energyLimit);
+        }
+        this.energyLimit = energyLimit;
+    }
+
+    /**
+     * Runs until every thread has made the given number of operations.
+     * @param operationsPerThread The operations each thread makes.
+     * @return Report
+     * @throws InterruptedException if interrupted while waiting for the threads.
+     */
+    public synchronized Report run(long operationsPerThread) throws InterruptedException {
+        if (operationsPerThread < 0) {
+            throw new IllegalArgumentException("Operations must not be negative: " + operationsPerThread);
+        }
+        return run(operationsPerThread, 0);
+    }
+
+    /**
+     * Runs for the given time; the operations made are not repeatable.
+     * @param duration How long to run.
+     * @param unit The unit of duration.
+     * @return Report
+     * @throws InterruptedException if interrupted while waiting for the threads.
+     */
+    public synchronized Report runFor(long duration, TimeUnit unit) throws InterruptedException {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Duration must be positive: " + duration);
+        }
+        return run(Long.MAX_VALUE, unit.toNanos(duration));
+    }
+
+    private Report run(long operationsPerThread, long durationNanos) throws InterruptedException {
+        SplittableRandom root = new SplittableRandom(seed);
+        latencies = new EnumMap<>(Operation.class);
+        successes = new EnumMap<>(Operation.class);
+        for (Operation operation : OPERATIONS) {
+            latencies.put(operation, new LatencyHistogram());
+            successes.put(operation, new LongAdder());
+        }
+        violationCount.reset();
+        violations.clear();
+
+        FeedingWheel wheel = new FeedingWheel(1, TimeUnit.MILLISECONDS, 1);
+        EventLog eventLog = EventLog.start(event -> {
+            if (event.getType() == FeederEvent.Type.SCHEDULED_ERROR) {
+                violation("scheduled feeding of plan " + event.getMealPlanIndex() + " failed: " + event.getText());
+            }
+        });
+        feeders = new Feeder[feederCount];
+        for (int i = 0; i < feederCount; i++) {
+            feeders[i] = new Feeder(i, root, wheel, eventLog);
+        }
+        SplittableRandom[] randoms = new SplittableRandom[threads];
+        for (int t = 0; t < threads; t++) {
+            randoms[t] = root.split();
+        }
+
+        final long[] hashes = new long[threads];
+        final long[] counts = new long[threads];
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        final long deadline = start + durationNanos;
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            final SplittableRandom random = randoms[t];
+            workers[t] = new Thread(() -> {
+                long operations = 0;
+                long hash = index;
+                while (operations < operationsPerThread) {
+                    long begin = System.nanoTime();
+                    if (durationNanos > 0 && begin - deadline >= 0) {
+                        break;
+                    }
+                    hash = 31 * hash + step(random, begin);
+                    operations++;
+                }
+                hashes[index] = hash;
+                counts[index] = operations;
+            }, "load-generator-" + (t + 1));
+            workers[t].setDaemon(true);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        for (Feeder feeder : feeders) {
+            feeder.scheduler.shutdown();
+        }
+        for (Feeder feeder : feeders) {
+            feeder.checkBalance();
+        }
+        wheel.shutdown();
+        try {
+            eventLog.close();
+        } catch (IOException e) {
+            // The sink only counts errors and never fails.
+        }
+
+        long total = 0;
+        long workloadHash = 0;
+        for (int t = 0; t < threads; t++) {
+            total += counts[t];
+            workloadHash += hashes[t] * 0x9E3779B97F4A7C15L;
+        }
+        Report report = new Report(threads, feederCount, total, elapsed, workloadHash, wheel.getRunCount(),
+                latencies, successes, violationCount.sum(), new ArrayList<>(violations));
+        feeders = null;
+        return report;
+    }
+
+    /**
+     * Picks and makes one operation; returns a value identifying it.
+     */
+    private int step(SplittableRandom random, long begin) {
+        int feederIndex = random.nextInt(feeders.length);
+        Operation operation = pick(random.nextInt(totalWeight()));
+        int plan = random.nextInt(MEAL_PLANS);
+        int kibble = random.nextInt(MAX_REPLENISH_UNITS + 1);
+        int water = random.nextInt(MAX_REPLENISH_UNITS + 1);
+        int wetFood = random.nextInt(MAX_REPLENISH_UNITS + 1);
+        int treats = random.nextInt(MAX_REPLENISH_UNITS + 1);
+        Feeder feeder = feeders[feederIndex];
+        boolean succeeded;
+        try {
+            succeeded = feeder.perform(operation, plan, kibble, water, wetFood, treats);
+        } catch (RuntimeException e) {
+            violation("feeder " + feederIndex + ": " + operation + " threw " + e);
+            succeeded = false;
+        }
+        latencies.get(operation).record(System.nanoTime() - begin);
+        if (succeeded) {
+            successes.get(operation).increment();
+        }
+        return ((feederIndex * OPERATIONS.length + operation.ordinal()) * MEAL_PLANS + plan) * 31
+                + kibble + water + wetFood + treats;
+    }
+
+    private int totalWeight() {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        return total;
+    }
+
+    private Operation pick(int value) {
+        for (int i = 0; i < weights.length; i++) {
+            if (value < weights[i]) {
+                return OPERATIONS[i];
+            }
+            value -= weights[i];
+        }
+        throw new IllegalStateException("value out of range");
+    }
+
+    private void violation(String message) {
+        violationCount.increment();
+        if (violations.size() < MAX_REPORTED_VIOLATIONS) {
+            violations.add(message);
+        }
+    }
+
+    /** Energy value of a packed stock word. */
+    private static long energyOf(long stock) {
+        return MealPlan.energyCost(FoodContainer.unitsAt(stock, FoodContainer.KIBBLE_SHIFT),
+                FoodContainer.unitsAt(stock, FoodContainer.WATER_SHIFT),
+                FoodContainer.unitsAt(stock, FoodContainer.WETFOOD_SHIFT),
+                FoodContainer.unitsAt(stock, FoodContainer.TREATS_SHIFT));
+    }
+
+    /**
+     * One feeder under load and what was replenished into it.
+     */
+    private final class Feeder {
+        private final int index;
+        private final PetFeeder petFeeder;
+        private final FeedingScheduler scheduler;
+        private final long startEnergy;
+        private final LongAdder replenishedEnergy = new LongAdder();
+
+        private Feeder(int index, SplittableRandom random, FeedingWheel wheel, EventLog eventLog) {
+            this.index = index;
+            FoodContainer foodContainer = new FoodContainer();
+            foodContainer.setKibble(random.nextInt(FoodContainer.MAX_UNITS / 4, FoodContainer.MAX_UNITS / 2));
+            foodContainer.setWater(random.nextInt(FoodContainer.MAX_UNITS / 4, FoodContainer.MAX_UNITS / 2));
+            foodContainer.setWetFood(random.nextInt(FoodContainer.MAX_UNITS / 4, FoodContainer.MAX_UNITS / 2));
+            foodContainer.setTreats(random.nextInt(FoodContainer.MAX_UNITS / 4, FoodContainer.MAX_UNITS / 2));
+            this.petFeeder = new PetFeeder(new MealPlanBook(), foodContainer, EnergyBudget.daily(energyLimit));
+            for (int plan = 0; plan < MEAL_PLANS; plan++) {
+                petFeeder.addMealPlan(mealPlan(plan, random.nextInt(MAX_MEAL_UNITS + 1),
+                        random.nextInt(MAX_MEAL_UNITS + 1), random.nextInt(MAX_MEAL_UNITS + 1),
+                        random.nextInt(MAX_MEAL_UNITS + 1)));
+            }
+            this.scheduler = new FeedingScheduler(petFeeder, wheel, eventLog);
+            this.startEnergy = energyOf(petFeeder.getStock());
+        }
+
+        /**
+         * Makes one operation with the drawn values; returns true if it
+         * succeeded. Every value is used, or ignored, the same way whatever
+         * the state of the feeder.
+         */
+        private boolean perform(Operation operation, int plan, int kibble, int water, int wetFood, int treats) {
+            switch (operation) {
+                case DISPENSE:
+                    return petFeeder.dispenseMeal(plan);
+                case REPLENISH:
+                    if (petFeeder.replenish(kibble, water, wetFood, treats)) {
+                        replenishedEnergy.add(MealPlan.energyCost(kibble, water, wetFood, treats));
+                        return true;
+                    }
+                    return false;
+                case EDIT_PLAN:
+                    return petFeeder.editMealPlan(plan, mealPlan(plan, kibble % (MAX_MEAL_UNITS + 1),
+                            water % (MAX_MEAL_UNITS + 1), wetFood % (MAX_MEAL_UNITS + 1),
+                            treats % (MAX_MEAL_UNITS + 1))) != null;
+                case SCHEDULE:
+                    if ((kibble & 1) == 0) {
+                        return scheduler.cancelRecurringFeeding(plan);
+                    }
+                    scheduler.addRecurringFeeding(plan, 1 + water % MAX_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                    return true;
+                case CHECK:
+                    return checkBudget();
+                default:
+                    throw new IllegalArgumentException("unknown operation: " + operation);
+            }
+        }
+
+        private boolean checkBudget() {
+            EnergyBudget budget = petFeeder.getEnergyBudget();
+            int consumed = budget.getConsumed();
+            if (consumed > budget.getLimit()) {
+                violation("feeder " + index + ": consumed " + consumed + " energy, over its limit of "
+                        + budget.getLimit());
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Checks that the stock and the energy consumed balance; called
+         * when only scheduled feedings, which dispense under the feeder
+         * lock, may still change them.
+         */
+        private void checkBalance() {
+            long stock;
+            int consumed;
+            petFeeder.getLock().lock();
+            try {
+                stock = petFeeder.getStock();
+                consumed = petFeeder.getEnergyBudget().getConsumed();
+            } finally {
+                petFeeder.getLock().unlock();
+            }
+            long expected = startEnergy + replenishedEnergy.sum() - energyOf(stock);
+            if (expected != consumed) {
+                violation("feeder " + index + ": stock went down by " + expected
+                        + " energy points but " + consumed + " were consumed");
+            }
+            checkBudget();
+        }
+    }
+
+    private static MealPlan mealPlan(int plan, int kibble, int water, int wetFood, int treats) {
+        MealPlan.Builder builder = new MealPlan.Builder();
+        builder.setName("Load plan " + (plan + 1));
+        builder.setAmtKibble(kibble);
+        builder.setAmtWater(water);
+        builder.setAmtWetFood(wetFood);
+        builder.setAmtTreats(treats);
+        return builder.build();
+    }
+
+    /**
+     * Outcome of a run: operations, throughput, latency per operation and
+     * invariant violations.
+     */
+    public static final class Report {
+        private final int threads;
+        private final int feeders;
+        private final long operations;
+        private final long elapsedNanos;
+        private final long workloadHash;
+        private final long scheduledRuns;
+        private final Map<Operation, LatencyHistogram> latencies;
+        private final Map<Operation, LongAdder> successes;
+        private final long violationCount;
+        private final List<String> violations;
+
+        private Report(int threads, int feeders, long operations, long elapsedNanos, long workloadHash,
+                       long scheduledRuns, Map<Operation, LatencyHistogram> latencies,
+                       Map<Operation, LongAdder> successes, long violationCount, List<String> violations) {
+            this.threads = threads;
+            this.feeders = feeders;
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+            this.workloadHash = workloadHash;
+            this.scheduledRuns = scheduledRuns;
+            this.latencies = latencies;
+            this.successes = successes;
+            this.violationCount = violationCount;
+            this.violations = Collections.unmodifiableList(violations);
+        }
+
+        /**
+         * Returns the number of operations made by the load threads.
+         * @return long
+         */
+        public long getOperationCount() {
+            return operations;
+        }
+
+        /**
+         * Returns the number of operations of one kind.
+         * @param operation The kind of operation.
+         * @return long
+         */
+        public long getOperationCount(Operation operation) {
+            return latencies.get(operation).getCount();
+        }
+
+        /**
+         * Returns the number of operations of one kind that succeeded, such
+         * as dispenses that dispensed a meal.
+         * @param operation The kind of operation.
+         * @return long
+         */
+        public long getSuccessCount(Operation operation) {
+            return successes.get(operation).sum();
+        }
+
+        /**
+         * Returns the latencies of one kind of operation, in nanoseconds.
+         * @param operation The kind of operation.
+         * @return LatencyHistogram
+         */
+        public LatencyHistogram getLatency(Operation operation) {
+            return latencies.get(operation);
+        }
+
+        /**
+         * Returns the wall-clock time of the run, in nanoseconds.
+         * @return long
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Returns the operations made per second.
+         * @return double
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : operations * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Returns the number of scheduled feedings that ran.
+         * @return long
+         */
+        public long getScheduledRunCount() {
+            return scheduledRuns;
+        }
+
+        /**
+         * Returns a hash of the operations each thread made, which is the
+         * same for runs with the same seed, threads, feeders, mix and
+         * operation count.
+         * @return long
+         */
+        public long getWorkloadHash() {
+            return workloadHash;
+        }
+
+        /**
+         * Returns the number of invariant violations.
+         * @return long
+         */
+        public long getViolationCount() {
+            return violationCount;
+        }
+
+        /**
+         * Returns the first {@value LoadGenerator#MAX_REPORTED_VIOLATIONS} violations.
+         * @return List of violation messages
+         */
+        public List<String> getViolations() {
+            return violations;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("%d threads, %d feeders: %d operations in %.3f s, %.0f ops/s, %d scheduled feedings%n",
+                    threads, feeders, operations, elapsedNanos / 1e9, getThroughput(), scheduledRuns));
+            text.append(String.format("%-10s %10s %10s %10s %10s %10s %10s%n",
+                    "operation", "count", "succeeded", "p50 us", "p99 us", "p99.9 us", "max us"));
+            for (Operation operation : OPERATIONS) {
+                LatencyHistogram latency = latencies.get(operation);
+                text.append(String.format("%-10s %10d %10d %10.1f %10.1f %10.1f %10.1f%n",
+                        operation, latency.getCount(), getSuccessCount(operation),
+                        latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                        latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3));
+            }
+            text.append(violationCount).append(" invariant violations");
+            for (String violation : violations) {
+                text.append(System.lineSeparator()).append("  ").append(violation);
+            }
+            return text.toString();
+        }
+    }
+}
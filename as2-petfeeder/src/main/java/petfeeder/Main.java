@@ -1,60 +1,75 @@
 package petfeeder;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-
-import petfeeder.exceptions.FoodStockException;
-import petfeeder.exceptions.MealPlanException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * Starts the console UI for the PetFeeder.
+ * <p>
+ * Without arguments the program shows a menu and prompts for each value.
+ * With {@code --batch [file]} it runs the commands of the file, or of
+ * standard input, without prompts and with buffered output (see
+ * {@link CommandRunner} for the commands); add {@code --quiet} to print
+ * only errors and a summary.
  */
 public class Main {
     private static PetFeeder petFeeder;
-    private static FeedingScheduler feedingScheduler;
+    private static CommandRunner commandRunner;
+    /** The one reader of standard input, shared by every prompt. */
+    private static BufferedReader input;
+
+    /** Size of the batch mode input and output buffers. */
+    private static final int BATCH_BUFFER = 1 << 16;
 
     /**
      * Prints the main menu and handles user input for 
-     * main menu commands.
+     * main menu commands, until the user exits or the
+     * input ends.
      */
     public static void mainMenu() {
-        System.out.println("1. Add a meal plan");
-        System.out.println("2. Delete a meal plan");
-        System.out.println("3. Edit a meal plan");
-        System.out.println("4. Replenish food");
-        System.out.println("5. Check food stock");
-        System.out.println("6. Dispense meal");
-        System.out.println("7. Configure scheduled feeding");
-        System.out.println("8. Stop scheduled feeding");
-        System.out.println("0. Exit\n");
-        
-        //Get user input
-        try {
-            int userInput = Integer.parseInt(inputOutput("Please press the number that corresponds to what you would like the pet feeder to do."));
+        while (true) {
+            System.out.println("1. Add a meal plan");
+            System.out.println("2. Delete a meal plan");
+            System.out.println("3. Edit a meal plan");
+            System.out.println("4. Replenish food");
+            System.out.println("5. Check food stock");
+            System.out.println("6. Dispense meal");
+            System.out.println("7. Configure scheduled feeding");
+            System.out.println("8. Stop scheduled feeding");
+            System.out.println("0. Exit\n");
             
-            if (userInput >= 0 && userInput <=8) {
-                if (userInput == 1) addMealPlan();
-                if (userInput == 2) deleteMealPlan();
-                if (userInput == 3) editMealPlan();
-                if (userInput == 4) replenishFood();
-                if (userInput == 5) checkFoodStock();
-                if (userInput == 6) dispenseMeal();
-                if (userInput == 7) configureScheduledFeeding();
-                if (userInput == 8) stopScheduledFeeding();
-                if (userInput == 0) {
-                    if (feedingScheduler != null) {
-                        feedingScheduler.shutdown();
-                    }
-                    System.exit(0);
-                }
-            } else {
-                System.out.println("Please enter a number from 0 - 6");
-                mainMenu();
+            //Get user input
+            String choice = inputOutput("Please press the number that corresponds to what you would like the pet feeder to do.");
+            if (choice == null) {
+                return;
+            }
+            int userInput;
+            try {
+                userInput = Integer.parseInt(choice);
+            } catch (NumberFormatException e) {
+                userInput = -1;
+            }
+            switch (userInput) {
+                case 1: addMealPlan(); break;
+                case 2: deleteMealPlan(); break;
+                case 3: editMealPlan(); break;
+                case 4: replenishFood(); break;
+                case 5: checkFoodStock(); break;
+                case 6: dispenseMeal(); break;
+                case 7: configureScheduledFeeding(); break;
+                case 8: stopScheduledFeeding(); break;
+                case 0: return;
+                default: System.out.println("Please enter a number from 0 - 8");
             }
-        } catch (NumberFormatException e) {
-            System.out.println("Please enter a number from 0 - 6");
-            mainMenu();
         }
     }
     
@@ -78,70 +93,32 @@ public class Main {
         //Read in amt treats
         String treatsString = inputOutput("\nPlease enter the units of treats in the meal: ");
                 
-        MealPlan m = new MealPlan();
-        try {
-            m.setName(name);
-            m.setAmtKibble(kibbleString);
-            m.setAmtWater(waterString);
-            m.setAmtWetFood(wetFoodString);
-            m.setAmtTreats(treatsString);
-            
-            boolean added = petFeeder.addMealPlan(m);
-            
-            if(added) {
-                System.out.println(name + " successfully added.\n");
-            } else {
-                System.out.println(name + " could not be added.\n");
-            }
-        } catch (MealPlanException e) {
-            System.out.println(e.getMessage());
-        } finally {
-            mainMenu();
-        }
+        commandRunner.addMealPlan(name, kibbleString, waterString, wetFoodString, treatsString);
     }
     
     /**
      * Delete meal plan user interface that processes input.
      */
     public static void deleteMealPlan() {
-        MealPlan [] plans = petFeeder.getMealPlans();
-        for(int i = 0; i < plans.length; i++) {
-            if (plans[i] != null) {
-                System.out.println((i+1) + ". " + plans[i].getName()
-                        + " (energy cost: " + plans[i].getEnergyCost() + ")");
-            }
-        }
+        listMealPlans(true);
         int planToDelete = planListSelection("Please select the number of the meal plan to delete.");
         
         if(planToDelete < 0) {
-            mainMenu();
+            return;
         }
         
-        String deleted = petFeeder.deleteMealPlan(planToDelete);
-        
-        if (deleted != null) {
-            System.out.println(deleted + " successfully deleted.\n");
-        } else {
-            System.out.println("Selected meal plan doesn't exist and could not be deleted.\n");
-        }
-        mainMenu();
+        commandRunner.deleteMealPlan(planToDelete);
     }
     
     /**
      * Edit meal plan user interface that processes user input.
      */
     public static void editMealPlan() {
-        MealPlan [] plans = petFeeder.getMealPlans();
-        for(int i = 0; i < plans.length; i++) {
-            if (plans[i] != null) {
-                System.out.println((i+1) + ". " + plans[i].getName()
-                        + " (energy cost: " + plans[i].getEnergyCost() + ")");
-            }
-        }
+        listMealPlans(true);
         int planToEdit = planListSelection("Please select the number of the meal plan to edit.");
         
         if(planToEdit < 0) {
-            mainMenu();
+            return;
         }
         
         //Read in amt kibble
@@ -156,26 +133,7 @@ public class Main {
         //Read in amt treats
         String treatsString = inputOutput("\nPlease enter the units of treats in the meal: ");
         
-        MealPlan newPlan = new MealPlan();
-        try {
-            newPlan.setAmtKibble(kibbleString);
-            newPlan.setAmtWater(waterString);
-            newPlan.setAmtWetFood(wetFoodString);
-            newPlan.setAmtTreats(treatsString);
-            
-            String edited = petFeeder.editMealPlan(planToEdit, newPlan);
-            
-            if (edited != null) {
-                System.out.println(edited + " successfully edited.\n");
-            }
-            else {
-                System.out.println(edited + "could not be edited.\n");
-            }
-        } catch (MealPlanException e) {
-            System.out.println(e.getMessage());
-        } finally {
-            mainMenu();
-        }
+        commandRunner.editMealPlan(planToEdit, kibbleString, waterString, wetFoodString, treatsString);
     }
     
     /**
@@ -194,154 +152,160 @@ public class Main {
         //Read in amt treats
         String treatsString = inputOutput("\nPlease enter the units of treats to add: ");
                 
-        try {
-            petFeeder.replenishFood(kibbleString, waterString, wetFoodString, treatsString);
-            System.out.println("Food stock successfully replenished");
-        } catch (FoodStockException e) {
-            System.out.println("Food stock was not replenished");
-        } finally {
-            mainMenu();
-        }
+        commandRunner.replenishFood(kibbleString, waterString, wetFoodString, treatsString);
     }
     
     /**
      * Check food stock user interface that processes input.
      */
     public static void checkFoodStock() {
-        System.out.println(petFeeder.checkFoodStock());
-        mainMenu();
+        commandRunner.checkFoodStock();
     }
     
     /**
      * Dispense meal user interface that processes input.
      */
     public static void dispenseMeal() {
-        MealPlan [] plans = petFeeder.getMealPlans();
-        for(int i = 0; i < plans.length; i++) {
-            if (plans[i] != null) {
-                System.out.println((i+1) + ". " + plans[i].getName()
-                        + " (energy cost: " + plans[i].getEnergyCost() + ")");
-            }
-        }
-        
+        listMealPlans(true);
         int planToPurchase = planListSelection("Please select the number of the meal to dispense.");
 
-        boolean dispensed = petFeeder.dispenseMeal(planToPurchase);
-
-        if (dispensed) {
-            System.out.println("Dispensing " + petFeeder.getMealPlans()[planToPurchase].getName());
-            System.out.println("Remaining total energy budget: " + petFeeder.getRemainingEnergyBudget() + " energy points.\n");
-        } else {
-            System.out.println("Insufficient ingredients or energy budget to dispense.\n");
+        if(planToPurchase < 0) {
+            return;
         }
-        mainMenu();
+
+        commandRunner.dispenseMeal(planToPurchase);
     }
 
     /**
      * Configure a recurring scheduled feeding.
      */
     public static void configureScheduledFeeding() {
-        MealPlan [] plans = petFeeder.getMealPlans();
-        for(int i = 0; i < plans.length; i++) {
-            if (plans[i] != null) {
-                System.out.println((i+1) + ". " + plans[i].getName());
-            }
-        }
-
+        listMealPlans(false);
         int planToSchedule = planListSelection("Please select the number of the meal to schedule for automatic feeding.");
 
         if(planToSchedule < 0) {
-            mainMenu();
+            return;
         }
 
         String periodString = inputOutput("Please enter the interval in seconds between feedings");
-        long periodSeconds = 0;
-        try {
-            periodSeconds = Long.parseLong(periodString);
-            if (periodSeconds <= 0) {
-                System.out.println("Please enter a positive integer for the interval");
-                mainMenu();
-            }
-        } catch (NumberFormatException e) {
-            System.out.println("Please enter a positive integer for the interval");
-            mainMenu();
-        }
-
-        if (feedingScheduler == null) {
-            feedingScheduler = new FeedingScheduler(petFeeder);
-        }
-
-        feedingScheduler.scheduleRecurringFeeding(planToSchedule, periodSeconds);
-        System.out.println("Scheduled recurring feeding for " + plans[planToSchedule].getName() +
-                           " every " + periodSeconds + " seconds.\n");
-        mainMenu();
+        commandRunner.scheduleFeeding(planToSchedule, periodString);
     }
 
     /**
      * Stops the current scheduled feeding, if any.
      */
     public static void stopScheduledFeeding() {
-        if (feedingScheduler != null && feedingScheduler.hasActiveSchedule()) {
-            feedingScheduler.stop();
-            System.out.println("Scheduled feeding stopped.\n");
-        } else {
-            System.out.println("No active scheduled feeding.\n");
+        commandRunner.stopScheduledFeeding();
+    }
+
+    /**
+     * Prints the numbered list of meal plans.
+     * @param withEnergyCost True to print the energy cost of each meal plan.
+     */
+    private static void listMealPlans(boolean withEnergyCost) {
+        MealPlan [] plans = petFeeder.getMealPlans();
+        for(int i = 0; i < plans.length; i++) {
+            if (plans[i] != null) {
+                System.out.println((i+1) + ". " + plans[i].getName()
+                        + (withEnergyCost ? " (energy cost: " + plans[i].getEnergyCost() + ")" : ""));
+            }
         }
-        mainMenu();
     }
     
     /**
      * Passes a prompt to the user and returns the user specified 
-     * string.
+     * string, or null at the end of the input.
      * @param message The message prompt to display.
      * @return String The user input.
      */
     private static String inputOutput(String message) {
         System.out.println(message);
-        BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-        String returnString = "";
+        if (input == null) {
+            input = new BufferedReader(new InputStreamReader(System.in));
+        }
         try {
-            returnString = br.readLine();
+            return input.readLine();
         }
         catch (IOException e){
             System.out.println("Error reading in value");
-            mainMenu();
+            return null;
         }
-        return returnString;
     }
     
     /**
      * Passes a prompt to the user that deals with the meal plan list
      * and returns the user selected number.
      * @param message The message prompt to display.
-     * @return int The selected meal plan index.
+     * @return int The selected meal plan index, or -1 if there is none.
      */
     private static int planListSelection(String message) {
         String userSelection = inputOutput(message);
+        int slots = petFeeder.getMealPlans().length;
         int plan = 0;
         try {
             plan = Integer.parseInt(userSelection) - 1;
-            if (plan >= 0 && plan <=2) {
-                //do nothing here.
-            } else {
+            if (plan < 0 || plan >= slots) {
                 plan = -1;
             }
         } catch (NumberFormatException e) {
-            System.out.println("Please select a number from 1-3.");
+            System.out.println("Please select a number from 1-" + slots + ".");
             plan = -1;
         }
         return plan;
     }
+
+    /**
+     * Runs the commands of a file, or of standard input, with one reader
+     * and buffered output, and prints a summary. Scheduled feedings are
+     * stopped when the commands end.
+     * @param args The arguments after --batch: --quiet and an optional file.
+     * @return int The exit status: 0 if every command ran, 1 if any was an
+     * error and 2 if the commands could not be read.
+     */
+    static int runBatch(String[] args) {
+        boolean quiet = false;
+        String file = null;
+        for (String arg : args) {
+            if (arg.equals("--quiet")) {
+                quiet = true;
+            } else {
+                file = arg;
+            }
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BATCH_BUFFER), false);
+        CommandRunner runner = new CommandRunner(petFeeder, out, quiet);
+        long start = System.nanoTime();
+        int status;
+        try (BufferedReader in = file == null
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), BATCH_BUFFER)
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            runner.run(in);
+            status = runner.getErrorCount() == 0 ? 0 : 1;
+        } catch (IOException e) {
+            out.println("Could not read commands: " + e.getMessage());
+            status = 2;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        out.println(runner.getCommandCount() + " commands, " + runner.getErrorCount() + " errors in " + millis + " ms");
+        runner.shutdown();
+        return status;
+    }
     
     /**
      * Starts the pet feeder program.
-     * @param args Command line arguments.
+     * @param args Command line arguments: none for the menu, or --batch
+     * with an optional --quiet and command file.
      */
     public static void main(String[] args) {
         petFeeder = new PetFeeder();
-        feedingScheduler = new FeedingScheduler(petFeeder);
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(runBatch(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        commandRunner = new CommandRunner(petFeeder, System.out);
         System.out.println("Welcome to the PetFeeder!\n");
-        System.out.println("Maximum total energy budget for this run: " + petFeeder.getEnergyLimit() + " energy points.\n");
+        System.out.println("Energy budget: " + petFeeder.getEnergyLimit() + " energy points per 24 hours.\n");
         mainMenu();
+        commandRunner.shutdown();
+        System.exit(0);
     }
 }
@@ -2,24 +2,41 @@ package petfeeder;
 
 import petfeeder.exceptions.MealPlanException;
 
-public class MealPlan {
-    private String name;
-    private int energyCost;
-    private int amtKibble;
-    private int amtWater;
-    private int amtWetFood;
-    private int amtTreats;
+/**
+ * Immutable meal plan: a name, the units of each ingredient and the
+ * energy cost derived from them. Meal plans are created with a
+ * {@link MealPlan.Builder}; the energy cost is computed once when the
+ * plan is built. Because a meal plan never changes it can be shared
+ * between threads and feeders without copying or locking. Two meal
+ * plans are equal when they have the same name.
+ */
+public final class MealPlan {
+    private final String name;
+    private final int energyCost;
+    private final int amtKibble;
+    private final int amtWater;
+    private final int amtWetFood;
+    private final int amtTreats;
     
     /**
-     * Creates a default meal plan for the pet feeder.
+     * Creates a default meal plan for the pet feeder, with an empty
+     * name and no ingredients.
      */
     public MealPlan() {
-        this.name = "";
-        this.amtKibble = 0;
-        this.amtWater = 0;
-        this.amtWetFood = 0;
-        this.amtTreats = 0;
-        this.energyCost = 0;
+        this(new Builder());
+    }
+
+    /**
+     * Creates a meal plan from the values of a builder.
+     * @param builder The builder holding the meal plan values.
+     */
+    private MealPlan(Builder builder) {
+        this.name = builder.name;
+        this.amtKibble = builder.amtKibble;
+        this.amtWater = builder.amtWater;
+        this.amtWetFood = builder.amtWetFood;
+        this.amtTreats = builder.amtTreats;
+        this.energyCost = energyCost(amtKibble, amtWater, amtWetFood, amtTreats);
     }
 
     /** Per-unit energy values (abstract "energy points", can be read as kcal). */
@@ -29,12 +46,16 @@ public class MealPlan {
     private static final int TREATS_ENERGY = 20;
 
     /**
-     * Recalculates the total energy cost based on ingredient amounts and
+     * Calculates the total energy cost based on ingredient amounts and
      * fixed per-unit energy values.
+     * @param amtKibble The units of kibble.
+     * @param amtWater The units of water.
+     * @param amtWetFood The units of wet food.
+     * @param amtTreats The units of treats.
+     * @return int
      */
-    private void updateEnergyCost() {
-        this.energyCost =
-                (amtKibble * KIBBLE_ENERGY) +
+    static int energyCost(int amtKibble, int amtWater, int amtWetFood, int amtTreats) {
+        return (amtKibble * KIBBLE_ENERGY) +
                 (amtWater * WATER_ENERGY) +
                 (amtWetFood * WETFOOD_ENERGY) +
                 (amtTreats * TREATS_ENERGY);
@@ -48,26 +69,6 @@ public class MealPlan {
         return amtTreats;
     }
 
-    /**
-     * Sets the amount of treats required for the meal.
-     * @param treats The amount of treats to set (as a string).
-     * @throws MealPlanException if the input is not a positive integer.
-     */
-    public void setAmtTreats(String treats) throws MealPlanException {
-        int amtTreats = 0;
-        try {
-            amtTreats = Integer.parseInt(treats);
-        } catch (NumberFormatException e) {
-            throw new MealPlanException("Units of treats must be a positive integer");
-        }
-        if (amtTreats >= 0) {
-            this.amtTreats = amtTreats;
-            updateEnergyCost();
-        } else {
-            throw new MealPlanException("Units of treats must be a positive integer");
-        }
-    }
-
     /**
      * Returns the amount of kibble in the meal plan.
      * @return int
@@ -76,26 +77,6 @@ public class MealPlan {
         return amtKibble;
     }
 
-    /**
-     * Sets the amount of kibble required for the meal.
-     * @param kibble The amount of kibble to set (as a string).
-     * @throws MealPlanException if the input is not a positive integer.
-     */
-    public void setAmtKibble(String kibble) throws MealPlanException {
-        int amtKibble = 0;
-        try {
-            amtKibble = Integer.parseInt(kibble);
-        } catch (NumberFormatException e) {
-            throw new MealPlanException("Units of kibble must be a positive integer");
-        }
-        if (amtKibble >= 0) {
-            this.amtKibble = amtKibble;
-            updateEnergyCost();
-        } else {
-            throw new MealPlanException("Units of kibble must be a positive integer");
-        }
-    }
-
     /**
      * Returns the amount of water in the meal plan.
      * @return int
@@ -104,26 +85,6 @@ public class MealPlan {
         return amtWater;
     }
 
-    /**
-     * Sets the amount of water required for the meal.
-     * @param water The amount of water to set (as a string).
-     * @throws MealPlanException if the input is not a positive integer.
-     */
-    public void setAmtWater(String water) throws MealPlanException{
-        int amtWater = 0;
-        try {
-            amtWater = Integer.parseInt(water);
-        } catch (NumberFormatException e) {
-            throw new MealPlanException("Units of water must be a positive integer");
-        }
-        if (amtWater >= 0) {
-            this.amtWater = amtWater;
-            updateEnergyCost();
-        } else {
-            throw new MealPlanException("Units of water must be a positive integer");
-        }
-    }
-
     /**
      * Returns the amount of wet food in the meal plan.
      * @return int
@@ -132,26 +93,6 @@ public class MealPlan {
         return amtWetFood;
     }
 
-    /**
-     * Sets the amount of wet food required for the meal.
-     * @param wetFood The amount of wet food to set (as a string).
-     * @throws MealPlanException if the input is not a positive integer.
-     */
-    public void setAmtWetFood(String wetFood) throws MealPlanException {
-        int amtWetFood = 0;
-        try {
-            amtWetFood = Integer.parseInt(wetFood);
-        } catch (NumberFormatException e) {
-            throw new MealPlanException("Units of wet food must be a positive integer");
-        }
-        if (amtWetFood >= 0) {
-            this.amtWetFood = amtWetFood;
-            updateEnergyCost();
-        } else {
-            throw new MealPlanException("Units of wet food must be a positive integer");
-        }
-    }
-
     /**
      * Returns the name of the meal plan.
      * @return String
@@ -160,16 +101,6 @@ public class MealPlan {
         return name;
     }
 
-    /**
-     * Sets the name of the meal plan.
-     * @param name The name to set.
-     */
-    public void setName(String name) {
-        if(name != null) {
-            this.name = name;
-        }
-    }
-
     /**
      * Returns the energy cost of the meal plan.
      * @return int
@@ -210,4 +141,169 @@ public class MealPlan {
             return false;
         return true;
     }
+
+    /**
+     * Collects and validates the values of a meal plan before it is built.
+     * A builder is not thread-safe; the meal plans it builds are.
+     */
+    public static final class Builder {
+        private String name;
+        private int amtKibble;
+        private int amtWater;
+        private int amtWetFood;
+        private int amtTreats;
+
+        /**
+         * Creates a builder for a meal plan with an empty name and no ingredients.
+         */
+        public Builder() {
+            this.name = "";
+        }
+
+        /**
+         * Creates a builder that starts from the values of an existing meal plan.
+         * @param mealPlan The meal plan to copy.
+         */
+        public Builder(MealPlan mealPlan) {
+            this.name = mealPlan.getName();
+            this.amtKibble = mealPlan.getAmtKibble();
+            this.amtWater = mealPlan.getAmtWater();
+            this.amtWetFood = mealPlan.getAmtWetFood();
+            this.amtTreats = mealPlan.getAmtTreats();
+        }
+
+        /**
+         * Sets the name of the meal plan.
+         * @param name The name to set.
+         */
+        public void setName(String name) {
+            if(name != null) {
+                this.name = name;
+            }
+        }
+
+        /**
+         * Sets the amount of treats required for the meal.
+         * @param treats The amount of treats to set (as a string).
+         * @throws MealPlanException if the input is not a positive integer.
+         */
+        public void setAmtTreats(String treats) throws MealPlanException {
+            if (!setAmtTreats(parseUnits(treats, "treats"))) {
+                throw new MealPlanException("Units of treats must be a positive integer");
+            }
+        }
+
+        /**
+         * Sets the amount of treats required for the meal. Returns false,
+         * leaving the builder unchanged, if the amount is negative.
+         * @param treats The amount of treats to set.
+         * @return boolean True if the amount was set.
+         */
+        public boolean setAmtTreats(int treats) {
+            if (treats < 0) {
+                return false;
+            }
+            this.amtTreats = treats;
+            return true;
+        }
+
+        /**
+         * Sets the amount of kibble required for the meal.
+         * @param kibble The amount of kibble to set (as a string).
+         * @throws MealPlanException if the input is not a positive integer.
+         */
+        public void setAmtKibble(String kibble) throws MealPlanException {
+            if (!setAmtKibble(parseUnits(kibble, "kibble"))) {
+                throw new MealPlanException("Units of kibble must be a positive integer");
+            }
+        }
+
+        /**
+         * Sets the amount of kibble required for the meal. Returns false,
+         * leaving the builder unchanged, if the amount is negative.
+         * @param kibble The amount of kibble to set.
+         * @return boolean True if the amount was set.
+         */
+        public boolean setAmtKibble(int kibble) {
+            if (kibble < 0) {
+                return false;
+            }
+            this.amtKibble = kibble;
+            return true;
+        }
+
+        /**
+         * Sets the amount of water required for the meal.
+         * @param water The amount of water to set (as a string).
+         * @throws MealPlanException if the input is not a positive integer.
+         */
+        public void setAmtWater(String water) throws MealPlanException {
+            if (!setAmtWater(parseUnits(water, "water"))) {
+                throw new MealPlanException("Units of water must be a positive integer");
+            }
+        }
+
+        /**
+         * Sets the amount of water required for the meal. Returns false,
+         * leaving the builder unchanged, if the amount is negative.
+         * @param water The amount of water to set.
+         * @return boolean True if the amount was set.
+         */
+        public boolean setAmtWater(int water) {
+            if (water < 0) {
+                return false;
+            }
+            this.amtWater = water;
+            return true;
+        }
+
+        /**
+         * Sets the amount of wet food required for the meal.
+         * @param wetFood The amount of wet food to set (as a string).
+         * @throws MealPlanException if the input is not a positive integer.
+         */
+        public void setAmtWetFood(String wetFood) throws MealPlanException {
+            if (!setAmtWetFood(parseUnits(wetFood, "wet food"))) {
+                throw new MealPlanException("Units of wet food must be a positive integer");
+            }
+        }
+
+        /**
+         * Sets the amount of wet food required for the meal. Returns false,
+         * leaving the builder unchanged, if the amount is negative.
+         * @param wetFood The amount of wet food to set.
+         * @return boolean True if the amount was set.
+         */
+        public boolean setAmtWetFood(int wetFood) {
+            if (wetFood < 0) {
+                return false;
+            }
+            this.amtWetFood = wetFood;
+            return true;
+        }
+
+        /**
+         * Returns a new immutable meal plan with the current values.
+         * The builder can be changed and used again afterwards.
+         * @return MealPlan
+         */
+        public MealPlan build() {
+            return new MealPlan(this);
+        }
+
+        /**
+         * Parses a number of units of an ingredient.
+         * @param amount The amount as a string.
+         * @param ingredient The ingredient name used in the error message.
+         * @return int
+         * @throws MealPlanException if the input is not an integer.
+         */
+        private static int parseUnits(String amount, String ingredient) throws MealPlanException {
+            try {
+                return Integer.parseInt(amount);
+            } catch (NumberFormatException e) {
+                throw new MealPlanException("Units of " + ingredient + " must be a positive integer");
+            }
+        }
+    }
 }
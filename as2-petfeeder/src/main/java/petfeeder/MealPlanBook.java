@@ -1,31 +1,114 @@
 package petfeeder;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collection of meal plans, each kept at a stable index (its handle).
+ * <p>
+ * Readers never lock: every change builds a new meal plan array and
+ * publishes it through a volatile reference, so a published array is a
+ * snapshot that is never modified afterwards. getMealPlans returns a copy
+ * of it, so callers cannot change the book through the array. Writers
+ * are serialized on the book and pay for one array copy per change.
+ */
 public class MealPlanBook {
     
-    /** Array of meal plans in the pet feeder */
-    private MealPlan [] mealPlanArray;
-    /** Number of meal plans slots */
-    private final int NUM_MEALPLANS = 4;
+    /** Snapshot of the meal plans in the pet feeder, indexed by meal plan handle */
+    private volatile MealPlan [] mealPlanArray;
+    /** Number of meal plan slots the book starts with */
+    private static final int INITIAL_MEALPLANS = 4;
+    /** Slots that currently hold a meal plan; only used by writers */
+    private final BitSet usedSlots;
+    /** No slot below this one is empty; only used by writers */
+    private int firstFreeSlot;
+    /** Slot of each stored meal plan, by name; meal plans are equal when their names are */
+    private final ConcurrentHashMap<String, Integer> slotIndex;
+    /** Slot of each stored meal plan without a name, which slotIndex cannot hold; only used by writers */
+    private final Map<MealPlan, Integer> unnamedSlots;
     
     /**
      * Default constructor for a MealPlanBook.
      */
     public MealPlanBook() {
-        mealPlanArray = new MealPlan[NUM_MEALPLANS];
+        mealPlanArray = new MealPlan[INITIAL_MEALPLANS];
+        usedSlots = new BitSet(INITIAL_MEALPLANS);
+        slotIndex = new ConcurrentHashMap<>();
+        unnamedSlots = new HashMap<>();
     }
     
     /**
-     * Returns the meal plan array.
+     * Returns a copy of the current snapshot of the meal plan array,
+     * without locking. The index of a meal plan in the array is its
+     * handle, which does not change when other meal plans are added or
+     * deleted. Empty slots are null. Writing to the copy does not change
+     * the book.
+     * @return MealPlan[]
+     */
+    public MealPlan[] getMealPlans() {
+        return mealPlanArray.clone();
+    }
+
+    /**
+     * Returns the current snapshot of the meal plan array itself, without
+     * copying it, for readers in this package that only read it. The
+     * array is shared and must not be modified; later changes to the book
+     * publish a new array.
      * @return MealPlan[]
      */
-    public synchronized MealPlan[] getMealPlans() {
+    MealPlan[] getSnapshot() {
         return mealPlanArray;
     }
+
+    /**
+     * Returns the meal plan with the given handle, or null if the slot
+     * is empty.
+     * @param mealPlan The handle of the meal plan.
+     * @return MealPlan
+     */
+    public MealPlan getMealPlan(int mealPlan) {
+        return mealPlanArray[mealPlan];
+    }
+
+    /**
+     * Returns the meal plan with the given name, or null if there is none.
+     * @param name The name of the meal plan.
+     * @return MealPlan
+     */
+    public MealPlan getMealPlan(String name) {
+        int slot = indexOf(name);
+        if (slot < 0) {
+            return null;
+        }
+        MealPlan[] plans = mealPlanArray;
+        MealPlan found = slot < plans.length ? plans[slot] : null;
+        // The slot may have been deleted or edited since the index was read.
+        return (found != null && name.equals(found.getName())) ? found : null;
+    }
+
+    /**
+     * Returns the handle of the meal plan with the given name, or -1 if
+     * there is none.
+     * @param name The name of the meal plan.
+     * @return int
+     */
+    public int indexOf(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer slot = slotIndex.get(name);
+        return slot == null ? -1 : slot;
+    }
     
     /**
      * Returns true if the meal plan is added to the
      * list of meal plans in the MealPlanBook and false
-     * otherwise.
+     * otherwise. The book grows as needed, and the new
+     * meal plan takes the first empty slot.
      * @param m The meal plan to add.
      * @return boolean
      */
@@ -36,26 +119,56 @@ public class MealPlanBook {
             return false;
         }
 
-        //Assume meal plan doesn't exist in the array until 
-        //find out otherwise
-        boolean exists = false;
-        //Check that meal plan doesn't already exist in array
-        for (int i = 0; i < mealPlanArray.length; i++ ) {
-            if (m.equals(mealPlanArray[i])) {
-                exists = true;
-            }
+        //Check that meal plan doesn't already exist in the book
+        if (slotOf(m) != null) {
+            return false;
         }
 
-        //Assume meal plan cannot be added until find an empty
-        //spot
-        boolean added = false;
-        //Check for first empty spot in array
-        if (!exists) {
-            for (int i = 0; i < mealPlanArray.length && !added; i++) {
-                if (mealPlanArray[i] == null) {
-                    mealPlanArray[i] = m;
-                    added = true;
-                }
+        MealPlan[] current = mealPlanArray;
+        int slot = usedSlots.nextClearBit(firstFreeSlot);
+        firstFreeSlot = slot + 1;
+        MealPlan[] next = Arrays.copyOf(current, slot < current.length ? current.length : current.length * 2);
+        next[slot] = m;
+        usedSlots.set(slot);
+        mealPlanArray = next;
+        index(m, slot);
+        return true;
+    }
+
+    /**
+     * Adds many meal plans with one array copy instead of one per plan.
+     * Each plan is added as by addMealPlan, in order; readers see either
+     * none or all of them. Returns whether each plan was added.
+     * @param mealPlans The meal plans to add.
+     * @return boolean[] True at the position of each added meal plan.
+     */
+    public synchronized boolean[] addMealPlans(List<MealPlan> mealPlans) {
+        boolean[] added = new boolean[mealPlans.size()];
+        MealPlan[] current = mealPlanArray;
+        MealPlan[] next = null;
+        Map<MealPlan, Integer> newSlots = new HashMap<>();
+        for (int i = 0; i < added.length; i++) {
+            MealPlan m = mealPlans.get(i);
+            if (m == null || slotOf(m) != null || newSlots.containsKey(m)) {
+                continue;
+            }
+            if (next == null) {
+                next = current.clone();
+            }
+            int slot = usedSlots.nextClearBit(firstFreeSlot);
+            firstFreeSlot = slot + 1;
+            if (slot >= next.length) {
+                next = Arrays.copyOf(next, next.length * 2);
+            }
+            next[slot] = m;
+            usedSlots.set(slot);
+            newSlots.put(m, slot);
+            added[i] = true;
+        }
+        if (next != null) {
+            mealPlanArray = next;
+            for (Map.Entry<MealPlan, Integer> entry : newSlots.entrySet()) {
+                index(entry.getKey(), entry.getValue());
             }
         }
         return added;
@@ -68,10 +181,16 @@ public class MealPlanBook {
      * @return String The name of the deleted meal plan.
      */
     public synchronized String deleteMealPlan(int mealPlanToDelete) {
-        if (mealPlanArray[mealPlanToDelete] != null) {
-            String name = mealPlanArray[mealPlanToDelete].getName();
-            mealPlanArray[mealPlanToDelete] = null;
-            return name;
+        MealPlan[] current = mealPlanArray;
+        if (current[mealPlanToDelete] != null) {
+            MealPlan deleted = current[mealPlanToDelete];
+            MealPlan[] next = current.clone();
+            next[mealPlanToDelete] = null;
+            usedSlots.clear(mealPlanToDelete);
+            firstFreeSlot = Math.min(firstFreeSlot, mealPlanToDelete);
+            unindex(deleted, mealPlanToDelete);
+            mealPlanArray = next;
+            return deleted.getName();
         } else {
             return null;
         }
@@ -79,24 +198,107 @@ public class MealPlanBook {
     
     /**
      * Returns the name of the meal plan edited at the position specified
-     * and null if the meal plan does not exist.
+     * and null if the meal plan does not exist or another meal plan
+     * already has the name of the new one. Readers see either the
+     * old or the new meal plan, never a mix of both.
      * @param mealPlanToEdit The index of the meal plan to edit.
      * @param newMealPlan The new meal plan object to replace the old one.
      * @return String The name of the original meal plan.
      */
     public synchronized String editMealPlan(int mealPlanToEdit, MealPlan newMealPlan) {
-        if(mealPlanToEdit < 0 || mealPlanToEdit >= mealPlanArray.length) {
+        MealPlan[] current = mealPlanArray;
+        if(mealPlanToEdit < 0 || mealPlanToEdit >= current.length) {
             return null;
         }
 
-        if (mealPlanArray[mealPlanToEdit] != null) {
-            String name = mealPlanArray[mealPlanToEdit].getName();
-            //newMealPlan.setName("");
-            mealPlanArray[mealPlanToEdit] = newMealPlan;
-            return name;
+        if (current[mealPlanToEdit] != null) {
+            if (newMealPlan != null) {
+                Integer slot = slotOf(newMealPlan);
+                if (slot != null && slot != mealPlanToEdit) {
+                    return null;
+                }
+            }
+            MealPlan old = current[mealPlanToEdit];
+            MealPlan[] next = current.clone();
+            next[mealPlanToEdit] = newMealPlan;
+            unindex(old, mealPlanToEdit);
+            if (newMealPlan != null) {
+                index(newMealPlan, mealPlanToEdit);
+            } else {
+                usedSlots.clear(mealPlanToEdit);
+                firstFreeSlot = Math.min(firstFreeSlot, mealPlanToEdit);
+            }
+            mealPlanArray = next;
+            return old.getName();
         } else {
             return null;
         }
     }
 
+    /**
+     * Replaces the contents of the book with the given meal plans, each
+     * kept at its index in the array, for restoring a saved state.
+     * @param mealPlans The meal plans indexed by handle; null for an empty slot.
+     */
+    synchronized void restore(MealPlan[] mealPlans) {
+        int capacity = INITIAL_MEALPLANS;
+        while (capacity < mealPlans.length) {
+            capacity *= 2;
+        }
+        MealPlan[] next = new MealPlan[capacity];
+        System.arraycopy(mealPlans, 0, next, 0, mealPlans.length);
+        usedSlots.clear();
+        slotIndex.clear();
+        unnamedSlots.clear();
+        for (int slot = 0; slot < mealPlans.length; slot++) {
+            if (mealPlans[slot] != null) {
+                usedSlots.set(slot);
+                if (slotOf(mealPlans[slot]) == null) {
+                    index(mealPlans[slot], slot);
+                }
+            }
+        }
+        firstFreeSlot = usedSlots.nextClearBit(0);
+        mealPlanArray = next;
+    }
+
+    /**
+     * Returns the slot of the stored meal plan equal to the given one, or
+     * null if there is none. Only used by writers.
+     * @param m The meal plan.
+     * @return Integer
+     */
+    private Integer slotOf(MealPlan m) {
+        String name = m.getName();
+        return name == null ? unnamedSlots.get(m) : slotIndex.get(name);
+    }
+
+    /**
+     * Records the slot of a stored meal plan.
+     * @param m The meal plan.
+     * @param slot The slot of the meal plan.
+     */
+    private void index(MealPlan m, int slot) {
+        String name = m.getName();
+        if (name == null) {
+            unnamedSlots.put(m, slot);
+        } else {
+            slotIndex.put(name, slot);
+        }
+    }
+
+    /**
+     * Forgets the slot of a meal plan, if it is still the given slot.
+     * @param m The meal plan.
+     * @param slot The slot of the meal plan.
+     */
+    private void unindex(MealPlan m, int slot) {
+        String name = m.getName();
+        if (name == null) {
+            unnamedSlots.remove(m, slot);
+        } else {
+            slotIndex.remove(name, slot);
+        }
+    }
+
 }
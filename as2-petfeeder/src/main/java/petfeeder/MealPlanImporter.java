@@ -0,0 +1,693 @@
+package petfeeder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import petfeeder.exceptions.MealPlanException;
+
+/**
+ * Imports meal plans in bulk from CSV or JSON Lines files into meal plan
+ * books.
+ * <p>
+ * A CSV file starts with a header naming its columns: name, kibble, water,
+ * wetFood, treats and, when importing for several feeders, feeder. Fields
+ * may be quoted with double quotes. A JSON Lines file holds one flat object
+ * per line with the same keys; a JSON array with one object per line is
+ * read as well. Missing amounts are 0.
+ * <p>
+ * The file is streamed: one thread reads lines into chunks of
+ * {@link #DEFAULT_CHUNK_ROWS} rows, and worker threads parse and validate
+ * the chunks in parallel. Parsed chunks are then added to their books in
+ * the order of the file, one array copy per book and chunk, by whichever
+ * worker finishes the next chunk due. Only a few chunks per worker are in
+ * memory at a time, however large the file. Each row is validated by the
+ * string setters of MealPlan.Builder, so it follows the same rules as a
+ * meal plan typed in at the console. A bad row is reported with its line
+ * number and skipped; the rest of the file is still imported. A name that
+ * is already in its book is a bad row too, so when a file repeats a name
+ * the first row with it is imported, and the errors kept are the first
+ * ones in the file.
+ */
+public class MealPlanImporter {
+
+    /** Rows per chunk handed to a worker. */
+    public static final int DEFAULT_CHUNK_ROWS = 16384;
+    /** Most row errors kept in a result; later ones are only counted. */
+    public static final int MAX_REPORTED_ERRORS = 1000;
+    /** Chunks read ahead per worker. */
+    private static final int CHUNKS_PER_WORKER = 2;
+
+    private static final int FEEDER = 0;
+    private static final int NAME = 1;
+    private static final int KIBBLE = 2;
+    private static final int WATER = 3;
+    private static final int WET_FOOD = 4;
+    private static final int TREATS = 5;
+    private static final int COLUMNS = 6;
+
+    /**
+     * File formats the importer reads.
+     */
+    public enum Format {
+        /** Comma-separated values with a header line. */
+        CSV,
+        /** One JSON object per line. */
+        JSON_LINES;
+
+        /**
+         * Returns the format of a file from its extension: .csv for CSV,
+         * .json and .jsonl for JSON Lines.
+         * @param file The file.
+         * @return Format
+         * @throws IllegalArgumentException if the extension is unknown.
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+                return JSON_LINES;
+            }
+            throw new IllegalArgumentException("Unknown meal plan file format: " + file);
+        }
+    }
+
+    private final int workers;
+    private final int chunkRows;
+
+    /**
+     * Creates an importer with a worker per processor.
+     */
+    public MealPlanImporter() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_ROWS);
+    }
+
+    /**
+     * Creates an importer.
+     * @param workers The number of worker threads.
+     * @param chunkRows The number of rows per chunk.
+     */
+    public MealPlanImporter(int workers, int chunkRows) {
+        if (workers < 1 || chunkRows < 1) {
+            throw new IllegalArgumentException("Workers and chunk rows must be at least 1");
+        }
+        this.workers = workers;
+        this.chunkRows = chunkRows;
+    }
+
+    /**
+     * Imports the meal plans of a file into one book. A feeder column is ignored.
+     * @param file The file; its format is chosen by its extension.
+     * @param book The book to add the meal plans to.
+     * @return Result
+     * @throws IOException if the file cannot be read or has no valid CSV header.
+     */
+    public Result importFile(Path file, MealPlanBook book) throws IOException {
+        return importFile(file, feederId -> book, false);
+    }
+
+    /**
+     * Imports the meal plans of a file into the book of the feeder named
+     * on each row. Rows without a feeder, or with a feeder that has no
+     * book, are reported as bad rows.
+     * @param file The file; its format is chosen by its extension.
+     * @param books Returns the book of a feeder id, or null; called from several threads.
+     * @return Result
+     * @throws IOException if the file cannot be read or has no valid CSV header.
+     */
+    public Result importFile(Path file, Function<String, MealPlanBook> books) throws IOException {
+        return importFile(file, books, true);
+    }
+
+    private Result importFile(Path file, Function<String, MealPlanBook> books, boolean byFeeder) throws IOException {
+        Format format = Format.of(file);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, format, books, byFeeder);
+        }
+    }
+
+    /**
+     * Imports the meal plans read from a reader into the book of the
+     * feeder named on each row. The reader is not closed.
+     * @param reader The reader.
+     * @param format The format of the input.
+     * @param books Returns the book of a feeder id, or null; called from several threads.
+     * @return Result
+     * @throws IOException if the input cannot be read or has no valid CSV header.
+     */
+    public Result importFrom(Reader reader, Format format, Function<String, MealPlanBook> books) throws IOException {
+        return importFrom(reader, format, books, true);
+    }
+
+    private Result importFrom(Reader reader, Format format, Function<String, MealPlanBook> books,
+                              boolean byFeeder) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        Result result = new Result();
+        int lineNumber = 0;
+        int[] columns = null;
+        if (format == Format.CSV) {
+            String header;
+            do {
+                header = lines.readLine();
+                lineNumber++;
+            } while (header != null && header.isBlank());
+            if (header == null) {
+                return result;
+            }
+            columns = csvColumns(header);
+        }
+        // A permit is held from reading a chunk until it is added to its books.
+        Semaphore inFlight = new Semaphore(workers * CHUNKS_PER_WORKER);
+        Loader loader = new Loader(format, columns, books, byFeeder, result, inFlight);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "meal-plan-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<String> chunk = new ArrayList<>(chunkRows);
+            int chunkStart = lineNumber + 1;
+            int chunkIndex = 0;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                chunk.add(line);
+                if (chunk.size() == chunkRows) {
+                    submit(pool, inFlight, loader, chunk, chunkStart, chunkIndex++);
+                    chunkStart += chunk.size();
+                    chunk = new ArrayList<>(chunkRows);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(pool, inFlight, loader, chunk, chunkStart, chunkIndex);
+            }
+            inFlight.acquire(workers * CHUNKS_PER_WORKER);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Meal plan import was interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    private static void submit(ExecutorService pool, Semaphore inFlight, Loader loader,
+                               List<String> chunk, int firstLine, int chunkIndex) throws InterruptedException {
+        inFlight.acquire();
+        pool.execute(() -> loader.load(chunk, firstLine, chunkIndex));
+    }
+
+    /**
+     * Maps the columns of a CSV header to fields.
+     */
+    private static int[] csvColumns(String header) throws IOException {
+        List<String> names;
+        try {
+            names = splitCsv(header);
+        } catch (MealPlanException e) {
+            throw new IOException("Malformed CSV header: " + e.getMessage());
+        }
+        int[] columns = new int[names.size()];
+        boolean hasName = false;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = field(names.get(i));
+            hasName |= columns[i] == NAME;
+        }
+        if (!hasName) {
+            throw new IOException("CSV header has no name column: " + header);
+        }
+        return columns;
+    }
+
+    /**
+     * Returns the field of a column or key name, or -1 for an unknown one.
+     */
+    private static int field(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT).replace("_", "").replace(" ", "")) {
+            case "feeder":
+            case "feederid":
+                return FEEDER;
+            case "name":
+                return NAME;
+            case "kibble":
+                return KIBBLE;
+            case "water":
+                return WATER;
+            case "wetfood":
+                return WET_FOOD;
+            case "treats":
+                return TREATS;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Splits a CSV line into fields. Fields may be quoted, with "" for a quote.
+     */
+    static List<String> splitCsv(String line) throws MealPlanException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new MealPlanException("Unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    throw new MealPlanException("Unexpected text after quoted field");
+                }
+            } else {
+                int end = line.indexOf(',', i);
+                end = end < 0 ? line.length() : end;
+                field.append(line, i, end);
+                i = end;
+            }
+            fields.add(field.toString());
+            if (i >= line.length()) {
+                return fields;
+            }
+            i++; // the comma
+        }
+    }
+
+    /**
+     * Parses a flat JSON object of string, number, boolean and null values
+     * into fields. A surrounding array bracket or trailing comma is skipped,
+     * so a JSON array with one object per line can be read line by line.
+     */
+    static String[] parseJson(String line) throws MealPlanException {
+        String[] values = new String[COLUMNS];
+        String text = line.strip();
+        if (text.startsWith("[")) {
+            text = text.substring(1).strip();
+        }
+        if (text.endsWith("]")) {
+            text = text.substring(0, text.length() - 1).strip();
+        }
+        if (text.endsWith(",")) {
+            text = text.substring(0, text.length() - 1).strip();
+        }
+        JsonCursor cursor = new JsonCursor(text);
+        cursor.expect('{');
+        if (!cursor.skip('}')) {
+            do {
+                String key = cursor.string();
+                cursor.expect(':');
+                String value = cursor.value();
+                int field = field(key);
+                if (field >= 0) {
+                    values[field] = value;
+                }
+            } while (cursor.skip(','));
+            cursor.expect('}');
+        }
+        if (!cursor.atEnd()) {
+            throw new MealPlanException("Unexpected text after JSON object");
+        }
+        return values;
+    }
+
+    /**
+     * Reads the tokens of one JSON object.
+     */
+    private static final class JsonCursor {
+        private final String text;
+        private int position;
+
+        JsonCursor(String text) {
+            this.text = text;
+        }
+
+        void skipSpace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        boolean atEnd() {
+            skipSpace();
+            return position == text.length();
+        }
+
+        boolean skip(char c) {
+            skipSpace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) throws MealPlanException {
+            if (!skip(c)) {
+                throw new MealPlanException("Malformed JSON: expected '" + c + "' at column " + (position + 1));
+            }
+        }
+
+        String string() throws MealPlanException {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new MealPlanException("Malformed JSON: bad unicode escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new MealPlanException("Malformed JSON: bad unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+            throw new MealPlanException("Malformed JSON: unterminated string");
+        }
+
+        /**
+         * Returns a value as text: strings unquoted, null as null, anything
+         * else as written.
+         */
+        String value() throws MealPlanException {
+            skipSpace();
+            if (position < text.length() && text.charAt(position) == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < text.length() && text.charAt(position) != ',' && text.charAt(position) != '}'
+                    && !Character.isWhitespace(text.charAt(position))) {
+                char c = text.charAt(position);
+                if (c == '{' || c == '[') {
+                    throw new MealPlanException("Malformed JSON: nested values are not supported");
+                }
+                position++;
+            }
+            if (start == position) {
+                throw new MealPlanException("Malformed JSON: missing value at column " + (position + 1));
+            }
+            String token = text.substring(start, position);
+            return token.equals("null") ? null : token;
+        }
+    }
+
+    /**
+     * Parses and validates the rows of chunks and adds them to their
+     * books in chunk order; shared by the workers.
+     */
+    private static final class Loader {
+        private final Format format;
+        private final int[] columns;
+        private final Function<String, MealPlanBook> books;
+        private final boolean byFeeder;
+        private final Result result;
+        private final Semaphore inFlight;
+        /** Parsed chunks waiting for the chunks before them, by index; guarded by itself. */
+        private final Map<Integer, Parsed> waiting = new HashMap<>();
+        /** Index of the next chunk to add to the books; guarded by waiting. */
+        private int nextChunk;
+
+        Loader(Format format, int[] columns, Function<String, MealPlanBook> books, boolean byFeeder,
+               Result result, Semaphore inFlight) {
+            this.format = format;
+            this.columns = columns;
+            this.books = books;
+            this.byFeeder = byFeeder;
+            this.result = result;
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * Parses a chunk, then adds it and every parsed chunk after it that
+         * is due to the books, releasing the permit of each.
+         */
+        void load(List<String> chunk, int firstLine, int chunkIndex) {
+            Parsed parsed = new Parsed();
+            try {
+                parse(chunk, firstLine, parsed);
+            } finally {
+                synchronized (waiting) {
+                    waiting.put(chunkIndex, parsed);
+                    Parsed next;
+                    while ((next = waiting.remove(nextChunk)) != null) {
+                        nextChunk++;
+                        try {
+                            add(next);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                }
+            }
+        }
+
+        private void parse(List<String> chunk, int firstLine, Parsed parsed) {
+            for (int i = 0; i < chunk.size(); i++) {
+                String line = chunk.get(i);
+                if (line.isBlank() || (format == Format.JSON_LINES && isArrayBracket(line))) {
+                    continue;
+                }
+                int lineNumber = firstLine + i;
+                result.rows.increment();
+                try {
+                    String[] values = format == Format.CSV ? csvValues(line) : parseJson(line);
+                    MealPlanBook book = books.apply(byFeeder ? values[FEEDER] : null);
+                    if (book == null) {
+                        throw new MealPlanException(values[FEEDER] == null || values[FEEDER].isEmpty()
+                                ? "Missing feeder id" : "Unknown feeder: " + values[FEEDER]);
+                    }
+                    MealPlan.Builder builder = new MealPlan.Builder();
+                    builder.setName(values[NAME]);
+                    builder.setAmtKibble(amount(values[KIBBLE]));
+                    builder.setAmtWater(amount(values[WATER]));
+                    builder.setAmtWetFood(amount(values[WET_FOOD]));
+                    builder.setAmtTreats(amount(values[TREATS]));
+                    parsed.batches.computeIfAbsent(book, b -> new Batch()).add(builder.build(), lineNumber);
+                } catch (MealPlanException e) {
+                    parsed.errors.add(new RowError(lineNumber, e.getMessage()));
+                } catch (RuntimeException e) {
+                    parsed.errors.add(new RowError(lineNumber, String.valueOf(e)));
+                }
+            }
+        }
+
+        /**
+         * Adds a parsed chunk to its books and reports its bad rows, by
+         * line number. Called for the chunks in order.
+         */
+        private void add(Parsed parsed) {
+            List<RowError> errors = parsed.errors;
+            for (Map.Entry<MealPlanBook, Batch> entry : parsed.batches.entrySet()) {
+                Batch batch = entry.getValue();
+                boolean[] added = entry.getKey().addMealPlans(batch.mealPlans);
+                for (int i = 0; i < added.length; i++) {
+                    if (added[i]) {
+                        result.imported.increment();
+                    } else {
+                        errors.add(new RowError(batch.lines.get(i), "Duplicate meal plan name: " + batch.mealPlans.get(i).getName()));
+                    }
+                }
+            }
+            errors.sort(Comparator.comparingInt(RowError::getLine));
+            result.reject(errors);
+        }
+
+        private String[] csvValues(String line) throws MealPlanException {
+            List<String> fields = splitCsv(line);
+            String[] values = new String[COLUMNS];
+            for (int i = 0; i < columns.length && i < fields.size(); i++) {
+                if (columns[i] >= 0) {
+                    values[columns[i]] = fields.get(i);
+                }
+            }
+            return values;
+        }
+
+        private static boolean isArrayBracket(String line) {
+            String text = line.strip();
+            return text.equals("[") || text.equals("]");
+        }
+
+        private static String amount(String value) {
+            return value == null || value.isEmpty() ? "0" : value.trim();
+        }
+    }
+
+    /**
+     * A parsed chunk: its meal plans by book and its bad rows.
+     */
+    private static final class Parsed {
+        private final Map<MealPlanBook, Batch> batches = new IdentityHashMap<>();
+        private final List<RowError> errors = new ArrayList<>();
+    }
+
+    /**
+     * Meal plans of one chunk bound for one book, with their line numbers.
+     */
+    private static final class Batch {
+        private final List<MealPlan> mealPlans = new ArrayList<>();
+        private final List<Integer> lines = new ArrayList<>();
+
+        void add(MealPlan mealPlan, int line) {
+            mealPlans.add(mealPlan);
+            lines.add(line);
+        }
+    }
+
+    /**
+     * A row that was not imported.
+     */
+    public static final class RowError {
+        private final int line;
+        private final String message;
+
+        private RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * Returns the line number of the row, starting at 1.
+         * @return int
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * Returns why the row was not imported.
+         * @return String
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
+    }
+
+    /**
+     * Counts of an import and the rows that were not imported.
+     */
+    public static final class Result {
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder imported = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final List<RowError> errors = new ArrayList<>();
+
+        private Result() {
+        }
+
+        /**
+         * Counts the bad rows of a chunk and keeps them while there is
+         * room. Called for the chunks in order, so the first bad rows of
+         * the file are kept.
+         */
+        private void reject(List<RowError> chunkErrors) {
+            rejected.add(chunkErrors.size());
+            synchronized (errors) {
+                for (RowError error : chunkErrors) {
+                    if (errors.size() == MAX_REPORTED_ERRORS) {
+                        break;
+                    }
+                    errors.add(error);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of rows read, not counting the header and blank lines.
+         * @return long
+         */
+        public long getRowCount() {
+            return rows.sum();
+        }
+
+        /**
+         * Returns the number of meal plans added to a book.
+         * @return long
+         */
+        public long getImportedCount() {
+            return imported.sum();
+        }
+
+        /**
+         * Returns the number of rows that were not imported.
+         * @return long
+         */
+        public long getRejectedCount() {
+            return rejected.sum();
+        }
+
+        /**
+         * Returns the first rows of the file that were not imported, by line number; at most
+         * {@value MealPlanImporter#MAX_REPORTED_ERRORS} of them.
+         * @return List of row errors
+         */
+        public List<RowError> getErrors() {
+            synchronized (errors) {
+                return Collections.unmodifiableList(new ArrayList<>(errors));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getImportedCount() + " of " + getRowCount() + " meal plans imported, "
+                    + getRejectedCount() + " rejected";
+        }
+    }
+}
@@ -1,25 +1,116 @@
 package petfeeder;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
 import petfeeder.exceptions.FoodStockException;
 
 public class PetFeeder {
     
     /** Array of meal plans in pet feeder */
-    private static MealPlanBook mealPlanBook;
+    private final MealPlanBook mealPlanBook;
     /** Food container (inventory) of the pet feeder */
-    private static FoodContainer foodContainer;
-    /** Simple total energy limit (in the same abstract energy points as meal energyCost). */
-    private static final int ENERGY_LIMIT = 500;
-    /** Energy consumed so far since the feeder was started. */
-    private int energyConsumedSoFar;
+    private final FoodContainer foodContainer;
+    /** Energy limit per day of a feeder created without an energy budget (in the same abstract energy points as meal energyCost). */
+    public static final int DEFAULT_ENERGY_LIMIT = 500;
+    /** Energy that may be dispensed within a sliding time window. */
+    private final EnergyBudget energyBudget;
+    /** Journal the changes of the feeder are recorded in, or null. */
+    private final FeederJournal journal;
+    /**
+     * Lock held while dispensing and while a journaled change is made. A
+     * ReentrantLock rather than the monitor of the feeder, so a virtual
+     * thread that waits for it, or blocks while holding it, gives its
+     * carrier thread back.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Requests made with dispenseMealAsync, waiting to be dispensed in
+     * order; created by the first such request, so the feeder does not
+     * hand itself out before it is constructed.
+     */
+    private volatile DispenseQueue dispenseQueue;
+
+    private static final VarHandle DISPENSE_QUEUE;
+
+    static {
+        try {
+            DISPENSE_QUEUE = MethodHandles.lookup().findVarHandle(PetFeeder.class, "dispenseQueue", DispenseQueue.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    /** Metrics the feeder reports to; only changed before the feeder is shared. */
+    private FeederMetrics metrics = FeederMetrics.shared();
+    /** Event log the dispenses are published to, or null; only changed before the feeder is shared. */
+    private EventLog eventLog;
+    /** Id of the feeder in its events, or null. */
+    private String feederId;
+    /** Told about meal plan changes and replenishes; see setChangeListener. */
+    private volatile Runnable changeListener;
     
     /**
      * Constructor for the pet feeder.
      */
     public PetFeeder() {
-        mealPlanBook = new MealPlanBook();
-        foodContainer = new FoodContainer();
-        this.energyConsumedSoFar = 0;
+        this(new MealPlanBook(), new FoodContainer());
+    }
+
+    /**
+     * Constructor for a pet feeder that uses the given meal plan book
+     * and food container. Neither should be shared with another feeder.
+     * The feeder may dispense {@value #DEFAULT_ENERGY_LIMIT} energy points
+     * per 24 hours.
+     * @param mealPlanBook The meal plans of the feeder.
+     * @param foodContainer The food stock of the feeder.
+     */
+    public PetFeeder(MealPlanBook mealPlanBook, FoodContainer foodContainer) {
+        this(mealPlanBook, foodContainer, EnergyBudget.daily(DEFAULT_ENERGY_LIMIT), null);
+    }
+
+    /**
+     * Constructor for a pet feeder with its own energy budget. None of the
+     * arguments should be shared with another feeder.
+     * @param mealPlanBook The meal plans of the feeder.
+     * @param foodContainer The food stock of the feeder.
+     * @param energyBudget The energy the feeder may dispense per time window.
+     */
+    public PetFeeder(MealPlanBook mealPlanBook, FoodContainer foodContainer, EnergyBudget energyBudget) {
+        this(mealPlanBook, foodContainer, energyBudget, null);
+    }
+
+    /**
+     * Constructor for a pet feeder that records its changes in a journal.
+     * The current state of the meal plan book and food container is
+     * written to the journal first, so the journal alone can rebuild the
+     * feeder with {@link FeederJournal#recover()}.
+     * @param mealPlanBook The meal plans of the feeder.
+     * @param foodContainer The food stock of the feeder.
+     * @param journal The journal to record changes in.
+     */
+    public PetFeeder(MealPlanBook mealPlanBook, FoodContainer foodContainer, FeederJournal journal) {
+        this(mealPlanBook, foodContainer, EnergyBudget.daily(DEFAULT_ENERGY_LIMIT), journal);
+        journal.reset(foodContainer.getStock(), 0, mealPlanBook.getSnapshot());
+    }
+
+    /**
+     * Constructor for a pet feeder restored from saved state.
+     * @param mealPlanBook The meal plans of the feeder.
+     * @param foodContainer The food stock of the feeder.
+     * @param energyBudget The energy budget, holding the energy consumed before the state was saved.
+     * @param journal The journal to record changes in, or null.
+     */
+    PetFeeder(MealPlanBook mealPlanBook, FoodContainer foodContainer, EnergyBudget energyBudget,
+              FeederJournal journal) {
+        this.mealPlanBook = mealPlanBook;
+        this.foodContainer = foodContainer;
+        this.energyBudget = energyBudget;
+        this.journal = journal;
     }
     
     /**
@@ -30,7 +121,24 @@ public class PetFeeder {
      * @return boolean
      */
     public boolean addMealPlan(MealPlan m) {
-        return mealPlanBook.addMealPlan(m);
+        boolean added;
+        if (journal == null) {
+            added = mealPlanBook.addMealPlan(m);
+        } else {
+            lock.lock();
+            try {
+                added = mealPlanBook.addMealPlan(m);
+                if (added) {
+                    journal.mealPlanPut(mealPlanBook.indexOf(m.getName()), m);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (added) {
+            changed();
+        }
+        return added;
     }
     
     /**
@@ -40,7 +148,24 @@ public class PetFeeder {
      * @return String
      */
     public String deleteMealPlan(int mealPlanToDelete) {
-        return mealPlanBook.deleteMealPlan(mealPlanToDelete);
+        String deleted;
+        if (journal == null) {
+            deleted = mealPlanBook.deleteMealPlan(mealPlanToDelete);
+        } else {
+            lock.lock();
+            try {
+                deleted = mealPlanBook.deleteMealPlan(mealPlanToDelete);
+                if (deleted != null) {
+                    journal.mealPlanCleared(mealPlanToDelete);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (deleted != null) {
+            changed();
+        }
+        return deleted;
     }
     
     /**
@@ -51,87 +176,530 @@ public class PetFeeder {
      * @return String
      */
     public String editMealPlan(int mealPlanToEdit, MealPlan m) {
-        return mealPlanBook.editMealPlan(mealPlanToEdit, m);
+        String edited;
+        if (journal == null) {
+            edited = mealPlanBook.editMealPlan(mealPlanToEdit, m);
+        } else {
+            lock.lock();
+            try {
+                edited = mealPlanBook.editMealPlan(mealPlanToEdit, m);
+                if (edited != null) {
+                    if (m == null) {
+                        journal.mealPlanCleared(mealPlanToEdit);
+                    } else {
+                        journal.mealPlanPut(mealPlanToEdit, m);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (edited != null) {
+            changed();
+        }
+        return edited;
     }
     
     /**
-     * Returns true if food stock was successfully replenished.
+     * Replenishes the food stock from string amounts. All four amounts
+     * are validated before any of them is added, and then added in one
+     * atomic step.
      * @param amtKibble The amount of kibble to add.
      * @param amtWater The amount of water to add.
      * @param amtWetFood The amount of wet food to add.
      * @param amtTreats The amount of treats to add.
      * @throws FoodStockException if inputs are invalid.
      */
-    public synchronized void replenishFood(String amtKibble, String amtWater, String amtWetFood, String amtTreats) throws FoodStockException {
-        foodContainer.addKibble(amtKibble);
-        foodContainer.addWater(amtWater);
-        // This will call the method with the seeded bug
-        foodContainer.addWetFood(amtWetFood);
-        foodContainer.addTreats(amtTreats);
+    public void replenishFood(String amtKibble, String amtWater, String amtWetFood, String amtTreats) throws FoodStockException {
+        int kibble;
+        int water;
+        int wetFood;
+        int treats;
+        try {
+            kibble = FoodContainer.parseUnits(amtKibble, "kibble");
+            water = FoodContainer.parseUnits(amtWater, "water");
+            wetFood = FoodContainer.parseUnits(amtWetFood, "wet food");
+            treats = FoodContainer.parseUnits(amtTreats, "treats");
+        } catch (FoodStockException e) {
+            metrics.replenished(false, 0);
+            throw e;
+        }
+        if (!replenish(kibble, water, wetFood, treats)) {
+            throw new FoodStockException("Food stock would exceed the container capacity");
+        }
+    }
+
+    /**
+     * Returns true if food stock was successfully replenished. Nothing is
+     * added, and false is returned, if any amount is negative or would
+     * overfill the container.
+     * @param kibble The amount of kibble to add.
+     * @param water The amount of water to add.
+     * @param wetFood The amount of wet food to add.
+     * @param treats The amount of treats to add.
+     * @return boolean
+     */
+    public boolean replenish(int kibble, int water, int wetFood, int treats) {
+        long start = metrics.startTiming();
+        boolean replenished;
+        if (journal == null) {
+            replenished = foodContainer.replenish(kibble, water, wetFood, treats);
+        } else {
+            // Under the journal lock, so a checkpoint sees the stock and the record together.
+            journal.getLock().lock();
+            try {
+                replenished = foodContainer.replenish(kibble, water, wetFood, treats);
+                if (replenished) {
+                    journal.replenished(FoodContainer.pack(kibble, water, wetFood, treats));
+                }
+            } finally {
+                journal.getLock().unlock();
+            }
+        }
+        metrics.replenished(replenished, start);
+        if (replenished) {
+            changed();
+        }
+        return replenished;
     }
     
     /**
      * Returns the food stock status of the pet feeder.
      * @return String
      */
-    public synchronized String checkFoodStock() {
-        return foodContainer.toString();
+    public String checkFoodStock() {
+        lock.lock();
+        try {
+            return foodContainer.toString();
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
      * Attempts to dispense the selected meal plan.
      * Returns true if the meal was successfully dispensed and false otherwise.
+     * An index outside the meal plan list throws ArrayIndexOutOfBoundsException.
      * @param mealPlanToPurchase The index of the meal plan selected by the user.
      * @return boolean True if dispensing succeeded.
      */
-    public synchronized boolean dispenseMeal(int mealPlanToPurchase) {
-        boolean dispensed = false;
-        MealPlan[] plans = getMealPlans();
+    public boolean dispenseMeal(int mealPlanToPurchase) {
+        DispenseResult result = dispenseMealResult(mealPlanToPurchase);
+        if (result == DispenseResult.NO_MEAL_PLAN) {
+            int length = mealPlanBook.getSnapshot().length;
+            if (mealPlanToPurchase < 0 || mealPlanToPurchase >= length) {
+                throw new ArrayIndexOutOfBoundsException("Index " + mealPlanToPurchase + " out of bounds for length " + length);
+            }
+        }
+        return result.isDispensed();
+    }
 
-        if (plans[mealPlanToPurchase] == null) {
-            dispensed = false;
-        } else {
-            MealPlan selected = plans[mealPlanToPurchase];
-            int mealEnergy = selected.getEnergyCost();
-            int remainingEnergyBudget = ENERGY_LIMIT - energyConsumedSoFar;
-
-            // Require enough remaining total energy budget.
-            if (mealEnergy <= remainingEnergyBudget) {
-                if (foodContainer.useIngredients(selected)) {
-                    energyConsumedSoFar += mealEnergy;
-                    dispensed = true;
-                } else {
-                    dispensed = false;
+    /**
+     * Attempts to dispense the selected meal plan, as dispenseMeal does,
+     * and returns whether it was dispensed or why not. An index outside
+     * the meal plan list is NO_MEAL_PLAN, as for dispenseMealAsync.
+     * @param mealPlanToPurchase The index of the meal plan selected by the user.
+     * @return DispenseResult
+     */
+    DispenseResult dispenseMealResult(int mealPlanToPurchase) {
+        long start = metrics.startTiming();
+        DispenseResult result;
+        lock.lock();
+        try {
+            metrics.lockAcquired(start);
+            result = dispenseLocked(mealPlanToPurchase);
+        } finally {
+            lock.unlock();
+        }
+        metrics.dispensed(result, start);
+        publishDispense(mealPlanToPurchase, result);
+        return result;
+    }
+
+    /**
+     * Queues a request to dispense the selected meal plan and returns at
+     * once. Requests to one feeder are handled one at a time, in the order
+     * they were made, by a single task that takes several queued requests
+     * under one lock of the feeder; the caller never blocks. The future is
+     * completed by that task, so slow actions attached to it should use the
+     * async methods of CompletableFuture.
+     * @param mealPlanToPurchase The index of the meal plan selected by the user.
+     * @return CompletableFuture The result of the request: DISPENSED or why the meal was not dispensed.
+     */
+    public CompletableFuture<DispenseResult> dispenseMealAsync(int mealPlanToPurchase) {
+        DispenseQueue queue = dispenseQueue;
+        if (queue == null) {
+            DispenseQueue created = new DispenseQueue(this);
+            DispenseQueue witness = (DispenseQueue) DISPENSE_QUEUE.compareAndExchange(this, null, created);
+            queue = witness == null ? created : witness;
+        }
+        return queue.submit(mealPlanToPurchase);
+    }
+
+    /**
+     * Dispenses the meal plan at an index; called by dispenseMealResult
+     * and the dispense queue while they hold the lock of the feeder. An
+     * index outside the meal plan list is a missing meal plan.
+     * @param mealPlanToPurchase The index of the meal plan.
+     * @return DispenseResult
+     */
+    DispenseResult dispenseLocked(int mealPlanToPurchase) {
+        MealPlan[] plans = mealPlanBook.getSnapshot();
+        if (mealPlanToPurchase < 0 || mealPlanToPurchase >= plans.length) {
+            return DispenseResult.NO_MEAL_PLAN;
+        }
+        return dispense(plans[mealPlanToPurchase]);
+    }
+
+    /**
+     * Dispenses the selected meal plan if the energy budget and the food
+     * stock allow it. The caller holds the lock of the feeder.
+     * @param selected The meal plan, or null.
+     * @return DispenseResult
+     */
+    private DispenseResult dispense(MealPlan selected) {
+        if (selected == null) {
+            return DispenseResult.NO_MEAL_PLAN;
+        }
+        int mealEnergy = selected.getEnergyCost();
+        // Require enough remaining energy budget in the current window.
+        if (mealEnergy > energyBudget.getRemaining()) {
+            return DispenseResult.ENERGY_BUDGET_EXCEEDED;
+        }
+        long start = metrics.startTiming();
+        boolean used = foodContainer.useIngredients(selected);
+        metrics.usedIngredients(used, start);
+        if (!used) {
+            return DispenseResult.INSUFFICIENT_INGREDIENTS;
+        }
+        energyBudget.consume(mealEnergy);
+        if (journal != null) {
+            journal.dispensed(FoodContainer.amountsOf(selected), mealEnergy);
+        }
+        return DispenseResult.DISPENSED;
+    }
+
+    /**
+     * Attempts to dispense a batch of meal plans, in order, as if dispenseMeal
+     * were called for each index. The feeder is locked once, the energy budget
+     * and food stock are read once, and the ingredients of every accepted meal
+     * are removed in a single atomic step. A meal that does not fit the
+     * remaining budget or stock is skipped and later meals may still be
+     * dispensed. Bit i of the returned bitmap (word i / 64, bit i % 64) is set
+     * if the meal at planIndexes[i] was dispensed.
+     * @param planIndexes The indexes of the meal plans to dispense.
+     * @return long[] The per-meal result bitmap.
+     */
+    public long[] dispenseMeals(int[] planIndexes) {
+        long[] dispensed = new long[(planIndexes.length + 63) >>> 6];
+        dispenseMeals(planIndexes, dispensed);
+        return dispensed;
+    }
+
+    /**
+     * Allocation-free form of dispenseMeals(int[]) that writes the per-meal
+     * result bitmap into the given array and returns the number of meals
+     * dispensed. An index outside the meal plan list throws before anything
+     * is dispensed.
+     * @param planIndexes The indexes of the meal plans to dispense.
+     * @param dispensed The bitmap to fill, at least (planIndexes.length + 63) / 64 words long.
+     * @return int The number of meals dispensed.
+     */
+    public int dispenseMeals(int[] planIndexes, long[] dispensed) {
+        int words = (planIndexes.length + 63) >>> 6;
+        if (dispensed.length < words) {
+            throw new IllegalArgumentException("Result bitmap needs " + words + " words");
+        }
+        lock.lock();
+        try {
+            MealPlan[] plans = mealPlanBook.getSnapshot();
+            int remainingEnergyBudget = energyBudget.getRemaining();
+
+            while (true) {
+                Arrays.fill(dispensed, 0, words, 0L);
+                long available = foodContainer.getStock();
+                long required = 0;
+                int batchEnergy = 0;
+                int count = 0;
+                int noMealPlan = 0;
+                int overBudget = 0;
+                int shortOfIngredients = 0;
+                for (int i = 0; i < planIndexes.length; i++) {
+                    MealPlan selected = plans[planIndexes[i]];
+                    if (selected == null) {
+                        noMealPlan++;
+                        continue;
+                    }
+                    // Checked in the same order as a single dispense.
+                    int mealEnergy = selected.getEnergyCost();
+                    if (mealEnergy > remainingEnergyBudget - batchEnergy) {
+                        overBudget++;
+                        continue;
+                    }
+                    long amounts = FoodContainer.amountsOf(selected);
+                    if (!FoodContainer.validAmounts(selected) || !FoodContainer.covers(available - required, amounts)) {
+                        shortOfIngredients++;
+                        continue;
+                    }
+                    required += amounts;
+                    batchEnergy += mealEnergy;
+                    dispensed[i >>> 6] |= 1L << i;
+                    count++;
+                }
+                // Only fails if another user of the container took stock since it was read.
+                if (foodContainer.useIngredients(required)) {
+                    energyBudget.consume(batchEnergy);
+                    metrics.dispensed(count, noMealPlan, overBudget, shortOfIngredients);
+                    if (journal != null && count > 0) {
+                        journal.dispensed(required, batchEnergy);
+                    }
+                    return count;
                 }
-            } else {
-                dispensed = false;
             }
+        } finally {
+            lock.unlock();
         }
+    }
 
-        return dispensed;
+    /**
+     * Returns the packed stock word of the food container, read without locking.
+     * @return long
+     */
+    long getStock() {
+        return foodContainer.getStock();
+    }
+
+    /**
+     * Returns the lock held while the feeder dispenses.
+     * @return ReentrantLock
+     */
+    ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Returns the metrics the feeder reports to.
+     * @return FeederMetrics
+     */
+    FeederMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Makes the feeder report to the given metrics instead of the shared
+     * ones. Only call this before the feeder is used by other threads.
+     * @param metrics The metrics to report to.
+     */
+    void setMetrics(FeederMetrics metrics) {
+        this.metrics = metrics;
     }
 
     /**
-     * Returns the list of MealPlans in the MealPlanBook.
+     * Makes the feeder publish a DISPENSE event with its id and the result
+     * to the given event log for every meal it is asked to dispense by
+     * dispenseMeal or dispenseMealAsync, and makes feeding schedulers name
+     * it by that id. Batches of dispenseMeals are not published. Only call
+     * this before the feeder is used by other threads.
+     * @param eventLog The event log to publish to, or null to stop publishing.
+     * @param feederId The id of the feeder in its events, or null.
+     */
+    public void setEventLog(EventLog eventLog, String feederId) {
+        this.eventLog = eventLog;
+        this.feederId = feederId;
+    }
+
+    /**
+     * Returns the id of the feeder in its events, or null if it has none.
+     * @return String
+     */
+    public String getFeederId() {
+        return feederId;
+    }
+
+    /**
+     * Publishes the result of a dispense if the feeder has an event log.
+     * Called without the lock of the feeder held.
+     * @param mealPlanToPurchase The index of the meal plan.
+     * @param result The result of the dispense.
+     */
+    void publishDispense(int mealPlanToPurchase, DispenseResult result) {
+        if (eventLog != null) {
+            eventLog.publish(FeederEvent.Type.DISPENSE, feederId, mealPlanToPurchase, result, null);
+        }
+    }
+
+    /**
+     * Sets the listener told about changes to the meal plans and
+     * replenishes of the feeder, or removes it if null. The listener runs
+     * on the thread that made the change and must be quick.
+     * @param changeListener The listener.
+     */
+    void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void changed() {
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Returns the list of MealPlans in the MealPlanBook. This is a copy
+     * of the book's current snapshot and is read without locking the
+     * feeder, so polling it never waits for a dispense.
      * @return MealPlan[]
      */
-    public synchronized MealPlan[] getMealPlans() {
+    public MealPlan[] getMealPlans() {
         return mealPlanBook.getMealPlans();
     }
 
     /**
-     * Returns the configured total energy limit for this feeder.
+     * Returns the book's current snapshot of the meal plans without
+     * copying it; see MealPlanBook.getSnapshot(). It must not be modified.
+     * @return MealPlan[]
+     */
+    MealPlan[] getMealPlanSnapshot() {
+        return mealPlanBook.getSnapshot();
+    }
+
+    /**
+     * Returns the energy limit per time window of this feeder.
      * @return int
      */
     public int getEnergyLimit() {
-        return ENERGY_LIMIT;
+        return energyBudget.getLimit();
     }
 
     /**
-     * Returns the remaining energy budget (limit minus energy consumed so far).
+     * Returns the remaining energy budget (limit minus energy consumed in
+     * the current window). Safe to call from any thread without locking.
      * @return int
      */
     public int getRemainingEnergyBudget() {
-        return ENERGY_LIMIT - energyConsumedSoFar;
+        return energyBudget.getRemaining();
+    }
+
+    /**
+     * Returns the energy budget of this feeder.
+     * @return EnergyBudget
+     */
+    public EnergyBudget getEnergyBudget() {
+        return energyBudget;
+    }
+
+    /**
+     * Returns a copy of the state of the feeder: its food stock, energy
+     * budget and meal plans, and the last journal record they include. The
+     * feeder is locked only while the values are read, so dispensing goes
+     * on while the copy is being saved.
+     * @return State
+     */
+    State captureState() {
+        lock.lock();
+        try {
+            if (journal == null) {
+                return captureState(0);
+            }
+            // Replenishes change the stock under the journal lock.
+            journal.getLock().lock();
+            try {
+                return captureState(journal.getLastSequence());
+            } finally {
+                journal.getLock().unlock();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private State captureState(long journalSequence) {
+        return new State(foodContainer.getStock(), energyBudget.getLimit(),
+                energyBudget.getWindow(TimeUnit.NANOSECONDS), energyBudget.getBuckets(),
+                energyBudget.getConsumed(), mealPlanBook.getSnapshot(), journalSequence);
+    }
+
+    /**
+     * Rewrites the journal of the feeder as its current state; see
+     * FeederJournal.checkpoint(PetFeeder). The feeder is locked, and the
+     * journal is locked inside it, so no change is left out of the new
+     * file or recorded twice.
+     * @param journal The journal to rewrite; must be the journal of this feeder.
+     * @throws IOException if the new journal file cannot be written.
+     */
+    void checkpointJournal(FeederJournal journal) throws IOException {
+        if (journal != this.journal) {
+            throw new IllegalArgumentException("The feeder does not record its changes in this journal");
+        }
+        lock.lock();
+        try {
+            journal.checkpoint(foodContainer.getStock(), energyBudget.getConsumed(), mealPlanBook.getSnapshot());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a new pet feeder with the given state and no journal. The
+     * energy consumed in the saved window is counted as consumed when the
+     * state was captured, so it stops counting one window after that.
+     * @param state The state of the feeder.
+     * @param ageMillis How long ago the state was captured, in milliseconds.
+     * @return PetFeeder
+     */
+    static PetFeeder fromState(State state, long ageMillis) {
+        return fromState(state, ageMillis, null);
+    }
+
+    /**
+     * Returns a new pet feeder with the given state, as fromState(State, long)
+     * does, that records its later changes in the given journal. Nothing is
+     * written to the journal.
+     * @param state The state of the feeder.
+     * @param ageMillis How long ago the state was captured, in milliseconds.
+     * @param journal The journal to record changes in, or null.
+     * @return PetFeeder
+     */
+    static PetFeeder fromState(State state, long ageMillis, FeederJournal journal) {
+        MealPlanBook mealPlanBook = new MealPlanBook();
+        mealPlanBook.restore(state.mealPlans);
+        FoodContainer foodContainer = new FoodContainer();
+        foodContainer.setStock(state.stock);
+        EnergyBudget energyBudget = new EnergyBudget(state.energyLimit, state.energyWindowNanos,
+                TimeUnit.NANOSECONDS, state.energyBuckets);
+        energyBudget.consume(state.energyConsumed, ageMillis, TimeUnit.MILLISECONDS);
+        return new PetFeeder(mealPlanBook, foodContainer, energyBudget, journal);
+    }
+
+    /**
+     * Unchanging copy of the state of a pet feeder.
+     */
+    static final class State {
+        /** Packed food stock. */
+        final long stock;
+        /** Energy limit per window. */
+        final int energyLimit;
+        /** Length of the energy window in nanoseconds. */
+        final long energyWindowNanos;
+        /** Number of buckets the energy window is split into. */
+        final int energyBuckets;
+        /** Energy consumed in the current window. */
+        final int energyConsumed;
+        /** Meal plans indexed by handle; a book snapshot that is never modified. */
+        final MealPlan[] mealPlans;
+        /** Sequence number of the last journal record included, or 0 if the feeder has no journal. */
+        final long journalSequence;
+
+        State(long stock, int energyLimit, long energyWindowNanos, int energyBuckets,
+              int energyConsumed, MealPlan[] mealPlans, long journalSequence) {
+            this.stock = stock;
+            this.energyLimit = energyLimit;
+            this.energyWindowNanos = energyWindowNanos;
+            this.energyBuckets = energyBuckets;
+            this.energyConsumed = energyConsumed;
+            this.mealPlans = mealPlans;
+            this.journalSequence = journalSequence;
+        }
     }
 }
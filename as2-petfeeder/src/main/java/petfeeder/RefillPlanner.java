@@ -0,0 +1,369 @@
+package petfeeder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Projects when each tracked feeder runs out of each ingredient and
+ * recommends refills for the ingredients that run out within a horizon.
+ * <p>
+ * A feeder is projected from the active schedules of its FeedingScheduler
+ * and the amounts of the scheduled meal plans. Each schedule eats its meal
+ * once per period, which gives a rate per ingredient. If the energy budget
+ * of the feeder cannot pay for every scheduled meal, the rates are scaled
+ * down to what the budget allows. An ingredient runs out when the stock at
+ * the time of the projection has been eaten at that rate.
+ * <p>
+ * Projections are kept up to date incrementally. The scheduler and the
+ * feeder tell the planner when a schedule is added or removed, a meal plan
+ * changes or food is replenished, which only queues the feeder. Queued
+ * feeders are projected again on the next read, and the feeders are kept
+ * ordered by their earliest depletion. So a read costs about the number of
+ * changes plus the number of recommendations, however many feeders there
+ * are. Scheduled feedings eat the stock as projected and need no update;
+ * call {@link #refresh(String)} after dispensing by hand.
+ */
+public class RefillPlanner {
+
+    /** Depletion time of an ingredient that never runs out. */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Ingredients of a food container.
+     */
+    public enum Ingredient {
+        /** Kibble. */
+        KIBBLE(FoodContainer.KIBBLE_SHIFT),
+        /** Water. */
+        WATER(FoodContainer.WATER_SHIFT),
+        /** Wet food. */
+        WET_FOOD(FoodContainer.WETFOOD_SHIFT),
+        /** Treats. */
+        TREATS(FoodContainer.TREATS_SHIFT);
+
+        private final int shift;
+
+        Ingredient(int shift) {
+            this.shift = shift;
+        }
+
+        int unitsIn(long word) {
+            return FoodContainer.unitsAt(word, shift);
+        }
+    }
+
+    private static final Ingredient[] INGREDIENTS = Ingredient.values();
+
+    /** Earliest depletion first; ties broken by the order of tracking. */
+    private static final Comparator<Entry> BY_DEPLETION =
+            Comparator.comparingLong((Entry entry) -> entry.earliest).thenComparingLong(entry -> entry.order);
+
+    private final long horizonMillis;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    /** Feeders that changed since they were last projected. */
+    private final Queue<Entry> changed = new ConcurrentLinkedQueue<>();
+    /** Projected feeders that run out of something; guarded by this. */
+    private final TreeSet<Entry> byDepletion = new TreeSet<>(BY_DEPLETION);
+    private long nextOrder;
+    private long projections;
+
+    /**
+     * Creates a refill planner that recommends refills for the ingredients
+     * that run out within the horizon.
+     * @param horizon How far ahead to recommend refills.
+     * @param unit The unit of horizon.
+     */
+    public RefillPlanner(long horizon, TimeUnit unit) {
+        this(unit.toMillis(horizon), System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a refill planner that reads the time from the given clock.
+     * @param horizonMillis How far ahead to recommend refills, in milliseconds.
+     * @param clock The current time in milliseconds.
+     */
+    RefillPlanner(long horizonMillis, LongSupplier clock) {
+        if (horizonMillis < 0) {
+            throw new IllegalArgumentException("Horizon must not be negative: " + horizonMillis);
+        }
+        this.horizonMillis = horizonMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts tracking a feeder and its scheduler. Returns false if any
+     * argument is null or the id is already tracked. The planner becomes
+     * the change listener of the feeder and the scheduler.
+     * @param feederId The id of the feeder.
+     * @param petFeeder The feeder.
+     * @param scheduler The scheduler of the feeder.
+     * @return boolean
+     */
+    public synchronized boolean track(String feederId, PetFeeder petFeeder, FeedingScheduler scheduler) {
+        if (feederId == null || petFeeder == null || scheduler == null) {
+            return false;
+        }
+        Entry entry = new Entry(feederId, petFeeder, scheduler, nextOrder);
+        if (entries.putIfAbsent(feederId, entry) != null) {
+            return false;
+        }
+        nextOrder++;
+        petFeeder.setChangeListener(entry);
+        scheduler.setChangeListener(entry);
+        entry.run();
+        return true;
+    }
+
+    /**
+     * Stops tracking a feeder. Returns false if it was not tracked.
+     * @param feederId The id of the feeder.
+     * @return boolean
+     */
+    public synchronized boolean untrack(String feederId) {
+        Entry entry = feederId == null ? null : entries.remove(feederId);
+        if (entry == null) {
+            return false;
+        }
+        entry.removed = true;
+        entry.petFeeder.setChangeListener(null);
+        entry.scheduler.setChangeListener(null);
+        byDepletion.remove(entry);
+        return true;
+    }
+
+    /**
+     * Projects a feeder again on the next read, for changes the planner is
+     * not told about, such as meals dispensed by hand. Returns false if
+     * the feeder is not tracked.
+     * @param feederId The id of the feeder.
+     * @return boolean
+     */
+    public boolean refresh(String feederId) {
+        Entry entry = feederId == null ? null : entries.get(feederId);
+        if (entry == null) {
+            return false;
+        }
+        entry.run();
+        return true;
+    }
+
+    /**
+     * Projects every tracked feeder again on the next read.
+     */
+    public void refreshAll() {
+        for (Entry entry : entries.values()) {
+            entry.run();
+        }
+    }
+
+    /**
+     * Returns the number of tracked feeders.
+     * @return int
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns when a feeder runs out of an ingredient, in milliseconds
+     * since the epoch, or {@link #NEVER} if it does not at the scheduled
+     * rate or is not tracked.
+     * @param feederId The id of the feeder.
+     * @param ingredient The ingredient.
+     * @return long
+     */
+    public synchronized long getDepletionTime(String feederId, Ingredient ingredient) {
+        update();
+        Entry entry = feederId == null ? null : entries.get(feederId);
+        return entry == null ? NEVER : entry.depletion[ingredient.ordinal()];
+    }
+
+    /**
+     * Returns a refill recommendation for every ingredient of every tracked
+     * feeder that runs out within the horizon, soonest first. An ingredient
+     * that has already run out is included.
+     * @return List of recommendations
+     */
+    public synchronized List<Recommendation> getRecommendations() {
+        update();
+        long deadline = clock.getAsLong() + horizonMillis;
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (Entry entry : byDepletion) {
+            if (entry.earliest > deadline) {
+                break;
+            }
+            long stock = entry.petFeeder.getStock();
+            for (Ingredient ingredient : INGREDIENTS) {
+                long depletion = entry.depletion[ingredient.ordinal()];
+                if (depletion <= deadline) {
+                    recommendations.add(new Recommendation(entry.feederId, ingredient, depletion,
+                            FoodContainer.MAX_UNITS - ingredient.unitsIn(stock)));
+                }
+            }
+        }
+        recommendations.sort(Comparator.comparingLong(Recommendation::getDepletionTime));
+        return recommendations;
+    }
+
+    /**
+     * Returns how many times a feeder has been projected, for tests.
+     * @return long
+     */
+    synchronized long getProjectionCount() {
+        return projections;
+    }
+
+    private void update() {
+        long now = clock.getAsLong();
+        Entry entry;
+        while ((entry = changed.poll()) != null) {
+            entry.queued.set(false);
+            if (!entry.removed) {
+                project(entry, now);
+            }
+        }
+    }
+
+    private void project(Entry entry, long now) {
+        byDepletion.remove(entry);
+        Map<Integer, Long> periods = entry.scheduler.getSchedulePeriods();
+        MealPlan[] plans = entry.petFeeder.getMealPlanSnapshot();
+        double[] rates = new double[INGREDIENTS.length];
+        double energyRate = 0;
+        for (Map.Entry<Integer, Long> schedule : periods.entrySet()) {
+            int index = schedule.getKey();
+            if (index < 0 || index >= plans.length || plans[index] == null) {
+                continue;
+            }
+            MealPlan plan = plans[index];
+            double mealsPerMilli = TimeUnit.MILLISECONDS.toNanos(1) / (double) schedule.getValue();
+            rates[Ingredient.KIBBLE.ordinal()] += plan.getAmtKibble() * mealsPerMilli;
+            rates[Ingredient.WATER.ordinal()] += plan.getAmtWater() * mealsPerMilli;
+            rates[Ingredient.WET_FOOD.ordinal()] += plan.getAmtWetFood() * mealsPerMilli;
+            rates[Ingredient.TREATS.ordinal()] += plan.getAmtTreats() * mealsPerMilli;
+            energyRate += plan.getEnergyCost() * mealsPerMilli;
+        }
+        EnergyBudget budget = entry.petFeeder.getEnergyBudget();
+        double allowedRate = budget.getLimit() / (double) budget.getWindow(TimeUnit.MILLISECONDS);
+        double scale = energyRate > allowedRate ? allowedRate / energyRate : 1;
+
+        long stock = entry.petFeeder.getStock();
+        long earliest = NEVER;
+        for (Ingredient ingredient : INGREDIENTS) {
+            double rate = rates[ingredient.ordinal()] * scale;
+            long depletion = NEVER;
+            if (rate > 0) {
+                double millisLeft = ingredient.unitsIn(stock) / rate;
+                if (millisLeft < NEVER - now) {
+                    depletion = now + (long) millisLeft;
+                }
+            }
+            entry.depletion[ingredient.ordinal()] = depletion;
+            earliest = Math.min(earliest, depletion);
+        }
+        entry.earliest = earliest;
+        if (earliest != NEVER) {
+            byDepletion.add(entry);
+        }
+        projections++;
+    }
+
+    /**
+     * A tracked feeder and its last projection. Running it queues the
+     * feeder to be projected again.
+     */
+    private final class Entry implements Runnable {
+        private final String feederId;
+        private final PetFeeder petFeeder;
+        private final FeedingScheduler scheduler;
+        private final long order;
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private volatile boolean removed;
+
+        // Guarded by the planner.
+        private final long[] depletion = new long[INGREDIENTS.length];
+        private long earliest = NEVER;
+
+        private Entry(String feederId, PetFeeder petFeeder, FeedingScheduler scheduler, long order) {
+            this.feederId = feederId;
+            this.petFeeder = petFeeder;
+            this.scheduler = scheduler;
+            this.order = order;
+            Arrays.fill(depletion, NEVER);
+        }
+
+        @Override
+        public void run() {
+            if (!removed && queued.compareAndSet(false, true)) {
+                changed.add(this);
+            }
+        }
+    }
+
+    /**
+     * A recommendation to refill one ingredient of one feeder.
+     */
+    public static final class Recommendation {
+        private final String feederId;
+        private final Ingredient ingredient;
+        private final long depletionTime;
+        private final int amount;
+
+        private Recommendation(String feederId, Ingredient ingredient, long depletionTime, int amount) {
+            this.feederId = feederId;
+            this.ingredient = ingredient;
+            this.depletionTime = depletionTime;
+            this.amount = amount;
+        }
+
+        /**
+         * Returns the id of the feeder.
+         * @return String
+         */
+        public String getFeederId() {
+            return feederId;
+        }
+
+        /**
+         * Returns the ingredient to refill.
+         * @return Ingredient
+         */
+        public Ingredient getIngredient() {
+            return ingredient;
+        }
+
+        /**
+         * Returns when the ingredient runs out, in milliseconds since the epoch.
+         * @return long
+         */
+        public long getDepletionTime() {
+            return depletionTime;
+        }
+
+        /**
+         * Returns the units to add to fill the container, as of the recommendation.
+         * @return int
+         */
+        public int getAmount() {
+            return amount;
+        }
+
+        @Override
+        public String toString() {
+            return feederId + ": add " + amount + " " + ingredient.name().toLowerCase().replace('_', ' ')
+                    + " before " + Instant.ofEpochMilli(depletionTime);
+        }
+    }
+}
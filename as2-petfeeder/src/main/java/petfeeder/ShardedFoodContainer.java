@@ -0,0 +1,236 @@
+package petfeeder;
+
+/**
+ * Food container for one hopper shared by many bowls, which many threads
+ * dispense from and refill at once.
+ * <p>
+ * The stock is split into stripes, about one per core, and each thread
+ * works on the stripe its id hashes to. A stripe holds part of the stock
+ * and part of the free space of each ingredient, guarded by its own
+ * monitor, so a meal that its stripe has the ingredients for, or a refill
+ * that its stripe has the room for, touches nothing shared. When the
+ * stripe runs dry, or out of room, the container locks every stripe in
+ * order, decides the call on the whole stock, and spreads the stock and
+ * free space evenly over the stripes again, giving the remainder to the
+ * stripe of the caller. So a call only fails when the whole container
+ * lacks the ingredients or the room, as for a FoodContainer, and every
+ * call is atomic.
+ * <p>
+ * Reading the stock (the getters, getStock and toString) locks every
+ * stripe, so it costs about as much as a rebalance and is meant for
+ * checking the stock now and then, not for every dispense.
+ */
+public class ShardedFoodContainer extends FoodContainer {
+
+    /** Most stripes a container may have; lockAll nests one monitor per stripe. */
+    static final int MAX_STRIPES = 256;
+    /** Packed stock word with every ingredient at MAX_UNITS. */
+    private static final long FULL = pack(MAX_UNITS, MAX_UNITS, MAX_UNITS, MAX_UNITS);
+
+    private static final int READ = 0;
+    private static final int USE = 1;
+    private static final int ADD = 2;
+    private static final int SET_STOCK = 3;
+    private static final int SET_UNITS = 4;
+
+    private final Stripe[] stripes;
+    private final int mask;
+    /** Calls that spread the stock over the stripes again; only changed while every stripe is locked. */
+    private volatile long rebalances;
+
+    /**
+     * Creates a sharded container with a stripe per available processor,
+     * up to {@value #MAX_STRIPES}, holding 15 units of each ingredient like
+     * a FoodContainer.
+     */
+    public ShardedFoodContainer() {
+        this(Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES));
+    }
+
+    /**
+     * Creates a sharded container holding 15 units of each ingredient.
+     * @param stripes The number of stripes, rounded up to a power of two;
+     * at most {@value #MAX_STRIPES}.
+     */
+    public ShardedFoodContainer(int stripes) {
+        if (stripes <= 0 || stripes > MAX_STRIPES) {
+            throw new IllegalArgumentException("Stripes must be between 1 and " + MAX_STRIPES + ": " + stripes);
+        }
+        int count = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = count - 1;
+        spread(this.stripes[0], INITIAL_STOCK, FULL - INITIAL_STOCK);
+    }
+
+    /**
+     * Returns the number of stripes.
+     * @return int
+     */
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Returns the number of calls that spread the stock over the stripes
+     * again, because a stripe ran dry or out of room or the stock was set.
+     * @return long
+     */
+    long getRebalanceCount() {
+        return rebalances;
+    }
+
+    @Override
+    protected boolean enoughIngredients(MealPlan m) {
+        if (!validAmounts(m)) {
+            return false;
+        }
+        long required = amountsOf(m);
+        Stripe own = stripe();
+        synchronized (own) {
+            if (covers(own.stock, required)) {
+                return true;
+            }
+        }
+        return covers(getStock(), required);
+    }
+
+    @Override
+    boolean useIngredients(long required) {
+        Stripe own = stripe();
+        synchronized (own) {
+            if (covers(own.stock, required)) {
+                own.stock -= required;
+                own.free += required;
+                return true;
+            }
+        }
+        return lockAll(0, own, USE, required) != 0;
+    }
+
+    @Override
+    boolean add(long added) {
+        Stripe own = stripe();
+        synchronized (own) {
+            if (covers(own.free, added)) {
+                own.stock += added;
+                own.free -= added;
+                return true;
+            }
+        }
+        return lockAll(0, own, ADD, added) != 0;
+    }
+
+    @Override
+    long getStock() {
+        return lockAll(0, stripe(), READ, 0);
+    }
+
+    @Override
+    void setStock(long stock) {
+        lockAll(0, stripe(), SET_STOCK, stock);
+    }
+
+    @Override
+    void setUnits(int shift, int amount) {
+        if (validUnits(amount)) {
+            lockAll(0, stripe(), SET_UNITS, (long) shift << 32 | amount);
+        }
+    }
+
+    /** The stripe of the calling thread. */
+    private Stripe stripe() {
+        long id = Thread.currentThread().threadId();
+        return stripes[(int) (id * 0x9E3779B97F4A7C15L >>> 32) & mask];
+    }
+
+    /**
+     * Locks the stripes from index on, in order, and then runs the
+     * operation on the whole stock. Each stripe adds one call to the
+     * stack, which is why the stripes are capped at MAX_STRIPES.
+     */
+    private long lockAll(int index, Stripe own, int operation, long argument) {
+        if (index == stripes.length) {
+            return onWholeStock(own, operation, argument);
+        }
+        synchronized (stripes[index]) {
+            return lockAll(index + 1, own, operation, argument);
+        }
+    }
+
+    /**
+     * Runs an operation on the sum of the stripes, which are all locked,
+     * and spreads the stock again if it changed. Returns the stock for a
+     * read, else 1 if the operation succeeded and 0 if not.
+     */
+    private long onWholeStock(Stripe own, int operation, long argument) {
+        long stock = 0;
+        for (Stripe stripe : stripes) {
+            stock += stripe.stock; // no carries: each ingredient sums to at most MAX_UNITS
+        }
+        switch (operation) {
+            case READ:
+                return stock;
+            case USE:
+                if (!covers(stock, argument)) {
+                    return 0;
+                }
+                stock -= argument;
+                break;
+            case ADD:
+                if (!fits(stock, argument)) {
+                    return 0;
+                }
+                stock += argument;
+                break;
+            case SET_STOCK:
+                stock = argument;
+                break;
+            case SET_UNITS:
+                int shift = (int) (argument >>> 32);
+                stock = (stock & ~((long) MAX_UNITS << shift)) | ((argument & MAX_UNITS) << shift);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown operation: " + operation);
+        }
+        spread(own, stock, FULL - stock);
+        rebalances++;
+        return 1;
+    }
+
+    /**
+     * Gives every stripe an even share of each ingredient of the stock and
+     * of the free space; the stripe of the caller also gets the remainders.
+     */
+    private void spread(Stripe own, long stock, long free) {
+        int shares = stripes.length;
+        long stockShare = share(stock, shares);
+        long freeShare = share(free, shares);
+        for (Stripe stripe : stripes) {
+            stripe.stock = stockShare;
+            stripe.free = freeShare;
+        }
+        own.stock += stock - stockShare * shares;
+        own.free += free - freeShare * shares;
+    }
+
+    /** Each ingredient of a packed word divided by shares, rounded down. */
+    private static long share(long word, int shares) {
+        return pack(unitsAt(word, KIBBLE_SHIFT) / shares, unitsAt(word, WATER_SHIFT) / shares,
+                unitsAt(word, WETFOOD_SHIFT) / shares, unitsAt(word, TREATS_SHIFT) / shares);
+    }
+
+    /**
+     * Stock and free space of one stripe, guarded by its monitor. The
+     * padding keeps stripes that are next to each other in memory on
+     * different cache lines.
+     */
+    private static final class Stripe {
+        private long stock;
+        private long free;
+        @SuppressWarnings("unused")
+        private long p1, p2, p3, p4, p5, p6, p7, p8, p9, p10, p11, p12, p13, p14;
+    }
+}
@@ -0,0 +1,200 @@
+package petfeeder;
+
+/**
+ * Bulk queries over the stock of many feeders at once, such as which
+ * feeders cannot serve their next meal.
+ * <p>
+ * The queries take arrays of packed stock words, one per feeder, with the
+ * ingredients laid out as in FoodContainer; {@link FleetStore#copyStocks}
+ * and {@link FleetStore#copyMealAmounts} fill such arrays from a fleet.
+ * A query that picks feeders returns a bitmap: bit i of word i / 64 is set
+ * for the feeder at index i, as in PetFeeder.dispenseMeals(int[]).
+ * <p>
+ * When the jdk.incubator.vector module is present (run with
+ * --add-modules jdk.incubator.vector) and the processor has vector
+ * registers, the queries compare the four ingredients of several feeders
+ * in one SIMD instruction. Otherwise, or with
+ * -Dpetfeeder.scan.scalar=true, they check one feeder at a time. Both give
+ * the same results.
+ */
+public final class StockScan {
+
+    /** Scalar implementation of the queries. */
+    static final Kernel SCALAR = new Scalar();
+    /** The implementation in use. */
+    private static final Kernel KERNEL = chooseKernel();
+
+    private StockScan() {
+    }
+
+    /**
+     * Returns true if the queries use the Vector API.
+     * @return boolean
+     */
+    public static boolean isVectorized() {
+        return KERNEL != SCALAR;
+    }
+
+    /**
+     * Returns a bitmap of the feeders whose stock lacks any ingredient of
+     * what they require, for example the amounts of their next meal.
+     * @param stock The packed stock of each feeder.
+     * @param required The packed amounts each feeder requires.
+     * @param count The number of feeders, from index 0.
+     * @return long[] One bit per feeder, set if it lacks an ingredient.
+     */
+    public static long[] insufficient(long[] stock, long[] required, int count) {
+        checkCount(stock, count);
+        checkCount(required, count);
+        long[] bitmap = new long[(count + 63) >>> 6];
+        KERNEL.insufficient(stock, required, count, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap of the feeders that have less of any ingredient than
+     * the given threshold for it.
+     * @param stock The packed stock of each feeder.
+     * @param count The number of feeders, from index 0.
+     * @param kibble The lowest units of kibble that are not low.
+     * @param water The lowest units of water that are not low.
+     * @param wetFood The lowest units of wet food that are not low.
+     * @param treats The lowest units of treats that are not low.
+     * @return long[] One bit per feeder, set if it is low on an ingredient.
+     */
+    public static long[] lowStock(long[] stock, int count, int kibble, int water, int wetFood, int treats) {
+        checkCount(stock, count);
+        if (!FoodContainer.validUnits(kibble) || !FoodContainer.validUnits(water)
+                || !FoodContainer.validUnits(wetFood) || !FoodContainer.validUnits(treats)) {
+            throw new IllegalArgumentException("Thresholds must be between 0 and " + FoodContainer.MAX_UNITS);
+        }
+        long[] bitmap = new long[(count + 63) >>> 6];
+        KERNEL.below(stock, FoodContainer.pack(kibble, water, wetFood, treats), count, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Returns the total energy cost of the packed amounts of every feeder,
+     * for example the energy of the next meal of each.
+     * @param required The packed amounts of each feeder.
+     * @param count The number of feeders, from index 0.
+     * @return long
+     */
+    public static long totalEnergy(long[] required, int count) {
+        checkCount(required, count);
+        return KERNEL.energy(required, count);
+    }
+
+    private static void checkCount(long[] words, int count) {
+        if (count < 0 || count > words.length) {
+            throw new IllegalArgumentException("Count " + count + " does not fit an array of " + words.length);
+        }
+    }
+
+    private static Kernel chooseKernel() {
+        if (Boolean.getBoolean("petfeeder.scan.scalar")
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return VectorStockScan.isWorthwhile() ? new VectorStockScan() : SCALAR;
+        } catch (LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * The queries over arrays whose count has been checked; each sets the
+     * bits of the feeders it picks in a zeroed bitmap.
+     */
+    interface Kernel {
+
+        /**
+         * Sets the bit of each feeder whose stock does not cover what it requires.
+         * @param stock The packed stock of each feeder.
+         * @param required The packed amounts each feeder requires.
+         * @param count The number of feeders.
+         * @param bitmap The bitmap to set bits in.
+         */
+        void insufficient(long[] stock, long[] required, int count, long[] bitmap);
+
+        /**
+         * Sets the bit of each feeder whose stock does not cover the threshold.
+         * @param stock The packed stock of each feeder.
+         * @param threshold The packed threshold of every feeder.
+         * @param count The number of feeders.
+         * @param bitmap The bitmap to set bits in.
+         */
+        void below(long[] stock, long threshold, int count, long[] bitmap);
+
+        /**
+         * Returns the total energy cost of the packed amounts.
+         * @param required The packed amounts of each feeder.
+         * @param count The number of feeders.
+         * @return long
+         */
+        long energy(long[] required, int count);
+    }
+
+    /**
+     * One feeder at a time with FoodContainer.covers. Energy is summed per
+     * ingredient and multiplied once at the end, as in VectorStockScan.
+     */
+    static final class Scalar implements Kernel {
+
+        @Override
+        public void insufficient(long[] stock, long[] required, int count, long[] bitmap) {
+            insufficient(stock, required, 0, count, bitmap);
+        }
+
+        /**
+         * Sets the bits of the feeders from index from to count; the vector
+         * kernel uses it for the feeders after its last full vector.
+         */
+        static void insufficient(long[] stock, long[] required, int from, int count, long[] bitmap) {
+            for (int i = from; i < count; i++) {
+                if (!FoodContainer.covers(stock[i], required[i])) {
+                    bitmap[i >>> 6] |= 1L << i;
+                }
+            }
+        }
+
+        @Override
+        public void below(long[] stock, long threshold, int count, long[] bitmap) {
+            below(stock, threshold, 0, count, bitmap);
+        }
+
+        static void below(long[] stock, long threshold, int from, int count, long[] bitmap) {
+            for (int i = from; i < count; i++) {
+                if (!FoodContainer.covers(stock[i], threshold)) {
+                    bitmap[i >>> 6] |= 1L << i;
+                }
+            }
+        }
+
+        @Override
+        public long energy(long[] required, int count) {
+            long kibble = 0;
+            long water = 0;
+            long wetFood = 0;
+            long treats = 0;
+            for (int i = 0; i < count; i++) {
+                long word = required[i];
+                kibble += FoodContainer.unitsAt(word, FoodContainer.KIBBLE_SHIFT);
+                water += FoodContainer.unitsAt(word, FoodContainer.WATER_SHIFT);
+                wetFood += FoodContainer.unitsAt(word, FoodContainer.WETFOOD_SHIFT);
+                treats += FoodContainer.unitsAt(word, FoodContainer.TREATS_SHIFT);
+            }
+            return energyOf(kibble, water, wetFood, treats);
+        }
+
+        /**
+         * Returns the energy cost of the summed units of each ingredient,
+         * with the per-unit energy of MealPlan.
+         */
+        static long energyOf(long kibble, long water, long wetFood, long treats) {
+            return kibble * MealPlan.energyCost(1, 0, 0, 0) + water * MealPlan.energyCost(0, 1, 0, 0)
+                    + wetFood * MealPlan.energyCost(0, 0, 1, 0) + treats * MealPlan.energyCost(0, 0, 0, 1);
+        }
+    }
+}
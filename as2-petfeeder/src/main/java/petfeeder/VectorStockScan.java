@@ -0,0 +1,88 @@
+package petfeeder;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * StockScan queries with the Vector API. A vector of stock words is also
+ * read as a vector of 16-bit ingredients, so the four ingredients of
+ * several feeders are compared, unsigned, in one instruction; a feeder is
+ * picked if any of its four lanes is. Only loaded by StockScan when the
+ * jdk.incubator.vector module is present.
+ */
+final class VectorStockScan implements StockScan.Kernel {
+
+    private static final VectorSpecies<Long> WORDS = LongVector.SPECIES_PREFERRED;
+    /** Feeders per vector; a power of two no larger than 64, so a vector never spans two bitmap words. */
+    private static final int LANES = WORDS.length();
+    private static final long UNITS = FoodContainer.MAX_UNITS;
+
+    /**
+     * Returns true if the processor has vector registers that hold at
+     * least two stock words; with fewer the Vector API is slower than the
+     * scalar loop.
+     * @return boolean
+     */
+    static boolean isWorthwhile() {
+        return LANES >= 2;
+    }
+
+    @Override
+    public void insufficient(long[] stock, long[] required, int count, long[] bitmap) {
+        int upper = WORDS.loopBound(count);
+        for (int i = 0; i < upper; i += LANES) {
+            ShortVector available = LongVector.fromArray(WORDS, stock, i).reinterpretAsShorts();
+            ShortVector needed = LongVector.fromArray(WORDS, required, i).reinterpretAsShorts();
+            bitmap[i >>> 6] |= feeders(available.compare(VectorOperators.UNSIGNED_LT, needed)) << i;
+        }
+        StockScan.Scalar.insufficient(stock, required, upper, count, bitmap);
+    }
+
+    @Override
+    public void below(long[] stock, long threshold, int count, long[] bitmap) {
+        ShortVector thresholds = LongVector.broadcast(WORDS, threshold).reinterpretAsShorts();
+        int upper = WORDS.loopBound(count);
+        for (int i = 0; i < upper; i += LANES) {
+            ShortVector available = LongVector.fromArray(WORDS, stock, i).reinterpretAsShorts();
+            bitmap[i >>> 6] |= feeders(available.compare(VectorOperators.UNSIGNED_LT, thresholds)) << i;
+        }
+        StockScan.Scalar.below(stock, threshold, upper, count, bitmap);
+    }
+
+    /**
+     * Turns a mask of ingredient lanes into one bit per feeder, set if
+     * any of its ingredients is set.
+     */
+    private static long feeders(VectorMask<Short> ingredients) {
+        return ingredients.toVector().reinterpretAsLongs().compare(VectorOperators.NE, 0).toLong();
+    }
+
+    @Override
+    public long energy(long[] required, int count) {
+        LongVector kibble = LongVector.zero(WORDS);
+        LongVector water = LongVector.zero(WORDS);
+        LongVector wetFood = LongVector.zero(WORDS);
+        LongVector treats = LongVector.zero(WORDS);
+        int upper = WORDS.loopBound(count);
+        for (int i = 0; i < upper; i += LANES) {
+            LongVector words = LongVector.fromArray(WORDS, required, i);
+            kibble = kibble.add(words.and(UNITS));
+            water = water.add(words.lanewise(VectorOperators.LSHR, FoodContainer.WATER_SHIFT).and(UNITS));
+            wetFood = wetFood.add(words.lanewise(VectorOperators.LSHR, FoodContainer.WETFOOD_SHIFT).and(UNITS));
+            treats = treats.add(words.lanewise(VectorOperators.LSHR, FoodContainer.TREATS_SHIFT));
+        }
+        long energy = StockScan.Scalar.energyOf(kibble.reduceLanes(VectorOperators.ADD), water.reduceLanes(VectorOperators.ADD),
+                wetFood.reduceLanes(VectorOperators.ADD), treats.reduceLanes(VectorOperators.ADD));
+        for (int i = upper; i < count; i++) {
+            long word = required[i];
+            energy += MealPlan.energyCost(FoodContainer.unitsAt(word, FoodContainer.KIBBLE_SHIFT),
+                    FoodContainer.unitsAt(word, FoodContainer.WATER_SHIFT),
+                    FoodContainer.unitsAt(word, FoodContainer.WETFOOD_SHIFT),
+                    FoodContainer.unitsAt(word, FoodContainer.TREATS_SHIFT));
+        }
+        return energy;
+    }
+}
@@ -0,0 +1,141 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the CommandRunner class
+ */
+public class CommandRunnerTest {
+
+    private PetFeeder petFeeder;
+    private ByteArrayOutputStream output;
+    private CommandRunner commandRunner;
+
+    /**
+     * Sets up the test environment by creating a runner that prints to memory
+     * before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        petFeeder = new PetFeeder();
+        output = new ByteArrayOutputStream();
+        commandRunner = new CommandRunner(petFeeder, new PrintStream(output, true));
+    }
+
+    private long run(String commands) throws IOException {
+        return commandRunner.run(new BufferedReader(new StringReader(commands)));
+    }
+
+    /**
+     * Tests that each command is carried out and its outcome printed.
+     */
+    @Test
+    public void testRun_executesCommands() throws IOException {
+        long count = run("# set up\n"
+                + "add \"Big Meal\" 2 1 1 0\n"
+                + "\n"
+                + "add Snack 0 1 0 1\n"
+                + "dispense 1\n"
+                + "edit 2 1 1 1 1\n"
+                + "replenish 2 0 0 0\n"
+                + "stock\n");
+
+        assertEquals(6, count, "Comments and blank lines should not count as commands");
+        assertEquals(0, commandRunner.getErrorCount(), "No command should fail: " + output);
+        assertEquals("Big Meal", petFeeder.getMealPlans()[0].getName(), "A quoted name may hold spaces");
+        assertEquals(1, petFeeder.getMealPlans()[1].getAmtKibble(), "The meal plan should be edited");
+        String printed = output.toString();
+        assertTrue(printed.contains("Dispensing Big Meal"), "The dispense should be printed");
+        assertTrue(printed.contains("Kibble: 15"), "The stock should be printed after the replenish");
+    }
+
+    /**
+     * Tests that bad commands are reported with their line numbers and the
+     * following commands still run.
+     */
+    @Test
+    public void testRun_reportsErrorsAndContinues() throws IOException {
+        run("add Meal -1 0 0 0\n"
+                + "fly away\n"
+                + "delete\n"
+                + "dispense 7\n"
+                + "add \"Open 1 1 1 1\n"
+                + "schedule 1 60\n"
+                + "add Meal 1 0 0 0\n");
+
+        assertEquals(7, commandRunner.getCommandCount(), "Every command should be counted");
+        assertEquals(6, commandRunner.getErrorCount(), "Every bad command should be an error");
+        String printed = output.toString();
+        assertTrue(printed.contains("Units of kibble must be a positive integer"), "The reason should be printed");
+        assertTrue(printed.contains("Error on line 2: unknown command: fly"), "An unknown command should be reported");
+        assertTrue(printed.contains("Error on line 3: delete takes 1 arguments"), "A missing argument should be reported");
+        assertTrue(printed.contains("Error on line 4: no meal plan 7"), "A missing meal plan should be reported");
+        assertTrue(printed.contains("Error on line 5: unterminated quote"), "A bad quote should be reported");
+        assertTrue(printed.contains("Error on line 6: feeding not scheduled"), "A schedule without a meal plan should fail");
+        assertEquals("Meal", petFeeder.getMealPlans()[0].getName(), "The last command should still run");
+    }
+
+    /**
+     * Tests that a quiet runner prints only the errors.
+     */
+    @Test
+    public void testRun_quiet() throws IOException {
+        commandRunner = new CommandRunner(petFeeder, new PrintStream(output, true), true);
+        run("add Meal 1 0 0 0\ndispense 1\nstock\ndelete 5\n");
+
+        assertEquals("Selected meal plan doesn't exist and could not be deleted.\n\n"
+                + "Error on line 4: meal plan not deleted\n", output.toString().replace("\r\n", "\n"),
+                "Only the failed command should be printed");
+    }
+
+    /**
+     * Tests that a long run of commands needs no stack, unlike the old
+     * recursive menu.
+     */
+    @Test
+    public void testRun_manyCommands() throws IOException {
+        commandRunner = new CommandRunner(petFeeder, new PrintStream(output, true), true);
+        StringBuilder commands = new StringBuilder("add Meal 0 0 0 0\n");
+        for (int i = 0; i < 100_000; i++) {
+            commands.append(i % 2 == 0 ? "dispense 1\n" : "stock\n");
+        }
+
+        assertEquals(100_001, run(commands.toString()), "Every command should run");
+        assertEquals(0, commandRunner.getErrorCount(), "No command should fail");
+    }
+
+    /**
+     * Tests that execute runs a single command and reports its error.
+     */
+    @Test
+    public void testExecute() {
+        assertTrue(commandRunner.execute("add Meal 1 1 1 1"), "A good command should run");
+        assertTrue(commandRunner.execute("   "), "A blank line should do nothing");
+        assertFalse(commandRunner.execute("edit x 1 1 1 1"), "A bad meal plan number should be an error");
+        assertTrue(output.toString().contains("Error: not a meal plan number: x"), "The error should be printed");
+        assertArrayEquals(new String[] {"add", "a b", "1"}, CommandRunner.split("  add \"a b\"  1 "), "Quoted words should keep their spaces");
+        assertEquals(0, CommandRunner.split("# comment").length, "A comment should have no words");
+        assertArrayEquals(new String[] {"stock"}, CommandRunner.split("stock # print it"), "A comment should end the command");
+    }
+
+    /**
+     * Tears down the test environment by stopping the runner after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        commandRunner.shutdown();
+        commandRunner = null;
+        petFeeder = null;
+        output = null;
+    }
+}
@@ -0,0 +1,136 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the EnergyBudget class
+ */
+public class EnergyBudgetTest {
+
+    private AtomicLong clock;
+    private EnergyBudget energyBudget;
+
+    /**
+     * Sets up the test environment by creating a budget of 100 energy points
+     * per hour, in 4 buckets of 15 minutes, on a clock the test moves by hand.
+     */
+    @BeforeEach
+    public void setUp() {
+        clock = new AtomicLong(1234);
+        energyBudget = new EnergyBudget(100, TimeUnit.HOURS.toNanos(1), 4, clock::get);
+    }
+
+    private void advance(long minutes) {
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(minutes));
+    }
+
+    /**
+     * Tests that consumed energy lowers the remaining budget.
+     */
+    @Test
+    public void testConsume_lowersRemaining() {
+        assertEquals(100, energyBudget.getRemaining(), "A new budget should be unused");
+        energyBudget.consume(30);
+        advance(20);
+        energyBudget.consume(50);
+
+        assertEquals(80, energyBudget.getConsumed(), "Energy in every bucket of the window should count");
+        assertEquals(20, energyBudget.getRemaining(), "The remaining budget should be the limit minus the consumed energy");
+    }
+
+    /**
+     * Tests that energy stops counting once it slides out of the window and
+     * that the budget is then available again.
+     */
+    @Test
+    public void testWindow_slides() {
+        energyBudget.consume(60);
+        advance(30);
+        energyBudget.consume(40);
+        assertEquals(0, energyBudget.getRemaining(), "The whole budget should be used");
+
+        advance(30);
+        assertEquals(40, energyBudget.getConsumed(), "The first meal should have left the window after an hour");
+        advance(30);
+        assertEquals(100, energyBudget.getRemaining(), "The budget should be unused once both meals have left the window");
+    }
+
+    /**
+     * Tests that buckets are reused after a long idle time without counting
+     * their old energy.
+     */
+    @Test
+    public void testWindow_longIdle() {
+        energyBudget.consume(90);
+        advance(TimeUnit.DAYS.toMinutes(3));
+        energyBudget.consume(10);
+
+        assertEquals(10, energyBudget.getConsumed(), "Only the new energy should count");
+    }
+
+    /**
+     * Tests that energy consumed some time ago counts only while it is
+     * inside the window.
+     */
+    @Test
+    public void testConsume_withAge() {
+        energyBudget.consume(25, 40, TimeUnit.MINUTES);
+        energyBudget.consume(25, 2, TimeUnit.HOURS);
+        assertEquals(25, energyBudget.getConsumed(), "Only the energy inside the window should count");
+
+        advance(15);
+        assertEquals(0, energyBudget.getConsumed(), "The old energy should leave the window at its time");
+    }
+
+    /**
+     * Tests that the budget never reports less than 0 remaining and that
+     * invalid settings are rejected.
+     */
+    @Test
+    public void testLimits() {
+        energyBudget.consume(150);
+        assertEquals(0, energyBudget.getRemaining(), "The remaining budget should not be negative");
+
+        assertThrows(IllegalArgumentException.class, () -> new EnergyBudget(-1, 1, TimeUnit.HOURS));
+        assertThrows(IllegalArgumentException.class, () -> new EnergyBudget(100, 1, TimeUnit.HOURS, 0));
+        assertThrows(IllegalArgumentException.class, () -> new EnergyBudget(100, 3, TimeUnit.NANOSECONDS, 4));
+    }
+
+    /**
+     * Tests that energy consumed by many threads at once is never lost.
+     */
+    @Test
+    public void testConsume_concurrent() throws InterruptedException {
+        EnergyBudget shared = new EnergyBudget(Integer.MAX_VALUE, 1, TimeUnit.HOURS);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    shared.consume(1);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, shared.getConsumed(), "Every consumed point should be counted");
+    }
+
+    /**
+     * Tears down the test environment after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        energyBudget = null;
+        clock = null;
+    }
+}
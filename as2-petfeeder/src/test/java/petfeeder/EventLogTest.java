@@ -0,0 +1,150 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the EventLog class
+ */
+public class EventLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private EventSink.MemorySink sink;
+    private EventLog eventLog;
+
+    /**
+     * Sets up the test environment by creating an event log that writes to
+     * memory before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        sink = new EventSink.MemorySink();
+        eventLog = EventLog.start(sink, 1024);
+    }
+
+    /**
+     * Tests that published events reach the sink in order with their fields.
+     */
+    @Test
+    public void testPublish_writesInOrder() throws InterruptedException {
+        assertTrue(eventLog.publish(FeederEvent.Type.SCHEDULED_DISPENSED, 0, "Breakfast"), "The event should be accepted");
+        eventLog.publish(FeederEvent.Type.SCHEDULED_NOT_DISPENSED, 1, null);
+        eventLog.publish(FeederEvent.Type.SCHEDULED_ERROR, 2, "boom");
+        assertTrue(eventLog.flush(5, TimeUnit.SECONDS), "The events should be written");
+
+        List<FeederEvent> events = sink.getEvents();
+        assertEquals(3, events.size(), "Every event should be written");
+        assertEquals(FeederEvent.Type.SCHEDULED_DISPENSED, events.get(0).getType(), "The first event should come first");
+        assertEquals("[Scheduler] Dispensed scheduled meal: Breakfast", events.get(0).toString(), "The log line should name the meal");
+        assertEquals(1, events.get(1).getMealPlanIndex(), "The meal plan index should be kept");
+        assertEquals("[Scheduler] Error during scheduled feeding: boom", events.get(2).toString(), "The log line should hold the error");
+        assertTrue(events.get(0).getTime() > 0, "The event should have a time");
+        assertEquals(3, eventLog.getWrittenCount(), "Three events should be counted as written");
+    }
+
+    /**
+     * Tests that events are dropped and counted while the ring is full and
+     * that nothing accepted is lost.
+     */
+    @Test
+    public void testPublish_dropsWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        EventSink.MemorySink written = new EventSink.MemorySink();
+        EventSink slowSink = event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.write(event);
+        };
+        try (EventLog small = EventLog.start(slowSink, 4)) {
+            int accepted = 0;
+            for (int i = 0; i < 20; i++) {
+                if (small.publish(FeederEvent.Type.SCHEDULED_DISPENSED, i, "meal")) {
+                    accepted++;
+                }
+            }
+            release.countDown();
+            assertTrue(small.flush(5, TimeUnit.SECONDS), "The accepted events should be written");
+
+            assertTrue(small.getDroppedCount() > 0, "Events should be dropped while the ring is full");
+            assertEquals(20, accepted + small.getDroppedCount(), "Every event should be accepted or counted as dropped");
+            assertEquals(accepted, written.getEvents().size(), "Every accepted event should be written");
+        }
+    }
+
+    /**
+     * Tests that events from many threads are all written, each thread's in order.
+     */
+    @Test
+    public void testPublish_manyThreads() throws InterruptedException {
+        Thread[] publishers = new Thread[4];
+        for (int t = 0; t < publishers.length; t++) {
+            int thread = t;
+            publishers[t] = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    while (!eventLog.publish(FeederEvent.Type.SCHEDULED_DISPENSED, i, "t" + thread)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            publishers[t].start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        assertTrue(eventLog.flush(5, TimeUnit.SECONDS), "The events should be written");
+
+        int[] next = new int[publishers.length];
+        List<FeederEvent> events = sink.getEvents();
+        assertEquals(800, events.size(), "Every event should be written");
+        for (FeederEvent event : events) {
+            int thread = event.getText().charAt(1) - '0';
+            assertEquals(next[thread]++, event.getMealPlanIndex(), "The events of thread " + thread + " should keep their order");
+        }
+    }
+
+    /**
+     * Tests that the file sink appends one line per event and that closing
+     * the log writes what was published and drops later events.
+     */
+    @Test
+    public void testFileSink_andClose() throws IOException {
+        Path file = tempDir.resolve("events.log");
+        EventLog fileLog = EventLog.start(EventSink.file(file));
+        fileLog.publish(FeederEvent.Type.SCHEDULED_DISPENSED, 3, "Dinner");
+        fileLog.publish(FeederEvent.Type.SCHEDULED_NOT_DISPENSED, 4, null);
+        fileLog.close();
+
+        assertFalse(fileLog.publish(FeederEvent.Type.SCHEDULED_ERROR, 0, "late"), "A closed log should drop events");
+        assertEquals(1, fileLog.getDroppedCount(), "The late event should be counted as dropped");
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size(), "Both events should be in the file");
+        assertTrue(lines.get(0).endsWith(" SCHEDULED_DISPENSED 3 [Scheduler] Dispensed scheduled meal: Dinner"), "The line should hold the event: " + lines.get(0));
+        assertTrue(lines.get(1).contains(" SCHEDULED_NOT_DISPENSED 4 "), "The second line should hold the second event");
+    }
+
+    /**
+     * Tears down the test environment by closing the event log after each test.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        eventLog.close();
+        eventLog = null;
+        sink = null;
+    }
+}
@@ -23,20 +23,22 @@ public class ExampleTest {
         pf = new PetFeeder();
         
         //Set up for p1 (Basic Meal)
-        p1 = new MealPlan();
-        p1.setName("Morning Feast");
-        p1.setAmtTreats("0");
-        p1.setAmtKibble("3");
-        p1.setAmtWater("1");
-        p1.setAmtWetFood("1");
+        MealPlan.Builder p1Builder = new MealPlan.Builder();
+        p1Builder.setName("Morning Feast");
+        p1Builder.setAmtTreats("0");
+        p1Builder.setAmtKibble("3");
+        p1Builder.setAmtWater("1");
+        p1Builder.setAmtWetFood("1");
+        p1 = p1Builder.build();
         
         //Set up for p2 (Snack Time)
-        p2 = new MealPlan();
-        p2.setName("Snack Time");
-        p2.setAmtTreats("4");
-        p2.setAmtKibble("0");
-        p2.setAmtWater("1");
-        p2.setAmtWetFood("1");
+        MealPlan.Builder p2Builder = new MealPlan.Builder();
+        p2Builder.setName("Snack Time");
+        p2Builder.setAmtTreats("4");
+        p2Builder.setAmtKibble("0");
+        p2Builder.setAmtWater("1");
+        p2Builder.setAmtWetFood("1");
+        p2 = p2Builder.build();
     }
     
     @Test
@@ -67,11 +69,12 @@ public class ExampleTest {
 
     @Test
     public void testMealPlanEnergyCostCalculation() throws Exception {
-        MealPlan meal = new MealPlan();
-        meal.setAmtKibble("2"); // 2 * 10 = 20
-        meal.setAmtWater("1");  // 1 * 5  = 5
-        meal.setAmtWetFood("1"); // 1 * 15 = 15
-        meal.setAmtTreats("0"); // 0 * 20 = 0
+        MealPlan.Builder mealBuilder = new MealPlan.Builder();
+        mealBuilder.setAmtKibble("2"); // 2 * 10 = 20
+        mealBuilder.setAmtWater("1");  // 1 * 5  = 5
+        mealBuilder.setAmtWetFood("1"); // 1 * 15 = 15
+        mealBuilder.setAmtTreats("0"); // 0 * 20 = 0
+        MealPlan meal = mealBuilder.build();
 
         // Expected energy cost: 20 + 5 + 15 + 0 = 40
         assertEquals(40, meal.getEnergyCost());
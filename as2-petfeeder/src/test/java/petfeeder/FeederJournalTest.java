@@ -0,0 +1,240 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static petfeeder.TestMealPlans.plan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the FeederJournal class
+ */
+public class FeederJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private FeederJournal journal;
+
+    /**
+     * Sets up the test environment by opening a journal in a new file before each test.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = tempDir.resolve("feeder.journal");
+        journal = FeederJournal.open(file);
+    }
+
+    /**
+     * Tests that a feeder recovered from the journal has the same stock, energy
+     * budget and meal plans as the feeder that wrote it, including a meal plan
+     * whose name needs extra name records.
+     */
+    @Test
+    public void testRecover_rebuildsState() throws IOException {
+        PetFeeder petFeeder = journal.recover();
+        String longName = "Slow-cooked salmon dinner with extra gravy for the old cat";
+        assertTrue(petFeeder.addMealPlan(plan("Breakfast", 2, 1, 0, 0)), "Breakfast should be added");
+        assertTrue(petFeeder.addMealPlan(plan(longName, 1, 1, 1, 1)), "The long-named plan should be added");
+        assertTrue(petFeeder.addMealPlan(plan("Snack", 0, 0, 0, 1)), "Snack should be added");
+        assertTrue(petFeeder.dispenseMeal(0), "Breakfast should be dispensed");
+        assertTrue(petFeeder.dispenseMeal(1), "The long-named plan should be dispensed");
+        assertTrue(petFeeder.replenish(5, 0, 3, 0), "Replenishing should succeed");
+        assertEquals("Breakfast", petFeeder.editMealPlan(0, plan("Brunch", 3, 0, 0, 0)), "Breakfast should be edited");
+        assertEquals("Snack", petFeeder.deleteMealPlan(2), "Snack should be deleted");
+        petFeeder.dispenseMeals(new int[] {0, 1});
+
+        String stock = petFeeder.checkFoodStock();
+        int budget = petFeeder.getRemainingEnergyBudget();
+        long lastSequence = journal.getLastSequence();
+        journal.close();
+
+        journal = FeederJournal.open(file);
+        PetFeeder recovered = journal.recover();
+        assertEquals(lastSequence, journal.getLastSequence(), "Every record should be read back");
+        assertEquals(stock, recovered.checkFoodStock(), "The stock should be recovered");
+        assertEquals(budget, recovered.getRemainingEnergyBudget(), "The energy budget should be recovered");
+        MealPlan[] plans = recovered.getMealPlans();
+        assertEquals("Brunch", plans[0].getName(), "The edited plan should be recovered");
+        assertEquals(3, plans[0].getAmtKibble(), "The edited amounts should be recovered");
+        assertEquals(longName, plans[1].getName(), "The long name should be recovered");
+        assertEquals(1, plans[1].getAmtTreats(), "The amounts of the long-named plan should be recovered");
+        assertNull(plans[2], "The deleted plan should stay deleted");
+        assertTrue(recovered.addMealPlan(plan("Snack", 0, 0, 0, 1)), "The freed handle should be reusable");
+        assertEquals("Snack", recovered.getMealPlans()[2].getName(), "The new plan should take the freed handle");
+    }
+
+    /**
+     * Tests that a torn last record is ignored on recovery and that new
+     * records continue after the last intact one.
+     */
+    @Test
+    public void testOpen_tornTailIsIgnored() throws IOException {
+        PetFeeder petFeeder = journal.recover();
+        petFeeder.replenish(1, 0, 0, 0);
+        petFeeder.replenish(2, 0, 0, 0);
+        long lastSequence = journal.getLastSequence();
+        journal.close();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), (lastSequence - 1) * FeederJournal.RECORD_SIZE + 20);
+        }
+
+        journal = FeederJournal.open(file);
+        assertEquals(lastSequence - 1, journal.getLastSequence(), "The torn record should be dropped");
+        PetFeeder recovered = journal.recover();
+        assertTrue(recovered.checkFoodStock().startsWith("Kibble: 16\n"), "Only the intact replenish should be applied");
+
+        recovered.replenish(4, 0, 0, 0);
+        journal.close();
+        journal = FeederJournal.open(file);
+        assertEquals(lastSequence, journal.getLastSequence(), "The new record should replace the torn one");
+        assertTrue(journal.recover().checkFoodStock().startsWith("Kibble: 20\n"), "The new record should be applied");
+    }
+
+    /**
+     * Tests that intact records after a torn one are dropped when the
+     * journal is opened, so they are not read back once a new record takes
+     * the place of the torn one.
+     */
+    @Test
+    public void testOpen_recordsAfterTearAreDropped() throws IOException {
+        PetFeeder petFeeder = journal.recover();
+        long reset = journal.getLastSequence();
+        petFeeder.replenish(1, 0, 0, 0);
+        petFeeder.replenish(2, 0, 0, 0);
+        petFeeder.replenish(4, 0, 0, 0);
+        petFeeder.replenish(8, 0, 0, 0);
+        journal.close();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), (reset + 1) * FeederJournal.RECORD_SIZE + 20);
+        }
+
+        journal = FeederJournal.open(file);
+        assertEquals(reset + 1, journal.getLastSequence(), "Reading should stop at the torn record");
+        journal.recover().replenish(16, 0, 0, 0);
+        journal.close();
+
+        journal = FeederJournal.open(file);
+        assertEquals(reset + 2, journal.getLastSequence(), "The records after the torn one should be gone");
+        assertTrue(journal.recover().checkFoodStock().startsWith("Kibble: 32\n"),
+                "Only the replenishes before the tear and the new one should be applied");
+    }
+
+    /**
+     * Tests that a checkpoint replaces the journal with the current state
+     * of the feeder, that sequence numbers go on after it, and that later
+     * records are applied on top of it when the journal is opened again.
+     */
+    @Test
+    public void testCheckpoint_compactsJournal() throws IOException {
+        PetFeeder petFeeder = journal.recover();
+        assertTrue(petFeeder.addMealPlan(plan("Breakfast", 2, 1, 0, 0)), "Breakfast should be added");
+        assertTrue(petFeeder.addMealPlan(plan("Snack", 0, 0, 0, 1)), "Snack should be added");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(petFeeder.dispenseMeal(0), "Breakfast should be dispensed");
+            assertTrue(petFeeder.replenish(2, 1, 0, 0), "Replenishing should succeed");
+        }
+        assertEquals("Snack", petFeeder.deleteMealPlan(1), "Snack should be deleted");
+        long beforeCheckpoint = journal.getLastSequence();
+
+        journal.checkpoint(petFeeder);
+        assertEquals(beforeCheckpoint + 2, journal.getLastSequence(), "The checkpoint should be a reset and one plan");
+        assertEquals(journal.getLastSequence(), journal.getDurableSequence(), "The checkpoint should be durable");
+        ByteBuffer first = ByteBuffer.allocate(8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.read(first, 0);
+        }
+        assertEquals(beforeCheckpoint + 1, first.getLong(0), "The file should start with the checkpoint");
+
+        assertTrue(petFeeder.dispenseMeal(0), "Breakfast should be dispensed after the checkpoint");
+        String stock = petFeeder.checkFoodStock();
+        int budget = petFeeder.getRemainingEnergyBudget();
+        long lastSequence = journal.getLastSequence();
+        journal.close();
+
+        journal = FeederJournal.open(file);
+        assertEquals(lastSequence, journal.getLastSequence(), "Every record after the checkpoint should be read back");
+        PetFeeder recovered = journal.recover();
+        assertEquals(stock, recovered.checkFoodStock(), "The stock should be recovered");
+        assertEquals(budget, recovered.getRemainingEnergyBudget(), "The energy budget should be recovered");
+        assertEquals("Breakfast", recovered.getMealPlans()[0].getName(), "The meal plan should be recovered");
+        assertNull(recovered.getMealPlans()[1], "The deleted plan should stay deleted");
+        assertThrows(IllegalArgumentException.class, () -> journal.checkpoint(new PetFeeder()),
+                "A feeder of another journal should be rejected");
+    }
+
+    /**
+     * Tests that group commit makes appended records durable.
+     */
+    @Test
+    public void testAwaitDurable() throws InterruptedException {
+        PetFeeder petFeeder = journal.recover();
+        petFeeder.replenish(1, 1, 1, 1);
+        long sequence = journal.getLastSequence();
+
+        assertTrue(journal.awaitDurable(sequence, 5, TimeUnit.SECONDS), "The record should be forced by a group commit");
+        assertTrue(journal.getDurableSequence() >= sequence, "The durable sequence should include the record");
+    }
+
+    /**
+     * Tests that records written past the end of the first mapped chunk are
+     * recovered, so the chunk the appends move to is mapped at the right place.
+     */
+    @Test
+    public void testAppend_acrossChunkBoundary() throws IOException {
+        PetFeeder petFeeder = journal.recover();
+        int records = (64 << 20) / FeederJournal.RECORD_SIZE + 1000;
+        for (int i = 0; i < records; i++) {
+            journal.dispensed(0, 0);
+        }
+        assertTrue(petFeeder.replenish(3, 0, 0, 0), "Replenishing should succeed");
+        String stock = petFeeder.checkFoodStock();
+        long lastSequence = journal.getLastSequence();
+        journal.close();
+
+        journal = FeederJournal.open(file);
+        assertEquals(lastSequence, journal.getLastSequence(), "Every record should be read back");
+        assertEquals(stock, journal.recover().checkFoodStock(), "The record after the boundary should be recovered");
+    }
+
+    /**
+     * Tests that a feeder attached to a new journal writes its current state
+     * first, so the journal alone can rebuild it.
+     */
+    @Test
+    public void testAttach_writesCurrentState() throws IOException {
+        MealPlanBook mealPlanBook = new MealPlanBook();
+        mealPlanBook.addMealPlan(plan("Dinner", 1, 2, 3, 0));
+        FoodContainer foodContainer = new FoodContainer();
+        foodContainer.setKibble(40);
+        PetFeeder petFeeder = new PetFeeder(mealPlanBook, foodContainer, journal);
+        String stock = petFeeder.checkFoodStock();
+        journal.close();
+
+        journal = FeederJournal.open(file);
+        PetFeeder recovered = journal.recover();
+        assertEquals(stock, recovered.checkFoodStock(), "The stock at attach time should be recovered");
+        assertEquals("Dinner", recovered.getMealPlans()[0].getName(), "The meal plans at attach time should be recovered");
+    }
+
+    /**
+     * Tears down the test environment by closing the journal after each test.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        journal.close();
+        journal = null;
+    }
+}
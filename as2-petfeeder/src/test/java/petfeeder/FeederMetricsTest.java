@@ -0,0 +1,152 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static petfeeder.TestMealPlans.plan;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import petfeeder.exceptions.FoodStockException;
+
+/**
+ * Tests the FeederMetrics class
+ */
+public class FeederMetricsTest {
+
+    private FeederMetrics metrics;
+    private PetFeeder petFeeder;
+
+    /**
+     * Sets up the test environment by creating a feeder that reports to its
+     * own metrics, which time every call, before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        metrics = new FeederMetrics(1);
+        petFeeder = new PetFeeder();
+        petFeeder.setMetrics(metrics);
+    }
+
+    /**
+     * Tests that dispenses are counted by result and timed.
+     */
+    @Test
+    public void testDispense_countedByResult() throws Exception {
+        petFeeder.addMealPlan(plan("plan-10-0", 10, 0, 0, 0));
+        petFeeder.addMealPlan(plan("plan-0-30", 0, 0, 0, 30));
+
+        petFeeder.dispenseMeal(0);
+        petFeeder.dispenseMeal(0);
+        petFeeder.dispenseMeal(1);
+        petFeeder.dispenseMeal(3);
+        petFeeder.dispenseMealAsync(0).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, metrics.getDispenseCount(DispenseResult.DISPENSED), "One meal should be dispensed");
+        assertEquals(2, metrics.getDispenseCount(DispenseResult.INSUFFICIENT_INGREDIENTS), "Two meals should run out of kibble");
+        assertEquals(1, metrics.getDispenseCount(DispenseResult.ENERGY_BUDGET_EXCEEDED), "The treats should exceed the energy budget");
+        assertEquals(1, metrics.getDispenseCount(DispenseResult.NO_MEAL_PLAN), "The empty slot should have no meal plan");
+        assertEquals(5, metrics.getDispenseLatency().getCount(), "Every dispense should be timed");
+        assertEquals(4, metrics.getLockWait().getCount(), "Every direct dispense should time its wait for the lock");
+        assertEquals(3, metrics.getIngredientUseCount(), "Ingredients should be taken for every meal within budget");
+        assertEquals(2, metrics.getIngredientShortageCount(), "Two uses should find too little kibble");
+        assertEquals(3, metrics.getIngredientLatency().getCount(), "Every use of ingredients should be timed");
+    }
+
+    /**
+     * Tests that a batch dispense counts the meals it skips by cause, not
+     * only the meals it dispenses.
+     */
+    @Test
+    public void testDispenseMeals_skippedCountedByCause() {
+        petFeeder.addMealPlan(plan("plan-10-0", 10, 0, 0, 0));
+        petFeeder.addMealPlan(plan("plan-0-30", 0, 0, 0, 30));
+
+        assertEquals(1, petFeeder.dispenseMeals(new int[] {0, 0, 1, 2}, new long[1]), "One meal should be dispensed");
+
+        assertEquals(1, metrics.getDispenseCount(DispenseResult.DISPENSED), "One meal should be counted as dispensed");
+        assertEquals(1, metrics.getDispenseCount(DispenseResult.INSUFFICIENT_INGREDIENTS), "The second meal should run out of kibble");
+        assertEquals(1, metrics.getDispenseCount(DispenseResult.ENERGY_BUDGET_EXCEEDED), "The treats should exceed the energy budget");
+        assertEquals(1, metrics.getDispenseCount(DispenseResult.NO_MEAL_PLAN), "The empty slot should have no meal plan");
+    }
+
+    /**
+     * Tests that replenishes are counted, including rejected and unparsable ones.
+     */
+    @Test
+    public void testReplenish_counted() {
+        assertTrue(petFeeder.replenish(1, 1, 1, 1), "Replenishing should succeed");
+        assertFalse(petFeeder.replenish(-1, 0, 0, 0), "A negative amount should be rejected");
+        assertThrows(FoodStockException.class, () -> petFeeder.replenishFood("x", "0", "0", "0"));
+
+        assertEquals(3, metrics.getReplenishCount(), "Every replenish should be counted");
+        assertEquals(2, metrics.getReplenishFailureCount(), "The rejected and unparsable replenishes should be failures");
+        assertEquals(2, metrics.getReplenishLatency().getCount(), "The replenishes that reached the container should be timed");
+    }
+
+    /**
+     * Tests that stock levels are summed over feeders.
+     */
+    @Test
+    public void testStockLevels() {
+        PetFeeder other = new PetFeeder();
+        other.replenish(5, 0, 0, 2);
+
+        long[] levels = FeederMetrics.stockLevels(List.of(petFeeder, other));
+        assertArrayEquals(new long[] {35, 30, 30, 32}, levels, "The stock of both feeders should be summed per ingredient");
+    }
+
+    /**
+     * Tests that scheduled feedings record their lag in the shared metrics.
+     */
+    @Test
+    public void testSchedulerLag() throws InterruptedException {
+        long before = FeederMetrics.shared().getSchedulerLag().getCount();
+        FeedingWheel feedingWheel = new FeedingWheel(1, TimeUnit.MILLISECONDS, 1);
+        try {
+            CountDownLatch runs = new CountDownLatch(3);
+            feedingWheel.schedule(petFeeder, 0, runs::countDown, 5, TimeUnit.MILLISECONDS);
+            assertTrue(runs.await(2, TimeUnit.SECONDS), "The schedule should run three times");
+        } finally {
+            feedingWheel.shutdown();
+        }
+
+        assertTrue(FeederMetrics.shared().getSchedulerLag().getCount() - before >= 3, "Every run should record its lag");
+    }
+
+    /**
+     * Tests that sampled metrics count every call but time only some, and
+     * that disabled metrics record nothing.
+     */
+    @Test
+    public void testSamplingAndDisabled() {
+        petFeeder.addMealPlan(plan("plan-0-0", 0, 0, 0, 0));
+        FeederMetrics sampled = new FeederMetrics(60);
+        petFeeder.setMetrics(sampled);
+        for (int i = 0; i < 6400; i++) {
+            petFeeder.dispenseMeal(0);
+        }
+        assertEquals(64, sampled.getSampleEvery(), "The sampling rate should be rounded up to a power of two");
+        assertEquals(6400, sampled.getDispenseCount(DispenseResult.DISPENSED), "Every dispense should be counted");
+        long timed = sampled.getDispenseLatency().getCount();
+        assertTrue(timed > 0 && timed < 400, "About one dispense in 64 should be timed, was " + timed);
+
+        petFeeder.setMetrics(FeederMetrics.disabled());
+        petFeeder.dispenseMeal(0);
+        assertEquals(0, FeederMetrics.disabled().getDispenseCount(DispenseResult.DISPENSED), "Disabled metrics should count nothing");
+        assertTrue(metrics.toString().contains("dispense.dispensed 0"), "The report should list every result");
+    }
+
+    /**
+     * Tears down the test environment after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        petFeeder = null;
+        metrics = null;
+    }
+}
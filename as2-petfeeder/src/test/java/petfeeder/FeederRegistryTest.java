@@ -0,0 +1,100 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests the FeederRegistry class
+ */
+public class FeederRegistryTest {
+
+    private FeederRegistry registry;
+
+    /**
+     * Sets up the test environment by creating a new FeederRegistry instance before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        registry = new FeederRegistry();
+    }
+
+    /**
+     * Tests that a created feeder can be looked up by its id.
+     */
+    @Test
+    public void testCreateFeeder_GoodInput() {
+        PetFeeder created = registry.createFeeder("kennel-1");
+        assertNotNull(created, "A new feeder should be created");
+        assertSame(created, registry.getFeeder("kennel-1"), "The created feeder should be registered under its id");
+        assertEquals(1, registry.size(), "The registry should hold one feeder");
+    }
+
+    /**
+     * Tests that creating a feeder with an id that is already taken returns null
+     * and keeps the original feeder.
+     */
+    @Test
+    public void testCreateFeeder_DuplicateId() {
+        PetFeeder first = registry.createFeeder("kennel-1");
+        assertNull(registry.createFeeder("kennel-1"), "A duplicate id should not create a feeder");
+        assertSame(first, registry.getFeeder("kennel-1"), "The original feeder should be kept");
+    }
+
+    /**
+     * Tests that null ids and feeders are rejected.
+     */
+    @Test
+    public void testNullInput() {
+        assertNull(registry.createFeeder(null), "A null id should not create a feeder");
+        assertFalse(registry.addFeeder(null, new PetFeeder()), "A null id should not be added");
+        assertFalse(registry.addFeeder("kennel-1", null), "A null feeder should not be added");
+        assertNull(registry.getFeeder(null), "Looking up a null id should return null");
+        assertNull(registry.removeFeeder(null), "Removing a null id should return null");
+    }
+
+    /**
+     * Tests that removing a feeder returns it and unregisters its id.
+     */
+    @Test
+    public void testRemoveFeeder() {
+        PetFeeder feeder = new PetFeeder();
+        assertTrue(registry.addFeeder("kennel-1", feeder), "The feeder should be added");
+        assertSame(feeder, registry.removeFeeder("kennel-1"), "The removed feeder should be returned");
+        assertNull(registry.getFeeder("kennel-1"), "The id should no longer be registered");
+        assertEquals(0, registry.size(), "The registry should be empty");
+    }
+
+    /**
+     * Tests that registered feeders keep independent stock, meal plans and energy budgets.
+     */
+    @Test
+    public void testFeedersAreIndependent() throws Exception {
+        PetFeeder first = registry.createFeeder("kennel-1");
+        PetFeeder second = registry.createFeeder("kennel-2");
+
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(5);
+        Mockito.when(meal.getEnergyCost()).thenReturn(50);
+        first.addMealPlan(meal);
+        second.replenishFood("1", "0", "0", "0");
+
+        assertTrue(first.dispenseMeal(0), "The first feeder should dispense its meal");
+        assertFalse(second.dispenseMeal(0), "The second feeder has no meal plan to dispense");
+        assertEquals(450, first.getRemainingEnergyBudget(), "Only the first feeder should spend energy");
+        assertEquals(500, second.getRemainingEnergyBudget(), "The second feeder should keep its full budget");
+        assertTrue(first.checkFoodStock().startsWith("Kibble: 10\n"), "The first feeder should have used its own kibble");
+        assertTrue(second.checkFoodStock().startsWith("Kibble: 16\n"), "The second feeder should only have its own replenishment");
+    }
+
+    /**
+     * Tears down the test environment by setting the FeederRegistry instance to null after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        registry = null;
+    }
+}
@@ -9,6 +9,8 @@ import org.mockito.Mockito;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests the FeedingScheduler class
@@ -27,19 +29,21 @@ public class FeedingSchedulerTest {
         MealPlan[] mealplans = new MealPlan[3];
 
         // Create two meal plans with different ingredient amounts
-        MealPlan meal1 = new MealPlan();
-        meal1.setName("Meal 1");
-        meal1.setAmtWater("30");
-        meal1.setAmtTreats("10");
-        meal1.setAmtWetFood("40");
-        meal1.setAmtKibble("20");
-
-        MealPlan meal2 = new MealPlan();
-        meal2.setName("Meal 2");
-        meal2.setAmtWater("20");
-        meal2.setAmtTreats("5");
-        meal2.setAmtWetFood("30");
-        meal2.setAmtKibble("10");
+        MealPlan.Builder meal1Builder = new MealPlan.Builder();
+        meal1Builder.setName("Meal 1");
+        meal1Builder.setAmtWater("30");
+        meal1Builder.setAmtTreats("10");
+        meal1Builder.setAmtWetFood("40");
+        meal1Builder.setAmtKibble("20");
+        MealPlan meal1 = meal1Builder.build();
+
+        MealPlan.Builder meal2Builder = new MealPlan.Builder();
+        meal2Builder.setName("Meal 2");
+        meal2Builder.setAmtWater("20");
+        meal2Builder.setAmtTreats("5");
+        meal2Builder.setAmtWetFood("30");
+        meal2Builder.setAmtKibble("10");
+        MealPlan meal2 = meal2Builder.build();
 
         mealplans[0] = meal1;
         mealplans[1] = meal2;
@@ -47,7 +51,7 @@ public class FeedingSchedulerTest {
         // MOCKING //
         petfeeder = Mockito.mock(PetFeeder.class);
 
-        Mockito.when(petfeeder.getMealPlans()).thenReturn(mealplans);
+        Mockito.when(petfeeder.getMealPlanSnapshot()).thenReturn(mealplans);
 
         feedingScheduler = new FeedingScheduler(petfeeder);
     }
@@ -57,14 +61,14 @@ public class FeedingSchedulerTest {
      */
     @Test
     public void testScheduleRecurringFeeding_goodInput() throws InterruptedException {
-        Mockito.when(petfeeder.dispenseMeal(Mockito.anyInt())).thenReturn(true);
+        Mockito.when(petfeeder.dispenseMealResult(Mockito.anyInt())).thenReturn(DispenseResult.DISPENSED);
 
         feedingScheduler.scheduleRecurringFeeding(1, 1);
 
         Thread.sleep(1200);
 
-        Mockito.verify(petfeeder, Mockito.atLeastOnce()).dispenseMeal(1);
-        Mockito.verify(petfeeder, Mockito.atLeastOnce()).dispenseMeal(1);
+        Mockito.verify(petfeeder, Mockito.atLeastOnce()).dispenseMealResult(1);
+        Mockito.verify(petfeeder, Mockito.atLeastOnce()).getMealPlanSnapshot();
     }
 
     /**
@@ -72,7 +76,7 @@ public class FeedingSchedulerTest {
      */
     @Test
     public void scheduleRecurringFeeding_negativeSeconds(){
-        Mockito.when(petfeeder.dispenseMeal(Mockito.anyInt())).thenReturn(true);
+        Mockito.when(petfeeder.dispenseMealResult(Mockito.anyInt())).thenReturn(DispenseResult.DISPENSED);
 
         assertThrows(IllegalArgumentException.class, () -> feedingScheduler.scheduleRecurringFeeding(0,-2));
     }
@@ -82,7 +86,7 @@ public class FeedingSchedulerTest {
      */
     @Test
     public void scheduleRecurringFeeding_indexOutOfRange(){
-        Mockito.when(petfeeder.dispenseMeal(Mockito.anyInt())).thenReturn(true);
+        Mockito.when(petfeeder.dispenseMealResult(Mockito.anyInt())).thenReturn(DispenseResult.DISPENSED);
 
 
         assertThrows(IllegalArgumentException.class, () -> feedingScheduler.scheduleRecurringFeeding(4,-2));
@@ -93,14 +97,15 @@ public class FeedingSchedulerTest {
      */
     @Test
     public void scheduleRecurringFeeding_mealPlanIsNull() throws InterruptedException {;
-        Mockito.when(petfeeder.dispenseMeal(Mockito.anyInt())).thenReturn(false);
+        // A real feeder has no meal plan in slot 2.
+        Mockito.when(petfeeder.dispenseMealResult(2)).thenReturn(DispenseResult.NO_MEAL_PLAN);
 
         feedingScheduler.scheduleRecurringFeeding(2,1);
 
         Thread.sleep(1200);
 
-        Mockito.verify(petfeeder, Mockito.atLeastOnce()).dispenseMeal(2);
-        Mockito.verify(petfeeder, Mockito.never()).getMealPlans();
+        Mockito.verify(petfeeder, Mockito.atLeastOnce()).dispenseMealResult(2);
+        Mockito.verify(petfeeder, Mockito.never()).getMealPlanSnapshot();
     }
 
     /**
@@ -110,7 +115,7 @@ public class FeedingSchedulerTest {
      */
     @Test
     public void testStop(){
-        Mockito.when(petfeeder.dispenseMeal(Mockito.anyInt())).thenReturn(true);
+        Mockito.when(petfeeder.dispenseMealResult(Mockito.anyInt())).thenReturn(DispenseResult.DISPENSED);
 
         feedingScheduler.scheduleRecurringFeeding(0,100);
 
@@ -126,7 +131,7 @@ public class FeedingSchedulerTest {
      */
     @Test
     public void testShutdown() throws InterruptedException {
-        Mockito.when(petfeeder.dispenseMeal(Mockito.anyInt())).thenReturn(true);
+        Mockito.when(petfeeder.dispenseMealResult(Mockito.anyInt())).thenReturn(DispenseResult.DISPENSED);
 
         feedingScheduler.scheduleRecurringFeeding(0,100);
 
@@ -143,7 +148,7 @@ public class FeedingSchedulerTest {
      */
     @Test
     public void scheduleRecurringFeeding_runTwice() throws InterruptedException {
-        Mockito.when(petfeeder.dispenseMeal(Mockito.anyInt())).thenReturn(true);
+        Mockito.when(petfeeder.dispenseMealResult(Mockito.anyInt())).thenReturn(DispenseResult.DISPENSED);
 
         feedingScheduler.scheduleRecurringFeeding(0,100);
 
@@ -159,12 +164,63 @@ public class FeedingSchedulerTest {
     }
 
     /**
-     * Tests that scheduleRecurringFeeding hits the catch block when dispenseMeal throws an exception,
+     * Tests that schedules for several meal plans of one feeder run side by side,
+     * and that one of them can be cancelled without stopping the others.
+     */
+    @Test
+    public void testAddRecurringFeeding_severalPlans() throws InterruptedException {
+        Mockito.when(petfeeder.dispenseMealResult(Mockito.anyInt())).thenReturn(DispenseResult.DISPENSED);
+
+        feedingScheduler.addRecurringFeeding(0, 100, TimeUnit.MILLISECONDS);
+        feedingScheduler.addRecurringFeeding(1, 100, TimeUnit.MILLISECONDS);
+        assertEquals(2, feedingScheduler.getActiveScheduleCount(), "Both meal plans should have a schedule");
+
+        Thread.sleep(350);
+        Mockito.verify(petfeeder, Mockito.atLeastOnce()).dispenseMealResult(0);
+        Mockito.verify(petfeeder, Mockito.atLeastOnce()).dispenseMealResult(1);
+
+        assertTrue(feedingScheduler.cancelRecurringFeeding(0), "The schedule of meal plan 0 should be cancelled");
+        assertFalse(feedingScheduler.cancelRecurringFeeding(0), "Meal plan 0 should have no schedule left");
+        assertEquals(1, feedingScheduler.getActiveScheduleCount(), "The schedule of meal plan 1 should still be active");
+        feedingScheduler.stop();
+    }
+
+    /**
+     * Tests that scheduled feedings publish their outcome, with the id of
+     * the feeder and the result of the dispense, to the event log of the scheduler.
+     */
+    @Test
+    public void testRunScheduledFeeding_publishesEvents() throws Exception {
+        EventSink.MemorySink sink = new EventSink.MemorySink();
+        try (EventLog eventLog = EventLog.start(sink)) {
+            FeedingScheduler scheduler = new FeedingScheduler(petfeeder, FeedingWheel.shared(), eventLog);
+            Mockito.when(petfeeder.dispenseMealResult(0)).thenReturn(DispenseResult.DISPENSED);
+            Mockito.when(petfeeder.dispenseMealResult(1)).thenReturn(DispenseResult.INSUFFICIENT_INGREDIENTS);
+            Mockito.when(petfeeder.getFeederId()).thenReturn("kitchen");
+
+            scheduler.runScheduledFeeding(0);
+            scheduler.runScheduledFeeding(1);
+            assertTrue(eventLog.flush(5, TimeUnit.SECONDS), "The events should be written");
+
+            List<FeederEvent> events = sink.getEvents();
+            assertEquals(2, events.size(), "Each feeding should publish one event");
+            assertEquals("[Scheduler kitchen] Dispensed scheduled meal: Meal 1", events.get(0).toString(), "The dispensed meal should be named");
+            assertEquals("kitchen", events.get(0).getFeederId(), "The event should name the feeder");
+            assertEquals(DispenseResult.DISPENSED, events.get(0).getResult(), "The event should hold the result");
+            assertEquals(FeederEvent.Type.SCHEDULED_NOT_DISPENSED, events.get(1).getType(), "The failed feeding should be reported");
+            assertEquals(DispenseResult.INSUFFICIENT_INGREDIENTS, events.get(1).getResult(), "The event should say why the meal was not dispensed");
+            assertEquals("[Scheduler kitchen] Scheduled meal could not be dispensed (insufficient ingredients).", events.get(1).toString(),
+                    "The log line should give the reason");
+        }
+    }
+
+    /**
+     * Tests that scheduleRecurringFeeding hits the catch block when dispenseMealResult throws an exception,
      * and that the error message is printed to the console.
      */
     @Test
     public void testScheduleRecurringFeeding_shouldHitCatch() {
-        Mockito.when(petfeeder.dispenseMeal(Mockito.anyInt())).thenThrow(new RuntimeException());
+        Mockito.when(petfeeder.dispenseMealResult(Mockito.anyInt())).thenThrow(new RuntimeException());
 
         // Redirect System.out to capture the output for verification
         ByteArrayOutputStream out = new ByteArrayOutputStream();
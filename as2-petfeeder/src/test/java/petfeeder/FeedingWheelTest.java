@@ -0,0 +1,201 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the FeedingWheel class
+ */
+public class FeedingWheelTest {
+
+    private FeedingWheel feedingWheel;
+    private PetFeeder petFeeder;
+
+    /**
+     * Sets up the test environment by creating a feeding wheel with 1 ms ticks
+     * and two workers before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        feedingWheel = new FeedingWheel(1, TimeUnit.MILLISECONDS, 2);
+        petFeeder = new PetFeeder();
+    }
+
+    /**
+     * Tests that a schedule runs repeatedly.
+     */
+    @Test
+    public void testSchedule_runsRepeatedly() throws InterruptedException {
+        CountDownLatch runs = new CountDownLatch(3);
+        feedingWheel.schedule(petFeeder, 0, runs::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(runs.await(2, TimeUnit.SECONDS), "The schedule should run at least three times");
+    }
+
+    /**
+     * Tests that many schedules across feeders and meal plans all run, on the
+     * same fixed set of threads.
+     */
+    @Test
+    public void testSchedule_manySchedulesShareThreads() throws InterruptedException {
+        int feeders = 50;
+        int plansPerFeeder = 20;
+        CountDownLatch firstRuns = new CountDownLatch(feeders * plansPerFeeder);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        for (int f = 0; f < feeders; f++) {
+            PetFeeder feeder = new PetFeeder();
+            for (int p = 0; p < plansPerFeeder; p++) {
+                AtomicInteger count = new AtomicInteger();
+                feedingWheel.schedule(feeder, p, () -> {
+                    threads.add(Thread.currentThread());
+                    if (count.getAndIncrement() == 0) {
+                        firstRuns.countDown();
+                    }
+                }, 10 + p, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        assertEquals(feeders * plansPerFeeder, feedingWheel.size(), "Every (feeder, plan) pair should have its own schedule");
+        assertTrue(firstRuns.await(5, TimeUnit.SECONDS), "Every schedule should run");
+        assertTrue(threads.size() <= 2, "All schedules should run on the two worker threads");
+    }
+
+    /**
+     * Tests that scheduling the same feeder and meal plan again replaces the old schedule.
+     */
+    @Test
+    public void testSchedule_sameKeyReplaces() {
+        FeedingWheel.Schedule first = feedingWheel.schedule(petFeeder, 1, () -> { }, 1, TimeUnit.HOURS);
+        FeedingWheel.Schedule second = feedingWheel.schedule(petFeeder, 1, () -> { }, 2, TimeUnit.HOURS);
+
+        assertTrue(first.isCancelled(), "The old schedule should be cancelled");
+        assertFalse(second.isCancelled(), "The new schedule should be active");
+        assertSame(second, feedingWheel.getSchedule(petFeeder, 1), "The new schedule should be registered");
+        assertEquals(1, feedingWheel.size(), "There should be one schedule for the pair");
+    }
+
+    /**
+     * Tests that a period of exactly one turn of the wheel fires every
+     * turn; it used to wait an extra turn after each run and so fire only
+     * every other turn.
+     */
+    @Test
+    public void testSchedule_periodOfOneTurn() throws InterruptedException {
+        CountDownLatch runs = new CountDownLatch(3);
+        feedingWheel.schedule(petFeeder, 0, runs::countDown, FeedingWheel.DEFAULT_WHEEL_SIZE, TimeUnit.MILLISECONDS);
+
+        assertTrue(runs.await(2000, TimeUnit.MILLISECONDS),
+                "The schedule should run after one, two and three turns, not only every other turn");
+    }
+
+    /**
+     * Tests that a cancelled schedule stops running and is removed.
+     */
+    @Test
+    public void testCancel_stopsRuns() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        feedingWheel.schedule(petFeeder, 0, runs::incrementAndGet, 5, TimeUnit.MILLISECONDS);
+        Thread.sleep(50);
+
+        assertTrue(feedingWheel.cancel(petFeeder, 0), "Cancelling an active schedule should return true");
+        assertFalse(feedingWheel.cancel(petFeeder, 0), "Cancelling twice should return false");
+        Thread.sleep(20);
+        int afterCancel = runs.get();
+        Thread.sleep(100);
+
+        assertEquals(afterCancel, runs.get(), "A cancelled schedule should not run again");
+        assertEquals(0, feedingWheel.size(), "A cancelled schedule should be removed");
+        assertNull(feedingWheel.getSchedule(petFeeder, 0), "A cancelled schedule should not be found");
+    }
+
+    /**
+     * Tests that with virtual threads a feeding that blocks for a long time does
+     * not delay the feedings of another feeder.
+     */
+    @Test
+    public void testVirtualThreads_slowFeedingDoesNotDelayOthers() throws InterruptedException {
+        FeedingWheel virtualWheel = FeedingWheel.withVirtualThreads(1, TimeUnit.MILLISECONDS);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger fastRuns = new AtomicInteger();
+            Set<Boolean> virtual = ConcurrentHashMap.newKeySet();
+            virtualWheel.schedule(new PetFeeder(), 0, () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 5, TimeUnit.MILLISECONDS);
+            virtualWheel.schedule(petFeeder, 0, () -> {
+                virtual.add(Thread.currentThread().isVirtual());
+                fastRuns.incrementAndGet();
+            }, 10, TimeUnit.MILLISECONDS);
+
+            Thread.sleep(300);
+            release.countDown();
+
+            assertTrue(virtualWheel.usesVirtualThreads(), "The wheel should report that it uses virtual threads");
+            assertTrue(fastRuns.get() >= 10, "The fast feeding should keep running while the slow one blocks");
+            assertEquals(Set.of(true), virtual, "Feedings should run on virtual threads");
+            assertTrue(virtualWheel.getSkippedRunCount() > 0, "Runs of the blocked feeding should be skipped, not stacked");
+        } finally {
+            virtualWheel.shutdown();
+        }
+    }
+
+    /**
+     * Tests that the wheel records how many runs started and how late they were.
+     */
+    @Test
+    public void testDriftStats() throws InterruptedException {
+        CountDownLatch runs = new CountDownLatch(5);
+        feedingWheel.schedule(petFeeder, 0, runs::countDown, 10, TimeUnit.MILLISECONDS);
+        assertTrue(runs.await(2, TimeUnit.SECONDS), "The schedule should run five times");
+
+        assertTrue(feedingWheel.getRunCount() >= 5, "Every started run should be counted");
+        assertTrue(feedingWheel.getMaxDriftNanos() >= feedingWheel.getAverageDriftNanos(), "The largest drift should not be below the average");
+        assertFalse(feedingWheel.usesVirtualThreads(), "The default wheel should use platform threads");
+
+        feedingWheel.cancel(petFeeder, 0);
+        Thread.sleep(20);
+        feedingWheel.resetDriftStats();
+        assertEquals(0, feedingWheel.getRunCount(), "The run count should be cleared");
+        assertEquals(0, feedingWheel.getMaxDriftNanos(), "The largest drift should be cleared");
+    }
+
+    /**
+     * Tests that invalid periods and scheduling after shutdown are rejected.
+     */
+    @Test
+    public void testSchedule_invalidInput() {
+        assertThrows(IllegalArgumentException.class,
+                () -> feedingWheel.schedule(petFeeder, 0, () -> { }, 0, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> feedingWheel.schedule(petFeeder, 0, () -> { }, -1, TimeUnit.SECONDS));
+
+        feedingWheel.shutdown();
+        assertTrue(feedingWheel.isShutdown(), "The wheel should report that it is shut down");
+        assertThrows(RejectedExecutionException.class,
+                () -> feedingWheel.schedule(petFeeder, 0, () -> { }, 1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tears down the test environment by shutting down the feeding wheel after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        feedingWheel.shutdown();
+        feedingWheel = null;
+        petFeeder = null;
+    }
+}
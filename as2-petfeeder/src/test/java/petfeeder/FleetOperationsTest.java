@@ -0,0 +1,137 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static petfeeder.TestMealPlans.plan;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the FleetOperations class
+ */
+public class FleetOperationsTest {
+
+    private static final int FEEDERS = 1000;
+
+    private ForkJoinPool pool;
+    private FleetOperations fleetOperations;
+    private PetFeeder[] feeders;
+
+    /**
+     * Sets up the test environment with a pool of 4 threads, parts of at
+     * most 16 feeders, and 1000 new feeders; every other feeder has a meal
+     * plan of 5 kibble and 1 water.
+     */
+    @BeforeEach
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+        fleetOperations = new FleetOperations(pool, 16);
+        MealPlan dinner = plan("Dinner", 5, 1, 0, 0);
+        feeders = new PetFeeder[FEEDERS];
+        for (int i = 0; i < FEEDERS; i++) {
+            feeders[i] = new PetFeeder();
+            feeders[i].setMetrics(FeederMetrics.disabled());
+            if (i % 2 == 0) {
+                feeders[i].addMealPlan(dinner);
+            }
+        }
+    }
+
+    /**
+     * Shuts down the pool.
+     */
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Tests that every feeder is replenished once and that feeders that
+     * would overflow are refused and left unchanged.
+     */
+    @Test
+    public void testReplenish_countsFeeders() {
+        FleetOperations.ReplenishReport report = fleetOperations.replenish(feeders, 1, 2, 0, 0);
+        assertEquals(FEEDERS, report.getReplenished(), "Every feeder should be replenished");
+        assertEquals(0, report.getRefused(), "No feeder should be refused");
+        for (PetFeeder petFeeder : feeders) {
+            assertEquals(FoodContainer.pack(16, 17, 15, 15), petFeeder.getStock(), "Each feeder should be replenished once");
+        }
+
+        feeders[7].replenish(FoodContainer.MAX_UNITS - 16, 0, 0, 0);
+        report = fleetOperations.replenish(feeders, 1, 0, 0, 0);
+        assertEquals(FEEDERS - 1, report.getReplenished(), "Every other feeder should be replenished");
+        assertEquals(1, report.getRefused(), "The full feeder should be refused");
+        assertEquals(FoodContainer.MAX_UNITS, FoodContainer.unitsAt(feeders[7].getStock(), FoodContainer.KIBBLE_SHIFT),
+                "The refused feeder should be unchanged");
+        assertThrows(IllegalArgumentException.class, () -> fleetOperations.replenish(feeders, -1, 0, 0, 0),
+                "A negative amount should be rejected");
+    }
+
+    /**
+     * Tests that a fleet dispense counts each feeder by its result.
+     */
+    @Test
+    public void testDispense_countsResults() {
+        FleetOperations.DispenseReport report = fleetOperations.dispense(feeders, 0);
+        assertEquals(FEEDERS / 2, report.getDispensed(), "Feeders with a meal plan should dispense");
+        assertEquals(FEEDERS / 2, report.getCount(DispenseResult.NO_MEAL_PLAN), "Feeders without one should not");
+
+        fleetOperations.dispense(feeders, 0);
+        fleetOperations.dispense(feeders, 0);
+        report = fleetOperations.dispense(feeders, 0);
+        assertEquals(FEEDERS / 2, report.getCount(DispenseResult.INSUFFICIENT_INGREDIENTS),
+                "The fourth meal should lack kibble");
+        assertEquals(0, report.getDispensed(), "No feeder should dispense a fourth meal");
+        assertEquals(FEEDERS, fleetOperations.dispense(feeders, 5).getCount(DispenseResult.NO_MEAL_PLAN),
+                "An index past the meal plans should be no meal plan");
+    }
+
+    /**
+     * Tests that an audit sums the stock like FeederMetrics.stockLevels
+     * and finds the lowest stock and the feeders low on an ingredient, and
+     * that the remaining energy is summed.
+     */
+    @Test
+    public void testAudit_sumsStock() {
+        fleetOperations.dispense(feeders, 0);
+        FleetOperations.AuditReport report = fleetOperations.audit(feeders, 11, 0, 0, 0);
+
+        assertEquals(FEEDERS, report.getFeeders(), "Every feeder should be audited");
+        assertArrayEquals(FeederMetrics.stockLevels(Arrays.asList(feeders)), report.getStock(),
+                "The stock should match FeederMetrics.stockLevels");
+        assertArrayEquals(new int[] {10, 14, 15, 15}, report.getMinimum(), "The lowest stock should be found");
+        assertEquals(FEEDERS / 2, report.getLowStock(), "Feeders that dispensed should be low on kibble");
+        assertEquals((long) FEEDERS * PetFeeder.DEFAULT_ENERGY_LIMIT - FEEDERS / 2 * 55, fleetOperations.remainingEnergy(feeders),
+                "The remaining energy should be summed");
+        assertEquals(0, fleetOperations.audit(new PetFeeder[0], 0, 0, 0, 0).getFeeders(), "An empty fleet should audit");
+    }
+
+    /**
+     * Tests that fleet dispenses and replenishes running at the same time
+     * keep every feeder's stock consistent with its results.
+     */
+    @Test
+    public void testConcurrent_conservesStock() throws Exception {
+        long[] dispensed = new long[1];
+        Thread dispenser = new Thread(() -> {
+            for (int round = 0; round < 20; round++) {
+                dispensed[0] += fleetOperations.dispense(feeders, 0).getDispensed();
+            }
+        });
+        dispenser.start();
+        long replenished = 0;
+        for (int round = 0; round < 20; round++) {
+            replenished += fleetOperations.replenish(feeders, 5, 1, 0, 0).getReplenished();
+        }
+        dispenser.join();
+
+        long[] stock = fleetOperations.audit(feeders, 0, 0, 0, 0).getStock();
+        assertEquals(FEEDERS * 15L + 5 * replenished - 5 * dispensed[0], stock[0],
+                "The kibble should be the kibble replenished minus the kibble dispensed");
+    }
+}
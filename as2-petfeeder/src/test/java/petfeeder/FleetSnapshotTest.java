@@ -0,0 +1,276 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static petfeeder.TestMealPlans.plan;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+/**
+ * Tests the FleetSnapshot and FleetSnapshotWriter classes
+ */
+public class FleetSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FeederRegistry registry;
+
+    /**
+     * Sets up the test environment by creating a registry with two feeders
+     * that have meal plans, a dispensed meal and an extra replenish.
+     */
+    @BeforeEach
+    public void setUp() {
+        registry = new FeederRegistry();
+        PetFeeder kitchen = registry.createFeeder("kitchen");
+        kitchen.addMealPlan(plan("Breakfast", 2, 1, 0, 0));
+        kitchen.addMealPlan(plan("Dinner", 1, 1, 2, 1));
+        kitchen.addMealPlan(plan("Snack", 0, 0, 0, 1));
+        kitchen.deleteMealPlan(1);
+        kitchen.dispenseMeal(0);
+        kitchen.replenish(10, 0, 0, 5);
+        registry.createFeeder("garden");
+    }
+
+    /**
+     * Tests that restoring a snapshot gives feeders with the same stock,
+     * energy budget and meal plans, under the same ids.
+     */
+    @Test
+    public void testWriteAndRestore() throws IOException {
+        Path file = tempDir.resolve("fleet.pfs");
+        assertEquals(2, FleetSnapshot.write(registry, file), "Both feeders should be written");
+
+        FleetSnapshot snapshot = FleetSnapshot.open(file);
+        assertEquals(2, snapshot.size(), "The snapshot should hold both feeders");
+        FeederRegistry restored = snapshot.restore();
+        for (String id : new String[] {"kitchen", "garden"}) {
+            PetFeeder original = registry.getFeeder(id);
+            PetFeeder copy = restored.getFeeder(id);
+            assertNotNull(copy, "Feeder " + id + " should be restored");
+            assertEquals(original.checkFoodStock(), copy.checkFoodStock(), "The stock of " + id + " should be restored");
+            assertEquals(original.getRemainingEnergyBudget(), copy.getRemainingEnergyBudget(), "The energy budget of " + id + " should be restored");
+        }
+        MealPlan[] plans = restored.getFeeder("kitchen").getMealPlans();
+        assertEquals("Breakfast", plans[0].getName(), "The first meal plan should keep its handle");
+        assertNull(plans[1], "The deleted meal plan should stay empty");
+        assertEquals("Snack", plans[2].getName(), "The last meal plan should keep its handle");
+        assertEquals(1, plans[2].getAmtTreats(), "The amounts should be restored");
+    }
+
+    /**
+     * Tests that the energy budget settings of a feeder and the energy it
+     * consumed in the current window are restored.
+     */
+    @Test
+    public void testWriteAndRestore_energyBudget() throws IOException {
+        PetFeeder porch = new PetFeeder(new MealPlanBook(), new FoodContainer(),
+                new EnergyBudget(300, 12, TimeUnit.HOURS, 6));
+        porch.addMealPlan(plan("Supper", 5, 0, 0, 0));
+        assertTrue(porch.dispenseMeal(0), "Supper should be dispensed");
+        registry.addFeeder("porch", porch);
+        Path file = tempDir.resolve("fleet.pfs");
+        FleetSnapshot.write(registry, file);
+
+        PetFeeder copy = FleetSnapshot.open(file).restore().getFeeder("porch");
+        EnergyBudget energyBudget = copy.getEnergyBudget();
+        assertEquals(300, energyBudget.getLimit(), "The energy limit should be restored");
+        assertEquals(12, energyBudget.getWindow(TimeUnit.HOURS), "The energy window should be restored");
+        assertEquals(6, energyBudget.getBuckets(), "The number of buckets should be restored");
+        assertEquals(250, copy.getRemainingEnergyBudget(), "The energy consumed in the window should be restored");
+    }
+
+    /**
+     * Tests that a snapshot saves the journal position of a journaled
+     * feeder and that the journal rebuilds the feeder from the snapshot
+     * and the records written after it, also once it was checkpointed.
+     */
+    @Test
+    public void testRecover_snapshotAndJournalTail() throws IOException {
+        Path journalFile = tempDir.resolve("porch.journal");
+        FeederJournal journal = FeederJournal.open(journalFile);
+        PetFeeder porch = journal.recover();
+        registry.addFeeder("porch", porch);
+        porch.addMealPlan(plan("Breakfast", 2, 1, 0, 0));
+        porch.dispenseMeal(0);
+        long atSnapshot = journal.getLastSequence();
+        Path file = tempDir.resolve("fleet.pfs");
+        FleetSnapshot.write(registry, file);
+
+        porch.replenish(3, 0, 0, 2);
+        porch.addMealPlan(plan("Dinner", 1, 1, 2, 1));
+        porch.dispenseMeal(1);
+        String stock = porch.checkFoodStock();
+        int budget = porch.getRemainingEnergyBudget();
+        journal.close();
+
+        FleetSnapshot snapshot = FleetSnapshot.open(file);
+        int position = -1;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.getFeederId(i).equals("porch")) {
+                position = i;
+            } else {
+                assertEquals(0, snapshot.getJournalSequence(i), "A feeder without a journal should have no position");
+            }
+        }
+        assertEquals(atSnapshot, snapshot.getJournalSequence(position), "The journal position should be saved");
+
+        journal = FeederJournal.open(journalFile);
+        PetFeeder recovered = journal.recover(snapshot, position);
+        assertEquals(stock, recovered.checkFoodStock(), "The records after the snapshot should be applied");
+        assertEquals(budget, recovered.getRemainingEnergyBudget(), "The energy budget should be recovered");
+        assertEquals("Dinner", recovered.getMealPlans()[1].getName(), "The plan added after the snapshot should be recovered");
+        journal.checkpoint(recovered);
+        journal.close();
+
+        journal = FeederJournal.open(journalFile);
+        recovered = journal.recover(snapshot, position);
+        assertEquals(stock, recovered.checkFoodStock(), "A journal checkpointed after the snapshot should be used alone");
+        assertEquals("Dinner", recovered.getMealPlans()[1].getName(), "The checkpointed plans should be recovered");
+        journal.close();
+    }
+
+    /**
+     * Tests that a damaged snapshot is rejected.
+     */
+    @Test
+    public void testOpen_corruptFile() throws IOException {
+        Path file = tempDir.resolve("fleet.pfs");
+        FleetSnapshot.write(registry, file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), 30);
+        }
+
+        IOException e = assertThrows(IOException.class, () -> FleetSnapshot.open(file));
+        assertTrue(e.getMessage().startsWith("Snapshot checksum does not match"), "The checksum should catch the damage");
+    }
+
+    /**
+     * Tests that snapshots can be written while feeders are dispensing.
+     */
+    @Test
+    public void testWrite_whileDispensing() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        PetFeeder garden = registry.getFeeder("garden");
+        garden.addMealPlan(plan("Nibble", 0, 0, 0, 0));
+        Thread dispenser = new Thread(() -> {
+            while (running.get()) {
+                garden.dispenseMeal(0);
+                garden.replenish(0, 0, 0, 0);
+            }
+        });
+        dispenser.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                Path file = tempDir.resolve("fleet-" + i + ".pfs");
+                FleetSnapshot.write(registry, file);
+                assertEquals(2, FleetSnapshot.open(file).size(), "Every snapshot should hold both feeders");
+            }
+        } finally {
+            running.set(false);
+            dispenser.join();
+        }
+    }
+
+    /**
+     * Tests that the background writer writes snapshots, keeps only the newest
+     * ones and that latest finds the newest one.
+     */
+    @Test
+    public void testWriter_keepsNewestSnapshots() throws Exception {
+        Path directory = tempDir.resolve("snapshots");
+        assertNull(FleetSnapshotWriter.latest(directory), "There should be no snapshot before the writer runs");
+        try (FleetSnapshotWriter writer = FleetSnapshotWriter.start(registry, directory, 1, TimeUnit.HOURS)) {
+            Path first = writer.snapshotNow();
+            Thread.sleep(5);
+            writer.snapshotNow();
+            Thread.sleep(5);
+            Path third = writer.snapshotNow();
+
+            assertEquals(third, FleetSnapshotWriter.latest(directory), "latest should return the newest snapshot");
+            assertFalse(first.toFile().exists(), "The oldest snapshot should be deleted");
+            assertEquals(2, FleetSnapshot.open(third).size(), "The newest snapshot should be readable");
+            assertNull(writer.getLastFailure(), "No snapshot should have failed");
+        }
+    }
+
+    /**
+     * Tests that a background snapshot that fails with an unchecked error is
+     * recorded, leaves no temporary file behind and does not stop the later
+     * snapshots.
+     */
+    @Test
+    public void testWriter_recordsUncheckedFailure() throws Exception {
+        Path directory = tempDir.resolve("snapshots");
+        IllegalStateException failure = new IllegalStateException("broken feeder");
+        PetFeeder broken = Mockito.mock(PetFeeder.class);
+        Mockito.when(broken.captureState()).thenThrow(failure);
+        registry.addFeeder("broken", broken);
+        try (FleetSnapshotWriter writer = FleetSnapshotWriter.start(registry, directory, 1, TimeUnit.HOURS)) {
+            assertSame(failure, assertThrows(IllegalStateException.class, writer::snapshotNow),
+                    "snapshotNow should throw the error");
+            try (DirectoryStream<Path> temps = Files.newDirectoryStream(directory, "*.tmp")) {
+                assertFalse(temps.iterator().hasNext(), "The temporary file should be deleted");
+            }
+        }
+        try (FleetSnapshotWriter writer = FleetSnapshotWriter.start(registry, directory, 10, TimeUnit.MILLISECONDS)) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (writer.getLastFailure() == null && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertNotNull(writer.getLastFailure(), "The failed snapshot should be recorded");
+            assertSame(failure, writer.getLastFailure().getCause(), "The failure should wrap the unchecked error");
+
+            registry.removeFeeder("broken");
+            while (FleetSnapshotWriter.latest(directory) == null && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertNotNull(FleetSnapshotWriter.latest(directory), "Later snapshots should still be written");
+        }
+    }
+
+    /**
+     * Tests that latest skips a newest snapshot that is damaged and
+     * returns the one before it.
+     */
+    @Test
+    public void testLatest_skipsDamagedSnapshot() throws Exception {
+        Path directory = tempDir.resolve("snapshots");
+        try (FleetSnapshotWriter writer = FleetSnapshotWriter.start(registry, directory, 1, TimeUnit.HOURS)) {
+            Path older = writer.snapshotNow();
+            Thread.sleep(5);
+            Path newer = writer.snapshotNow();
+            try (FileChannel channel = FileChannel.open(newer, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {42}), 30);
+            }
+
+            assertEquals(older, FleetSnapshotWriter.latest(directory), "The damaged snapshot should be skipped");
+            try (FileChannel channel = FileChannel.open(older, StandardOpenOption.WRITE)) {
+                channel.truncate(8);
+            }
+            assertNull(FleetSnapshotWriter.latest(directory), "No snapshot should be found if all are damaged");
+        }
+    }
+
+    /**
+     * Tears down the test environment by setting the registry to null after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        registry = null;
+    }
+}
@@ -0,0 +1,188 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static petfeeder.TestMealPlans.plan;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import petfeeder.exceptions.FoodStockException;
+
+/**
+ * Tests the FleetStore class
+ */
+public class FleetStoreTest {
+
+    private AtomicLong clock;
+    private FleetStore fleetStore;
+    private MealPlan breakfast;
+    private MealPlan dinner;
+
+    /**
+     * Sets up the test environment with a store of 10 feeders whose energy
+     * budgets use a window of 1 hour in 4 buckets, on a clock the test moves
+     * by hand, and two meal plans.
+     */
+    @BeforeEach
+    public void setUp() {
+        clock = new AtomicLong(1234);
+        fleetStore = new FleetStore(10, TimeUnit.HOURS.toNanos(1), 4, clock::get);
+        breakfast = plan("Breakfast", 3, 2, 0, 0);
+        dinner = plan("Dinner", 2, 1, 2, 1);
+    }
+
+    /**
+     * Tests that every feeder of a new store starts like a new PetFeeder.
+     */
+    @Test
+    public void testNewStore_matchesPetFeeder() {
+        PetFeeder petFeeder = new PetFeeder();
+        FleetStore.Feeder feeder = fleetStore.feeder(9);
+
+        assertEquals(petFeeder.checkFoodStock(), feeder.checkFoodStock(), "The stock should be that of a new feeder");
+        assertEquals(PetFeeder.DEFAULT_ENERGY_LIMIT, feeder.getEnergyLimit(), "The energy limit should be the default");
+        assertEquals(PetFeeder.DEFAULT_ENERGY_LIMIT, feeder.getRemainingEnergyBudget(), "The energy budget should be unused");
+        assertArrayEquals(new MealPlan[FleetStore.MEAL_PLANS], feeder.getMealPlans(), "There should be no meal plans");
+        assertEquals(10 * (60 + 8 * 4), fleetStore.getOffHeapBytes(), "Each feeder should take 60 bytes plus 8 per bucket");
+    }
+
+    /**
+     * Tests adding, editing and deleting meal plans in the slots of a feeder.
+     */
+    @Test
+    public void testMealPlans_addEditDelete() {
+        FleetStore.Feeder feeder = fleetStore.feeder(3);
+
+        assertTrue(feeder.addMealPlan(breakfast), "A meal plan should be added to an empty feeder");
+        assertTrue(feeder.addMealPlan(dinner), "A second meal plan should be added");
+        assertFalse(feeder.addMealPlan(plan("Breakfast", 1, 1, 1, 1)), "A duplicate name should be rejected");
+        assertEquals("Breakfast", feeder.getMealPlans()[0].getName(), "Meal plans should fill the first slots");
+        assertEquals(dinner.getAmtTreats(), feeder.getMealPlans()[1].getAmtTreats(), "The amounts should be stored");
+
+        assertEquals("Breakfast", feeder.deleteMealPlan(0), "Deleting should return the old name");
+        assertNull(feeder.deleteMealPlan(0), "An empty slot cannot be deleted");
+        assertTrue(feeder.addMealPlan(plan("Snack", 0, 1, 0, 1)), "A freed slot should be reused");
+        assertEquals("Snack", feeder.getMealPlans()[0].getName(), "The first free slot should be taken");
+
+        assertEquals("Dinner", feeder.editMealPlan(1, plan("Dinner", 4, 0, 0, 0)), "Editing should return the old name");
+        assertEquals(4, feeder.getMealPlans()[1].getAmtKibble(), "The new amounts should be stored");
+        assertNull(feeder.editMealPlan(1, plan("Snack", 1, 0, 0, 0)), "Editing to a name in another slot should be rejected");
+        assertEquals("Dinner", feeder.getMealPlans()[1].getName(), "The rejected edit should leave the slot unchanged");
+        assertTrue(feeder.addMealPlan(plan("Lunch", 1, 0, 0, 0)), "A third meal plan should be added");
+        assertTrue(feeder.addMealPlan(plan("Supper", 1, 0, 0, 0)), "A fourth meal plan should be added");
+        assertFalse(feeder.addMealPlan(plan("Extra", 1, 0, 0, 0)), "A full feeder should reject a meal plan");
+        assertArrayEquals(new MealPlan[FleetStore.MEAL_PLANS], fleetStore.feeder(4).getMealPlans(),
+                "Other feeders should be unchanged");
+    }
+
+    /**
+     * Tests that dispensing uses the stock and energy budget of the feeder
+     * and that the budget comes back once the window slides on.
+     */
+    @Test
+    public void testDispenseMeal_usesStockAndEnergy() {
+        FleetStore.Feeder feeder = fleetStore.feeder(0);
+        feeder.setEnergyLimit(100);
+        feeder.addMealPlan(breakfast); // 40 energy points
+
+        assertTrue(feeder.dispenseMeal(0), "The first meal should be dispensed");
+        assertTrue(feeder.dispenseMeal(0), "The second meal should be dispensed");
+        assertFalse(feeder.dispenseMeal(0), "A third meal should exceed the energy budget");
+        assertEquals(20, feeder.getRemainingEnergyBudget(), "Two meals should use 80 energy points");
+        assertEquals(9, feeder.getFoodContainer().getKibble(), "Two meals should use 6 kibble");
+        assertFalse(feeder.dispenseMeal(1), "An empty slot cannot be dispensed");
+        assertFalse(feeder.dispenseMeal(FleetStore.MEAL_PLANS), "A slot out of range cannot be dispensed");
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(60));
+        assertEquals(100, feeder.getRemainingEnergyBudget(), "The meals should have left the window");
+        assertTrue(feeder.dispenseMeal(0), "A meal should be dispensed once the budget is back");
+        assertEquals(15, fleetStore.feeder(1).getFoodContainer().getKibble(), "Other feeders should keep their stock");
+    }
+
+    /**
+     * Tests that a meal is refused when the stock runs out and dispensed
+     * again after the feeder is replenished.
+     */
+    @Test
+    public void testDispenseMeal_replenish() throws FoodStockException {
+        FleetStore.Feeder feeder = fleetStore.feeder(5);
+        feeder.addMealPlan(plan("Big", 10, 0, 0, 0));
+
+        assertTrue(feeder.dispenseMeal(0), "The first meal should be dispensed");
+        assertFalse(feeder.dispenseMeal(0), "The second meal should lack kibble");
+        feeder.replenishFood("10", "0", "0", "0");
+        assertTrue(feeder.dispenseMeal(0), "The meal should be dispensed after replenishing");
+        assertThrows(FoodStockException.class, () -> feeder.replenishFood("-1", "0", "0", "0"),
+                "A negative amount should be rejected");
+        assertFalse(feeder.replenish(FoodContainer.MAX_UNITS, 0, 0, 0), "An overfill should be rejected");
+        assertEquals(5, feeder.getFoodContainer().getKibble(), "A rejected replenish should add nothing");
+    }
+
+    /**
+     * Tests that one view can be moved over every feeder and that ids
+     * outside the store are rejected.
+     */
+    @Test
+    public void testFlyweight_moveTo() {
+        FleetStore.Container container = fleetStore.container(0);
+        for (int id = 0; id < fleetStore.getCapacity(); id++) {
+            container.moveTo(id).setKibble(id);
+        }
+        FleetStore.Feeder feeder = fleetStore.feeder(0);
+        for (int id = 0; id < fleetStore.getCapacity(); id++) {
+            assertEquals(id, feeder.moveTo(id).getFoodContainer().getKibble(), "Each feeder should keep its own stock");
+            assertEquals(15, feeder.getFoodContainer().getTreats(), "Setting kibble should leave the treats");
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> feeder.moveTo(10), "An id past the end should be rejected");
+        assertThrows(IndexOutOfBoundsException.class, () -> fleetStore.container(-1), "A negative id should be rejected");
+    }
+
+    /**
+     * Tests that concurrent dispenses and refills on the same feeders
+     * neither lose nor create stock.
+     */
+    @Test
+    public void testConcurrent_conservesStock() throws InterruptedException {
+        MealPlan meal = plan("Meal", 1, 1, 0, 0);
+        for (int id = 0; id < fleetStore.getCapacity(); id++) {
+            FleetStore.Feeder feeder = fleetStore.feeder(id);
+            feeder.setEnergyLimit(Integer.MAX_VALUE);
+            feeder.addMealPlan(meal);
+        }
+        int threads = 4;
+        int rounds = 5000;
+        long[] dispensed = new long[threads];
+        long[] refilled = new long[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                FleetStore.Feeder feeder = fleetStore.feeder(0);
+                for (int i = 0; i < rounds; i++) {
+                    feeder.moveTo((i + index) % fleetStore.getCapacity());
+                    if (feeder.dispenseMeal(0)) {
+                        dispensed[index]++;
+                    }
+                    if (feeder.replenish(1, 1, 0, 0)) {
+                        refilled[index]++;
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        long kibble = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            kibble += refilled[t] - dispensed[t];
+        }
+        long stock = 0;
+        FleetStore.Container container = fleetStore.container(0);
+        for (int id = 0; id < fleetStore.getCapacity(); id++) {
+            stock += container.moveTo(id).getKibble() - 15;
+        }
+        assertEquals(kibble, stock, "The kibble in stock should be the kibble refilled minus the kibble dispensed");
+    }
+}
@@ -8,6 +8,12 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import petfeeder.exceptions.FoodStockException;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Tests the FoodContainer class
  */
@@ -418,6 +424,109 @@ public class FoodContainerTest {
         assertEquals(expected, foodContainer.toString(), "toString should return the correct string representation of the food container");
     }
 
+    /**
+     * Tests that two containers keep their own stock, so using ingredients from one
+     * does not change the other.
+     */
+    @Test
+    public void testUseIngredients_InstancesAreIndependent() {
+        FoodContainer other = new FoodContainer();
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(5);
+
+        assertTrue(foodContainer.useIngredients(meal), "Should use ingredients from the first container");
+        assertEquals(10, foodContainer.getKibble(), "Kibble of the first container should decrease");
+        assertEquals(15, other.getKibble(), "Kibble of the second container should be unchanged");
+    }
+
+    /**
+     * Tests that concurrent calls to useIngredients never take more than is in stock.
+     * Every ingredient starts at 15 units and each meal needs 1 of each, so exactly
+     * 15 meals can succeed no matter how many threads compete.
+     */
+    @Test
+    public void testUseIngredients_ConcurrentNeverOversells() throws Exception {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(1);
+        Mockito.when(meal.getAmtWater()).thenReturn(1);
+        Mockito.when(meal.getAmtWetFood()).thenReturn(1);
+        Mockito.when(meal.getAmtTreats()).thenReturn(1);
+
+        int threads = 8;
+        AtomicInteger successes = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.submit(() -> {
+                start.await();
+                for (int j = 0; j < 10; j++) {
+                    if (foodContainer.useIngredients(meal)) {
+                        successes.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS), "Workers should finish");
+
+        assertEquals(15, successes.get(), "Exactly 15 meals should be dispensed");
+        assertEquals(0, foodContainer.getKibble(), "Kibble should be used up");
+        assertEquals(0, foodContainer.getTreats(), "Treats should be used up");
+    }
+
+    /**
+     * Tests that adding more units than the container can hold throws a FoodStockException
+     * and leaves the stock unchanged.
+     */
+    @Test
+    public void testAddKibble_OverCapacity() {
+        String tooMuch = Integer.toString(FoodContainer.MAX_UNITS);
+        assertThrows(FoodStockException.class, () -> foodContainer.addKibble(tooMuch), "Adding past capacity should throw FoodStockException");
+        assertEquals(15, foodContainer.getKibble(), "Kibble should not be changed when the add is rejected");
+    }
+
+    /**
+     * Tests that setting an amount larger than the container capacity does not change the stock.
+     */
+    @Test
+    public void testSetWater_OverCapacity() {
+        foodContainer.setWater(FoodContainer.MAX_UNITS + 1);
+        assertEquals(15, foodContainer.getWater(), "Water should not be changed when set past capacity");
+    }
+
+    /**
+     * Tests that the int add methods add valid amounts and reject negative amounts or amounts past capacity.
+     */
+    @Test
+    public void testAddInt() {
+        assertTrue(foodContainer.addKibble(2), "Adding 2 kibble should succeed");
+        assertTrue(foodContainer.addWater(0), "Adding 0 water should succeed");
+        assertFalse(foodContainer.addWetFood(-1), "Adding negative wet food should fail");
+        assertFalse(foodContainer.addTreats(FoodContainer.MAX_UNITS), "Adding past capacity should fail");
+        assertEquals("Kibble: 17\nWater: 15\nWet Food: 15\nTreats: 15\n", foodContainer.toString(), "Only the valid adds should change the stock");
+    }
+
+    /**
+     * Tests that replenish adds all four ingredients at once.
+     */
+    @Test
+    public void testReplenish_ValidInput() {
+        assertTrue(foodContainer.replenish(1, 2, 3, 4), "Replenishing valid amounts should succeed");
+        assertEquals("Kibble: 16\nWater: 17\nWet Food: 18\nTreats: 19\n", foodContainer.toString(), "Every ingredient should be replenished");
+    }
+
+    /**
+     * Tests that replenish adds nothing when one of the amounts is invalid.
+     */
+    @Test
+    public void testReplenish_InvalidInput() {
+        assertFalse(foodContainer.replenish(1, 2, 3, -4), "A negative amount should reject the replenishment");
+        assertFalse(foodContainer.replenish(1, FoodContainer.MAX_UNITS, 3, 4), "An amount past capacity should reject the replenishment");
+        assertEquals("Kibble: 15\nWater: 15\nWet Food: 15\nTreats: 15\n", foodContainer.toString(), "No ingredient should be replenished");
+    }
+
     /**
      * Tears down the test environment by setting the FoodContainer instance to null after each test.
      */
@@ -0,0 +1,79 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the LatencyHistogram class
+ */
+public class LatencyHistogramTest {
+
+    private LatencyHistogram histogram;
+
+    /**
+     * Sets up the test environment by creating an empty histogram before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    /**
+     * Tests that percentiles are found to the precision of the histogram.
+     */
+    @Test
+    public void testPercentiles() {
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(100_000, histogram.getCount(), "Every value should be counted");
+        assertEquals(100_000_000, histogram.getMax(), "The largest value should be kept exactly");
+        assertEquals(50_000_500, histogram.getMean(), "The mean should be exact");
+        assertEquals(50_000_000, histogram.getValueAtPercentile(50), 50_000_000 * 0.04, "The median should be within 4%");
+        assertEquals(99_000_000, histogram.getValueAtPercentile(99), 99_000_000 * 0.04, "The 99th percentile should be within 4%");
+        assertEquals(100_000_000, histogram.getValueAtPercentile(100), "The 100th percentile should be the largest value");
+    }
+
+    /**
+     * Tests that every value falls in a bucket whose highest value is at or above it.
+     */
+    @Test
+    public void testBuckets() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 65, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long highest = LatencyHistogram.highestValueIn(bucket);
+            assertTrue(highest >= value, "Bucket " + bucket + " should hold " + value);
+            assertTrue(highest - value <= value / 32, "Bucket " + bucket + " should be narrow enough for " + value);
+        }
+    }
+
+    /**
+     * Tests that an empty or cleared histogram reports zeros.
+     */
+    @Test
+    public void testEmptyAndReset() {
+        assertEquals(0, histogram.getValueAtPercentile(99), "An empty histogram should report 0");
+        histogram.record(500);
+        histogram.record(-5);
+        assertEquals(2, histogram.getCount(), "A negative value should be recorded as 0");
+        assertEquals(0, histogram.getValueAtPercentile(50), "The negative value should count as 0");
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount(), "The count should be cleared");
+        assertEquals(0, histogram.getMax(), "The largest value should be cleared");
+        assertEquals(0, histogram.getValueAtPercentile(100), "The buckets should be cleared");
+    }
+
+    /**
+     * Tears down the test environment after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        histogram = null;
+    }
+}
@@ -0,0 +1,199 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static petfeeder.TestMealPlans.plan;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.jupiter.api.Test;
+
+import petfeeder.LinearizabilityChecker.History;
+
+/**
+ * Tests the LinearizabilityChecker class
+ */
+public class LinearizabilityCheckerTest {
+
+    private static final int THREADS = 4;
+    private static final int OPERATIONS = 25;
+    private static final int ROUNDS = 40;
+
+    private static FoodContainer container(int kibble, int water, int wetFood, int treats) {
+        FoodContainer foodContainer = new FoodContainer();
+        foodContainer.setKibble(kibble);
+        foodContainer.setWater(water);
+        foodContainer.setWetFood(wetFood);
+        foodContainer.setTreats(treats);
+        return foodContainer;
+    }
+
+    /** Runs the body on THREADS threads, each with its own seeded random, and waits for them. */
+    private static void runThreads(long seed, ThreadBody body) throws Exception {
+        Thread[] threads = new Thread[THREADS];
+        Throwable[] failures = new Throwable[THREADS];
+        SplittableRandom root = new SplittableRandom(seed);
+        for (int t = 0; t < THREADS; t++) {
+            final int index = t;
+            final SplittableRandom random = root.split();
+            threads[t] = new Thread(() -> {
+                try {
+                    body.run(random);
+                } catch (Throwable e) {
+                    failures[index] = e;
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < THREADS; t++) {
+            threads[t].join();
+            assertNull(failures[t], "Thread " + t + " should not fail");
+        }
+    }
+
+    private interface ThreadBody {
+        void run(SplittableRandom random) throws Exception;
+    }
+
+    /**
+     * Tests that concurrent uses, replenishes, adds and reads of one food
+     * container are linearizable.
+     */
+    @Test
+    public void testCheck_foodContainer() throws Exception {
+        MealPlan[] meals = {plan("Small", 1, 1, 0, 0), plan("Large", 3, 2, 2, 1)};
+        for (int round = 0; round < ROUNDS; round++) {
+            FoodContainer foodContainer = container(10, 10, 5, 5);
+            History history = new History(foodContainer, THREADS * OPERATIONS);
+            runThreads(round, random -> {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    switch (random.nextInt(8)) {
+                        case 0:
+                        case 1:
+                        case 2:
+                            history.useIngredients(meals[random.nextInt(meals.length)]);
+                            break;
+                        case 3:
+                            history.replenish(random.nextInt(3), random.nextInt(3), random.nextInt(3), 0);
+                            break;
+                        case 4:
+                            history.addKibble(random.nextInt(3));
+                            break;
+                        case 5:
+                            history.addTreats(random.nextInt(2));
+                            break;
+                        case 6:
+                            history.getKibble();
+                            break;
+                        default:
+                            history.getWater();
+                            break;
+                    }
+                    if (random.nextInt(4) == 0) {
+                        Thread.yield();
+                    }
+                }
+            });
+            assertEquals(THREADS * OPERATIONS, history.size(), "Every operation should be recorded");
+            assertTrue(LinearizabilityChecker.check(history), "Round " + round + " should be linearizable");
+        }
+    }
+
+    /**
+     * Tests that concurrent dispenses and replenishes of a feeder with a
+     * small energy budget are linearizable.
+     */
+    @Test
+    public void testCheck_petFeeder() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            FoodContainer foodContainer = container(8, 8, 4, 4);
+            PetFeeder petFeeder = new PetFeeder(new MealPlanBook(), foodContainer, EnergyBudget.daily(300));
+            petFeeder.addMealPlan(plan("Breakfast", 2, 1, 0, 0));
+            petFeeder.addMealPlan(plan("Dinner", 1, 1, 1, 1));
+            History history = new History(petFeeder, foodContainer, THREADS * OPERATIONS);
+            runThreads(round, random -> {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    switch (random.nextInt(6)) {
+                        case 0:
+                        case 1:
+                        case 2:
+                            history.dispenseMeal(random.nextInt(3));
+                            break;
+                        case 3:
+                            history.replenish(random.nextInt(3), random.nextInt(3), 1, 1);
+                            break;
+                        case 4:
+                            history.useIngredients(plan("By hand", 1, 0, 0, 0));
+                            break;
+                        default:
+                            history.getKibble();
+                            break;
+                    }
+                    if (random.nextInt(4) == 0) {
+                        Thread.yield();
+                    }
+                }
+            });
+            assertTrue(LinearizabilityChecker.check(history), "Round " + round + " should be linearizable");
+        }
+    }
+
+    /**
+     * Tests that a getter that returns a value the stock never had is
+     * caught, even when the operations run one at a time.
+     */
+    @Test
+    public void testCheck_wrongRead() {
+        FoodContainer foodContainer = new FoodContainer() {
+            @Override
+            public int getKibble() {
+                return super.getKibble() + 1;
+            }
+        };
+        foodContainer.setKibble(5);
+        History history = new History(foodContainer, 4);
+        assertTrue(history.useIngredients(plan("Snack", 2, 0, 0, 0)), "The meal should be taken");
+        assertEquals(4, history.getKibble(), "The broken getter adds one");
+        assertFalse(LinearizabilityChecker.check(history), "A read of 4 after taking 2 of 5 should be rejected");
+
+        History good = new History(container(5, 0, 0, 0), 4);
+        good.useIngredients(plan("Snack", 2, 0, 0, 0));
+        good.getKibble();
+        assertTrue(LinearizabilityChecker.check(good), "A correct history should be accepted");
+    }
+
+    /**
+     * Tests that a container which checks the stock and then takes it in
+     * two steps is caught when two uses overlap and both take the last
+     * meal.
+     */
+    @Test
+    public void testCheck_checkThenAct() throws Exception {
+        final CyclicBarrier bothChecked = new CyclicBarrier(2);
+        FoodContainer foodContainer = new FoodContainer() {
+            @Override
+            public boolean useIngredients(MealPlan m) {
+                boolean enough = enoughIngredients(m);
+                try {
+                    bothChecked.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                if (!enough) {
+                    return false;
+                }
+                setKibble(Math.max(0, getKibble() - m.getAmtKibble()));
+                return true;
+            }
+        };
+        foodContainer.setKibble(1);
+        History history = new History(foodContainer, 3);
+        MealPlan meal = plan("Last meal", 1, 0, 0, 0);
+        Thread other = new Thread(() -> history.useIngredients(meal));
+        other.start();
+        assertTrue(history.useIngredients(meal), "The broken container lets both uses succeed");
+        other.join();
+        assertEquals(0, history.getKibble(), "The stock should be empty");
+        assertFalse(LinearizabilityChecker.check(history), "Two meals from one unit of kibble should be rejected");
+    }
+}
@@ -0,0 +1,94 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import petfeeder.LoadGenerator.Operation;
+import petfeeder.LoadGenerator.Report;
+
+/**
+ * Tests the LoadGenerator class
+ */
+public class LoadGeneratorTest {
+
+    /**
+     * Tests that a run makes the requested number of operations of every
+     * kind and breaks no invariant.
+     */
+    @Test
+    public void testRun_noViolations() throws Exception {
+        Report report = new LoadGenerator(4, 8, 42).run(5_000);
+        assertEquals(20_000, report.getOperationCount(), "Every thread should make its operations");
+        long sum = 0;
+        for (Operation operation : Operation.values()) {
+            assertTrue(report.getOperationCount(operation) > 0, operation + " should be made");
+            sum += report.getOperationCount(operation);
+        }
+        assertEquals(report.getOperationCount(), sum, "Every operation should be timed once");
+        assertTrue(report.getSuccessCount(Operation.DISPENSE) > 0, "Some meals should be dispensed");
+        assertEquals(0, report.getViolationCount(), "No invariant should be broken: " + report.getViolations());
+        assertTrue(report.getThroughput() > 0, "Throughput should be reported");
+    }
+
+    /**
+     * Tests that runs with the same seed make the same operations and runs
+     * with another seed do not.
+     */
+    @Test
+    public void testRun_sameSeedSameWorkload() throws Exception {
+        Report first = new LoadGenerator(2, 4, 7).run(2_000);
+        Report second = new LoadGenerator(2, 4, 7).run(2_000);
+        Report other = new LoadGenerator(2, 4, 8).run(2_000);
+        assertEquals(first.getWorkloadHash(), second.getWorkloadHash(), "The same seed should give the same operations");
+        for (Operation operation : Operation.values()) {
+            assertEquals(first.getOperationCount(operation), second.getOperationCount(operation),
+                    "The same seed should give the same number of " + operation);
+        }
+        assertNotEquals(first.getWorkloadHash(), other.getWorkloadHash(), "Another seed should give other operations");
+    }
+
+    /**
+     * Tests that a tight energy limit stops dispenses without the feeders
+     * going over it.
+     */
+    @Test
+    public void testRun_budgetExhausted() throws Exception {
+        LoadGenerator generator = new LoadGenerator(2, 2, 3);
+        generator.setEnergyLimit(500);
+        generator.setMix(80, 0, 0, 10, 10);
+        Report report = generator.run(2_000);
+        assertTrue(report.getSuccessCount(Operation.DISPENSE) < report.getOperationCount(Operation.DISPENSE),
+                "Dispenses should be refused once the budget is spent");
+        assertEquals(0, report.getOperationCount(Operation.REPLENISH), "A weight of 0 should never be picked");
+        assertEquals(0, report.getViolationCount(), "No invariant should be broken: " + report.getViolations());
+    }
+
+    /**
+     * Tests that a timed run stops on time and reports the scheduled
+     * feedings that ran.
+     */
+    @Test
+    public void testRunFor() throws Exception {
+        LoadGenerator generator = new LoadGenerator(2, 4, 1);
+        generator.setMix(10, 10, 10, 60, 10);
+        Report report = generator.runFor(300, TimeUnit.MILLISECONDS);
+        assertTrue(report.getElapsedNanos() < TimeUnit.SECONDS.toNanos(5), "The run should stop after its duration");
+        assertTrue(report.getOperationCount() > 0, "Operations should be made");
+        assertTrue(report.getScheduledRunCount() > 0, "Scheduled feedings should run");
+        assertEquals(0, report.getViolationCount(), "No invariant should be broken: " + report.getViolations());
+    }
+
+    /**
+     * Tests that invalid settings are rejected.
+     */
+    @Test
+    public void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator(0, 1, 1), "Threads must be positive");
+        LoadGenerator generator = new LoadGenerator(1, 1, 1);
+        assertThrows(IllegalArgumentException.class, () -> generator.setMix(0, 0, 0, 0, 0), "Some weight must be positive");
+        assertThrows(IllegalArgumentException.class, () -> generator.setMix(1, -1, 0, 0, 0), "Weights must not be negative");
+    }
+}
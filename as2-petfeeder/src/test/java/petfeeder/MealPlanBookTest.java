@@ -5,7 +5,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -157,12 +159,14 @@ public class MealPlanBookTest {
     @Test
     public void testEditMealPlan_GoodInput() {
         // Meal plan to replace
-        MealPlan mealPlan = new MealPlan();
-        mealPlan.setName("Meal1");
+        MealPlan.Builder mealPlanBuilder = new MealPlan.Builder();
+        mealPlanBuilder.setName("Meal1");
+        MealPlan mealPlan = mealPlanBuilder.build();
 
         // New meal plan to replace the old one
-        MealPlan mealPlanToReplace = new MealPlan();
-        mealPlanToReplace.setName("Meal2");
+        MealPlan.Builder mealPlanToReplaceBuilder = new MealPlan.Builder();
+        mealPlanToReplaceBuilder.setName("Meal2");
+        MealPlan mealPlanToReplace = mealPlanToReplaceBuilder.build();
 
         // Adding the first mealplan (index 0)
         mealPlanBook.addMealPlan(mealPlan);
@@ -195,6 +199,188 @@ public class MealPlanBookTest {
         assertNull(editedMealPlan, "Editing a non-existing meal plan should return null");
     }
 
+    /**
+     * Test that meal plans can be looked up by name, and that unknown or null names return null and -1.
+     */
+    @Test
+    public void testGetMealPlan_ByName() {
+        MealPlan.Builder mealPlanBuilder = new MealPlan.Builder();
+        mealPlanBuilder.setName("Meal1");
+        MealPlan mealPlan = mealPlanBuilder.build();
+        MealPlan.Builder otherBuilder = new MealPlan.Builder();
+        otherBuilder.setName("Meal2");
+        MealPlan other = otherBuilder.build();
+        mealPlanBook.addMealPlan(mealPlan);
+        mealPlanBook.addMealPlan(other);
+
+        assertSame(other, mealPlanBook.getMealPlan("Meal2"), "The meal plan should be found by its name");
+        assertEquals(1, mealPlanBook.indexOf("Meal2"), "The handle of the second meal plan should be 1");
+        assertNull(mealPlanBook.getMealPlan("Meal3"), "An unknown name should return null");
+        assertEquals(-1, mealPlanBook.indexOf(null), "A null name should return -1");
+    }
+
+    /**
+     * Test that handles of other meal plans do not change when a meal plan is deleted,
+     * and that the next added meal plan reuses the freed slot.
+     */
+    @Test
+    public void testDeleteMealPlan_HandlesAreStable() {
+        MealPlan[] added = new MealPlan[3];
+        for (int i = 0; i < added.length; i++) {
+            MealPlan.Builder builder = new MealPlan.Builder();
+            builder.setName("Meal" + i);
+            added[i] = builder.build();
+            mealPlanBook.addMealPlan(added[i]);
+        }
+
+        mealPlanBook.deleteMealPlan(1);
+        assertSame(added[2], mealPlanBook.getMealPlans()[2], "The last meal plan should keep its handle");
+        assertEquals(2, mealPlanBook.indexOf("Meal2"), "The name index should keep the old handle");
+        assertEquals(-1, mealPlanBook.indexOf("Meal1"), "The deleted meal plan should no longer be found");
+
+        MealPlan.Builder replacementBuilder = new MealPlan.Builder();
+        replacementBuilder.setName("Meal1");
+        MealPlan replacement = replacementBuilder.build();
+        assertTrue(mealPlanBook.addMealPlan(replacement), "A deleted name should be addable again");
+        assertSame(replacement, mealPlanBook.getMealPlans()[1], "The new meal plan should reuse the freed slot");
+    }
+
+    /**
+     * Test that a meal plan can not be added when another meal plan with the same name exists,
+     * even after the book has grown past its initial size.
+     */
+    @Test
+    public void testAddMealPlan_DuplicateNameAfterGrowing() {
+        for (int i = 0; i < 100; i++) {
+            MealPlan.Builder mealPlanBuilder = new MealPlan.Builder();
+            mealPlanBuilder.setName("Meal" + i);
+            MealPlan mealPlan = mealPlanBuilder.build();
+            assertTrue(mealPlanBook.addMealPlan(mealPlan), "Each distinct meal plan should be added");
+        }
+        MealPlan.Builder duplicateBuilder = new MealPlan.Builder();
+        duplicateBuilder.setName("Meal42");
+        MealPlan duplicate = duplicateBuilder.build();
+        assertFalse(mealPlanBook.addMealPlan(duplicate), "A meal plan with an existing name should not be added");
+        assertEquals(42, mealPlanBook.indexOf("Meal42"), "The original meal plan should keep its handle");
+    }
+
+    /**
+     * Test that editing a meal plan moves its name in the name index to the new meal plan.
+     */
+    @Test
+    public void testEditMealPlan_UpdatesNameIndex() {
+        MealPlan.Builder mealPlanBuilder = new MealPlan.Builder();
+        mealPlanBuilder.setName("Meal1");
+        MealPlan mealPlan = mealPlanBuilder.build();
+        MealPlan.Builder replacementBuilder = new MealPlan.Builder();
+        replacementBuilder.setName("Meal2");
+        MealPlan replacement = replacementBuilder.build();
+        mealPlanBook.addMealPlan(mealPlan);
+
+        mealPlanBook.editMealPlan(0, replacement);
+        assertEquals(-1, mealPlanBook.indexOf("Meal1"), "The old name should no longer be found");
+        assertEquals(0, mealPlanBook.indexOf("Meal2"), "The new name should be found at the edited handle");
+    }
+
+    /**
+     * Test that editing a meal plan to the name of a meal plan in another slot
+     * is rejected and changes nothing, while keeping the same name is allowed.
+     */
+    @Test
+    public void testEditMealPlan_DuplicateName() {
+        MealPlan.Builder mealPlanBuilder = new MealPlan.Builder();
+        mealPlanBuilder.setName("Meal1");
+        mealPlanBook.addMealPlan(mealPlanBuilder.build());
+        mealPlanBuilder.setName("Meal2");
+        MealPlan second = mealPlanBuilder.build();
+        mealPlanBook.addMealPlan(second);
+
+        mealPlanBuilder.setName("Meal1");
+        mealPlanBuilder.setAmtKibble(3);
+        assertNull(mealPlanBook.editMealPlan(1, mealPlanBuilder.build()), "Editing to a name in another slot should return null");
+        assertSame(second, mealPlanBook.getMealPlans()[1], "The rejected edit should leave the meal plan in place");
+        assertEquals(0, mealPlanBook.indexOf("Meal1"), "The name should stay at its own handle");
+        assertEquals(1, mealPlanBook.indexOf("Meal2"), "The edited slot should keep its name");
+
+        assertEquals("Meal1", mealPlanBook.editMealPlan(0, mealPlanBuilder.build()), "Editing a meal plan under its own name should work");
+        assertEquals(3, mealPlanBook.getMealPlans()[0].getAmtKibble(), "The new amounts should be stored");
+        assertEquals(0, mealPlanBook.indexOf("Meal1"), "The name should still be found at its handle");
+    }
+
+    /**
+     * Test that an array returned by getMealPlans is a snapshot that later adds,
+     * edits and deletes do not change.
+     */
+    @Test
+    public void testGetMealPlans_SnapshotIsNotModified() {
+        MealPlan.Builder mealPlanBuilder = new MealPlan.Builder();
+        mealPlanBuilder.setName("Meal1");
+        MealPlan mealPlan = mealPlanBuilder.build();
+        mealPlanBook.addMealPlan(mealPlan);
+        MealPlan[] snapshot = mealPlanBook.getMealPlans();
+
+        MealPlan.Builder replacementBuilder = new MealPlan.Builder();
+        replacementBuilder.setName("Meal2");
+        MealPlan replacement = replacementBuilder.build();
+        mealPlanBook.editMealPlan(0, replacement);
+        mealPlanBook.deleteMealPlan(0);
+
+        assertSame(mealPlan, snapshot[0], "The old snapshot should still hold the original meal plan");
+        assertNull(mealPlanBook.getMealPlans()[0], "The current snapshot should show the deletion");
+        assertNotSame(snapshot, mealPlanBook.getMealPlans(), "Every change should publish a new array");
+    }
+
+    /**
+     * Test that writing to an array returned by getMealPlans does not change
+     * the meal plans of the book.
+     */
+    @Test
+    public void testGetMealPlans_WritesDoNotChangeBook() {
+        MealPlan.Builder mealPlanBuilder = new MealPlan.Builder();
+        mealPlanBuilder.setName("Meal1");
+        MealPlan mealPlan = mealPlanBuilder.build();
+        mealPlanBook.addMealPlan(mealPlan);
+
+        MealPlan[] mealPlans = mealPlanBook.getMealPlans();
+        mealPlans[0] = null;
+        mealPlans[1] = mealPlan;
+
+        assertSame(mealPlan, mealPlanBook.getMealPlan(0), "The meal plan should still be in its slot");
+        assertNull(mealPlanBook.getMealPlan(1), "The empty slot should stay empty");
+        assertSame(mealPlan, mealPlanBook.getMealPlans()[0], "A new array should show the book unchanged");
+    }
+
+    /**
+     * Test that addMealPlans adds many meal plans with one published array,
+     * skipping nulls and names that already exist in the book or earlier in the list.
+     */
+    @Test
+    public void testAddMealPlans_Bulk() {
+        MealPlan.Builder mealPlanBuilder = new MealPlan.Builder();
+        mealPlanBuilder.setName("Meal0");
+        mealPlanBook.addMealPlan(mealPlanBuilder.build());
+        MealPlan[] before = mealPlanBook.getMealPlans();
+
+        List<MealPlan> mealPlans = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            mealPlanBuilder.setName("Meal" + i);
+            mealPlans.add(mealPlanBuilder.build());
+        }
+        mealPlans.add(null);
+        mealPlanBuilder.setName("Meal5");
+        mealPlans.add(mealPlanBuilder.build());
+        boolean[] added = mealPlanBook.addMealPlans(mealPlans);
+
+        assertFalse(added[0], "A name already in the book should not be added");
+        for (int i = 1; i < 10; i++) {
+            assertTrue(added[i], "Each new meal plan should be added");
+            assertEquals(i, mealPlanBook.indexOf("Meal" + i), "The meal plans should take the next free slots");
+        }
+        assertFalse(added[10], "A null meal plan should not be added");
+        assertFalse(added[11], "A name earlier in the list should not be added twice");
+        assertNull(before[1], "The old snapshot should not see the new meal plans");
+    }
+
     /**
      * Tears down the test environment by setting the MealPlanBook instance to null after each test.
      */
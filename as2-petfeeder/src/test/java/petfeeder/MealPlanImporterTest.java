@@ -0,0 +1,196 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the MealPlanImporter class
+ */
+public class MealPlanImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MealPlanImporter importer;
+    private MealPlanBook mealPlanBook;
+
+    /**
+     * Sets up the test environment by creating an importer with 2 workers
+     * and chunks of 2 rows, so even small files are split between workers.
+     */
+    @BeforeEach
+    public void setUp() {
+        importer = new MealPlanImporter(2, 2);
+        mealPlanBook = new MealPlanBook();
+    }
+
+    /**
+     * Tests that every row of a CSV file is imported with its amounts,
+     * whatever the order of the columns, and that quoted names are read.
+     */
+    @Test
+    public void testImportFile_csv() throws IOException {
+        Path file = tempDir.resolve("plans.csv");
+        Files.writeString(file, "name,treats,kibble,water,wet_food\n"
+                + "Breakfast,0,2,1,0\n"
+                + "\"Dinner, large\",1,4,2,3\n"
+                + "\n"
+                + "Snack,2,,,\n");
+
+        MealPlanImporter.Result result = importer.importFile(file, mealPlanBook);
+        assertEquals(3, result.getImportedCount(), "Every row should be imported: " + result.getErrors());
+        assertEquals(0, result.getRejectedCount(), "No row should be rejected");
+        MealPlan dinner = mealPlanBook.getMealPlan("Dinner, large");
+        assertNotNull(dinner, "A quoted name may hold a comma");
+        assertEquals(4, dinner.getAmtKibble(), "The kibble column should be read by name");
+        assertEquals(3, dinner.getAmtWetFood(), "The wet food column should be read by name");
+        assertEquals(1, dinner.getAmtTreats(), "The treats column should be read by name");
+        assertEquals(0, mealPlanBook.getMealPlan("Snack").getAmtKibble(), "An empty amount should be 0");
+    }
+
+    /**
+     * Tests that bad rows are reported with their line numbers and reasons
+     * while the good rows are still imported.
+     */
+    @Test
+    public void testImportFile_reportsBadRows() throws IOException {
+        Path file = tempDir.resolve("plans.csv");
+        Files.writeString(file, "name,kibble,water,wetFood,treats\n"
+                + "Breakfast,2,1,0,0\n"
+                + "Negative,-1,0,0,0\n"
+                + "Words,two,0,0,0\n"
+                + "\"Unterminated,1,0,0,0\n"
+                + "Breakfast,5,0,0,0\n"
+                + "Dinner,4,2,3,1\n");
+
+        MealPlanImporter.Result result = importer.importFile(file, mealPlanBook);
+        assertEquals(6, result.getRowCount(), "Every row should be counted");
+        assertEquals(2, result.getImportedCount(), "The good rows should be imported");
+        assertEquals(4, result.getRejectedCount(), "The bad rows should be rejected");
+        List<MealPlanImporter.RowError> errors = result.getErrors();
+        assertEquals(3, errors.get(0).getLine(), "The errors should be in line order");
+        assertEquals("Units of kibble must be a positive integer", errors.get(0).getMessage(), "A negative amount should fail like the setter");
+        assertEquals("Units of kibble must be a positive integer", errors.get(1).getMessage(), "A word should fail like the setter");
+        assertEquals("line 5: Unterminated quoted field", errors.get(2).toString(), "A malformed row should be reported");
+        assertEquals("line 6: Duplicate meal plan name: Breakfast", errors.get(3).toString(), "A duplicate name should be reported");
+        assertNotNull(mealPlanBook.getMealPlan("Dinner"), "Rows after bad rows should be imported");
+    }
+
+    /**
+     * Tests that JSON Lines rows go to the book of their feeder and that
+     * rows for a missing or unknown feeder are reported.
+     */
+    @Test
+    public void testImportFrom_jsonLinesByFeeder() throws IOException {
+        Map<String, MealPlanBook> books = new HashMap<>();
+        books.put("f1", new MealPlanBook());
+        books.put("f2", new MealPlanBook());
+        String input = "[\n"
+                + "{\"feeder\": \"f1\", \"name\": \"Breakfast\", \"kibble\": 2, \"water\": 1},\n"
+                + "{\"feeder\": \"f2\", \"name\": \"Breakfast\", \"kibble\": 3, \"treats\": null},\n"
+                + "{\"feeder\": \"f2\", \"name\": \"Caf\\u00e9 \\\"special\\\"\", \"wetFood\": \"4\"},\n"
+                + "{\"name\": \"Orphan\"},\n"
+                + "{\"feeder\": \"f3\", \"name\": \"Lost\"},\n"
+                + "{\"feeder\": \"f1\", \"name\": \"Nested\", \"kibble\": {\"value\": 1}},\n"
+                + "{\"feeder\": \"f1\", \"name\": \"Broken\"\n"
+                + "]\n";
+
+        MealPlanImporter.Result result = importer.importFrom(new StringReader(input),
+                MealPlanImporter.Format.JSON_LINES, books::get);
+        assertEquals(3, result.getImportedCount(), "The rows of known feeders should be imported: " + result.getErrors());
+        assertEquals(2, books.get("f1").getMealPlan("Breakfast").getAmtKibble(), "The row should go to its own feeder");
+        assertEquals(3, books.get("f2").getMealPlan("Breakfast").getAmtKibble(), "Feeders may share meal plan names");
+        assertEquals(4, books.get("f2").getMealPlan("Café \"special\"").getAmtWetFood(), "Escapes and string amounts should be read");
+
+        List<MealPlanImporter.RowError> errors = result.getErrors();
+        assertEquals(4, errors.size(), "The bad rows should be reported");
+        assertEquals("line 5: Missing feeder id", errors.get(0).toString(), "A row without a feeder should be reported");
+        assertEquals("line 6: Unknown feeder: f3", errors.get(1).toString(), "A row for an unknown feeder should be reported");
+        assertTrue(errors.get(2).getMessage().contains("nested"), "A nested value should be reported");
+        assertEquals(8, errors.get(3).getLine(), "A malformed object should be reported");
+    }
+
+    /**
+     * Tests that a file of many chunks is imported completely by several workers.
+     */
+    @Test
+    public void testImportFile_manyChunks() throws IOException {
+        Path file = tempDir.resolve("plans.jsonl");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            content.append("{\"name\": \"Meal").append(i).append("\", \"kibble\": ").append(i % 10).append("}\n");
+        }
+        Files.writeString(file, content);
+
+        MealPlanImporter.Result result = new MealPlanImporter(4, 100).importFile(file, mealPlanBook);
+        assertEquals(10_000, result.getImportedCount(), "Every row should be imported: " + result);
+        assertEquals(7, mealPlanBook.getMealPlan("Meal9997").getAmtKibble(), "The amounts should be kept");
+    }
+
+    /**
+     * Tests that when a name repeats across chunks the first row with it
+     * is imported, however the workers are scheduled, and that only the
+     * first bad rows of the file are kept.
+     */
+    @Test
+    public void testImportFile_firstRowWins() throws IOException {
+        Path file = tempDir.resolve("plans.jsonl");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("{\"name\": \"Meal").append(i % 10).append("\", \"kibble\": ").append(i).append("}\n");
+        }
+        for (int i = 0; i < MealPlanImporter.MAX_REPORTED_ERRORS + 500; i++) {
+            content.append("{\"name\": \"Bad\", \"kibble\": -1}\n");
+        }
+        Files.writeString(file, content);
+
+        for (int round = 0; round < 20; round++) {
+            MealPlanBook book = new MealPlanBook();
+            MealPlanImporter.Result result = new MealPlanImporter(4, 3).importFile(file, book);
+            assertEquals(10, result.getImportedCount(), "Each name should be imported once");
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, book.getMealPlan("Meal" + i).getAmtKibble(), "The first row with a name should be imported");
+            }
+            List<MealPlanImporter.RowError> errors = result.getErrors();
+            assertEquals(90 + MealPlanImporter.MAX_REPORTED_ERRORS + 500, result.getRejectedCount(), "Every bad row should be counted");
+            assertEquals(MealPlanImporter.MAX_REPORTED_ERRORS, errors.size(), "The reported errors should be capped");
+            for (int i = 0; i < errors.size(); i++) {
+                assertEquals(11 + i, errors.get(i).getLine(), "The first bad rows should be kept, in line order");
+            }
+        }
+    }
+
+    /**
+     * Tests that a CSV file without a name column is refused.
+     */
+    @Test
+    public void testImportFile_noNameColumn() throws IOException {
+        Path file = tempDir.resolve("plans.csv");
+        Files.writeString(file, "kibble,water\n1,2\n");
+
+        assertThrows(IOException.class, () -> importer.importFile(file, mealPlanBook), "A header without a name column should be refused");
+        assertThrows(IllegalArgumentException.class, () -> importer.importFile(tempDir.resolve("plans.txt"), mealPlanBook),
+                "An unknown file extension should be refused");
+    }
+
+    /**
+     * Tears down the test environment by setting the importer and book to null after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        importer = null;
+        mealPlanBook = null;
+    }
+}
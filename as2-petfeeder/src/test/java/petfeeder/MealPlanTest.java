@@ -12,14 +12,14 @@ import petfeeder.exceptions.MealPlanException;
  */
 public class MealPlanTest {
 
-    private MealPlan mealPlan;
+    private MealPlan.Builder builder;
 
     /**
-     * Sets up the test environment by creating a new MealPlan instance before each test.
+     * Sets up the test environment by creating a new MealPlan builder before each test.
      */
     @BeforeEach
     public void setUp() {
-        this.mealPlan = new MealPlan();
+        this.builder = new MealPlan.Builder();
     }
 
 
@@ -28,8 +28,8 @@ public class MealPlanTest {
      */
     @Test
     public void testSetAmtTreats_goodInput() throws MealPlanException {
-        mealPlan.setAmtTreats("5");
-        assertEquals(5, mealPlan.getAmtTreats(), "setAmtTreats should update the amtTreats to 5 when input is '5'");
+        builder.setAmtTreats("5");
+        assertEquals(5, builder.build().getAmtTreats(), "setAmtTreats should update the amtTreats to 5 when input is '5'");
     }
 
     /**
@@ -37,7 +37,7 @@ public class MealPlanTest {
      */
     @Test
     public void testSetAmtTreats_nonNumericInput(){
-        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> mealPlan.setAmtTreats("five"));
+        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> builder.setAmtTreats("five"));
         assertEquals("Units of treats must be a positive integer", mealPlanException.getMessage(), "setAmtTreats should throw a MealPlanException when input is invalid");
     }
 
@@ -46,7 +46,7 @@ public class MealPlanTest {
      */
     @Test
     public void testSetAmtTreats_negativeInput() {
-        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> mealPlan.setAmtTreats("-1"));
+        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> builder.setAmtTreats("-1"));
         assertEquals("Units of treats must be a positive integer", mealPlanException.getMessage(), "setAmtTreats should throw a MealPlanException when input is negative");
     }
 
@@ -55,8 +55,8 @@ public class MealPlanTest {
      */
     @Test
     public void setAmtKibble_goodInput() throws MealPlanException {
-        mealPlan.setAmtKibble("3");
-        assertEquals(3, mealPlan.getAmtKibble(), "setAmtKibble should update the amtKibble to 3 when input is '3'");
+        builder.setAmtKibble("3");
+        assertEquals(3, builder.build().getAmtKibble(), "setAmtKibble should update the amtKibble to 3 when input is '3'");
     }
 
     /**
@@ -64,7 +64,7 @@ public class MealPlanTest {
      */
     @Test
     public void setAmtKibble_nonNumericInput()  {
-        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> mealPlan.setAmtKibble("three"));
+        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> builder.setAmtKibble("three"));
         assertEquals("Units of kibble must be a positive integer", mealPlanException.getMessage(), "setAmtKibble should throw a MealPlanException when input is invalid");
     }
 
@@ -73,7 +73,7 @@ public class MealPlanTest {
      */
     @Test
     public void setAmtKibble_negativeInput()  {
-        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> mealPlan.setAmtKibble("-1"));
+        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> builder.setAmtKibble("-1"));
         assertEquals("Units of kibble must be a positive integer", mealPlanException.getMessage(), "setAmtKibble should throw a MealPlanException when input is negative");
     }
 
@@ -82,8 +82,8 @@ public class MealPlanTest {
      */
     @Test
     public void setAmtWater_goodInput() throws MealPlanException {
-        mealPlan.setAmtWater("3");
-        assertEquals(3, mealPlan.getAmtWater(), "setAmtWater should update the amtWater to 3 when input is '3'");
+        builder.setAmtWater("3");
+        assertEquals(3, builder.build().getAmtWater(), "setAmtWater should update the amtWater to 3 when input is '3'");
     }
 
     /**
@@ -91,7 +91,7 @@ public class MealPlanTest {
      */
     @Test
     public void setAmtWater_nonNumericInput()  {
-        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> mealPlan.setAmtWater("three"));
+        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> builder.setAmtWater("three"));
         assertEquals("Units of water must be a positive integer", mealPlanException.getMessage(), "setAmtWater should throw a MealPlanException when input is invalid");
     }
 
@@ -100,7 +100,7 @@ public class MealPlanTest {
      */
     @Test
     public void setAmtWater_negativeInput()  {
-        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> mealPlan.setAmtWater("-1"));
+        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> builder.setAmtWater("-1"));
         assertEquals("Units of water must be a positive integer", mealPlanException.getMessage(), "setAmtWater should throw a MealPlanException when input is negative");
     }
 
@@ -109,8 +109,8 @@ public class MealPlanTest {
      */
     @Test
     public void setAmtWetFood_goodInput() throws MealPlanException {
-        mealPlan.setAmtWetFood("3");
-        assertEquals(3, mealPlan.getAmtWetFood(), "setAmtWetFood should update the amtWetFood to 3 when input is '3'");
+        builder.setAmtWetFood("3");
+        assertEquals(3, builder.build().getAmtWetFood(), "setAmtWetFood should update the amtWetFood to 3 when input is '3'");
     }
 
     /**
@@ -118,7 +118,7 @@ public class MealPlanTest {
      */
     @Test
     public void setAmtWetFood_nonNumericInput() {
-        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> mealPlan.setAmtWetFood("three"));
+        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> builder.setAmtWetFood("three"));
         assertEquals("Units of wet food must be a positive integer", mealPlanException.getMessage(), "setAmtWetFood should throw a MealPlanException when input is invalid");
     }
 
@@ -127,19 +127,78 @@ public class MealPlanTest {
      */
     @Test
     public void setAmtWetFood_negativeInput()  {
-        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> mealPlan.setAmtWetFood("-1"));
+        MealPlanException mealPlanException = assertThrows(MealPlanException.class, () -> builder.setAmtWetFood("-1"));
         assertEquals("Units of wet food must be a positive integer", mealPlanException.getMessage(), "setAmtWetFood should throw a MealPlanException when input is negative");
     }
 
+    /**
+     * Tests that the int setters update the amounts and the energy cost when given valid input.
+     */
+    @Test
+    public void testIntSetters_goodInput() {
+        assertTrue(builder.setAmtKibble(4), "setAmtKibble(int) should accept 4");
+        assertTrue(builder.setAmtWater(10), "setAmtWater(int) should accept 10");
+        assertTrue(builder.setAmtWetFood(0), "setAmtWetFood(int) should accept 0");
+        assertTrue(builder.setAmtTreats(1), "setAmtTreats(int) should accept 1");
+        assertEquals(4 * 10 + 10 * 5 + 0 * 15 + 1 * 20, builder.build().getEnergyCost(), "Energy cost should follow the int setters");
+    }
+
+    /**
+     * Tests that the int setters return false and leave the meal plan unchanged when given negative input.
+     */
+    @Test
+    public void testIntSetters_negativeInput() {
+        builder.setAmtTreats(2);
+        assertFalse(builder.setAmtTreats(-1), "setAmtTreats(int) should reject a negative amount");
+        assertFalse(builder.setAmtKibble(-1), "setAmtKibble(int) should reject a negative amount");
+        assertEquals(2, builder.build().getAmtTreats(), "Treats should not change after a rejected amount");
+        assertEquals(0, builder.build().getAmtKibble(), "Kibble should not change after a rejected amount");
+        assertEquals(40, builder.build().getEnergyCost(), "Energy cost should not change after a rejected amount");
+    }
+
+    /**
+     * Tests that a built meal plan keeps its amounts and energy cost when the builder is changed afterwards.
+     */
+    @Test
+    public void testBuild_planUnaffectedByLaterBuilderChanges() throws MealPlanException {
+        builder.setName("Breakfast");
+        builder.setAmtKibble("2");
+        MealPlan built = builder.build();
+
+        builder.setName("Dinner");
+        builder.setAmtKibble("5");
+        assertEquals("Breakfast", built.getName(), "The built plan should keep its name");
+        assertEquals(2, built.getAmtKibble(), "The built plan should keep its kibble amount");
+        assertEquals(20, built.getEnergyCost(), "The built plan should keep its energy cost");
+    }
+
+    /**
+     * Tests that a builder created from an existing plan copies it and can be changed without affecting the original.
+     */
+    @Test
+    public void testBuilderFromPlan_copiesPlan() {
+        builder.setName("Lunch");
+        builder.setAmtWater(3);
+        MealPlan original = builder.build();
+
+        MealPlan.Builder copy = new MealPlan.Builder(original);
+        copy.setAmtTreats(1);
+        MealPlan edited = copy.build();
+        assertEquals("Lunch", edited.getName(), "The copy should keep the name of the original");
+        assertEquals(3, edited.getAmtWater(), "The copy should keep the water amount of the original");
+        assertEquals(35, edited.getEnergyCost(), "The copy should include the changed treats amount");
+        assertEquals(0, original.getAmtTreats(), "The original should not change when the copy is changed");
+    }
+
     /**
      * Tests that the hash code of the same string in two different MealPlan instances are the same, ensuring consistency of hash codes.
      */
     @Test
     public void testHashCode_same_goodInput() {
-        MealPlan mealPlan2 = new MealPlan();
-        mealPlan.setName(("Nice meal"));
-        mealPlan2.setName("Nice meal");
-        assertEquals(mealPlan2.hashCode(),mealPlan.hashCode(), "The hashcode from MealPlan should be consistent");
+        MealPlan.Builder builder2 = new MealPlan.Builder();
+        builder.setName(("Nice meal"));
+        builder2.setName("Nice meal");
+        assertEquals(builder2.build().hashCode(),builder.build().hashCode(), "The hashcode from MealPlan should be consistent");
     }
 
     /**
@@ -147,20 +206,20 @@ public class MealPlanTest {
      */
     @Test
     public void testUpdateEnergyCost_goodInput() throws MealPlanException{
-        mealPlan.setAmtKibble("4");
-        mealPlan.setAmtWater("10");
-        mealPlan.setAmtWetFood("0");
-        mealPlan.setAmtTreats("1");
+        builder.setAmtKibble("4");
+        builder.setAmtWater("10");
+        builder.setAmtWetFood("0");
+        builder.setAmtTreats("1");
         // KIBBLE_ENERGY = 10;
         // WATER_ENERGY = 5;
         // WETFOOD_ENERGY = 15;
         // TREATS_ENERGY = 20;
         int expectedEnergyCost = 4 * 10 + 10 * 5 + 0 * 15 + 1 * 20;
-        assertEquals(expectedEnergyCost, mealPlan.getEnergyCost(), "Energy cost should be updated and be the expected value");
+        assertEquals(expectedEnergyCost, builder.build().getEnergyCost(), "Energy cost should be updated and be the expected value");
 
-        mealPlan.setAmtWater("0");
+        builder.setAmtWater("0");
         expectedEnergyCost = 4 * 10 + 0 * 5 + 0 * 15 + 1 * 20;
-        assertEquals(expectedEnergyCost,mealPlan.getEnergyCost(), "Energy cost is up to date after water amount change");
+        assertEquals(expectedEnergyCost,builder.build().getEnergyCost(), "Energy cost is up to date after water amount change");
     }
 
     /**
@@ -169,10 +228,10 @@ public class MealPlanTest {
      */
     @Test
     public void testUpdateEnergyCost_nonNumeric_shouldNotChange()  {
-        int before = mealPlan.getEnergyCost();
+        int before = builder.build().getEnergyCost();
 
-        assertThrows(MealPlanException.class, () -> mealPlan.setAmtKibble("twenty"), "Setting non-numeric kibble should throw MealPlanException");
-        assertEquals(before, mealPlan.getEnergyCost(), "Energy cost should not change after invalid kibble input");
+        assertThrows(MealPlanException.class, () -> builder.setAmtKibble("twenty"), "Setting non-numeric kibble should throw MealPlanException");
+        assertEquals(before, builder.build().getEnergyCost(), "Energy cost should not change after invalid kibble input");
     }
 
     /**
@@ -180,9 +239,9 @@ public class MealPlanTest {
      */
     @Test
     public void testToString_getName_same_goodInput(){
-        mealPlan.setName("MyNiceMeal");
-        assertEquals("MyNiceMeal", mealPlan.getName(), "getName should return 'MyNiceMeal'");
-        assertEquals(mealPlan.getName(), mealPlan.toString(), "toString and getName should return 'MyNiceMeal'");
+        builder.setName("MyNiceMeal");
+        assertEquals("MyNiceMeal", builder.build().getName(), "getName should return 'MyNiceMeal'");
+        assertEquals(builder.build().getName(), builder.build().toString(), "toString and getName should return 'MyNiceMeal'");
     }
 
     /**
@@ -190,10 +249,10 @@ public class MealPlanTest {
      */
     @Test
     public void testSetName_nullInput() {
-        String nameBefore = mealPlan.getName();
-        mealPlan.setName(null);
-        assertEquals(nameBefore, mealPlan.getName(), "getName should not change when setName is given null input");
-        assertEquals(nameBefore, mealPlan.toString(), "toString should not change when setName is given null input");
+        String nameBefore = builder.build().getName();
+        builder.setName(null);
+        assertEquals(nameBefore, builder.build().getName(), "getName should not change when setName is given null input");
+        assertEquals(nameBefore, builder.build().toString(), "toString should not change when setName is given null input");
     }
 
     /**
@@ -201,6 +260,7 @@ public class MealPlanTest {
      */
     @Test
     public void testEquals_sameObject() {
+        MealPlan mealPlan = builder.build();
         assertTrue(mealPlan.equals(mealPlan), "Should be equal to itself");
     }
 
@@ -210,10 +270,10 @@ public class MealPlanTest {
      */
     @Test
     public void testEquals_sameName_differentObject() {
-        MealPlan mealPlan2 = new MealPlan();
-        mealPlan.setName("Same Name");
-        mealPlan2.setName("Same Name");
-        assertTrue(mealPlan.equals(mealPlan2), "Different objects with the same name should be equal");
+        MealPlan.Builder builder2 = new MealPlan.Builder();
+        builder.setName("Same Name");
+        builder2.setName("Same Name");
+        assertTrue(builder.build().equals(builder2.build()), "Different objects with the same name should be equal");
     }
 
     /**
@@ -222,10 +282,10 @@ public class MealPlanTest {
      */
     @Test
     public void testEquals_differentName() {
-        MealPlan mealPlan2 = new MealPlan();
-        mealPlan.setName("Meal One");
-        mealPlan2.setName("Meal Two");
-        assertFalse(mealPlan.equals(mealPlan2), "Different objects with different names should not be equal");
+        MealPlan.Builder builder2 = new MealPlan.Builder();
+        builder.setName("Meal One");
+        builder2.setName("Meal Two");
+        assertFalse(builder.build().equals(builder2.build()), "Different objects with different names should not be equal");
     }
 
     /**
@@ -233,8 +293,8 @@ public class MealPlanTest {
      */
     @Test
     public void testEquals_nullObject() {
-        mealPlan.setName("A Name");
-        assertFalse(mealPlan.equals(null), "Null object should not be equal to a mealplan");
+        builder.setName("A Name");
+        assertFalse(builder.build().equals(null), "Null object should not be equal to a mealplan");
     }
 
     /**
@@ -243,9 +303,9 @@ public class MealPlanTest {
      */
     @Test
     public void testEquals_differentClass() {
-        mealPlan.setName("A Name");
+        builder.setName("A Name");
         int number = 31; // int class
-        assertFalse(mealPlan.equals(number), "Object of different class should not be equal to a mealplan");
+        assertFalse(builder.build().equals(number), "Object of different class should not be equal to a mealplan");
     }
 
 
@@ -255,19 +315,19 @@ public class MealPlanTest {
      */
     @Test
     public void testEquals_nameIsNull() {
-        MealPlan mealplan2 = new MealPlan();
-        mealplan2.setName("Not null");
-        mealPlan.setName(null);
+        MealPlan.Builder builder2 = new MealPlan.Builder();
+        builder2.setName("Not null");
+        builder.setName(null);
 
-        assertFalse(mealPlan.equals(mealplan2), "One with null in name and one without should not be equal");
+        assertFalse(builder.build().equals(builder2.build()), "One with null in name and one without should not be equal");
     }
 
     /**
-     * Tears down the test environment by setting the MealPlan instance to null after each test, ensuring that each test starts with a fresh state.
+     * Tears down the test environment by setting the MealPlan builder to null after each test, ensuring that each test starts with a fresh state.
      */
     @AfterEach
     public void tearDown() {
-        this.mealPlan = null;
+        this.builder = null;
     }
 
 
@@ -4,6 +4,17 @@ package petfeeder;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -154,6 +165,28 @@ public class PetFeederTest {
         assertTrue(exception.getMessage().contains("kibble"), "Exception message should mention kibble");
     }
 
+    /**
+     * Tests that replenishing from strings adds nothing when a later amount is invalid.
+     */
+    @Test
+    public void testReplenishFood_InvalidInputAddsNothing() {
+        String initialStock = petFeeder.checkFoodStock();
+        Exception exception = assertThrows(Exception.class, () -> petFeeder.replenishFood("5", "3", "0", "bad"),
+                "Replenishing with invalid treats input should throw an exception");
+        assertTrue(exception.getMessage().contains("treats"), "Exception message should mention treats");
+        assertEquals(initialStock, petFeeder.checkFoodStock(), "No ingredient should be added when one amount is invalid");
+    }
+
+    /**
+     * Tests that replenishing with int amounts updates the stock and rejects negative amounts.
+     */
+    @Test
+    public void testReplenish_IntInput() {
+        assertTrue(petFeeder.replenish(5, 3, 0, 4), "Replenishing valid amounts should succeed");
+        assertFalse(petFeeder.replenish(1, -1, 0, 0), "Replenishing a negative amount should fail");
+        assertEquals("Kibble: 20\nWater: 18\nWet Food: 15\nTreats: 19\n", petFeeder.checkFoodStock(), "Only the valid replenishment should be added");
+    }
+
     /**
      * Tests that all the ingredients are contained in the stock string returned by checkFoodStock().
      */
@@ -214,12 +247,14 @@ public class PetFeederTest {
     @Test
     public void testEditMealPlan_GoodInput() {
         PetFeeder pf = new PetFeeder();
-        MealPlan meal1 = new MealPlan();
-        meal1.setName("Meal 1");
+        MealPlan.Builder meal1Builder = new MealPlan.Builder();
+        meal1Builder.setName("Meal 1");
+        MealPlan meal1 = meal1Builder.build();
         pf.addMealPlan(meal1);
 
-        MealPlan updated = new MealPlan();
-        updated.setName("Updated Meal");
+        MealPlan.Builder updatedBuilder = new MealPlan.Builder();
+        updatedBuilder.setName("Updated Meal");
+        MealPlan updated = updatedBuilder.build();
 
 
         String oldName = pf.editMealPlan(0, updated);
@@ -248,6 +283,295 @@ public class PetFeederTest {
         assertTrue(energyLimit > 0, "Energy limit should be a positive integer");
     }
 
+    /**
+     * Tests that a feeder with its own energy budget stops dispensing once the
+     * budget of the window is spent and dispenses again once the window has moved on.
+     */
+    @Test
+    public void testDispenseMeal_EnergyWindowSlides() {
+        AtomicLong clock = new AtomicLong();
+        EnergyBudget budget = new EnergyBudget(100, TimeUnit.HOURS.toNanos(24), 24, clock::get);
+        PetFeeder pf = new PetFeeder(new MealPlanBook(), new FoodContainer(), budget);
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getEnergyCost()).thenReturn(60);
+        pf.addMealPlan(meal);
+
+        assertTrue(pf.dispenseMeal(0), "The first meal should fit the daily budget");
+        assertFalse(pf.dispenseMeal(0), "The second meal should exceed the daily budget");
+        clock.addAndGet(TimeUnit.HOURS.toNanos(24));
+        assertEquals(100, pf.getRemainingEnergyBudget(), "The budget should be unused a day later");
+        assertTrue(pf.dispenseMeal(0), "The meal should be dispensed again a day later");
+        assertEquals(100, pf.getEnergyLimit(), "The feeder should report the limit of its budget");
+    }
+
+    /**
+     * Tests that dispenseMealResult reports an index outside the meal plan
+     * list as NO_MEAL_PLAN, like an async dispense, while dispenseMeal
+     * still throws for it.
+     */
+    @Test
+    public void testDispenseMealResult_IndexOutsideList() throws Exception {
+        int outOfBoundsIndex = petFeeder.getMealPlans().length;
+        assertEquals(DispenseResult.NO_MEAL_PLAN, petFeeder.dispenseMealResult(outOfBoundsIndex), "An index past the list should have no meal plan");
+        assertEquals(DispenseResult.NO_MEAL_PLAN, petFeeder.dispenseMealResult(-1), "A negative index should have no meal plan");
+        assertEquals(petFeeder.dispenseMealAsync(outOfBoundsIndex).get(5, TimeUnit.SECONDS), petFeeder.dispenseMealResult(outOfBoundsIndex),
+                "The sync and async paths should agree");
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> petFeeder.dispenseMeal(-1),
+                "dispenseMeal should still throw for a negative index");
+    }
+
+    /**
+     * Tests that an async dispense reports why a meal was not dispensed.
+     */
+    @Test
+    public void testDispenseMealAsync_Results() throws Exception {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(10);
+        Mockito.when(meal.getEnergyCost()).thenReturn(100);
+        petFeeder.addMealPlan(meal);
+        MealPlan feast = Mockito.mock(MealPlan.class);
+        Mockito.when(feast.getEnergyCost()).thenReturn(600);
+        petFeeder.addMealPlan(feast);
+
+        assertEquals(DispenseResult.DISPENSED, petFeeder.dispenseMealAsync(0).get(5, TimeUnit.SECONDS), "The first meal should be dispensed");
+        assertEquals(DispenseResult.INSUFFICIENT_INGREDIENTS, petFeeder.dispenseMealAsync(0).get(5, TimeUnit.SECONDS), "The second meal should run out of kibble");
+        assertEquals(DispenseResult.ENERGY_BUDGET_EXCEEDED, petFeeder.dispenseMealAsync(1).get(5, TimeUnit.SECONDS), "The feast should exceed the energy budget");
+        assertEquals(DispenseResult.NO_MEAL_PLAN, petFeeder.dispenseMealAsync(2).get(5, TimeUnit.SECONDS), "An empty slot should have no meal plan");
+        assertEquals(DispenseResult.NO_MEAL_PLAN, petFeeder.dispenseMealAsync(99).get(5, TimeUnit.SECONDS), "An index past the list should have no meal plan");
+        assertEquals(DispenseResult.NO_MEAL_PLAN, petFeeder.dispenseMealAsync(-1).get(5, TimeUnit.SECONDS), "A negative index should have no meal plan");
+    }
+
+    /**
+     * Tests that async requests from one caller are dispensed in the order they were made.
+     */
+    @Test
+    public void testDispenseMealAsync_InOrder() throws Exception {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getEnergyCost()).thenReturn(200);
+        petFeeder.addMealPlan(meal);
+
+        List<CompletableFuture<DispenseResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(petFeeder.dispenseMealAsync(0));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            DispenseResult expected = i < 2 ? DispenseResult.DISPENSED : DispenseResult.ENERGY_BUDGET_EXCEEDED;
+            assertEquals(expected, futures.get(i).get(5, TimeUnit.SECONDS), "Request " + i + " should see the budget left by the requests before it");
+        }
+    }
+
+    /**
+     * Tests that async requests from many threads are all answered and never
+     * dispense more than the stock holds.
+     */
+    @Test
+    public void testDispenseMealAsync_ManyCallers() throws Exception {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(1);
+        petFeeder.addMealPlan(meal);
+        List<CompletableFuture<DispenseResult>> futures = Collections.synchronizedList(new ArrayList<>());
+        Thread[] callers = new Thread[8];
+        for (int t = 0; t < callers.length; t++) {
+            callers[t] = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    futures.add(petFeeder.dispenseMealAsync(0));
+                }
+            });
+            callers[t].start();
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+
+        int dispensed = 0;
+        for (CompletableFuture<DispenseResult> future : futures) {
+            if (future.get(5, TimeUnit.SECONDS).isDispensed()) {
+                dispensed++;
+            }
+        }
+        assertEquals(15, dispensed, "Exactly the 15 kibble in stock should be dispensed");
+        assertTrue(petFeeder.checkFoodStock().startsWith("Kibble: 0\n"), "The kibble should be used up");
+    }
+
+    /**
+     * Tests that a failure while completing a batch of queued requests
+     * fails their futures instead of leaving them waiting, and that later
+     * requests are still dispensed.
+     */
+    @Test
+    public void testDispenseMealAsync_FailureDoesNotStallQueue() throws Exception {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(1);
+        petFeeder.addMealPlan(meal);
+        FeederMetrics metrics = Mockito.mock(FeederMetrics.class);
+        Mockito.doThrow(new IllegalStateException("metrics failed")).doNothing()
+                .when(metrics).dispensed(Mockito.any(DispenseResult.class), Mockito.anyLong());
+        petFeeder.setMetrics(metrics);
+
+        ExecutionException failed = assertThrows(ExecutionException.class, () -> petFeeder.dispenseMealAsync(0).get(5, TimeUnit.SECONDS),
+                "The request of the failed batch should fail rather than hang");
+        assertEquals("metrics failed", failed.getCause().getMessage(), "The failure should be passed on");
+        assertEquals(DispenseResult.DISPENSED, petFeeder.dispenseMealAsync(0).get(5, TimeUnit.SECONDS),
+                "A later request should still be dispensed");
+    }
+
+    /**
+     * Tests that a queued request is dispensed on a virtual thread of the
+     * dispense queue, not on the common fork/join pool, and that completing
+     * the returned future does not stop the request from being dispensed.
+     */
+    @Test
+    public void testDispenseMealAsync_DrainsOnVirtualThread() throws Exception {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(1);
+        petFeeder.addMealPlan(meal);
+        CompletableFuture<Boolean> onVirtualThread;
+        CompletableFuture<DispenseResult> completedByCaller;
+        petFeeder.getLock().lock();
+        try {
+            // The lock keeps both requests queued until the checks are attached.
+            onVirtualThread = petFeeder.dispenseMealAsync(0).thenApply(result -> Thread.currentThread().isVirtual());
+            completedByCaller = petFeeder.dispenseMealAsync(0);
+            assertTrue(completedByCaller.complete(DispenseResult.NO_MEAL_PLAN), "The caller's copy should be completable");
+        } finally {
+            petFeeder.getLock().unlock();
+        }
+
+        assertTrue(onVirtualThread.get(5, TimeUnit.SECONDS), "The request should be dispensed on a virtual thread");
+        assertEquals(DispenseResult.DISPENSED, petFeeder.dispenseMealAsync(0).get(5, TimeUnit.SECONDS),
+                "A later request should be dispensed");
+        assertTrue(petFeeder.checkFoodStock().startsWith("Kibble: 12\n"),
+                "The request whose copy was completed should still be dispensed");
+    }
+
+    /**
+     * Tests that a feeder with an event log publishes the result of each
+     * dispense, synchronous or queued, with its id.
+     */
+    @Test
+    public void testSetEventLog_publishesDispenses() throws Exception {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(10);
+        petFeeder.addMealPlan(meal);
+        EventSink.MemorySink sink = new EventSink.MemorySink();
+        try (EventLog eventLog = EventLog.start(sink)) {
+            petFeeder.setEventLog(eventLog, "hall");
+            assertTrue(petFeeder.dispenseMeal(0), "The first meal should be dispensed");
+            assertEquals(DispenseResult.INSUFFICIENT_INGREDIENTS, petFeeder.dispenseMealAsync(0).get(5, TimeUnit.SECONDS),
+                    "The second meal should run out of kibble");
+            assertTrue(eventLog.flush(5, TimeUnit.SECONDS), "The events should be written");
+
+            List<FeederEvent> events = sink.getEvents();
+            assertEquals(2, events.size(), "Each dispense should publish one event");
+            assertEquals(FeederEvent.Type.DISPENSE, events.get(0).getType(), "The event should be a dispense");
+            assertEquals("hall", events.get(0).getFeederId(), "The event should name the feeder");
+            assertEquals(DispenseResult.DISPENSED, events.get(0).getResult(), "The first event should hold its result");
+            assertEquals("[Feeder hall] Meal plan 0: insufficient ingredients", events.get(1).toString(),
+                    "The log line of the queued dispense should give its result");
+        }
+    }
+
+    /**
+     * Tests that virtual threads waiting for the feeder while a dispense
+     * blocks with the lock held give their carrier threads back: with more
+     * waiters than carriers another virtual thread must still get to run.
+     */
+    @Test
+    public void testDispenseMeal_VirtualThreadsWaitingForLock() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FoodContainer blocking = new FoodContainer() {
+            @Override
+            public boolean useIngredients(MealPlan m) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.useIngredients(m);
+            }
+        };
+        PetFeeder feeder = new PetFeeder(new MealPlanBook(), blocking);
+        feeder.setMetrics(FeederMetrics.disabled());
+        feeder.addMealPlan(Mockito.mock(MealPlan.class));
+        AtomicInteger dispensed = new AtomicInteger();
+        Thread[] dispensers = new Thread[Runtime.getRuntime().availableProcessors() * 2];
+        for (int i = 0; i < dispensers.length; i++) {
+            dispensers[i] = Thread.ofVirtual().start(() -> {
+                if (feeder.dispenseMeal(0)) {
+                    dispensed.incrementAndGet();
+                }
+            });
+        }
+        assertTrue(entered.await(5, TimeUnit.SECONDS), "A dispense should block while holding the lock");
+        Thread.sleep(100); // let the other dispensers queue for the lock
+
+        Thread releaser = Thread.ofVirtual().start(release::countDown);
+        try {
+            assertTrue(releaser.join(Duration.ofSeconds(5)), "A virtual thread should run while the others wait for the feeder");
+        } finally {
+            release.countDown();
+        }
+        for (Thread dispenser : dispensers) {
+            assertTrue(dispenser.join(Duration.ofSeconds(5)), "Every dispenser should finish once the lock is free");
+        }
+        assertEquals(dispensers.length, dispensed.get(), "Every meal should be dispensed");
+    }
+
+    /**
+     * Tests that a batch dispenses meals in order while the stock lasts, skips the meal
+     * that does not fit, and reports each result in the returned bitmap.
+     */
+    @Test
+    public void testDispenseMeals_SkipsMealsThatDoNotFit() {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(6);
+        Mockito.when(meal.getEnergyCost()).thenReturn(60);
+        petFeeder.addMealPlan(meal);
+
+        // 15 kibble is enough for two meals of 6, the third is skipped
+        long[] dispensed = petFeeder.dispenseMeals(new int[] {0, 0, 0});
+
+        assertEquals(1, dispensed.length, "Three results should fit in one bitmap word");
+        assertEquals(0b011L, dispensed[0], "Only the first two meals should be dispensed");
+        assertEquals(380, petFeeder.getRemainingEnergyBudget(), "The energy of both dispensed meals should be spent");
+        assertTrue(petFeeder.checkFoodStock().startsWith("Kibble: 3\n"), "Kibble of both dispensed meals should be used");
+    }
+
+    /**
+     * Tests that a batch stops accepting meals once the energy budget is spent and
+     * leaves empty meal plan slots undispensed.
+     */
+    @Test
+    public void testDispenseMeals_EnergyBudgetAndEmptySlots() {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getEnergyCost()).thenReturn(200);
+        petFeeder.addMealPlan(meal);
+
+        long[] dispensed = new long[1];
+        int count = petFeeder.dispenseMeals(new int[] {0, 1, 0, 0}, dispensed);
+
+        assertEquals(2, count, "Two meals fit into the energy budget of 500");
+        assertEquals(0b0101L, dispensed[0], "The empty slot and the meal over budget should not be dispensed");
+        assertEquals(100, petFeeder.getRemainingEnergyBudget(), "The budget should drop by two meals");
+    }
+
+    /**
+     * Tests that a batch with an out-of-range index throws before anything is dispensed.
+     */
+    @Test
+    public void testDispenseMeals_InvalidIndex() {
+        MealPlan meal = Mockito.mock(MealPlan.class);
+        Mockito.when(meal.getAmtKibble()).thenReturn(1);
+        petFeeder.addMealPlan(meal);
+        int outOfBoundsIndex = petFeeder.getMealPlans().length;
+
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> petFeeder.dispenseMeals(new int[] {0, outOfBoundsIndex}),
+                "Dispensing with an out-of-bounds index should throw ArrayIndexOutOfBoundsException");
+        assertTrue(petFeeder.checkFoodStock().startsWith("Kibble: 15\n"), "No meal of the batch should be dispensed");
+    }
 
     @AfterEach
     public void tearDown() throws Exception {
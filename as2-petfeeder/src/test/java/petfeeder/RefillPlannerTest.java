@@ -0,0 +1,164 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static petfeeder.TestMealPlans.plan;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import petfeeder.RefillPlanner.Ingredient;
+import petfeeder.RefillPlanner.Recommendation;
+
+/**
+ * Tests the RefillPlanner class
+ */
+public class RefillPlannerTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long START = 1_700_000_000_000L;
+
+    private AtomicLong clock;
+    private FeedingWheel feedingWheel;
+    private RefillPlanner refillPlanner;
+    private PetFeeder petFeeder;
+    private FeedingScheduler scheduler;
+
+    /**
+     * Sets up the test environment by creating a planner with a horizon of
+     * 24 hours on a clock the test moves by hand, and a feeder with 100
+     * kibble and 15 water that eats 2 kibble and 1 water every hour. The
+     * schedules are hours apart, so none of them runs during a test.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        clock = new AtomicLong(START);
+        feedingWheel = new FeedingWheel(10, TimeUnit.MILLISECONDS, 1);
+        refillPlanner = new RefillPlanner(24 * HOUR, clock::get);
+        petFeeder = newFeeder(100, 15, EnergyBudget.daily(100000));
+        petFeeder.addMealPlan(plan("Breakfast", 2, 1, 0, 0));
+        scheduler = new FeedingScheduler(petFeeder, feedingWheel);
+        scheduler.addRecurringFeeding(0, 1, TimeUnit.HOURS);
+        assertTrue(refillPlanner.track("feeder-1", petFeeder, scheduler), "A new feeder should be tracked");
+    }
+
+    private static PetFeeder newFeeder(int kibble, int water, EnergyBudget energyBudget) {
+        FoodContainer foodContainer = new FoodContainer();
+        foodContainer.setKibble(kibble);
+        foodContainer.setWater(water);
+        return new PetFeeder(new MealPlanBook(), foodContainer, energyBudget);
+    }
+
+    /**
+     * Tests that each ingredient runs out when its stock has been eaten at
+     * the scheduled rate, and that an ingredient that is not eaten never does.
+     */
+    @Test
+    public void testGetDepletionTime_fromSchedules() {
+        assertEquals(START + 50 * HOUR, refillPlanner.getDepletionTime("feeder-1", Ingredient.KIBBLE), "100 kibble should last 50 meals");
+        assertEquals(START + 15 * HOUR, refillPlanner.getDepletionTime("feeder-1", Ingredient.WATER), "15 water should last 15 meals");
+        assertEquals(RefillPlanner.NEVER, refillPlanner.getDepletionTime("feeder-1", Ingredient.TREATS), "Treats are not eaten");
+        assertEquals(RefillPlanner.NEVER, refillPlanner.getDepletionTime("feeder-2", Ingredient.KIBBLE), "An untracked feeder should never run out");
+    }
+
+    /**
+     * Tests that only the ingredients that run out within the horizon are
+     * recommended, soonest first, with the amount that fills the container.
+     */
+    @Test
+    public void testGetRecommendations_withinHorizon() {
+        List<Recommendation> recommendations = refillPlanner.getRecommendations();
+        assertEquals(1, recommendations.size(), "Only the water runs out within 24 hours");
+        Recommendation water = recommendations.get(0);
+        assertEquals("feeder-1", water.getFeederId(), "The recommendation should name the feeder");
+        assertEquals(Ingredient.WATER, water.getIngredient(), "The water should be refilled");
+        assertEquals(START + 15 * HOUR, water.getDepletionTime(), "The recommendation should say when the water runs out");
+        assertEquals(FoodContainer.MAX_UNITS - 15, water.getAmount(), "The amount should fill the container");
+
+        clock.addAndGet(30 * HOUR);
+        recommendations = refillPlanner.getRecommendations();
+        assertEquals(2, recommendations.size(), "Both ingredients run out within 24 hours of the new time");
+        assertEquals(Ingredient.WATER, recommendations.get(0).getIngredient(), "The water runs out first");
+        assertEquals(Ingredient.KIBBLE, recommendations.get(1).getIngredient(), "The kibble runs out second");
+    }
+
+    /**
+     * Tests that only changed feeders are projected again, and that every
+     * kind of change is picked up.
+     */
+    @Test
+    public void testChanges_projectOnlyChangedFeeders() throws Exception {
+        PetFeeder other = newFeeder(100, 100, EnergyBudget.daily(100000));
+        other.addMealPlan(plan("Dinner", 1, 1, 0, 0));
+        FeedingScheduler otherScheduler = new FeedingScheduler(other, feedingWheel);
+        otherScheduler.addRecurringFeeding(0, 1, TimeUnit.HOURS);
+        refillPlanner.track("feeder-2", other, otherScheduler);
+        refillPlanner.getRecommendations();
+        assertEquals(2, refillPlanner.getProjectionCount(), "Each new feeder should be projected once");
+        refillPlanner.getRecommendations();
+        assertEquals(2, refillPlanner.getProjectionCount(), "Nothing should be projected without a change");
+
+        scheduler.addRecurringFeeding(0, 30, TimeUnit.MINUTES);
+        assertEquals(START + 25 * HOUR, refillPlanner.getDepletionTime("feeder-1", Ingredient.KIBBLE), "A shorter period should use the kibble faster");
+        assertEquals(3, refillPlanner.getProjectionCount(), "Only the changed feeder should be projected");
+
+        petFeeder.replenish(0, 15, 0, 0);
+        assertEquals(START + 15 * HOUR, refillPlanner.getDepletionTime("feeder-1", Ingredient.WATER), "Replenished water should last longer");
+
+        petFeeder.editMealPlan(0, plan("Breakfast", 4, 1, 0, 0));
+        assertEquals(START + 12 * HOUR + 30 * 60_000, refillPlanner.getDepletionTime("feeder-1", Ingredient.KIBBLE), "A bigger meal should use the kibble faster");
+
+        scheduler.cancelRecurringFeeding(0);
+        assertEquals(RefillPlanner.NEVER, refillPlanner.getDepletionTime("feeder-1", Ingredient.KIBBLE), "A feeder without schedules should never run out");
+        assertEquals(6, refillPlanner.getProjectionCount(), "Each change should project only its own feeder");
+    }
+
+    /**
+     * Tests that the rates are scaled down when the energy budget cannot pay
+     * for every scheduled meal.
+     */
+    @Test
+    public void testGetDepletionTime_limitedByEnergyBudget() throws Exception {
+        PetFeeder hungry = newFeeder(100, 100, EnergyBudget.daily(500));
+        hungry.addMealPlan(plan("Kibble", 5, 0, 0, 0));
+        FeedingScheduler hungryScheduler = new FeedingScheduler(hungry, feedingWheel);
+        hungryScheduler.addRecurringFeeding(0, 1, TimeUnit.HOURS);
+        refillPlanner.track("hungry", hungry, hungryScheduler);
+
+        // 24 meals of 50 energy points a day, of which the budget pays for 10.
+        long depletion = refillPlanner.getDepletionTime("hungry", Ingredient.KIBBLE);
+        assertEquals(START + 48 * HOUR, depletion, 1, "Only 10 meals of 5 kibble a day should be eaten");
+    }
+
+    /**
+     * Tests that an untracked feeder is no longer recommended or projected.
+     */
+    @Test
+    public void testUntrack() {
+        assertFalse(refillPlanner.track("feeder-1", petFeeder, scheduler), "An id should be tracked only once");
+        assertTrue(refillPlanner.untrack("feeder-1"), "A tracked feeder should be untracked");
+        assertFalse(refillPlanner.untrack("feeder-1"), "A feeder should be untracked only once");
+        petFeeder.replenish(1, 1, 1, 1);
+
+        assertTrue(refillPlanner.getRecommendations().isEmpty(), "An untracked feeder should not be recommended");
+        assertEquals(0, refillPlanner.size(), "No feeder should be tracked");
+        assertEquals(0, refillPlanner.getProjectionCount(), "An untracked feeder should not be projected");
+    }
+
+    /**
+     * Tears down the test environment by stopping the feeding wheel after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        feedingWheel.shutdown();
+        feedingWheel = null;
+        refillPlanner = null;
+        petFeeder = null;
+        scheduler = null;
+        clock = null;
+    }
+}
@@ -0,0 +1,207 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static petfeeder.TestMealPlans.plan;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the ShardedFoodContainer class
+ */
+public class ShardedFoodContainerTest {
+
+    private ShardedFoodContainer foodContainer;
+    private MealPlan oneKibble;
+
+    /**
+     * Sets up the test environment by creating a container with 4 stripes
+     * and a meal plan of one unit of kibble.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        foodContainer = new ShardedFoodContainer(4);
+        oneKibble = plan("One kibble", 1, 0, 0, 0);
+    }
+
+    /**
+     * Cleans up after each test.
+     */
+    @AfterEach
+    public void tearDown() throws Exception {
+        foodContainer = null;
+        oneKibble = null;
+    }
+
+    /**
+     * Tests that a new container holds 15 units of each ingredient, like a
+     * FoodContainer, and rounds the stripes up to a power of two.
+     */
+    @Test
+    public void testInitialStock() {
+        assertEquals(new FoodContainer().toString(), foodContainer.toString(), "The stock should start as in a FoodContainer");
+        assertEquals(4, foodContainer.getStripeCount(), "4 stripes should be kept");
+        assertEquals(8, new ShardedFoodContainer(5).getStripeCount(), "The stripes should round up to a power of two");
+        assertThrows(IllegalArgumentException.class, () -> new ShardedFoodContainer(0), "There must be a stripe");
+    }
+
+    /**
+     * Tests that a container with the most stripes can lock them all, and
+     * that more stripes are rejected.
+     */
+    @Test
+    public void testMaxStripes() {
+        ShardedFoodContainer widest = new ShardedFoodContainer(ShardedFoodContainer.MAX_STRIPES);
+        widest.setKibble(1000);
+
+        assertEquals(1000, widest.getKibble(), "Reading the stock should lock every stripe");
+        assertThrows(IllegalArgumentException.class, () -> new ShardedFoodContainer(ShardedFoodContainer.MAX_STRIPES + 1),
+                "More stripes than the maximum should be rejected");
+    }
+
+    /**
+     * Tests that meals are taken from the stripe of the thread until it runs
+     * dry, and then from the other stripes, until the whole stock is used.
+     */
+    @Test
+    public void testUseIngredients_borrowsFromOtherStripes() {
+        foodContainer.setKibble(100);
+        long rebalances = foodContainer.getRebalanceCount();
+        for (int i = 0; i < 25; i++) {
+            assertTrue(foodContainer.useIngredients(oneKibble), "Meal " + i + " should come from the own stripe");
+        }
+        assertEquals(rebalances, foodContainer.getRebalanceCount(), "A quarter of the stock should not need a rebalance");
+        for (int i = 25; i < 100; i++) {
+            assertTrue(foodContainer.useIngredients(oneKibble), "Meal " + i + " should borrow from the other stripes");
+        }
+        assertTrue(foodContainer.getRebalanceCount() > rebalances, "The stripe should have been refilled");
+        assertFalse(foodContainer.useIngredients(oneKibble), "The whole stock should be used up");
+        assertEquals(0, foodContainer.getKibble(), "No kibble should be left");
+        assertEquals(15, foodContainer.getWater(), "Water should not change");
+    }
+
+    /**
+     * Tests that enoughIngredients looks at the whole stock when the stripe
+     * of the thread lacks an ingredient.
+     */
+    @Test
+    public void testEnoughIngredients_wholeStock() {
+        foodContainer.setKibble(8);
+        MealPlan big = plan("Big", 8, 0, 0, 0);
+        assertTrue(foodContainer.enoughIngredients(big), "8 kibble over 4 stripes should be enough");
+        assertTrue(foodContainer.useIngredients(big), "The meal should take kibble from every stripe");
+        assertFalse(foodContainer.enoughIngredients(oneKibble), "No kibble should be left");
+    }
+
+    /**
+     * Tests that the capacity is the capacity of the whole container.
+     */
+    @Test
+    public void testAdd_wholeCapacity() {
+        foodContainer.setTreats(FoodContainer.MAX_UNITS - 2);
+        assertTrue(foodContainer.addTreats(1), "One treat should fit");
+        assertTrue(foodContainer.replenish(0, 0, 0, 1), "One more treat should fit");
+        assertFalse(foodContainer.addTreats(1), "The container should be full");
+        assertFalse(foodContainer.replenish(1, 0, 0, 1), "A replenish should add all or nothing");
+        assertEquals(FoodContainer.MAX_UNITS, foodContainer.getTreats(), "Treats should be full");
+        assertEquals(15, foodContainer.getKibble(), "Kibble should not change");
+    }
+
+    /**
+     * Tests that meals and refills from many threads neither lose nor make
+     * up stock, and that their history is linearizable.
+     */
+    @Test
+    public void testConcurrentUseAndReplenish() throws Exception {
+        final int threads = 8;
+        final int operations = 2000;
+        foodContainer = new ShardedFoodContainer(threads);
+        foodContainer.setStock(FoodContainer.pack(1000, 1000, 1000, 1000));
+        final MealPlan meal = plan("Meal", 3, 2, 1, 0);
+        final long[] used = new long[threads];
+        final long[] added = new long[threads];
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            workers[t] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(index);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < operations; i++) {
+                    if (random.nextInt(3) > 0) {
+                        if (foodContainer.useIngredients(meal)) {
+                            used[index]++;
+                        }
+                    } else if (foodContainer.replenish(2, 2, 2, 2)) {
+                        added[index]++;
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        long meals = 0;
+        long refills = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            meals += used[t];
+            refills += added[t];
+        }
+        assertEquals(1000 - 3 * meals + 2 * refills, foodContainer.getKibble(), "Kibble should balance");
+        assertEquals(1000 - 2 * meals + 2 * refills, foodContainer.getWater(), "Water should balance");
+        assertEquals(1000 - meals + 2 * refills, foodContainer.getWetFood(), "Wet food should balance");
+        assertEquals(1000 + 2 * refills, foodContainer.getTreats(), "Treats should balance");
+
+        for (int round = 0; round < 20; round++) {
+            ShardedFoodContainer small = new ShardedFoodContainer(4);
+            LinearizabilityChecker.History history = new LinearizabilityChecker.History(small, 4 * 25);
+            Thread[] recorders = new Thread[4];
+            for (int t = 0; t < recorders.length; t++) {
+                final SplittableRandom random = new SplittableRandom(round * 31L + t);
+                recorders[t] = new Thread(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                history.replenish(random.nextInt(3), 0, 1, 0);
+                                break;
+                            case 1:
+                                history.getKibble();
+                                break;
+                            default:
+                                history.useIngredients(meal);
+                                break;
+                        }
+                    }
+                });
+                recorders[t].start();
+            }
+            for (Thread recorder : recorders) {
+                recorder.join();
+            }
+            assertTrue(LinearizabilityChecker.check(history), "Round " + round + " should be linearizable");
+        }
+    }
+
+    /**
+     * Tests that a feeder dispenses from a sharded container.
+     */
+    @Test
+    public void testPetFeeder_dispense() {
+        PetFeeder petFeeder = new PetFeeder(new MealPlanBook(), foodContainer, EnergyBudget.daily(1000));
+        petFeeder.addMealPlan(plan("Breakfast", 4, 4, 0, 0));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(petFeeder.dispenseMeal(0), "Meal " + i + " should be dispensed");
+        }
+        assertFalse(petFeeder.dispenseMeal(0), "15 kibble should not make 4 meals of 4");
+        assertEquals("Kibble: 3\nWater: 3\nWet Food: 15\nTreats: 15\n", petFeeder.checkFoodStock(),
+                "The stock should show the meals taken");
+    }
+}
@@ -0,0 +1,158 @@
+package petfeeder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static petfeeder.TestMealPlans.plan;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the StockScan class
+ */
+public class StockScanTest {
+
+    /** Not a multiple of any vector length, so every kernel has a tail. */
+    private static final int COUNT = 1003;
+
+    private long[] stock;
+    private long[] required;
+
+    /**
+     * Sets up the test environment with random stock and requirements
+     * close to each other, including empty and full ingredients.
+     */
+    @BeforeEach
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(7);
+        stock = new long[COUNT];
+        required = new long[COUNT];
+        int[] edges = {0, 1, 0x7FFF, 0x8000, 0xFFFE, FoodContainer.MAX_UNITS};
+        for (int i = 0; i < COUNT; i++) {
+            int[] have = new int[4];
+            int[] need = new int[4];
+            for (int j = 0; j < 4; j++) {
+                have[j] = random.nextInt(4) == 0 ? edges[random.nextInt(edges.length)] : random.nextInt(20);
+                need[j] = random.nextInt(4) == 0 ? edges[random.nextInt(edges.length)] : random.nextInt(8);
+            }
+            stock[i] = FoodContainer.pack(have[0], have[1], have[2], have[3]);
+            required[i] = FoodContainer.pack(need[0], need[1], need[2], need[3]);
+        }
+    }
+
+    private static boolean isSet(long[] bitmap, int i) {
+        return (bitmap[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Tests that insufficient picks exactly the feeders whose stock does
+     * not cover their requirement.
+     */
+    @Test
+    public void testInsufficient_matchesCovers() {
+        long[] bitmap = StockScan.insufficient(stock, required, COUNT);
+
+        assertEquals((COUNT + 63) / 64, bitmap.length, "The bitmap should have one bit per feeder");
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(!FoodContainer.covers(stock[i], required[i]), isSet(bitmap, i), "Feeder " + i);
+        }
+    }
+
+    /**
+     * Tests that lowStock picks the feeders below the threshold of any
+     * ingredient, and rejects a threshold no ingredient can hold.
+     */
+    @Test
+    public void testLowStock_matchesThreshold() {
+        long[] bitmap = StockScan.lowStock(stock, COUNT, 5, 0, 10, 1);
+
+        for (int i = 0; i < COUNT; i++) {
+            boolean low = FoodContainer.unitsAt(stock[i], FoodContainer.KIBBLE_SHIFT) < 5
+                    || FoodContainer.unitsAt(stock[i], FoodContainer.WETFOOD_SHIFT) < 10
+                    || FoodContainer.unitsAt(stock[i], FoodContainer.TREATS_SHIFT) < 1;
+            assertEquals(low, isSet(bitmap, i), "Feeder " + i);
+        }
+        assertThrows(IllegalArgumentException.class, () -> StockScan.lowStock(stock, COUNT, -1, 0, 0, 0),
+                "A negative threshold should be rejected");
+    }
+
+    /**
+     * Tests that totalEnergy is the sum of the energy cost of each
+     * requirement.
+     */
+    @Test
+    public void testTotalEnergy_sumsMealPlans() {
+        long expected = 0;
+        for (int i = 0; i < COUNT; i++) {
+            expected += MealPlan.energyCost(FoodContainer.unitsAt(required[i], FoodContainer.KIBBLE_SHIFT),
+                    FoodContainer.unitsAt(required[i], FoodContainer.WATER_SHIFT),
+                    FoodContainer.unitsAt(required[i], FoodContainer.WETFOOD_SHIFT),
+                    FoodContainer.unitsAt(required[i], FoodContainer.TREATS_SHIFT));
+        }
+
+        assertEquals(expected, StockScan.totalEnergy(required, COUNT), "The energy of every feeder should be summed");
+        assertEquals(0, StockScan.totalEnergy(required, 0), "No feeders should need no energy");
+        assertThrows(IllegalArgumentException.class, () -> StockScan.totalEnergy(required, COUNT + 1),
+                "A count past the array should be rejected");
+    }
+
+    /**
+     * Tests that the vector and scalar kernels agree at every count up to
+     * a few vectors, when the Vector API is in use.
+     */
+    @Test
+    public void testVectorKernel_matchesScalar() {
+        assumeTrue(StockScan.isVectorized(), "The Vector API is not in use");
+        VectorStockScan vector = new VectorStockScan();
+        long threshold = FoodContainer.pack(3, 0x8000, 0, 12);
+        for (int count = 0; count <= 70; count++) {
+            long[] expected = new long[2];
+            long[] actual = new long[2];
+            StockScan.SCALAR.insufficient(stock, required, count, expected);
+            vector.insufficient(stock, required, count, actual);
+            assertArrayEquals(expected, actual, "insufficient at " + count + " feeders");
+
+            expected = new long[2];
+            actual = new long[2];
+            StockScan.SCALAR.below(stock, threshold, count, expected);
+            vector.below(stock, threshold, count, actual);
+            assertArrayEquals(expected, actual, "below at " + count + " feeders");
+
+            assertEquals(StockScan.SCALAR.energy(required, count), vector.energy(required, count),
+                    "energy at " + count + " feeders");
+        }
+    }
+
+    /**
+     * Tests finding the feeders of a FleetStore that cannot serve the
+     * meal plan in their first slot.
+     */
+    @Test
+    public void testFleetStore_nextMeal() {
+        FleetStore fleetStore = new FleetStore(100);
+        MealPlan dinner = plan("Dinner", 10, 1, 0, 0);
+        FleetStore.Feeder feeder = fleetStore.feeder(0);
+        for (int id = 0; id < 100; id++) {
+            feeder.moveTo(id);
+            if (id % 2 == 0) {
+                feeder.addMealPlan(dinner);
+            }
+            feeder.getFoodContainer().setKibble(id % 20);
+        }
+        long[] stocks = new long[100];
+        long[] meals = new long[100];
+        fleetStore.copyStocks(0, stocks, 0, 100);
+        fleetStore.copyMealAmounts(0, 0, meals, 0, 100);
+
+        long[] bitmap = StockScan.insufficient(stocks, meals, 100);
+        for (int id = 0; id < 100; id++) {
+            assertEquals(id % 2 == 0 && id % 20 < 10, isSet(bitmap, id), "Feeder " + id);
+        }
+        assertEquals(50 * dinner.getEnergyCost(), StockScan.totalEnergy(meals, 100),
+                "Only the feeders with a meal plan should need energy");
+        assertThrows(IndexOutOfBoundsException.class, () -> fleetStore.copyStocks(1, stocks, 0, 100),
+                "A range past the last feeder should be rejected");
+    }
+}
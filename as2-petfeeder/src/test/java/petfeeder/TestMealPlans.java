@@ -0,0 +1,29 @@
+package petfeeder;
+
+/**
+ * Meal plans for the tests.
+ */
+final class TestMealPlans {
+
+    private TestMealPlans() {
+    }
+
+    /**
+     * Builds a meal plan with the given name and amounts.
+     * @param name The name of the meal plan.
+     * @param kibble The units of kibble.
+     * @param water The units of water.
+     * @param wetFood The units of wet food.
+     * @param treats The units of treats.
+     * @return MealPlan
+     */
+    static MealPlan plan(String name, int kibble, int water, int wetFood, int treats) {
+        MealPlan.Builder builder = new MealPlan.Builder();
+        builder.setName(name);
+        builder.setAmtKibble(kibble);
+        builder.setAmtWater(water);
+        builder.setAmtWetFood(wetFood);
+        builder.setAmtTreats(treats);
+        return builder.build();
+    }
+}